@@ -0,0 +1,57 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.bench;
+
+/**
+ * ベンチマークの1項目。
+ * run()が1回分の処理で、BenchmarkRunnerが一定時間繰り返し呼び出して1回あたりの時間を求める。
+ * 計測対象のデータはsetUp()で作っておき、run()の中では生成しないこと。
+ */
+public abstract class Benchmark {
+	private final String _name;
+
+	protected Benchmark() {
+		_name = getClass().getSimpleName();
+	}
+
+	protected Benchmark(String name) {
+		_name = name;
+	}
+
+	/**
+	 * 結果の出力や絞り込みに使う名前を返す。CSVに保存するため、カンマを含めないこと。
+	 */
+	public String getName() {
+		return _name;
+	}
+
+	/**
+	 * 計測の前に1度だけ呼ばれる。
+	 */
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * 計測の後に1度だけ呼ばれる。
+	 */
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * 1回分の処理を行う。結果はblackholeに渡し、JITに処理ごと消されないようにする。
+	 */
+	public abstract void run(Blackhole blackhole) throws Exception;
+}
@@ -0,0 +1,266 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * ベンチマークを実行し、1回あたりの時間(ns/op)を表示してCSVに保存する。
+ *
+ * <pre>
+ * 引数:
+ *   -w 回数    ウォームアップの回数(既定値 5)
+ *   -i 回数    計測の回数(既定値 10)
+ *   -t ミリ秒  1回の計測時間(既定値 500)
+ *   -o DIR     結果を保存するディレクトリ(既定値 bench-results)
+ *   -b FILE    比較する過去の結果(CSV)
+ *   -r 割合    -bとの比較で遅くなったと判定する割合(%、既定値 10)
+ *   その他     名前にこの文字列を含むベンチマークだけを実行する
+ * </pre>
+ *
+ * -bを指定して遅くなったベンチマークがあった場合は、終了コード1で終了する。
+ */
+public class BenchmarkRunner {
+	// 時刻の取得が計測に影響しないよう、1回の処理が短い場合はまとめて実行する
+	private static final long BATCH_NANOS = 100 * 1000L;
+	private static final int MAX_BATCH = 1 << 20;
+
+	private int _warmupIterations = 5;
+	private int _iterations = 10;
+	private long _iterationMillis = 500;
+	private File _outputDir = new File("bench-results");
+	private File _baseline = null;
+	private double _regressionPercent = 10;
+	private final List<String> _filters = new ArrayList<String>();
+
+	private static class Result {
+		private final String _name;
+		private final double _mean;
+		private final double _error;
+		private final double _min;
+
+		private Result(String name, double[] samples) {
+			double sum = 0;
+			double min = Double.MAX_VALUE;
+			for (double sample : samples) {
+				sum += sample;
+				min = Math.min(min, sample);
+			}
+			double mean = sum / samples.length;
+			double variance = 0;
+			for (double sample : samples) {
+				variance += (sample - mean) * (sample - mean);
+			}
+			_name = name;
+			_mean = mean;
+			_error = samples.length > 1 ? Math.sqrt(variance
+					/ (samples.length - 1)) : 0;
+			_min = min;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		runner.parse(args);
+		System.exit(runner.execute() ? 0 : 1);
+	}
+
+	private void parse(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-w")) {
+				_warmupIterations = Integer.parseInt(args[++i]);
+			} else if (arg.equals("-i")) {
+				_iterations = Math.max(Integer.parseInt(args[++i]), 1);
+			} else if (arg.equals("-t")) {
+				_iterationMillis = Long.parseLong(args[++i]);
+			} else if (arg.equals("-o")) {
+				_outputDir = new File(args[++i]);
+			} else if (arg.equals("-b")) {
+				_baseline = new File(args[++i]);
+			} else if (arg.equals("-r")) {
+				_regressionPercent = Double.parseDouble(args[++i]);
+			} else if (arg.length() > 0) {
+				_filters.add(arg);
+			}
+		}
+	}
+
+	private boolean accepts(Benchmark benchmark) {
+		if (_filters.isEmpty()) {
+			return true;
+		}
+		for (String filter : _filters) {
+			if (benchmark.getName().contains(filter)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return 過去の結果より遅くなったベンチマークが無ければtrue
+	 */
+	private boolean execute() throws Exception {
+		System.out.println(String.format("%s %s, %d processors",
+				System.getProperty("java.vm.name"),
+				System.getProperty("java.version"), Runtime.getRuntime()
+						.availableProcessors()));
+		System.out.println(String.format(
+				"warmup %d x %dms, measurement %d x %dms", _warmupIterations,
+				_iterationMillis, _iterations, _iterationMillis));
+
+		List<Result> results = new ArrayList<Result>();
+		for (Benchmark benchmark : BenchmarkSuite.getBenchmarks()) {
+			if (!accepts(benchmark)) {
+				continue;
+			}
+			Result result = measure(benchmark);
+			results.add(result);
+			System.out.println(String.format(Locale.US,
+					"%-40s %12.1f ns/op  +- %10.1f  (min %12.1f)",
+					result._name, result._mean, result._error, result._min));
+		}
+		if (results.isEmpty()) {
+			System.out.println("実行するベンチマークがありません。");
+			return true;
+		}
+		save(results);
+		if (_baseline == null) {
+			return true;
+		}
+		return compare(results, load(_baseline));
+	}
+
+	private Result measure(Benchmark benchmark) throws Exception {
+		Blackhole blackhole = new Blackhole();
+		benchmark.setUp();
+		try {
+			long nanos = _iterationMillis * 1000000L;
+			for (int i = 0; i < _warmupIterations; i++) {
+				iterate(benchmark, blackhole, nanos);
+			}
+			double[] samples = new double[_iterations];
+			for (int i = 0; i < _iterations; i++) {
+				samples[i] = iterate(benchmark, blackhole, nanos);
+			}
+			return new Result(benchmark.getName(), samples);
+		} finally {
+			benchmark.tearDown();
+		}
+	}
+
+	/**
+	 * 指定時間だけ処理を繰り返し、1回あたりの時間(ns)を返す。
+	 */
+	private static double iterate(Benchmark benchmark, Blackhole blackhole,
+			long nanos) throws Exception {
+		int batch = 1;
+		long ops = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			long batchStart = System.nanoTime();
+			for (int i = 0; i < batch; i++) {
+				benchmark.run(blackhole);
+			}
+			ops += batch;
+			long now = System.nanoTime();
+			if (now - batchStart < BATCH_NANOS && batch < MAX_BATCH) {
+				batch <<= 1;
+			}
+			elapsed = now - start;
+		} while (elapsed < nanos);
+		blackhole.flush();
+		return (double) elapsed / ops;
+	}
+
+	private void save(List<Result> results) throws IOException {
+		_outputDir.mkdirs();
+		String time = new SimpleDateFormat("yyyyMMdd-HHmmss")
+				.format(new Date());
+		File file = new File(_outputDir, "bench-" + time + ".csv");
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(file), "UTF-8"));
+		try {
+			out.println("benchmark,ns_per_op,error,min,iterations");
+			for (Result result : results) {
+				out.println(String.format(Locale.US, "%s,%.3f,%.3f,%.3f,%d",
+						result._name, result._mean, result._error,
+						result._min, _iterations));
+			}
+		} finally {
+			out.close();
+		}
+		System.out.println("結果を保存しました: " + file.getPath());
+	}
+
+	private static Map<String, Double> load(File file) throws IOException {
+		Map<String, Double> result = new HashMap<String, Double>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), "UTF-8"));
+		try {
+			in.readLine(); // ヘッダ
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] columns = line.split(",");
+				if (columns.length < 2) {
+					continue;
+				}
+				result.put(columns[0], Double.valueOf(columns[1]));
+			}
+		} finally {
+			in.close();
+		}
+		return result;
+	}
+
+	private boolean compare(List<Result> results, Map<String, Double> baseline) {
+		System.out.println("比較対象: " + _baseline.getPath());
+		boolean passed = true;
+		for (Result result : results) {
+			Double before = baseline.get(result._name);
+			if (before == null || before <= 0) {
+				System.out.println(String.format("%-40s (比較対象なし)",
+						result._name));
+				continue;
+			}
+			double change = (result._mean - before) / before * 100;
+			boolean regressed = change > _regressionPercent;
+			if (regressed) {
+				passed = false;
+			}
+			System.out.println(String.format(Locale.US,
+					"%-40s %12.1f -> %12.1f ns/op  %+7.1f%%%s", result._name,
+					before, result._mean, change, regressed ? "  *遅延*" : ""));
+		}
+		return passed;
+	}
+}
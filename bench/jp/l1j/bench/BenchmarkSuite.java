@@ -0,0 +1,52 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 実行するベンチマークの一覧。
+ * ベンチマークを追加する場合は、Benchmarkを継承したクラスを作りここに登録する。
+ * DBを必要とするクラス(テーブルの読み込みなど)は使わず、必要なデータはsetUp()で作ること。
+ */
+public class BenchmarkSuite {
+	private BenchmarkSuite() {
+	}
+
+	public static List<Benchmark> getBenchmarks() {
+		List<Benchmark> result = new ArrayList<Benchmark>();
+		// パケット
+		result.add(new CipherBenchmark.Encrypt(16));
+		result.add(new CipherBenchmark.Encrypt(256));
+		result.add(new CipherBenchmark.Decrypt(16));
+		result.add(new CipherBenchmark.Decrypt(256));
+		result.add(new ServerPacketBenchmark.SystemMessage());
+		result.add(new ServerPacketBenchmark.ServerMessage());
+		// ワールド
+		result.add(new VisibleObjectsBenchmark("field", 11997, 5000, 512));
+		result.add(new VisibleObjectsBenchmark("town", 11998, 2000, 64));
+		result.add(new PathFinderBenchmark(10, 8));
+		result.add(new PathFinderBenchmark(30, 12));
+		result.add(new TileTriggersBenchmark());
+		// キャラクター
+		result.add(new ItemListBenchmark.FindByItemId());
+		result.add(new ItemListBenchmark.GetById());
+		result.add(new ItemListBenchmark.GetWeight());
+		result.add(new TimingWheelBenchmark());
+		return result;
+	}
+}
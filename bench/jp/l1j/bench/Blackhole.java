@@ -0,0 +1,47 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.bench;
+
+/**
+ * ベンチマークの結果を受け取り、使われない計算としてJITに消されるのを防ぐ。
+ */
+public final class Blackhole {
+	private int _hash = 0;
+	private volatile int _sink = 0;
+
+	public void consume(int value) {
+		_hash = _hash * 31 + value;
+	}
+
+	public void consume(long value) {
+		consume((int) (value ^ (value >>> 32)));
+	}
+
+	public void consume(boolean value) {
+		consume(value ? 1 : 0);
+	}
+
+	public void consume(Object value) {
+		consume(System.identityHashCode(value));
+	}
+
+	/**
+	 * 受け取った値を書き出す。計測の区切り毎に呼ばれる。
+	 */
+	void flush() {
+		_sink = _hash;
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.bench;
+
+import java.util.Random;
+
+import jp.l1j.server.utils.Cipher;
+
+/**
+ * パケットの暗号化・復号化。
+ */
+public class CipherBenchmark {
+	private CipherBenchmark() {
+	}
+
+	private static abstract class Base extends Benchmark {
+		private final int _length;
+		protected Cipher _cipher;
+		protected byte[] _data;
+
+		protected Base(String name, int length) {
+			super(name + "(" + length + ")");
+			_length = length;
+		}
+
+		@Override
+		public void setUp() {
+			_cipher = new Cipher(0x7c98bdfa);
+			_data = new byte[_length];
+			new Random(1).nextBytes(_data);
+		}
+	}
+
+	public static class Encrypt extends Base {
+		public Encrypt(int length) {
+			super("Cipher.encrypt", length);
+		}
+
+		@Override
+		public void run(Blackhole blackhole) {
+			blackhole.consume(_cipher.encrypt(_data)[0]);
+		}
+	}
+
+	public static class Decrypt extends Base {
+		public Decrypt(int length) {
+			super("Cipher.decrypt", length);
+		}
+
+		@Override
+		public void run(Blackhole blackhole) {
+			blackhole.consume(_cipher.decrypt(_data)[0]);
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.bench;
+
+import java.util.Random;
+
+import jp.l1j.server.model.instance.L1ItemInstance;
+import jp.l1j.server.model.inventory.L1ItemList;
+import jp.l1j.server.templates.L1EtcItem;
+
+/**
+ * インベントリのアイテム検索(L1ItemList)。
+ * 所持数の多いPCを想定し、アイテムIDでの検索とオブジェクトIDでの検索を行う。
+ */
+public class ItemListBenchmark {
+	private static final int ITEM_COUNT = 180; // 所持できる種類数の上限付近
+	private static final int QUERY_COUNT = 1024;
+
+	private ItemListBenchmark() {
+	}
+
+	private static abstract class Base extends Benchmark {
+		protected L1ItemList _items;
+		protected int[] _itemIds;
+		protected int[] _objectIds;
+		protected int _index = 0;
+
+		protected Base(String name) {
+			super(name);
+		}
+
+		@Override
+		public void setUp() {
+			_items = new L1ItemList();
+			for (int i = 0; i < ITEM_COUNT; i++) {
+				L1EtcItem template = new L1EtcItem();
+				template.setItemId(40000 + i);
+				template.setWeight(1000);
+				L1ItemInstance item = new L1ItemInstance(template, 1);
+				item.setId(100000 + i);
+				_items.add(item);
+			}
+			// 所持していないアイテムの検索も混ぜる
+			Random random = new Random(4);
+			_itemIds = new int[QUERY_COUNT];
+			_objectIds = new int[QUERY_COUNT];
+			for (int i = 0; i < QUERY_COUNT; i++) {
+				_itemIds[i] = 40000 + random.nextInt(ITEM_COUNT * 2);
+				_objectIds[i] = 100000 + random.nextInt(ITEM_COUNT * 2);
+			}
+		}
+	}
+
+	public static class FindByItemId extends Base {
+		public FindByItemId() {
+			super("L1ItemList.findByItemId");
+		}
+
+		@Override
+		public void run(Blackhole blackhole) {
+			blackhole.consume(_items.findByItemId(_itemIds[_index++
+					& (QUERY_COUNT - 1)]));
+		}
+	}
+
+	public static class GetById extends Base {
+		public GetById() {
+			super("L1ItemList.getById");
+		}
+
+		@Override
+		public void run(Blackhole blackhole) {
+			blackhole.consume(_items.getById(_objectIds[_index++
+					& (QUERY_COUNT - 1)]));
+		}
+	}
+
+	public static class GetWeight extends Base {
+		public GetWeight() {
+			super("L1ItemList.getWeight");
+		}
+
+		@Override
+		public void run(Blackhole blackhole) {
+			blackhole.consume(_items.getWeight());
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.bench;
+
+import java.util.Random;
+
+import jp.l1j.server.model.map.L1PathFinder;
+
+/**
+ * NPCの経路探索(L1PathFinder.findPath)。
+ * 障害物を乱数で配置したマップで、離れた目標への経路を毎回求め直す。
+ */
+public class PathFinderBenchmark extends Benchmark {
+	private static final int QUERY_COUNT = 256;
+	private static final int SIZE = 128;
+	private static final int LEFT = 32768;
+	private static final int TOP = 32768;
+	private static final int RANGE = 15; // L1NpcInstance.courceRangeの既定値
+
+	private final int _blockPercent;
+	private final int _distance;
+	private SyntheticMap _map;
+	private int[] _queries; // 開始X, 開始Y, 目標X, 目標Y の繰り返し
+	private final L1PathFinder.Path _path = new L1PathFinder.Path();
+	private int _index = 0;
+
+	/**
+	 * @param blockPercent
+	 *            障害物を置くタイルの割合(%)
+	 * @param distance
+	 *            開始地点から目標までのおおよそのタイル数
+	 */
+	public PathFinderBenchmark(int blockPercent, int distance) {
+		super("L1PathFinder.findPath(block=" + blockPercent + "% dist="
+				+ distance + ")");
+		_blockPercent = blockPercent;
+		_distance = distance;
+	}
+
+	@Override
+	public void setUp() {
+		_map = new SyntheticMap(1, LEFT, TOP, SIZE, SIZE, _blockPercent, 1);
+		Random random = new Random(2);
+		_queries = new int[QUERY_COUNT * 4];
+		for (int i = 0; i < QUERY_COUNT; i++) {
+			int tx = LEFT + RANGE + random.nextInt(SIZE - RANGE * 2);
+			int ty = TOP + RANGE + random.nextInt(SIZE - RANGE * 2);
+			double angle = random.nextDouble() * Math.PI * 2;
+			int x = tx + (int) Math.round(Math.cos(angle) * _distance);
+			int y = ty + (int) Math.round(Math.sin(angle) * _distance);
+			if (x == tx && y == ty) {
+				x++;
+			}
+			_map.setBlocked(x, y, false);
+			_queries[i * 4] = x;
+			_queries[i * 4 + 1] = y;
+			_queries[i * 4 + 2] = tx;
+			_queries[i * 4 + 3] = ty;
+		}
+	}
+
+	@Override
+	public void run(Blackhole blackhole) {
+		int i = (_index++ & (QUERY_COUNT - 1)) * 4;
+		blackhole.consume(L1PathFinder.findPath(_path, _map, _queries[i],
+				_queries[i + 1], _queries[i + 2], _queries[i + 3], RANGE));
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.bench;
+
+import jp.l1j.server.packets.server.S_ServerMessage;
+import jp.l1j.server.packets.server.S_SystemMessage;
+
+/**
+ * サーバーパケットの生成とバイト列への変換。
+ */
+public class ServerPacketBenchmark {
+	private ServerPacketBenchmark() {
+	}
+
+	public static class SystemMessage extends Benchmark {
+		public SystemMessage() {
+			super("S_SystemMessage.getContent");
+		}
+
+		@Override
+		public void run(Blackhole blackhole) {
+			S_SystemMessage packet = new S_SystemMessage(
+					"ベンチマーク用のシステムメッセージです。");
+			blackhole.consume(packet.getContent().length);
+		}
+	}
+
+	public static class ServerMessage extends Benchmark {
+		public ServerMessage() {
+			super("S_ServerMessage.getContent");
+		}
+
+		@Override
+		public void run(Blackhole blackhole) throws Exception {
+			S_ServerMessage packet = new S_ServerMessage(403, "$1234",
+					"ベンチマーク");
+			blackhole.consume(packet.getContent().length);
+		}
+	}
+}
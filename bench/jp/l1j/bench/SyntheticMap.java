@@ -0,0 +1,82 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.bench;
+
+import java.util.Random;
+
+import jp.l1j.server.model.map.L1V1Map;
+
+/**
+ * ベンチマーク用のマップ。マップファイルやDBを読まずに、乱数で障害物を配置する。
+ * 通行判定はドアの確認(DoorTable)を行わず、障害物の配列だけを見る。
+ */
+public class SyntheticMap extends L1V1Map {
+	private static final int[] HEADING_TABLE_X = { 0, 1, 1, 1, 0, -1, -1, -1 };
+	private static final int[] HEADING_TABLE_Y = { -1, -1, 0, 1, 1, 1, 0, -1 };
+
+	private final int _left;
+	private final int _top;
+	private final int _width;
+	private final int _height;
+	private final boolean[] _blocked;
+
+	/**
+	 * @param blockPercent
+	 *            障害物を置くタイルの割合(%)
+	 */
+	public SyntheticMap(int mapId, int left, int top, int width, int height,
+			int blockPercent, long seed) {
+		super(mapId, new byte[width][height], left, top, "bench", false,
+				true, true, true, true, true, true, true, true, true, true);
+		_left = left;
+		_top = top;
+		_width = width;
+		_height = height;
+		_blocked = new boolean[width * height];
+		Random random = new Random(seed);
+		for (int i = 0; i < _blocked.length; i++) {
+			_blocked[i] = random.nextInt(100) < blockPercent;
+		}
+	}
+
+	// マップ外は-1
+	private int indexOf(int x, int y) {
+		int lx = x - _left;
+		int ly = y - _top;
+		if (lx < 0 || ly < 0 || _width <= lx || _height <= ly) {
+			return -1;
+		}
+		return ly * _width + lx;
+	}
+
+	public boolean isBlocked(int x, int y) {
+		int index = indexOf(x, y);
+		return index < 0 || _blocked[index];
+	}
+
+	public void setBlocked(int x, int y, boolean blocked) {
+		int index = indexOf(x, y);
+		if (index >= 0) {
+			_blocked[index] = blocked;
+		}
+	}
+
+	@Override
+	public boolean isPassable(int x, int y, int heading) {
+		return !isBlocked(x + HEADING_TABLE_X[heading], y
+				+ HEADING_TABLE_Y[heading]);
+	}
+}
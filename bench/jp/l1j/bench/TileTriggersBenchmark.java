@@ -0,0 +1,72 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.bench;
+
+import java.util.Random;
+
+import jp.l1j.server.model.L1TileTriggers;
+
+/**
+ * PCの移動毎に行われる、タイルの仕掛けの参照(L1TileTriggers.get)。
+ * 大半の移動先には仕掛けが無いため、検索する座標の多くは登録されていないタイルになる。
+ */
+public class TileTriggersBenchmark extends Benchmark {
+	private static final int MAP_ID = 11999;
+	private static final int TRIGGER_COUNT = 10000;
+	private static final int QUERY_COUNT = 4096;
+	private static final int SIZE = 512;
+
+	private final L1TileTriggers.Trigger _trigger = new L1TileTriggers.Trigger() {
+	};
+	private int[] _queries;
+	private int _index = 0;
+
+	public TileTriggersBenchmark() {
+		super("L1TileTriggers.get");
+	}
+
+	@Override
+	public void setUp() {
+		Random random = new Random(3);
+		for (int i = 0; i < TRIGGER_COUNT; i++) {
+			L1TileTriggers.getInstance().add(MAP_ID,
+					32768 + random.nextInt(SIZE), 32768 + random.nextInt(SIZE),
+					_trigger);
+		}
+		_queries = new int[QUERY_COUNT * 2];
+		for (int i = 0; i < _queries.length; i++) {
+			_queries[i] = 32768 + random.nextInt(SIZE);
+		}
+	}
+
+	@Override
+	public void tearDown() {
+		for (int x = 32768; x < 32768 + SIZE; x++) {
+			for (int y = 32768; y < 32768 + SIZE; y++) {
+				while (L1TileTriggers.getInstance().remove(MAP_ID, x, y,
+						_trigger)) {
+				}
+			}
+		}
+	}
+
+	@Override
+	public void run(Blackhole blackhole) {
+		int i = (_index++ & (QUERY_COUNT - 1)) * 2;
+		blackhole.consume(L1TileTriggers.getInstance().get(MAP_ID,
+				_queries[i], _queries[i + 1]));
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.bench;
+
+import jp.l1j.server.utils.TimingWheel;
+
+/**
+ * タイミングホイールへのタスクの登録と取り消し。
+ * スキル効果のように、期限前に取り消されるタスクが多い使い方を想定する。
+ */
+public class TimingWheelBenchmark extends Benchmark {
+	private static final int TASK_COUNT = 1024;
+
+	private TimingWheel _wheel;
+	private TimingWheel.Task[] _tasks;
+	private int _index = 0;
+
+	public TimingWheelBenchmark() {
+		super("TimingWheel.schedule+cancel");
+	}
+
+	@Override
+	public void setUp() {
+		_wheel = new TimingWheel("BenchWheel", 100, 4096, 1);
+		_tasks = new TimingWheel.Task[TASK_COUNT];
+		for (int i = 0; i < TASK_COUNT; i++) {
+			_tasks[i] = new TimingWheel.Task() {
+				@Override
+				protected long execute() {
+					return -1;
+				}
+			};
+			// ホイールに他のタスクが待機している状態で計測する
+			_wheel.schedule(new TimingWheel.Task() {
+				@Override
+				protected long execute() {
+					return 600000;
+				}
+			}, 600000 + i);
+		}
+	}
+
+	@Override
+	public void run(Blackhole blackhole) {
+		TimingWheel.Task task = _tasks[_index++ & (TASK_COUNT - 1)];
+		_wheel.schedule(task, 60000);
+		blackhole.consume(_wheel.cancel(task));
+	}
+}
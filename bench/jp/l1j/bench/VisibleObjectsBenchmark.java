@@ -0,0 +1,87 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.bench;
+
+import java.util.Random;
+
+import jp.l1j.server.model.L1Object;
+import jp.l1j.server.model.L1World;
+
+/**
+ * 画面内のオブジェクトの検索(L1World.getVisibleObjects)。
+ * 指定した範囲にオブジェクトを配置し、そのオブジェクトから見える範囲を検索する。
+ */
+public class VisibleObjectsBenchmark extends Benchmark {
+	private static final int QUERY_COUNT = 1024;
+
+	private final int _mapId;
+	private final int _objectCount;
+	private final int _size;
+	private L1Object[] _queries;
+	private int _index = 0;
+
+	/**
+	 * @param mapId
+	 *            ベンチマーク毎に重複しないマップID
+	 * @param objectCount
+	 *            配置するオブジェクト数
+	 * @param size
+	 *            配置する範囲の一辺のタイル数
+	 */
+	public VisibleObjectsBenchmark(String name, int mapId, int objectCount,
+			int size) {
+		super("L1World.getVisibleObjects(" + name + ")");
+		_mapId = mapId;
+		_objectCount = objectCount;
+		_size = size;
+	}
+
+	@Override
+	public void setUp() {
+		SyntheticMap map = new SyntheticMap(_mapId, 32768, 32768, _size,
+				_size, 0, _mapId);
+		Random random = new Random(_mapId);
+		L1Object[] objects = new L1Object[_objectCount];
+		for (int i = 0; i < _objectCount; i++) {
+			L1Object object = new L1Object();
+			object.setId(_mapId * 100000 + i);
+			object.setMap(map);
+			object.getLocation().set(32768 + random.nextInt(_size),
+					32768 + random.nextInt(_size));
+			L1World.getInstance().addVisibleObject(object);
+			objects[i] = object;
+		}
+		_queries = new L1Object[QUERY_COUNT];
+		for (int i = 0; i < QUERY_COUNT; i++) {
+			_queries[i] = objects[random.nextInt(_objectCount)];
+		}
+	}
+
+	@Override
+	public void tearDown() {
+		for (L1Object object : L1World.getInstance().getVisibleObjects(
+				_mapId).values().toArray(new L1Object[0])) {
+			L1World.getInstance().removeVisibleObject(object);
+		}
+	}
+
+	@Override
+	public void run(Blackhole blackhole) {
+		L1Object query = _queries[_index++ & (QUERY_COUNT - 1)];
+		blackhole.consume(L1World.getInstance().getVisibleObjects(query)
+				.size());
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * ボットの行動の割合。"walk=50,fight=20,chat=20,trade=5,skill=5"のように指定する。
+ */
+public class BotScript {
+	public static final String WALK = "walk";
+	public static final String FIGHT = "fight";
+	public static final String CHAT = "chat";
+	public static final String TRADE = "trade";
+	public static final String SKILL = "skill";
+
+	public static final String DEFAULT = "walk=50,fight=20,chat=20,trade=5,skill=5";
+
+	private static final String[] ACTIONS = { WALK, FIGHT, CHAT, TRADE, SKILL };
+
+	private final String[] _actions;
+	private final int[] _weights; // 累積
+	private final int _total;
+
+	private BotScript(String[] actions, int[] weights, int total) {
+		_actions = actions;
+		_weights = weights;
+		_total = total;
+	}
+
+	public static BotScript parse(String spec) {
+		List<String> actions = new ArrayList<String>();
+		List<Integer> weights = new ArrayList<Integer>();
+		int total = 0;
+		for (String entry : spec.split(",")) {
+			String[] pair = entry.trim().split("=");
+			if (pair.length != 2) {
+				throw new IllegalArgumentException("invalid script: " + entry);
+			}
+			String action = pair[0].trim();
+			if (!isAction(action)) {
+				throw new IllegalArgumentException("unknown action: " + action);
+			}
+			int weight = Integer.parseInt(pair[1].trim());
+			if (weight <= 0) {
+				continue;
+			}
+			total += weight;
+			actions.add(action);
+			weights.add(total);
+		}
+		if (total == 0) {
+			throw new IllegalArgumentException("empty script: " + spec);
+		}
+		int[] cumulative = new int[weights.size()];
+		for (int i = 0; i < cumulative.length; i++) {
+			cumulative[i] = weights.get(i);
+		}
+		return new BotScript(actions.toArray(new String[actions.size()]),
+				cumulative, total);
+	}
+
+	private static boolean isAction(String action) {
+		for (String each : ACTIONS) {
+			if (each.equals(action)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 次の行動を割合に従って選ぶ。
+	 */
+	public String next(Random random) {
+		int value = random.nextInt(_total);
+		for (int i = 0; i < _weights.length; i++) {
+			if (value < _weights[i]) {
+				return _actions[i];
+			}
+		}
+		return _actions[_actions.length - 1];
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		int previous = 0;
+		for (int i = 0; i < _actions.length; i++) {
+			if (i > 0) {
+				result.append(',');
+			}
+			result.append(_actions[i]).append('=').append(_weights[i] - previous);
+			previous = _weights[i];
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,540 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.loadtest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jp.l1j.server.codes.Opcodes;
+import jp.l1j.server.utils.Cipher;
+import jp.l1j.server.utils.TimingWheel;
+
+/**
+ * 1つの接続で1人のキャラクターを操作するボット。
+ * 受信は専用のスレッドで行い、行動はLoadTestのタイミングホイールから一定間隔で呼び出される。
+ */
+public class BotSession implements Runnable {
+	private static final int[] HEADING_TABLE_X = { 0, 1, 1, 1, 0, -1, -1, -1 };
+	private static final int[] HEADING_TABLE_Y = { -1, -1, 0, 1, 1, 1, 0, -1 };
+
+	// 状態
+	private static final int CONNECTING = 0;
+	private static final int LOGIN = 1; // アカウントの認証待ち
+	private static final int CHAR_SELECT = 2; // キャラクター一覧の受信待ち
+	private static final int CREATING = 3; // キャラクターの作成待ち
+	private static final int ENTERING = 4; // ワールドに入るのを待っている
+	private static final int IN_GAME = 5;
+	private static final int CLOSED = 6;
+
+	// 新規キャラクターはエナジーボルトを覚えているウィザードにする
+	private static final int CLASS_WIZARD = 3;
+	private static final int[] WIZARD_STATUS = { 8, 7, 12, 12, 8, 28 }; // STR, DEX, CON, WIS, CHA, INT
+	private static final int SKILL_ENERGY_BOLT = 4;
+
+	private static final int HOME_RANGE = 12; // ログイン地点からこのタイル数以上離れたら戻る
+	private static final int SEARCH_RANGE = 10; // 攻撃対象を探す範囲
+	private static final long CHAT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+	private static final int TRADE_YES_NO = 252; // 取引の確認メッセージ
+
+	private static final AtomicInteger _chatSequence = new AtomicInteger();
+
+	private final LoadTest _test;
+	private final LoadStatistics _stats;
+	private final String _accountName;
+	private String _charName;
+	private final Random _random;
+
+	private Socket _socket;
+	private DataInputStream _in;
+	private OutputStream _out;
+	private Cipher _cipher;
+	private volatile int _state = CONNECTING;
+	private long _connectedTime;
+
+	// 以下はワールドに入ってからの状態。受信スレッドと行動スレッドの両方から参照する
+	private volatile int _objectId;
+	private volatile int _x;
+	private volatile int _y;
+	private int _homeX;
+	private int _homeY;
+	private int _walkHeading;
+	private int _walkSteps = 0;
+	// 画面内のキャラクター(オブジェクトID -> X, Y, NPCであれば1)
+	private final Map<Integer, int[]> _known = new ConcurrentHashMap<Integer, int[]>();
+	// 応答待ちのチャット(連番 -> 送信時刻)
+	private final Map<Integer, Long> _pendingChats = new ConcurrentHashMap<Integer, Long>();
+
+	private final TimingWheel.Task _action = new TimingWheel.Task() {
+		@Override
+		protected long execute() {
+			return act();
+		}
+	};
+
+	public BotSession(LoadTest test, int index) {
+		_test = test;
+		_stats = test.getStatistics();
+		_accountName = test.getAccountPrefix() + index;
+		_random = new Random(index);
+	}
+
+	@Override
+	public void run() {
+		_stats._connecting.incrementAndGet();
+		try {
+			connect();
+			while (_state != CLOSED) {
+				handlePacket(readPacket());
+			}
+		} catch (EOFException e) {
+			disconnected("closed by server");
+		} catch (IOException e) {
+			disconnected(e.getClass().getSimpleName());
+		} catch (Exception e) {
+			disconnected("protocol error");
+		} finally {
+			close();
+		}
+	}
+
+	private void disconnected(String reason) {
+		if (_state != CLOSED) {
+			_stats.error("disconnect: " + reason);
+		}
+	}
+
+	public void close() {
+		int state;
+		synchronized (this) {
+			state = _state;
+			if (state == CLOSED) {
+				return;
+			}
+			_state = CLOSED;
+		}
+		if (state == IN_GAME) {
+			_test.getWheel().cancel(_action);
+			_stats._online.decrementAndGet();
+		} else {
+			_stats._connecting.decrementAndGet();
+		}
+		_stats._closed.incrementAndGet();
+		if (_socket != null) {
+			try {
+				_socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private void connect() throws IOException {
+		_connectedTime = System.nanoTime();
+		_socket = new Socket();
+		_socket.setTcpNoDelay(true);
+		_socket.connect(new InetSocketAddress(_test.getHost(), _test.getPort()),
+				10000);
+		InputStream in = new BufferedInputStream(_socket.getInputStream());
+		_in = new DataInputStream(in);
+		_out = new BufferedOutputStream(_socket.getOutputStream());
+
+		// 最初のパケットは暗号化されていない。Opcode, 暗号鍵(4byte), 固定値
+		byte[] init = new byte[readLength()];
+		_in.readFully(init);
+		_stats.received(init.length + 2);
+		if ((init[0] & 0xff) != Opcodes.S_OPCODE_INITPACKET) {
+			throw new IOException("unexpected init packet");
+		}
+		_cipher = new Cipher(readD(init, 1));
+
+		_state = LOGIN;
+		send(packet(Opcodes.C_OPCODE_CLIENTVERSION));
+		send(packet(Opcodes.C_OPCODE_LOGINPACKET).writeS(_accountName).writeS(
+				_test.getPassword()));
+	}
+
+	private int readLength() throws IOException {
+		int lo = _in.readUnsignedByte();
+		int hi = _in.readUnsignedByte();
+		int length = (hi << 8 | lo) - 2;
+		if (length <= 0) {
+			throw new IOException("invalid packet length");
+		}
+		return length;
+	}
+
+	private byte[] readPacket() throws IOException {
+		byte[] data = new byte[readLength()];
+		_in.readFully(data);
+		_stats.received(data.length + 2);
+		return _cipher.decrypt(data);
+	}
+
+	private ClientPacket packet(int opcode) {
+		return new ClientPacket(opcode, _test.getCharset());
+	}
+
+	/**
+	 * パケットを暗号化して送信する。受信スレッドと行動スレッドの両方から呼ばれる。
+	 */
+	private void send(ClientPacket packet) throws IOException {
+		byte[] data = packet.getBytes();
+		synchronized (this) {
+			if (_state == CLOSED) {
+				return;
+			}
+			_cipher.encrypt(data);
+			_out.write((data.length + 2) & 0xff);
+			_out.write((data.length + 2) >> 8 & 0xff);
+			_out.write(data);
+			_out.flush();
+		}
+		_stats.sent(data.length + 2);
+	}
+
+	private void handlePacket(byte[] data) throws IOException {
+		int opcode = data[0] & 0xff;
+		if (opcode == Opcodes.S_OPCODE_LOGINRESULT) {
+			if (data[1] != 0) {
+				fail("login rejected (" + (data[1] & 0xff) + ")");
+				return;
+			}
+			_state = CHAR_SELECT;
+			send(packet(Opcodes.C_OPCODE_COMMONCLICK));
+		} else if (opcode == Opcodes.S_OPCODE_CHARAMOUNT) {
+			if (data[1] == 0 && _state == CHAR_SELECT) {
+				createCharacter();
+			}
+		} else if (opcode == Opcodes.S_OPCODE_CHARLIST) {
+			if (_state == CHAR_SELECT && _charName == null) {
+				_charName = readS(data, 1);
+				enterWorld();
+			}
+		} else if (opcode == Opcodes.S_OPCODE_NEWCHARWRONG) {
+			if (data[1] != 2) { // S_CharCreateStatus.REASON_OK
+				fail("character creation failed (" + (data[1] & 0xff) + ")");
+			}
+		} else if (opcode == Opcodes.S_OPCODE_NEWCHARPACK) {
+			if (_state == CREATING) {
+				enterWorld();
+			}
+		} else if (opcode == Opcodes.S_OPCODE_CHARPACK) {
+			onCharPack(data);
+		} else if (opcode == Opcodes.S_OPCODE_MOVEOBJECT) {
+			// 移動前の座標と向きが送られてくる
+			int[] object = _known.get(readD(data, 1));
+			int heading = data[9] & 7;
+			if (object != null) {
+				object[0] = readH(data, 5) + HEADING_TABLE_X[heading];
+				object[1] = readH(data, 7) + HEADING_TABLE_Y[heading];
+			}
+		} else if (opcode == Opcodes.S_OPCODE_REMOVE_OBJECT) {
+			_known.remove(readD(data, 1));
+		} else if (opcode == Opcodes.S_OPCODE_NORMALCHAT) {
+			onChat(data);
+		} else if (opcode == Opcodes.S_OPCODE_YES_NO) {
+			if (readH(data, 7) == TRADE_YES_NO) {
+				send(packet(Opcodes.C_OPCODE_ATTR).writeH(0).writeD(
+						readD(data, 3)).writeH(TRADE_YES_NO).writeH(1));
+				_stats.action("trade accepted");
+			}
+		} else if (opcode == Opcodes.S_OPCODE_TRADE) {
+			// アイテムは置かずに取引を成立させる
+			send(packet(Opcodes.C_OPCODE_TRADEADDOK));
+			_stats.action("trade opened");
+		} else if (opcode == Opcodes.S_OPCODE_TELEPORT) {
+			// テレポート先での自分とオブジェクトは改めて送られてくる
+			_known.clear();
+			send(packet(Opcodes.C_OPCODE_TELEPORT));
+		} else if (opcode == Opcodes.S_OPCODE_DISCONNECT) {
+			fail("kicked by server");
+		}
+	}
+
+	private void fail(String reason) {
+		_stats.error(reason);
+		close();
+	}
+
+	private void createCharacter() throws IOException {
+		_state = CREATING;
+		_charName = _accountName;
+		ClientPacket packet = packet(Opcodes.C_OPCODE_NEWCHAR).writeS(
+				_charName).writeC(CLASS_WIZARD).writeC(0);
+		for (int status : WIZARD_STATUS) {
+			packet.writeC(status);
+		}
+		send(packet);
+	}
+
+	private void enterWorld() throws IOException {
+		_state = ENTERING;
+		send(packet(Opcodes.C_OPCODE_LOGINTOSERVER).writeS(_charName));
+	}
+
+	private void onCharPack(byte[] data) {
+		// X, Y, オブジェクトID, 画像, 状態, 向き, 明るさ, 速度, 経験値, アライメント, 名前
+		int x = readH(data, 1);
+		int y = readH(data, 3);
+		int objectId = readD(data, 5);
+		String name = readS(data, 21);
+		if (name == null) {
+			return;
+		}
+		if (name.equals(_charName)) {
+			_objectId = objectId;
+			_x = x;
+			_y = y;
+			if (_state == ENTERING) {
+				startGame();
+			}
+			return;
+		}
+		// NPCの名前は$で始まる名前ID
+		_known.put(objectId, new int[] { x, y, name.startsWith("$") ? 1 : 0 });
+	}
+
+	private void startGame() {
+		boolean started;
+		synchronized (this) {
+			started = _state == ENTERING;
+			if (started) {
+				_state = IN_GAME;
+			}
+		}
+		if (!started) {
+			return;
+		}
+		_homeX = _x;
+		_homeY = _y;
+		_stats._connecting.decrementAndGet();
+		_stats._online.incrementAndGet();
+		_stats._login.record(System.nanoTime() - _connectedTime);
+		_test.getWheel().schedule(_action, _random.nextInt(_test.getInterval()));
+	}
+
+	private void onChat(byte[] data) {
+		if (data[1] != 0 || readD(data, 2) != _objectId) {
+			return;
+		}
+		// "名前: 本文"の本文が"lt 連番"になっている
+		String text = readS(data, 6);
+		int index = text == null ? -1 : text.lastIndexOf("lt ");
+		if (index < 0) {
+			return;
+		}
+		try {
+			Long sent = _pendingChats.remove(Integer.valueOf(text
+					.substring(index + 3)));
+			if (sent != null) {
+				_stats._roundTrip.record(System.nanoTime() - sent);
+			}
+		} catch (NumberFormatException e) {
+		}
+	}
+
+	/**
+	 * スクリプトに従って1回行動する。タイミングホイールのワーカーから呼ばれる。
+	 *
+	 * @return 次に行動するまでの時間(ms)。行動を止める場合は0未満
+	 */
+	private long act() {
+		if (_state != IN_GAME) {
+			return -1;
+		}
+		expireChats();
+		String action = _test.getScript().next(_random);
+		try {
+			if (action.equals(BotScript.WALK)) {
+				walk();
+			} else if (action.equals(BotScript.FIGHT)) {
+				fight();
+			} else if (action.equals(BotScript.CHAT)) {
+				chat();
+			} else if (action.equals(BotScript.TRADE)) {
+				trade();
+			} else if (action.equals(BotScript.SKILL)) {
+				skill();
+			}
+			_stats.action(action);
+		} catch (IOException e) {
+			disconnected(e.getClass().getSimpleName());
+			close();
+			return -1;
+		}
+		// 移動間隔の検査に掛からないよう、間隔より短くはしない
+		int interval = _test.getInterval();
+		return interval + _random.nextInt(interval / 4 + 1);
+	}
+
+	private void expireChats() {
+		long now = System.nanoTime();
+		for (Iterator<Long> i = _pendingChats.values().iterator(); i.hasNext();) {
+			if (now - i.next() > CHAT_TIMEOUT_NANOS) {
+				i.remove();
+				_stats.error("chat timeout");
+			}
+		}
+	}
+
+	private void walk() throws IOException {
+		if (Math.max(Math.abs(_x - _homeX), Math.abs(_y - _homeY)) >= HOME_RANGE) {
+			_walkHeading = headingTo(_homeX, _homeY);
+			_walkSteps = 3;
+		} else if (_walkSteps <= 0) {
+			_walkHeading = _random.nextInt(8);
+			_walkSteps = 1 + _random.nextInt(5);
+		}
+		_walkSteps--;
+		move(_walkHeading);
+	}
+
+	private void move(int heading) throws IOException {
+		int sentHeading = heading;
+		if (_test.isHeadingEncoded()) {
+			sentHeading ^= 0x49;
+		}
+		send(packet(Opcodes.C_OPCODE_MOVECHAR).writeH(_x).writeH(_y).writeC(
+				sentHeading));
+		_x += HEADING_TABLE_X[heading];
+		_y += HEADING_TABLE_Y[heading];
+	}
+
+	private int headingTo(int x, int y) {
+		int dx = Integer.signum(x - _x);
+		int dy = Integer.signum(y - _y);
+		for (int heading = 0; heading < 8; heading++) {
+			if (HEADING_TABLE_X[heading] == dx && HEADING_TABLE_Y[heading] == dy) {
+				return heading;
+			}
+		}
+		return 0;
+	}
+
+	private int distanceTo(int[] object) {
+		return Math.max(Math.abs(object[0] - _x), Math.abs(object[1] - _y));
+	}
+
+	/**
+	 * 最も近いキャラクターのオブジェクトIDを返す。
+	 *
+	 * @param npc
+	 *            NPCを探す場合はtrue、PCを探す場合はfalse
+	 * @return 見つからない場合は0
+	 */
+	private int findNearest(boolean npc, int range) {
+		int result = 0;
+		int nearest = range + 1;
+		for (Map.Entry<Integer, int[]> entry : _known.entrySet()) {
+			int[] object = entry.getValue();
+			if ((object[2] == 1) != npc) {
+				continue;
+			}
+			int distance = distanceTo(object);
+			if (distance < nearest) {
+				nearest = distance;
+				result = entry.getKey();
+			}
+		}
+		return result;
+	}
+
+	private void fight() throws IOException {
+		int targetId = findNearest(true, SEARCH_RANGE);
+		int[] target = targetId == 0 ? null : _known.get(targetId);
+		if (target == null) {
+			// 対象が居なければ、正面を空攻撃する
+			int heading = _random.nextInt(8);
+			send(packet(Opcodes.C_OPCODE_ATTACK).writeD(0).writeH(
+					_x + HEADING_TABLE_X[heading]).writeH(
+					_y + HEADING_TABLE_Y[heading]));
+			return;
+		}
+		if (distanceTo(target) > 1) {
+			move(headingTo(target[0], target[1]));
+			return;
+		}
+		send(packet(Opcodes.C_OPCODE_ATTACK).writeD(targetId)
+				.writeH(target[0]).writeH(target[1]));
+	}
+
+	private void skill() throws IOException {
+		int targetId = findNearest(true, SEARCH_RANGE);
+		int[] target = targetId == 0 ? null : _known.get(targetId);
+		if (target == null) {
+			walk();
+			return;
+		}
+		int row = (SKILL_ENERGY_BOLT - 1) / 8;
+		int column = (SKILL_ENERGY_BOLT - 1) % 8;
+		send(packet(Opcodes.C_OPCODE_USESKILL).writeC(row).writeC(column)
+				.writeD(targetId).writeH(target[0]).writeH(target[1]));
+	}
+
+	private void chat() throws IOException {
+		int sequence = _chatSequence.incrementAndGet();
+		_pendingChats.put(sequence, System.nanoTime());
+		send(packet(Opcodes.C_OPCODE_CHAT).writeC(0).writeS("lt " + sequence));
+	}
+
+	private void trade() throws IOException {
+		// 隣にいるPCの方を向いて取引を申し込む。相手のボットは自動で応じる
+		int targetId = findNearest(false, 1);
+		int[] target = targetId == 0 ? null : _known.get(targetId);
+		if (target == null) {
+			walk();
+			return;
+		}
+		send(packet(Opcodes.C_OPCODE_CHANGEHEADING).writeC(
+				headingTo(target[0], target[1])));
+		send(packet(Opcodes.C_OPCODE_TRADE));
+	}
+
+	private static int readD(byte[] data, int off) {
+		return (data[off] & 0xff) | (data[off + 1] & 0xff) << 8
+				| (data[off + 2] & 0xff) << 16 | (data[off + 3] & 0xff) << 24;
+	}
+
+	private static int readH(byte[] data, int off) {
+		return (data[off] & 0xff) | (data[off + 1] & 0xff) << 8;
+	}
+
+	private String readS(byte[] data, int off) {
+		for (int end = off; end < data.length; end++) {
+			if (data[end] == 0) {
+				try {
+					return new String(data, off, end - off, _test.getCharset());
+				} catch (UnsupportedEncodingException e) {
+					return null;
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * ボットが送信するクライアントパケット。書式はServerBasePacketと同じで、受信側はClientBasePacketで読む。
+ */
+public class ClientPacket {
+	private final ByteArrayOutputStream _bao = new ByteArrayOutputStream(32);
+	private final String _charset;
+
+	public ClientPacket(int opcode, String charset) {
+		_charset = charset;
+		writeC(opcode);
+	}
+
+	public ClientPacket writeC(int value) {
+		_bao.write(value & 0xff);
+		return this;
+	}
+
+	public ClientPacket writeH(int value) {
+		_bao.write(value & 0xff);
+		_bao.write(value >> 8 & 0xff);
+		return this;
+	}
+
+	public ClientPacket writeD(int value) {
+		_bao.write(value & 0xff);
+		_bao.write(value >> 8 & 0xff);
+		_bao.write(value >> 16 & 0xff);
+		_bao.write(value >> 24 & 0xff);
+		return this;
+	}
+
+	public ClientPacket writeS(String text) {
+		if (text != null) {
+			try {
+				byte[] bytes = text.getBytes(_charset);
+				_bao.write(bytes, 0, bytes.length);
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalArgumentException(e);
+			}
+		}
+		_bao.write(0);
+		return this;
+	}
+
+	/**
+	 * 4バイト単位に詰めたデータ部を返す。暗号化は先頭4バイトを必ず使うため、短いパケットも4バイトにする。
+	 */
+	public byte[] getBytes() {
+		while (_bao.size() % 4 != 0) {
+			_bao.write(0);
+		}
+		return _bao.toByteArray();
+	}
+}
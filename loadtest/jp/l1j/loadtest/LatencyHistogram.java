@@ -0,0 +1,97 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.loadtest;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 応答時間の分布。0.1ms単位のバケットに数え、百分位数を求める。
+ * 上限を超えた値は最後のバケットに数える。
+ */
+public class LatencyHistogram {
+	private static final long BUCKET_NANOS = 100 * 1000L;
+	private static final int BUCKET_COUNT = 300000; // 30秒
+
+	private final AtomicLongArray _buckets = new AtomicLongArray(BUCKET_COUNT);
+
+	public void record(long nanos) {
+		int bucket = (int) Math.min(Math.max(nanos, 0) / BUCKET_NANOS,
+				BUCKET_COUNT - 1);
+		_buckets.incrementAndGet(bucket);
+	}
+
+	/**
+	 * 記録した値を取り出して、空の状態に戻す。
+	 */
+	public long[] drain() {
+		long[] result = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			result[i] = _buckets.getAndSet(i, 0);
+		}
+		return result;
+	}
+
+	/**
+	 * drain()で取り出した分布を加える。
+	 */
+	public static void add(long[] total, long[] counts) {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			total[i] += counts[i];
+		}
+	}
+
+	public static long count(long[] counts) {
+		long result = 0;
+		for (long count : counts) {
+			result += count;
+		}
+		return result;
+	}
+
+	/**
+	 * @param percent
+	 *            百分位(0-100)
+	 * @return 値(ms)。記録が無い場合は0
+	 */
+	public static double percentile(long[] counts, double percent) {
+		long total = count(counts);
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * percent / 100);
+		if (rank < 1) {
+			rank = 1;
+		}
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return (i + 1) * BUCKET_NANOS / 1000000.0;
+			}
+		}
+		return counts.length * BUCKET_NANOS / 1000000.0;
+	}
+
+	/**
+	 * p50/p90/p99/最大を1行にまとめる。
+	 */
+	public static String summary(long[] counts) {
+		return String.format(Locale.US, "p50 %.1f p90 %.1f p99 %.1f max %.1f ms",
+				percentile(counts, 50), percentile(counts, 90), percentile(
+						counts, 99), percentile(counts, 100));
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.loadtest;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 全ボットの集計。各ボットの受信スレッドと行動スレッドから同時に更新される。
+ */
+public class LoadStatistics {
+	final AtomicLong _packetsSent = new AtomicLong();
+	final AtomicLong _packetsReceived = new AtomicLong();
+	final AtomicLong _bytesSent = new AtomicLong();
+	final AtomicLong _bytesReceived = new AtomicLong();
+	final AtomicInteger _connecting = new AtomicInteger(); // 接続からゲーム開始まで
+	final AtomicInteger _online = new AtomicInteger(); // ゲーム内
+	final AtomicInteger _closed = new AtomicInteger();
+
+	// チャットの送信から自分の発言が返ってくるまでの時間
+	final LatencyHistogram _roundTrip = new LatencyHistogram();
+	// 接続からキャラクターがワールドに入るまでの時間
+	final LatencyHistogram _login = new LatencyHistogram();
+
+	private final ConcurrentHashMap<String, AtomicLong> _actions = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentHashMap<String, AtomicLong> _errors = new ConcurrentHashMap<String, AtomicLong>();
+
+	void sent(int bytes) {
+		_packetsSent.incrementAndGet();
+		_bytesSent.addAndGet(bytes);
+	}
+
+	void received(int bytes) {
+		_packetsReceived.incrementAndGet();
+		_bytesReceived.addAndGet(bytes);
+	}
+
+	void action(String name) {
+		increment(_actions, name);
+	}
+
+	/**
+	 * エラーを種類別に数える。
+	 */
+	void error(String kind) {
+		increment(_errors, kind);
+	}
+
+	private static void increment(ConcurrentHashMap<String, AtomicLong> map,
+			String key) {
+		AtomicLong counter = map.get(key);
+		if (counter == null) {
+			AtomicLong newCounter = new AtomicLong();
+			counter = map.putIfAbsent(key, newCounter);
+			if (counter == null) {
+				counter = newCounter;
+			}
+		}
+		counter.incrementAndGet();
+	}
+
+	long getErrorCount() {
+		long result = 0;
+		for (AtomicLong counter : _errors.values()) {
+			result += counter.get();
+		}
+		return result;
+	}
+
+	Map<String, Long> getActions() {
+		return snapshot(_actions);
+	}
+
+	Map<String, Long> getErrors() {
+		return snapshot(_errors);
+	}
+
+	private static Map<String, Long> snapshot(
+			ConcurrentHashMap<String, AtomicLong> map) {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> entry : map.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().get());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,276 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import jp.l1j.configure.Config;
+import jp.l1j.server.utils.TimingWheel;
+
+/**
+ * 負荷試験用のクライアント。多数のボットでサーバーに接続し、スクリプトに従って移動、戦闘、チャット、取引を行う。
+ * 一定間隔でスループット、チャットの往復時間の百分位数、エラーの件数を表示する。
+ *
+ * <pre>
+ * 引数:
+ *   -h HOST    接続先(既定値 127.0.0.1)
+ *   -p PORT    ポート(既定値 server.properties.xmlのGameServerPort)
+ *   -n 人数    ボットの数(既定値 100)
+ *   -r 秒      全てのボットが接続し終えるまでの時間(既定値 60)
+ *   -d 秒      試験を行う時間(既定値 300)
+ *   -i ミリ秒  ボットが行動する間隔(既定値 800)
+ *   -s 割合    行動の割合(既定値 walk=50,fight=20,chat=20,trade=5,skill=5)
+ *   -a 文字列  アカウント名・キャラクター名の接頭辞(既定値 lt)
+ *   -w 文字列  アカウントのパスワード(既定値 loadtest)
+ *   -t 数      行動を処理するスレッド数(既定値 プロセッサ数)
+ *   -c 秒      途中経過を表示する間隔(既定値 10)
+ * </pre>
+ *
+ * サーバーはAutoCreateAccounts=true, Allow2PC=true, LoginsToAutoEntication=falseとし、
+ * MaxOnlineUsersをボットの数以上にしておくこと。アカウントとキャラクターは初回の接続で作られる。
+ */
+public class LoadTest {
+	private String _host = "127.0.0.1";
+	private int _port;
+	private int _sessions = 100;
+	private int _rampUpSeconds = 60;
+	private int _durationSeconds = 300;
+	private int _interval = 800;
+	private BotScript _script = BotScript.parse(BotScript.DEFAULT);
+	private String _accountPrefix = "lt";
+	private String _password = "loadtest";
+	private int _workers = 0;
+	private int _reportSeconds = 10;
+
+	private String _charset;
+	private boolean _headingEncoded;
+	private TimingWheel _wheel;
+	private final LoadStatistics _stats = new LoadStatistics();
+	private final List<BotSession> _bots = new ArrayList<BotSession>();
+
+	public static void main(String[] args) throws Exception {
+		LoadTest test = new LoadTest();
+		test.loadConfig();
+		test.parse(args);
+		test.execute();
+		System.exit(0);
+	}
+
+	// サーバーと同じ設定ファイルから、ポートと文字コードを読む
+	private void loadConfig() {
+		try {
+			Config.load();
+		} catch (Exception e) {
+			System.out.println("設定ファイルを読めないため、既定値を使います: " + e);
+		}
+		_port = Config.GAME_SERVER_PORT;
+		_charset = Config.CLIENT_LANGUAGE_CODE != null ? Config.CLIENT_LANGUAGE_CODE
+				: "MS932";
+		_headingEncoded = Config.CLIENT_LANGUAGE == 3; // 台湾版は向きを暗号化している
+	}
+
+	private void parse(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("missing value: " + arg);
+			}
+			String value = args[++i];
+			if (arg.equals("-h")) {
+				_host = value;
+			} else if (arg.equals("-p")) {
+				_port = Integer.parseInt(value);
+			} else if (arg.equals("-n")) {
+				_sessions = Integer.parseInt(value);
+			} else if (arg.equals("-r")) {
+				_rampUpSeconds = Integer.parseInt(value);
+			} else if (arg.equals("-d")) {
+				_durationSeconds = Integer.parseInt(value);
+			} else if (arg.equals("-i")) {
+				_interval = Math.max(Integer.parseInt(value), 1);
+			} else if (arg.equals("-s")) {
+				_script = BotScript.parse(value);
+			} else if (arg.equals("-a")) {
+				_accountPrefix = value;
+			} else if (arg.equals("-w")) {
+				_password = value;
+			} else if (arg.equals("-t")) {
+				_workers = Integer.parseInt(value);
+			} else if (arg.equals("-c")) {
+				_reportSeconds = Math.max(Integer.parseInt(value), 1);
+			} else {
+				throw new IllegalArgumentException("unknown option: " + arg);
+			}
+		}
+	}
+
+	private void execute() throws Exception {
+		System.out.println(String.format(
+				"%s:%d に %d 人で接続します (接続完了まで %d秒, 試験時間 %d秒, 行動間隔 %dms, %s)",
+				_host, _port, _sessions, _rampUpSeconds, _durationSeconds,
+				_interval, _script));
+		if (Config.LOGINS_TO_AUTOENTICATION) {
+			System.out.println("警告: LoginsToAutoEnticationには対応していません。");
+		}
+		if (!Config.AUTO_CREATE_ACCOUNTS || !Config.ALLOW_2PC
+				|| Config.MAX_ONLINE_USERS < _sessions) {
+			System.out.println("警告: AutoCreateAccounts, Allow2PC, MaxOnlineUsersの設定によってはログインできません。");
+		}
+
+		_wheel = new TimingWheel("LoadTest", 10, 1024, _workers);
+		long start = System.currentTimeMillis();
+		long end = start + _durationSeconds * 1000L;
+		long nextReport = start + _reportSeconds * 1000L;
+		long[] roundTrip = new long[0];
+		long[] login = new long[0];
+		long[] lastCounts = new long[4];
+		long lastTime = start;
+
+		int started = 0;
+		while (true) {
+			long now = System.currentTimeMillis();
+			if (now >= end) {
+				break;
+			}
+			// 接続は試験の開始から均等に始める
+			int due = _rampUpSeconds <= 0 ? _sessions : (int) Math.min(
+					_sessions, (now - start) * _sessions
+							/ (_rampUpSeconds * 1000L) + 1);
+			for (; started < due; started++) {
+				BotSession bot = new BotSession(this, started + 1);
+				_bots.add(bot);
+				Thread thread = new Thread(null, bot, "Bot-" + (started + 1),
+						256 * 1024);
+				thread.setDaemon(true);
+				thread.start();
+			}
+			if (now >= nextReport) {
+				long[] rtt = _stats._roundTrip.drain();
+				long[] loginTime = _stats._login.drain();
+				roundTrip = merge(roundTrip, rtt);
+				login = merge(login, loginTime);
+				report(now - start, now - lastTime, lastCounts, rtt);
+				lastTime = now;
+				nextReport += _reportSeconds * 1000L;
+			}
+			Thread.sleep(Math.min(100, end - now));
+		}
+
+		for (BotSession bot : _bots) {
+			bot.close();
+		}
+		roundTrip = merge(roundTrip, _stats._roundTrip.drain());
+		login = merge(login, _stats._login.drain());
+		summary(System.currentTimeMillis() - start, roundTrip, login);
+	}
+
+	private static long[] merge(long[] total, long[] counts) {
+		if (total.length == 0) {
+			return counts;
+		}
+		LatencyHistogram.add(total, counts);
+		return total;
+	}
+
+	private void report(long elapsed, long period, long[] last, long[] rtt) {
+		long[] counts = { _stats._packetsSent.get(),
+				_stats._packetsReceived.get(), _stats._bytesReceived.get(),
+				_stats.getErrorCount() };
+		double seconds = Math.max(period, 1) / 1000.0;
+		System.out.println(String.format(Locale.US,
+				"[%4ds] online %d/%d (connecting %d)  send %.0f/s  recv %.0f/s (%.1f KB/s)  rtt %s  errors %d",
+				elapsed / 1000, _stats._online.get(), _sessions,
+				_stats._connecting.get(), (counts[0] - last[0]) / seconds,
+				(counts[1] - last[1]) / seconds, (counts[2] - last[2])
+						/ seconds / 1024, LatencyHistogram.summary(rtt),
+				counts[3] - last[3]));
+		System.arraycopy(counts, 0, last, 0, counts.length);
+	}
+
+	private void summary(long elapsed, long[] roundTrip, long[] login) {
+		double seconds = Math.max(elapsed, 1) / 1000.0;
+		System.out.println("==== 結果 ====");
+		System.out.println(String.format(Locale.US,
+				"時間 %.0f秒, ボット %d, 切断 %d", seconds, _sessions,
+				_stats._closed.get()));
+		System.out.println(String.format(Locale.US,
+				"送信 %d パケット (%.0f/s, %.1f KB/s)", _stats._packetsSent.get(),
+				_stats._packetsSent.get() / seconds, _stats._bytesSent.get()
+						/ seconds / 1024));
+		System.out.println(String.format(Locale.US,
+				"受信 %d パケット (%.0f/s, %.1f KB/s)",
+				_stats._packetsReceived.get(), _stats._packetsReceived.get()
+						/ seconds, _stats._bytesReceived.get() / seconds / 1024));
+		System.out.println(String.format("ログイン %d 回: %s", LatencyHistogram
+				.count(login), LatencyHistogram.summary(login)));
+		System.out.println(String.format("チャット往復 %d 回: %s",
+				LatencyHistogram.count(roundTrip), LatencyHistogram
+						.summary(roundTrip)));
+		System.out.println("行動:");
+		for (Map.Entry<String, Long> entry : _stats.getActions().entrySet()) {
+			System.out.println(String.format(Locale.US, "  %-20s %10d (%.1f/s)",
+					entry.getKey(), entry.getValue(), entry.getValue() / seconds));
+		}
+		System.out.println("エラー: " + _stats.getErrorCount());
+		for (Map.Entry<String, Long> entry : _stats.getErrors().entrySet()) {
+			System.out.println(String.format("  %-40s %10d", entry.getKey(),
+					entry.getValue()));
+		}
+	}
+
+	LoadStatistics getStatistics() {
+		return _stats;
+	}
+
+	TimingWheel getWheel() {
+		return _wheel;
+	}
+
+	String getHost() {
+		return _host;
+	}
+
+	int getPort() {
+		return _port;
+	}
+
+	int getInterval() {
+		return _interval;
+	}
+
+	BotScript getScript() {
+		return _script;
+	}
+
+	String getAccountPrefix() {
+		return _accountPrefix;
+	}
+
+	String getPassword() {
+		return _password;
+	}
+
+	String getCharset() {
+		return _charset;
+	}
+
+	boolean isHeadingEncoded() {
+		return _headingEncoded;
+	}
+}
@@ -161,6 +161,12 @@ public final class Config {
 	@Configure(file = SERVER, key = "LoggingChatChatParty")
 	public static boolean LOGGING_CHAT_CHAT_PARTY = false;
 
+	@Configure(file = SERVER, key = "LogWriteInterval")
+	public static int LOG_WRITE_INTERVAL = 1000;
+
+	@Configure(file = SERVER, key = "LogQueueCapacity")
+	public static int LOG_QUEUE_CAPACITY = 10000;
+
 	@Configure(file = SERVER, key = "Autosave")
 	public static boolean AUTOSAVE = false;
 	
@@ -170,11 +176,53 @@ public final class Config {
 	@Configure(file = SERVER, key = "AutosaveIntervalOfInventory")
 	public static int AUTOSAVE_INTERVAL_INVENTORY = 3000;
 
+	@Configure(file = SERVER, key = "InventoryWriteInterval")
+	public static int INVENTORY_WRITE_INTERVAL = 10;
+
 	@Configure(file = SERVER, key = "SkillTimerImplType")
-	public static int SKILLTIMER_IMPLTYPE = 1;
+	public static int SKILLTIMER_IMPLTYPE = 3;
+
+	@Configure(file = SERVER, key = "SkillTimerWorkerThreads")
+	public static int SKILLTIMER_WORKER_THREADS = 2;
 
 	@Configure(file = SERVER, key = "NpcAIImplType")
-	public static int NPCAI_IMPLTYPE = 1;
+	public static int NPCAI_IMPLTYPE = 3;
+
+	@Configure(file = SERVER, key = "NpcAIWorkerThreads")
+	public static int NPCAI_WORKER_THREADS = 0;
+
+	@Configure(file = SERVER, key = "RegenerationWorkerThreads")
+	public static int REGENERATION_WORKER_THREADS = 2;
+
+	@Configure(file = SERVER, key = "GameClockWorkerThreads")
+	public static int GAME_CLOCK_WORKER_THREADS = 2;
+
+	@Configure(file = SERVER, key = "ClientTransportType")
+	public static int CLIENT_TRANSPORT_TYPE = 1;
+
+	@Configure(file = SERVER, key = "NioSelectorThreads")
+	public static int NIO_SELECTOR_THREADS = 2;
+
+	@Configure(file = SERVER, key = "NioWorkerThreads")
+	public static int NIO_WORKER_THREADS = 0;
+
+	@Configure(file = SERVER, key = "SendQueueHighWaterMark")
+	public static int SEND_QUEUE_HIGH_WATER_MARK = 262144;
+
+	@Configure(file = SERVER, key = "SendQueueCapacity")
+	public static int SEND_QUEUE_CAPACITY = 1048576;
+
+	@Configure(file = SERVER, key = "SendQueueKickTime")
+	public static int SEND_QUEUE_KICK_TIME = 10;
+
+	@Configure(file = SERVER, key = "PacketWriterThreads")
+	public static int PACKET_WRITER_THREADS = 0;
+
+	@Configure(file = SERVER, key = "StartupThreads")
+	public static int STARTUP_THREADS = 0;
+
+	@Configure(file = SERVER, key = "MailboxCacheSize")
+	public static int MAILBOX_CACHE_SIZE = 200;
 
 	@Configure(file = SERVER, key = "TelnetServer")
 	public static boolean TELNET_SERVER = false;
@@ -182,6 +230,15 @@ public final class Config {
 	@Configure(file = SERVER, key = "TelnetServerPort")
 	public static int TELNET_SERVER_PORT = 23;
 
+	@Configure(file = SERVER, key = "MetricsInterval")
+	public static int METRICS_INTERVAL = 60;
+
+	@Configure(file = SERVER, key = "MetricsLogFileSize")
+	public static int METRICS_LOG_FILE_SIZE = 1048576;
+
+	@Configure(file = SERVER, key = "MetricsLogFileCount")
+	public static int METRICS_LOG_FILE_COUNT = 5;
+
 	@Configure(file = SERVER, key = "PcRecognizeRange")
 	public static int PC_RECOGNIZE_RANGE = 20;
 
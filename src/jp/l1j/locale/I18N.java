@@ -31,6 +31,7 @@ public class I18N {
 	public static final String I18N_BANNED_IP = bundle.getString("BannedIP");
 	public static final String I18N_GENERATE_SERVER_SOCKET = bundle.getString("GenerateServerSocket");
 	public static final String I18N_SERVER_SETTINGS = bundle.getString("ServerSettings");
+	public static final String I18N_SERVER_METRICS = bundle.getString("ServerMetrics");
 	public static final String I18N_EXP = bundle.getString("Exp");
 	public static final String I18N_LAWFUL = bundle.getString("Lawful");
 	public static final String I18N_KARMA = bundle.getString("Karma");
@@ -21,7 +21,6 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigInteger;
 import java.net.Socket;
-import java.util.Arrays;
 import java.util.Queue;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -34,6 +33,7 @@ import static jp.l1j.locale.I18N.*;
 import jp.l1j.server.codes.Opcodes;
 import jp.l1j.server.controller.LoginController;
 import jp.l1j.server.datatables.CharBuffTable;
+import jp.l1j.server.datatables.MailTable;
 import jp.l1j.server.datatables.ReturnLocationTable;
 import jp.l1j.server.model.L1DeathMatch;
 import jp.l1j.server.model.L1DragonSlayer;
@@ -52,10 +52,15 @@ import jp.l1j.server.packets.server.S_Disconnect;
 import jp.l1j.server.packets.server.S_PacketBox;
 import jp.l1j.server.packets.server.S_SummonPack;
 import jp.l1j.server.packets.server.ServerBasePacket;
+import jp.l1j.server.storage.InventoryItemWriter;
 import jp.l1j.server.templates.L1Account;
 import jp.l1j.server.utils.Cipher;
 import jp.l1j.server.utils.StreamUtil;
 import jp.l1j.server.utils.SystemUtil;
+import jp.l1j.server.utils.metrics.Counter;
+import jp.l1j.server.utils.metrics.Gauge;
+import jp.l1j.server.utils.metrics.Histogram;
+import jp.l1j.server.utils.metrics.MetricRegistry;
 
 // Referenced classes of package jp.l1j.server:
 // PacketHandler, Logins, IpTable, LoginController,
@@ -65,6 +70,43 @@ public class ClientThread implements Runnable, PacketOutput {
 
 	private static Logger _log = Logger.getLogger(ClientThread.class.getName());
 
+	private static final Counter _receivedPackets = MetricRegistry
+			.getInstance().counter("net.received.packets");
+
+	private static final Counter _receivedBytes = MetricRegistry
+			.getInstance().counter("net.received.bytes");
+
+	// sendPacketの呼び出し元がブロックされた時間
+	private static final Histogram _sendTimer = MetricRegistry.getInstance()
+			.histogram("net.send");
+
+	static {
+		MetricRegistry.getInstance().register("net.send.queue.bytes",
+				new Gauge() {
+					@Override
+					public long getValue() {
+						return SendQueue.getTotalQueuedBytes()
+								+ NioConnection.getTotalQueuedBytes();
+					}
+				});
+		// 送信待ちのデータが最も多いプレイヤーのバイト数
+		MetricRegistry.getInstance().register("net.send.queue.max",
+				new Gauge() {
+					@Override
+					public long getValue() {
+						int max = 0;
+						for (L1PcInstance pc : L1World.getInstance()
+								.getAllPlayers()) {
+							ClientThread client = pc.getNetConnection();
+							if (client != null) {
+								max = Math.max(max, client.getSendQueueSize());
+							}
+						}
+						return max;
+					}
+				});
+	}
+
 	private InputStream _in;
 
 	private OutputStream _out;
@@ -80,6 +122,13 @@ public class ClientThread implements Runnable, PacketOutput {
 	private String _hostname;
 
 	private Socket _csocket;
+
+	// ClientTransportType=2の場合の接続。従来の実装ではnull
+	private NioConnection _connection;
+
+	// 初期パケットの送信後に生成される
+	private volatile SendQueue _sendQueue;
+
 	// listspr変更対策
 	private int _xorByte = (byte) 0xF0;
 	private long _authdata;
@@ -108,6 +157,26 @@ public class ClientThread implements Runnable, PacketOutput {
 		}
 		_in = socket.getInputStream();
 		_out = new BufferedOutputStream(socket.getOutputStream());
+		initAuthData();
+		// PacketHandler 初期設定
+		_handler = new PacketHandler(this);
+	}
+
+	ClientThread(NioConnection connection) {
+		_connection = connection;
+		_csocket = connection.getSocket();
+		_ip = _csocket.getInetAddress().getHostAddress();
+		if (Config.HOSTNAME_LOOKUPS) {
+			_hostname = _csocket.getInetAddress().getHostName();
+		} else {
+			_hostname = _ip;
+		}
+		_out = connection.getOutputStream();
+		initAuthData();
+		_handler = new PacketHandler(this);
+	}
+
+	private void initAuthData() {
 		// listspr変更対策
 		if (Config.LOGINS_TO_AUTOENTICATION) {
 			_xorByte = (int) (Math.random() * 253 + 1);
@@ -116,8 +185,6 @@ public class ClientThread implements Runnable, PacketOutput {
 					new BigInteger(Config.RSA_KEY_D)).longValue();
 		}
 		// listspr変更対策
-		// PacketHandler 初期設定
-		_handler = new PacketHandler(this);
 	}
 
 	public String getIp() {
@@ -137,21 +204,43 @@ public class ClientThread implements Runnable, PacketOutput {
 		_charRestart = flag;
 	}
 
+	/**
+	 * パケットヘッダの2byteから、続くデータ部の長さを求める。
+	 */
+	int decodeDataLength(int hiByte, int loByte) {
+		// listspr変更対策
+		if (Config.LOGINS_TO_AUTOENTICATION) {
+			hiByte ^= _xorByte;
+			loByte ^= _xorByte;
+		}
+		// listspr変更対策
+		if (loByte < 0) {
+			throw new RuntimeException();
+		}
+		return (loByte * 256 + hiByte) - 2;
+	}
+
+	/**
+	 * 受信したデータ部を復号化する。受信順に呼び出さなければならない。
+	 */
+	byte[] decodeData(byte[] data) {
+		// listspr変更対策
+		if (Config.LOGINS_TO_AUTOENTICATION) {
+			for (int i = 0; i < data.length; i++) {
+				data[i] = (byte) (data[i] ^ _xorByte);
+			}
+		}
+		// listspr変更対策
+		_receivedPackets.increment();
+		_receivedBytes.add(data.length + 2);
+		return _cipher.decrypt(data);
+	}
+
 	private byte[] readPacket() throws Exception {
 		try {
 			int hiByte = _in.read();
 			int loByte = _in.read();
-
-			// listspr変更対策
-			if (Config.LOGINS_TO_AUTOENTICATION) {
-				hiByte ^= _xorByte;
-				loByte ^= _xorByte;
-			}
-			// listspr変更対策
-			if (loByte < 0) {
-				throw new RuntimeException();
-			}
-			int dataLength = (loByte * 256 + hiByte) - 2;
+			int dataLength = decodeDataLength(hiByte, loByte);
 
 			byte data[] = new byte[dataLength];
 
@@ -165,14 +254,7 @@ public class ClientThread implements Runnable, PacketOutput {
 				_log.warning("Incomplete Packet is sent to the server, closing connection.");
 				throw new RuntimeException();
 			}
-			// listspr変更対策
-			if (Config.LOGINS_TO_AUTOENTICATION) {
-				for (int i = 0; i < dataLength; i++) {
-					data[i] = (byte) (data[i] ^ _xorByte);
-				}
-			}
-			// listspr変更対策
-			return _cipher.decrypt(data);
+			return decodeData(data);
 		} catch (IOException e) {
 			throw e;
 		}
@@ -196,11 +278,12 @@ public class ClientThread implements Runnable, PacketOutput {
 				_lastSavedTime = System.currentTimeMillis();
 			}
 
-			// 所持アイテム情報
+			// 所持アイテム情報(変更のあったものだけを、他のプレイヤーの分とまとめて書き込む)
 			if (Config.AUTOSAVE_INTERVAL_INVENTORY * 1000 < System
 					.currentTimeMillis()
 					- _lastSavedTime_inventory) {
-				_activeChar.saveInventory();
+				InventoryItemWriter.getInstance().offerAll(
+						_activeChar.getInventory().getItems());
 				_lastSavedTime_inventory = System.currentTimeMillis();
 			}
 		} catch (Exception e) {
@@ -210,11 +293,15 @@ public class ClientThread implements Runnable, PacketOutput {
 		}
 	}
 
+	private PacketQueue _movePacket;
+
+	private PacketQueue _hcPacket;
+
+	private ClientThreadObserver _observer;
+
 	@Override
 	public void run() {
-		_log.info(String.format(I18N_CONNECTED_TO_THE_SERVER, _hostname));
-		System.out.println(String.format(I18N_MEMORY_USEAGE, SystemUtil.getUsedMemoryMB()));
-		System.out.println(I18N_WAITING_FOR_CLIENT);
+		printConnected();
 
 		/*
 		 * クライアントからのパケットをある程度制限する。 理由：不正の誤検出が多発する恐れがあるため
@@ -228,48 +315,13 @@ public class ClientThread implements Runnable, PacketOutput {
 		HcPacket hcPacket = new HcPacket(H_CAPACITY);
 		GeneralThreadPool.getInstance().execute(movePacket);
 		GeneralThreadPool.getInstance().execute(hcPacket);
+		_movePacket = movePacket;
+		_hcPacket = hcPacket;
 
-		ClientThreadObserver observer = new ClientThreadObserver(
-				Config.AUTOMATIC_KICK * 60 * 1000); // 自動切断までの時間（単位:ms）
-
-		// クライアントスレッドの監視
-		if (Config.AUTOMATIC_KICK > 0) {
-			observer.start();
-		}
+		startObserver();
 
 		try {
-			/**
-			 * このキーは暗号化にのみ使われるもので、opcode等には影響を及ぼさない模様。
-			 * 32bitなら何でも良いし、クライアント毎に変えても良い。
-			 */
-			// int key = 0x1a986541;
-			String keyHax = Integer.toHexString((int) (Math.random() * 2147483647) + 1);
-			int key = Integer.parseInt(keyHax, 16);
-
-			byte Bogus = (byte) (FIRST_PACKET.length + 7);
-			// listspr変更対策
-			if (Config.LOGINS_TO_AUTOENTICATION) {
-				_out.write((int) (_authdata & 0xff));
-				_out.write((int) (_authdata >> 8 & 0xff));
-				_out.write((int) (_authdata >> 16 & 0xff));
-				_out.write((int) (_authdata >> 24 & 0xff));
-				_out.flush();
-			}
-			// listspr変更対策
-			_out.write(Bogus & 0xFF);
-			_out.write(Bogus >> 8 & 0xFF);
-			// _out.write(0x20); // 2.70C
-			// _out.write(0x7d); // 3.0c
-			_out.write(Opcodes.S_OPCODE_INITPACKET);// 3.5C
-			_out.write((byte) (key & 0xFF));
-			_out.write((byte) (key >> 8 & 0xFF));
-			_out.write((byte) (key >> 16 & 0xFF));
-			_out.write((byte) (key >> 24 & 0xFF));
-
-			_out.write(FIRST_PACKET);
-			_out.flush();
-
-			_cipher = new Cipher(key);
+			sendInitPacket();
 
 			while (true) {
 				if (Config.AUTOSAVE) {
@@ -285,75 +337,183 @@ public class ClientThread implements Runnable, PacketOutput {
 				// _log.finest("[C]\n" + new
 				// ByteArrayUtil(data).dumpToString());
 
-				int opcode = data[0] & 0xFF;
+				handleReceivedPacket(data);
+			}
+		} catch (Throwable e) {
+			_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
+		} finally {
+			closeSession();
+		}
+		return;
+	}
 
-				// 多重ログイン対策
-				if (opcode == Opcodes.C_OPCODE_COMMONCLICK
-						|| opcode == Opcodes.C_OPCODE_CHANGECHAR) {
-					_loginStatus = 1;
-				}
-				if (opcode == Opcodes.C_OPCODE_LOGINTOSERVER) {
-					if (_loginStatus != 1) {
-						continue;
-					}
-				}
+	/**
+	 * ClientTransportType=2の場合に、接続直後にセレクタスレッドから呼び出される。
+	 * 受信したパケットはNioConnectionから受信順にhandleReceivedPacketへ渡される。
+	 */
+	void startSession(PacketQueue movePacket, PacketQueue hcPacket)
+			throws IOException {
+		printConnected();
+		_movePacket = movePacket;
+		_hcPacket = hcPacket;
+		startObserver();
+		sendInitPacket();
+	}
 
-				if (opcode == Opcodes.C_OPCODE_LOGINTOSERVEROK
-						|| opcode == Opcodes.C_OPCODE_RETURNTOLOGIN) {
-					_loginStatus = 0;
-				}
+	private void printConnected() {
+		_log.info(String.format(I18N_CONNECTED_TO_THE_SERVER, _hostname));
+		System.out.println(String.format(I18N_MEMORY_USEAGE, SystemUtil.getUsedMemoryMB()));
+		System.out.println(I18N_WAITING_FOR_CLIENT);
+	}
 
-				if (opcode != Opcodes.C_OPCODE_KEEPALIVE) {
-					// C_OPCODE_KEEPALIVE以外の何かしらのパケットを受け取ったらObserverへ通知
-					observer.packetReceived();
-				}
-				// nullの場合はキャラクター選択前なのでOpcodeの取捨選択はせず全て実行
-				if (_activeChar == null) {
-					_handler.handlePacket(data, _activeChar);
-					continue;
+	private void startObserver() {
+		_observer = new ClientThreadObserver(
+				Config.AUTOMATIC_KICK * 60 * 1000); // 自動切断までの時間（単位:ms）
+
+		// クライアントスレッドの監視
+		if (Config.AUTOMATIC_KICK > 0) {
+			_observer.start();
+		}
+	}
+
+	private void sendInitPacket() throws IOException {
+		/**
+		 * このキーは暗号化にのみ使われるもので、opcode等には影響を及ぼさない模様。
+		 * 32bitなら何でも良いし、クライアント毎に変えても良い。
+		 */
+		// int key = 0x1a986541;
+		String keyHax = Integer.toHexString((int) (Math.random() * 2147483647) + 1);
+		int key = Integer.parseInt(keyHax, 16);
+
+		byte Bogus = (byte) (FIRST_PACKET.length + 7);
+		// listspr変更対策
+		if (Config.LOGINS_TO_AUTOENTICATION) {
+			_out.write((int) (_authdata & 0xff));
+			_out.write((int) (_authdata >> 8 & 0xff));
+			_out.write((int) (_authdata >> 16 & 0xff));
+			_out.write((int) (_authdata >> 24 & 0xff));
+			_out.flush();
+		}
+		// listspr変更対策
+		_out.write(Bogus & 0xFF);
+		_out.write(Bogus >> 8 & 0xFF);
+		// _out.write(0x20); // 2.70C
+		// _out.write(0x7d); // 3.0c
+		_out.write(Opcodes.S_OPCODE_INITPACKET);// 3.5C
+		_out.write((byte) (key & 0xFF));
+		_out.write((byte) (key >> 8 & 0xFF));
+		_out.write((byte) (key >> 16 & 0xFF));
+		_out.write((byte) (key >> 24 & 0xFF));
+
+		_out.write(FIRST_PACKET);
+		_out.flush();
+
+		_cipher = new Cipher(key);
+		if (_connection != null) {
+			_sendQueue = new SendQueue(_cipher, _connection.getSink(),
+					_connection.getWorkers());
+		} else {
+			final OutputStream out = _out;
+			_sendQueue = new SendQueue(_cipher, new SendQueue.Sink() {
+				@Override
+				public void write(byte[] buffer, int length)
+						throws IOException {
+					out.write(buffer, 0, length);
+					out.flush();
 				}
 
-				// 以降、PacketHandlerの処理状況がClientThreadに影響を与えないようにする為の処理
-				// 目的はOpcodeの取捨選択とClientThreadとPacketHandlerの切り離し
-
-				// 破棄してはいけないOpecode群
-				// リスタート、アイテムドロップ、アイテム削除
-				if (opcode == Opcodes.C_OPCODE_CHANGECHAR
-						|| opcode == Opcodes.C_OPCODE_DROPITEM
-						|| opcode == Opcodes.C_OPCODE_DELETEINVENTORYITEM) {
-					_handler.handlePacket(data, _activeChar);
-				} else if (opcode == Opcodes.C_OPCODE_MOVECHAR) {
-					// 移動はなるべく確実に行う為、移動専用スレッドへ受け渡し
-					movePacket.requestWork(data);
-				} else {
-					// パケット処理スレッドへ受け渡し
-					hcPacket.requestWork(data);
+				@Override
+				public int getPendingBytes() {
+					return 0; // 書き込みから戻るまではSendQueue側で数えられる
 				}
+			}, GeneralThreadPool.getInstance().getPacketWriter());
+		}
+	}
+
+	/**
+	 * 復号化済みのパケットを受け取り、Opcodeに応じて処理または各処理スレッドへ受け渡す。
+	 * 受信スレッド(ClientTransportType=2の場合は接続ごとの受信レーン)から受信順に呼び出される。
+	 */
+	void handleReceivedPacket(byte[] data) throws Exception {
+		int opcode = data[0] & 0xFF;
+
+		// 多重ログイン対策
+		if (opcode == Opcodes.C_OPCODE_COMMONCLICK
+				|| opcode == Opcodes.C_OPCODE_CHANGECHAR) {
+			_loginStatus = 1;
+		}
+		if (opcode == Opcodes.C_OPCODE_LOGINTOSERVER) {
+			if (_loginStatus != 1) {
+				return;
 			}
-		} catch (Throwable e) {
-			_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
-		} finally {
-			try {
-				if (_activeChar != null) {
-					quitGame(_activeChar);
-
-					synchronized (_activeChar) {
-						_activeChar.saveInventory();
-						// キャラクターをワールド内から除去
-						_activeChar.logout();
-						setActiveChar(null);
-					}
-				}
+		}
 
-				// 念のため送信
-				sendPacket(new S_Disconnect());
+		if (opcode == Opcodes.C_OPCODE_LOGINTOSERVEROK
+				|| opcode == Opcodes.C_OPCODE_RETURNTOLOGIN) {
+			_loginStatus = 0;
+		}
 
-				StreamUtil.close(_out, _in);
-			} catch (Exception e) {
-				_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
-			} finally {
-				LoginController.getInstance().logout(this);
+		if (opcode != Opcodes.C_OPCODE_KEEPALIVE) {
+			// C_OPCODE_KEEPALIVE以外の何かしらのパケットを受け取ったらObserverへ通知
+			_observer.packetReceived();
+		}
+		// nullの場合はキャラクター選択前なのでOpcodeの取捨選択はせず全て実行
+		if (_activeChar == null) {
+			_handler.handlePacket(data, _activeChar);
+			return;
+		}
+
+		// 以降、PacketHandlerの処理状況がClientThreadに影響を与えないようにする為の処理
+		// 目的はOpcodeの取捨選択とClientThreadとPacketHandlerの切り離し
+		// どのスレッドで処理するかは、PacketHandlerの振り分け表にオペコード毎に定義されている
+		switch (PacketHandler.getLane(opcode)) {
+		case RECEIVE:
+			// 破棄してはいけないOpecode群
+			_handler.handlePacket(data, _activeChar);
+			break;
+		case MOVE:
+			// 移動はなるべく確実に行う為、移動専用スレッドへ受け渡し
+			_movePacket.requestWork(data);
+			break;
+		default:
+			// パケット処理スレッドへ受け渡し
+			_hcPacket.requestWork(data);
+			break;
+		}
+	}
+
+	/**
+	 * 一定間隔の自動保存。受信スレッドから呼び出される。
+	 */
+	void autoSave() throws Exception {
+		if (Config.AUTOSAVE) {
+			doAutoSave();
+		}
+	}
+
+	/**
+	 * 切断時の後処理。キャラクターをワールドから除去し、ログアウトさせる。
+	 */
+	void closeSession() {
+		try {
+			if (_activeChar != null) {
+				quitGame(_activeChar);
+
+				synchronized (_activeChar) {
+					_activeChar.saveInventory();
+					// キャラクターをワールド内から除去
+					_activeChar.logout();
+					setActiveChar(null);
+				}
 			}
+
+			// 念のため送信
+			sendPacket(new S_Disconnect());
+			closeAfterSend();
+		} catch (Exception e) {
+			_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
+		} finally {
+			LoginController.getInstance().logout(this);
 		}
 		_csocket = null;
 		_log.fine("Server thread[C] stopped");
@@ -362,7 +522,27 @@ public class ClientThread implements Runnable, PacketOutput {
 			System.out.println(String.format(I18N_MEMORY_USEAGE, SystemUtil.getUsedMemoryMB()));
 			System.out.println(I18N_WAITING_FOR_CLIENT);
 		}
-		return;
+	}
+
+	/**
+	 * PacketHandlerで処理するパケットを受け付けるキュー。
+	 */
+	interface PacketQueue {
+		/**
+		 * @return 受け付けた場合true。容量を超えて破棄した場合false
+		 */
+		boolean requestWork(byte data[]);
+	}
+
+	/**
+	 * 各処理スレッドからPacketHandlerを呼び出す。_activeCharは処理の時点のものを使う。
+	 */
+	void handleQueuedPacket(byte[] data) {
+		try {
+			_handler.handlePacket(data, _activeChar);
+		} catch (Exception e) {
+			_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
+		}
 	}
 
 	private int _kick = 0;
@@ -370,31 +550,46 @@ public class ClientThread implements Runnable, PacketOutput {
 	public void kick() {
 		sendPacket(new S_Disconnect());
 		_kick = 1;
-		StreamUtil.close(_out, _in);
+		closeAfterSend();
 	}
 
-	private static final int M_CAPACITY = 3; // 移動要求を一辺に受け付ける最大容量
+	// 以降の送信を止め、送信待ちのパケットを書き込み用のスレッドで書き込んでからストリームを閉じる。
+	// 回線の遅い接続でも、呼び出し元のスレッドは書き込みを待たない
+	private void closeAfterSend() {
+		final OutputStream out = _out;
+		final InputStream in = _in;
+		Runnable closeStreams = new Runnable() {
+			@Override
+			public void run() {
+				StreamUtil.close(out, in);
+			}
+		};
+		SendQueue queue = _sendQueue;
+		if (queue != null) {
+			queue.shutdown(closeStreams);
+		} else {
+			closeStreams.run();
+		}
+	}
 
-	private static final int H_CAPACITY = 2;// 行動要求を一辺に受け付ける最大容量
+	static final int M_CAPACITY = 3; // 移動要求を一辺に受け付ける最大容量
+
+	static final int H_CAPACITY = 2;// 行動要求を一辺に受け付ける最大容量
 
 	// キャラクターの行動処理スレッド
-	class HcPacket implements Runnable {
+	class HcPacket implements Runnable, PacketQueue {
 		private final Queue<byte[]> _queue;
 
-		private PacketHandler _handler;
-
 		public HcPacket() {
 			_queue = new ConcurrentLinkedQueue<byte[]>();
-			_handler = new PacketHandler(ClientThread.this);
 		}
 
 		public HcPacket(int capacity) {
 			_queue = new LinkedBlockingQueue<byte[]>(capacity);
-			_handler = new PacketHandler(ClientThread.this);
 		}
 
-		public void requestWork(byte data[]) {
-			_queue.offer(data);
+		public boolean requestWork(byte data[]) {
+			return _queue.offer(data);
 		}
 
 		@Override
@@ -403,11 +598,7 @@ public class ClientThread implements Runnable, PacketOutput {
 			while (_csocket != null) {
 				data = _queue.poll();
 				if (data != null) {
-					try {
-						_handler.handlePacket(data, _activeChar);
-					} catch (Exception e) {
-						_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
-					}
+					handleQueuedPacket(data);
 				} else {
 					try {
 						Thread.sleep(10);
@@ -473,25 +664,50 @@ public class ClientThread implements Runnable, PacketOutput {
 		}
 	}
 
+	/**
+	 * パケットを送信キューに追加する。呼び出し元のスレッドは書き込みを待たない。
+	 */
 	@Override
 	public void sendPacket(ServerBasePacket packet) {
-		synchronized (this) {
+		long start = System.nanoTime();
+		SendQueue queue = _sendQueue;
+		if (queue != null) {
 			try {
-				byte content[] = packet.getContent();
-				byte data[] = Arrays.copyOf(content, content.length);
-				_cipher.encrypt(data);
-				int length = data.length + 2;
-
-				_out.write(length & 0xff);
-				_out.write(length >> 8 & 0xff);
-				_out.write(data);
-				_out.flush();
+				if (!queue.offer(packet.getContent())) {
+					closeSlowConnection(queue);
+				}
 			} catch (Exception e) {
+				_log.log(Level.WARNING, e.getLocalizedMessage(), e);
 			}
 		}
+		_sendTimer.recordSince(start);
+	}
+
+	// 送信待ちが溜まり続けている接続を、送信を待たずに切断する
+	private void closeSlowConnection(SendQueue queue) {
+		_log.warning(_hostname + "の送信待ち(" + queue.size()
+				+ "バイト)が上限を超えたため、切断します。");
+		queue.close();
+		try {
+			close();
+		} catch (IOException e) {
+			_log.log(Level.FINE, e.getLocalizedMessage(), e);
+		}
+	}
+
+	/**
+	 * 送信待ちのデータのバイト数を返す。
+	 */
+	public int getSendQueueSize() {
+		SendQueue queue = _sendQueue;
+		return queue == null ? 0 : queue.size();
 	}
 
 	public void close() throws IOException {
+		if (_connection != null) {
+			_connection.close();
+			return;
+		}
 		_csocket.close();
 	}
 
@@ -622,6 +838,10 @@ public class ClientThread implements Runnable, PacketOutput {
 
 		// pcのモニターをstopする。
 		pc.stopEtcMonitor();
+
+		// メールボックスを破棄できるようにする
+		MailTable.getInstance().releaseMailbox(pc.getId());
+
 		// オンライン状態をOFFにし、DBにキャラクター情報を書き込む
 		pc.setOnlineStatus(0);
 		pc.setLogoutTime();
@@ -16,9 +16,14 @@
 package jp.l1j.server;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.Collection;
 import java.util.logging.Logger;
 import jp.l1j.configure.Config;
@@ -41,6 +46,7 @@ import jp.l1j.server.controller.timer.UbTimeController;
 import jp.l1j.server.controller.timer.WarTimeController;
 import jp.l1j.server.controller.timer.WeatherTimeController;
 import jp.l1j.server.datatables.ArmorSetTable;
+import jp.l1j.server.datatables.BuddyTable;
 import jp.l1j.server.datatables.CastleTable;
 import jp.l1j.server.datatables.CharacterTable;
 import jp.l1j.server.datatables.ChatLogTable;
@@ -79,12 +85,13 @@ import jp.l1j.server.datatables.SpawnTable;
 import jp.l1j.server.datatables.SpawnUbMobTable;
 import jp.l1j.server.datatables.SprListTable;
 import jp.l1j.server.datatables.SprTable;
+import jp.l1j.server.datatables.UbTable;
 import jp.l1j.server.datatables.WeaponSkillTable;
 import jp.l1j.server.model.ElementalStoneGenerator;
 import jp.l1j.server.model.L1BossCycle;
 import jp.l1j.server.model.L1BugBearRace;
 import jp.l1j.server.model.L1CastleLocation;
-import jp.l1j.server.model.L1NpcRegenerationTimer;
+import jp.l1j.server.model.L1RegenerationScheduler;
 import jp.l1j.server.model.L1World;
 import jp.l1j.server.model.gametime.L1GameTimeClock;
 import jp.l1j.server.model.instance.L1PcInstance;
@@ -125,11 +132,19 @@ import jp.l1j.server.model.item.executor.L1WisdomPotion;
 import jp.l1j.server.model.map.L1WorldMap;
 import jp.l1j.server.model.map.executor.L1MapLimiter;
 import jp.l1j.server.model.trap.L1WorldTraps;
+import jp.l1j.server.storage.InventoryItemWriter;
+import jp.l1j.server.storage.LogWriter;
 import jp.l1j.server.utils.IdFactory;
+import jp.l1j.server.utils.StartupLoader;
 import jp.l1j.server.utils.SystemUtil;
+import jp.l1j.server.utils.metrics.Gauge;
+import jp.l1j.server.utils.metrics.MetricRegistry;
+import jp.l1j.server.utils.metrics.MetricsLogger;
 
 public class GameServer extends Thread {
 	private ServerSocket _serverSocket;
+	private ServerSocketChannel _serverChannel;
+	private NioNetworkEngine _nioEngine;
 	private static Logger _log = Logger.getLogger(GameServer.class.getName());
 	private LoginController _loginController;
 	private static int YesNoCount = 0;
@@ -138,6 +153,10 @@ public class GameServer extends Thread {
 	public void run() {
 		System.out.println(String.format(I18N_MEMORY_USEAGE, SystemUtil.getUsedMemoryMB()));
 		System.out.println(I18N_WAITING_FOR_CLIENT);
+		if (_nioEngine != null) {
+			acceptChannels();
+			return;
+		}
 		while (true) {
 			try {
 				Socket socket = _serverSocket.accept();
@@ -154,6 +173,24 @@ public class GameServer extends Thread {
 		}
 	}
 
+	private void acceptChannels() {
+		while (true) {
+			try {
+				SocketChannel channel = _serverChannel.accept();
+				Socket socket = channel.socket();
+				System.out.println(String.format(I18N_TRYING_TO_CONNECTION, socket.getInetAddress()));
+				String host = socket.getInetAddress().getHostAddress();
+				if (IpTable.getInstance().isBannedIp(host)) {
+					_log.info(String.format(I18N_BANNED_IP, host));
+					channel.close();
+				} else {
+					_nioEngine.register(channel);
+				}
+			} catch (IOException ioexception) {
+			}
+		}
+	}
+
 	private static GameServer _instance;
 
 	private GameServer() {
@@ -206,7 +243,18 @@ public class GameServer extends Thread {
 
 		String host = Config.GAME_SERVER_HOST_NAME;
 		int port = Config.GAME_SERVER_PORT;
-		if (!"*".equals(host)) {
+		if (Config.CLIENT_TRANSPORT_TYPE == 2) {
+			InetSocketAddress address;
+			if (!"*".equals(host)) {
+				address = new InetSocketAddress(InetAddress.getByName(host), port);
+			} else {
+				address = new InetSocketAddress(port);
+			}
+			_serverChannel = ServerSocketChannel.open();
+			_serverChannel.socket().bind(address, 50);
+			_nioEngine = new NioNetworkEngine(Config.NIO_SELECTOR_THREADS,
+					Config.NIO_WORKER_THREADS);
+		} else if (!"*".equals(host)) {
 			InetAddress inetaddress = InetAddress.getByName(host);
 			inetaddress.getHostAddress();
 			_serverSocket = new ServerSocket(port, 50, inetaddress);
@@ -214,174 +262,280 @@ public class GameServer extends Thread {
 			_serverSocket = new ServerSocket(port);
 		}
 
+		// 以降の読み込みで共通に参照されるもの
 		IdFactory.getInstance();
-		
-		// テキストマップデータをロード
-		L1WorldMap.getInstance();
-		
+		L1World.getInstance();
+		GeneralThreadPool.getInstance();
+
 		// ログインコントローラー
 		_loginController = LoginController.getInstance();
 		_loginController.setMaxAllowedOnlinePlayers(Config.MAX_ONLINE_USERS);
 
-		// 全キャラクターネームロード
-		CharacterTable.getInstance().loadAllCharName();
-
-		// オンライン状態リセット
-		CharacterTable.clearOnlineStatus();
-
 		// ゲーム時間時計
 		L1GameTimeClock.init();
 
-		// UBタイムコントローラー
-		UbTimeController ubTimeContoroller = UbTimeController.getInstance();
-		GeneralThreadPool.getInstance().execute(ubTimeContoroller);
+		// データの読み込みは依存関係に従って並列に行い、重要なものが揃った時点でログインの受付を始める
+		StartupLoader loader = new StartupLoader("StartupLoader", Config.STARTUP_THREADS);
+		addLoaders(loader);
+		loader.start();
+		loader.awaitCritical();
 
-		// 戦争タイムコントローラー
-		WarTimeController warTimeController = WarTimeController.getInstance();
-		GeneralThreadPool.getInstance().execute(warTimeController);
+		System.out.println(I18N_LOADING_COMPLETE);
+		Runtime.getRuntime().addShutdownHook(ShutdownController.getInstance());
+		this.start();
+	}
 
+	// 依存先には、読み込み中に参照するシングルトンのローダーを全て指定すること。
+	// getInstance()は同期されていないものが多く、依存関係の漏れは二重の初期化につながる。
+	private void addLoaders(StartupLoader loader) {
+		// テキストマップデータをロード(各マップのフラグはMapTableから読む)
+		loader.add("L1WorldMap", instanceOf(L1WorldMap.class), "MapTable");
+
+		// 全キャラクターネームロード、オンライン状態リセット
+		loader.add("CharacterTable", new StartupLoader.Loader() {
+			@Override
+			public void load() throws Exception {
+				CharacterTable.getInstance().loadAllCharName();
+				CharacterTable.clearOnlineStatus();
+			}
+		}, "L1WorldMap");
+
+		// 他のデータに依存しないテーブル
+		Class<?>[] independents = { NpcTable.class, ItemTable.class,
+				SkillTable.class, MobSkillTable.class, PolyTable.class,
+				MapTable.class, NpcTalkDataTable.class, IpTable.class,
+				SprTable.class, SprListTable.class, InnTable.class,
+				RaceTicketTable.class, ChatLogTable.class, NpcActionTable.class,
+				GMCommandConfigs.class, CookingRecipeTable.class,
+				MailTable.class, BuddyTable.class,
+				L1RegenerationScheduler.class, Announcements.class };
+		for (Class<?> clazz : independents) {
+			loader.add(clazz.getSimpleName(), instanceOf(clazz));
+		}
+		loader.add("L1BossCycle", staticLoad(L1BossCycle.class));
+
+		loader.add("DropTable", new StartupLoader.Loader() {
+			@Override
+			public void load() throws Exception {
+				DropTable.getInstance();
+				DropRateTable.getInstance();
+			}
+		}, "ItemTable", "NpcTable", "MapTable");
+		loader.add("MobGroupTable", instanceOf(MobGroupTable.class), "NpcTable");
+		loader.add("NpcChatTable", instanceOf(NpcChatTable.class), "NpcTable");
+		loader.add("SpawnUbMobTable", instanceOf(SpawnUbMobTable.class), "NpcTable");
+		loader.add("UbTable", instanceOf(UbTable.class), "NpcTable", "MapTable");
+		loader.add("ArmorSetTable", instanceOf(ArmorSetTable.class), "ItemTable");
+		loader.add("ShopTable", instanceOf(ShopTable.class), "ItemTable");
+		loader.add("ResolventTable", instanceOf(ResolventTable.class), "ItemTable");
+		loader.add("WeaponSkillTable", instanceOf(WeaponSkillTable.class),
+				"ItemTable", "SkillTable");
+		loader.add("MagicDollTable", instanceOf(MagicDollTable.class),
+				"ItemTable", "NpcTable", "SkillTable");
+		loader.add("PetTypeTable", instanceOf(PetTypeTable.class), "ItemTable", "NpcTable");
+		loader.add("PetTable", instanceOf(PetTable.class), "PetTypeTable");
+		loader.add("ClanTable", instanceOf(ClanTable.class), "ItemTable"); // 血盟倉庫のアイテムを生成する
+		loader.add("CastleTable", new StartupLoader.Loader() {
+			@Override
+			public void load() throws Exception {
+				CastleTable.getInstance();
+				L1CastleLocation.setCastleTaxRate(); // これはCastleTable初期化後でなければいけない
+			}
+		});
+		loader.add("DungeonTable", instanceOf(DungeonTable.class), "InnTable", "MapTable");
+		loader.add("RandomDungeonTable", instanceOf(RandomDungeonTable.class), "MapTable");
+		loader.add("RestartLocationTable", instanceOf(RestartLocationTable.class), "MapTable");
+		loader.add("ReturnLocationTable", staticLoad(ReturnLocationTable.class), "MapTable");
+		loader.add("L1WorldTraps", instanceOf(L1WorldTraps.class), "L1WorldMap");
+		loader.add("DoorTable", instanceOf(DoorTable.class), "NpcTable",
+				"NpcChatTable", "SprTable", "L1WorldMap");
+
+		// 配置されるNPCは多くのテーブルを参照する。配置は共有する状態が多いため1つずつ行う
+		loader.add("SpawnTable", instanceOf(SpawnTable.class), "L1WorldMap",
+				"NpcTable", "ItemTable", "SkillTable", "MobSkillTable",
+				"MapTable", "DropTable", "MobGroupTable", "NpcChatTable",
+				"NpcTalkDataTable", "SprTable", "UbTable", "DoorTable");
+		loader.add("SpawnNpcTable", instanceOf(SpawnNpcTable.class), "SpawnTable");
+		loader.add("SpawnFurnitureTable", instanceOf(SpawnFurnitureTable.class), "SpawnNpcTable");
+		loader.add("L1BugBearRace", instanceOf(L1BugBearRace.class),
+				"SpawnFurnitureTable", "RaceTicketTable", "ShopTable");
+
+		// アイテムの効果を定義したXMLファイル
+		Class<?>[] itemExecutors = { L1BeginnerItem.class,
+				L1BlankScroll.class, L1BlessOfEva.class, L1BluePotion.class,
+				L1BravePotion.class, L1CurePotion.class, L1Elixir.class,
+				L1EnchantBonus.class, L1EnchantProtectScroll.class,
+				L1ExtraPotion.class, L1FireCracker.class, L1FloraPotion.class,
+				L1GreenPotion.class, L1HealingPotion.class, L1MagicEye.class,
+				L1MagicPotion.class, L1Material.class, L1MaterialChoice.class,
+				L1PolyPotion.class, L1PolyScroll.class, L1PolyWand.class,
+				L1Roulette.class, L1ShowMessage.class, L1SpawnWand.class,
+				L1SpeedUpClock.class, L1SpellIcon.class, L1SpellItem.class,
+				L1TeleportAmulet.class, L1ThirdSpeedPotion.class,
+				L1TreasureBox.class, L1UniqueEnchantScroll.class,
+				L1UnknownMaliceWeapon.class, L1WisdomPotion.class };
+		for (Class<?> clazz : itemExecutors) {
+			loader.add(clazz.getSimpleName(), staticLoad(clazz), "ItemTable",
+					"SkillTable", "PolyTable", "NpcTable", "MapTable");
+		}
+		loader.add("L1Furniture", staticLoad(L1Furniture.class), "ItemTable",
+				"NpcTable", "SpawnFurnitureTable");
+		loader.add("L1MapLimiter", staticLoad(L1MapLimiter.class), "MapTable");
+
+		// ログイン中のプレイヤーの状態に関わるタイムコントローラー
+		loader.add("UbTimeController", new StartupLoader.Loader() {
+			@Override
+			public void load() throws Exception {
+				UbTimeController.getInstance().start();
+			}
+		}, "UbTable", "SpawnUbMobTable", "ItemTable");
+		loader.add("WarTimeController", new StartupLoader.Loader() {
+			@Override
+			public void load() throws Exception {
+				WarTimeController.getInstance().start();
+			}
+		}, "CastleTable", "DoorTable", "ClanTable");
+		loader.add("HomeTownTimeController", instanceOf(HomeTownTimeController.class),
+				"CharacterTable");
+		loader.add("MapTimeController", new StartupLoader.Loader() {
+			@Override
+			public void load() throws Exception {
+				MapTimeController mapTimeController = MapTimeController.getInstance();
+				mapTimeController.load();
+				mapTimeController.start();
+			}
+		}, "MapTable");
+
+		// 以下はログインの受付を始めた後に読み込んでもよいもの
+		// 読み込み中にパケットの処理からも参照されるため、ここで使うシングルトン(HouseTable等)のgetInstance()は同期しておくこと
+		loader.addBackground("AnnouncementsCycle", instanceOf(AnnouncementsCycle.class),
+				"Announcements");
+		loader.addBackground("ShutdownRequestTable", new StartupLoader.Loader() {
+			@Override
+			public void load() throws Exception {
+				ShutdownRequestTable.removeAll();
+			}
+		});
 		// 天候タイムコントローラー
 		if (Config.WEATHER_SYSTEM) {
-			WeatherTimeController weatherTimeController = WeatherTimeController.getInstance();
-			GeneralThreadPool.getInstance().execute(weatherTimeController);
+			loader.addBackground("WeatherTimeController", new StartupLoader.Loader() {
+				@Override
+				public void load() throws Exception {
+					WeatherTimeController.getInstance().start();
+				}
+			});
 		}
-		
 		// 精霊の石生成
 		if (Config.ELEMENTAL_STONE_AMOUNT > 0) {
-			ElementalStoneGenerator elementalStoneGenerator = ElementalStoneGenerator.getInstance();
-			GeneralThreadPool.getInstance().execute(elementalStoneGenerator);
+			loader.addBackground("ElementalStoneGenerator", new StartupLoader.Loader() {
+				@Override
+				public void load() throws Exception {
+					GeneralThreadPool.getInstance().execute(ElementalStoneGenerator.getInstance());
+				}
+			}, "ItemTable", "L1WorldMap");
 		}
-
-		// ホームタウンシステムコントローラー
-		HomeTownTimeController.getInstance();
-
 		// アジト競売タイムコントローラー
-		AuctionTimeController auctionTimeController = AuctionTimeController.getInstance();
-		GeneralThreadPool.getInstance().execute(auctionTimeController);
-
+		loader.addBackground("AuctionTimeController", new StartupLoader.Loader() {
+			@Override
+			public void load() throws Exception {
+				AuctionTimeController.getInstance().start();
+			}
+		}, "ItemTable", "ClanTable", "CharacterTable"); // 競売の掲示板は入札者の名前を引く
 		// アジト税金タイムコントローラー
-		HouseTaxTimeController houseTaxTimeController = HouseTaxTimeController.getInstance();
-		GeneralThreadPool.getInstance().execute(houseTaxTimeController);
-
+		loader.addBackground("HouseTaxTimeController", new StartupLoader.Loader() {
+			@Override
+			public void load() throws Exception {
+				HouseTaxTimeController.getInstance().start();
+			}
+		}, "AuctionTimeController"); // HouseTableを共有する
 		// 釣りタイムコントローラー
-		FishingTimeController fishingTimeController = FishingTimeController.getInstance();
-		GeneralThreadPool.getInstance().execute(fishingTimeController);
-
+		loader.addBackground("FishingTimeController", new StartupLoader.Loader() {
+			@Override
+			public void load() throws Exception {
+				FishingTimeController.getInstance().start();
+			}
+		}, "ItemTable");
 		// NPCチャットタイムコントローラー
-		NpcChatTimeController npcChatTimeController = NpcChatTimeController.getInstance();
-		GeneralThreadPool.getInstance().execute(npcChatTimeController);
-
-		// ライトタイムコントローラー
-		LightTimeController lightTimeController = LightTimeController.getInstance();
-		GeneralThreadPool.getInstance().execute(lightTimeController);
-
+		loader.addBackground("NpcChatTimeController", new StartupLoader.Loader() {
+			@Override
+			public void load() throws Exception {
+				NpcChatTimeController.getInstance().start();
+			}
+		}, "NpcChatTable", "L1BugBearRace");
+		// ライトタイムコントローラー(照明のNPCを配置するため、他の配置の後に行う)
+		loader.addBackground("LightTimeController", new StartupLoader.Loader() {
+			@Override
+			public void load() throws Exception {
+				LightTimeController.getInstance().start();
+			}
+		}, "L1BugBearRace");
 		// アイテム削除コントローラー
-		new DeleteItemController().initialize();
-		
-		// マップタイムコントローラー
-		MapTimeController mapTimeController = MapTimeController.getInstance();
-		mapTimeController.load();
-		GeneralThreadPool.getInstance().execute(mapTimeController);
-
+		loader.addBackground("DeleteItemController", new StartupLoader.Loader() {
+			@Override
+			public void load() throws Exception {
+				new DeleteItemController().initialize();
+			}
+		});
 		// 自動シャットダウンコントローラー
 		if (Config.AUTO_SHUTDOWN) {
-			ShutdownTimeController shutdownTimeController = ShutdownTimeController.getInstance();
-			shutdownTimeController.load();
-			GeneralThreadPool.getInstance().execute(shutdownTimeController);
+			loader.addBackground("ShutdownTimeController", new StartupLoader.Loader() {
+				@Override
+				public void load() throws Exception {
+					ShutdownTimeController shutdownTimeController = ShutdownTimeController.getInstance();
+					shutdownTimeController.load();
+					shutdownTimeController.start();
+				}
+			});
 		}
+		// 実行時メトリクスの集計とファイルへの書き出し
+		if (Config.METRICS_INTERVAL > 0) {
+			loader.addBackground("MetricsLogger", new StartupLoader.Loader() {
+				@Override
+				public void load() throws Exception {
+					MetricRegistry.getInstance().register("world.players", new Gauge() {
+						@Override
+						public long getValue() {
+							return L1World.getInstance().getAllPlayers().size();
+						}
+					});
+					long interval = Config.METRICS_INTERVAL * 1000L;
+					GeneralThreadPool.getInstance().scheduleAtFixedRate(
+							MetricsLogger.create(), interval, interval);
+				}
+			});
+		}
+	}
 
-		// 定期アナウンスコントローラー
-		Announcements.getInstance();
-		AnnouncementsCycle.getInstance();
-
-		MobSkillTable.getInstance();
-		NpcTable.getInstance();
-		DoorTable.getInstance();
-		SpawnTable.getInstance();
-		MobGroupTable.getInstance();
-		SkillTable.getInstance();
-		PolyTable.getInstance();
-		ItemTable.getInstance();
-		ArmorSetTable.getInstance();
-		DropTable.getInstance();
-		DropRateTable.getInstance();
-		ShopTable.getInstance();
-		NpcTalkDataTable.getInstance();
-		L1World.getInstance();
-		L1WorldTraps.getInstance();
-		DungeonTable.getInstance();
-		RandomDungeonTable.getInstance();
-		SpawnNpcTable.getInstance();
-		IpTable.getInstance();
-		MapTable.getInstance();
-		SpawnUbMobTable.getInstance();
-		PetTable.getInstance();
-		ClanTable.getInstance();
-		CastleTable.getInstance();
-		L1CastleLocation.setCastleTaxRate(); // これはCastleTable初期化後でなければいけない
-		RestartLocationTable.getInstance();
-		GeneralThreadPool.getInstance();
-		L1NpcRegenerationTimer.getInstance();
-		ChatLogTable.getInstance();
-		WeaponSkillTable.getInstance();
-		NpcActionTable.getInstance();
-		ReturnLocationTable.load();
-		GMCommandConfigs.getInstance();
-		PetTypeTable.getInstance();
-		SprTable.getInstance();
-		ResolventTable.getInstance();
-		SpawnFurnitureTable.getInstance();
-		NpcChatTable.getInstance();
-		MailTable.getInstance();
-		SprListTable.getInstance();
-		RaceTicketTable.getInstance();
-		L1BugBearRace.getInstance();
-		InnTable.getInstance();
-		MagicDollTable.getInstance();
-		CookingRecipeTable.getInstance();
-		ShutdownRequestTable.removeAll();
-		
-		// Loading the XML files
-		L1BossCycle.load();
-		L1BeginnerItem.load();
-		L1BlankScroll.load();
-		L1BlessOfEva.load();
-		L1BluePotion.load();
-		L1BravePotion.load();
-		L1CurePotion.load();
-		L1Elixir.load();
-		L1EnchantBonus.load();
-		L1EnchantProtectScroll.load();
-		L1ExtraPotion.load();
-		L1FireCracker.load();
-		L1FloraPotion.load();
-		L1Furniture.load();
-		L1GreenPotion.load();
-		L1HealingPotion.load();
-		L1MagicEye.load();
-		L1MagicPotion.load();
-		L1MapLimiter.load();
-		L1Material.load();
-		L1MaterialChoice.load();
-		L1PolyPotion.load();
-		L1PolyScroll.load();
-		L1PolyWand.load();
-		L1Roulette.load();
-		L1ShowMessage.load();
-		L1SpawnWand.load();
-		L1SpeedUpClock.load();
-		L1SpellIcon.load();
-		L1SpellItem.load();
-		L1TeleportAmulet.load();
-		L1ThirdSpeedPotion.load();
-		L1TreasureBox.load();
-		L1UniqueEnchantScroll.load();
-		L1UnknownMaliceWeapon.load();
-		L1WisdomPotion.load();
-		
-		System.out.println(I18N_LOADING_COMPLETE);
-		Runtime.getRuntime().addShutdownHook(ShutdownController.getInstance());
-		this.start();
+	// クラスの静的メソッドgetInstance()を呼び出して、シングルトンを読み込むローダー
+	private static StartupLoader.Loader instanceOf(Class<?> clazz) {
+		return invoker(clazz, "getInstance");
+	}
+
+	// クラスの静的メソッドload()を呼び出すローダー
+	private static StartupLoader.Loader staticLoad(Class<?> clazz) {
+		return invoker(clazz, "load");
+	}
+
+	private static StartupLoader.Loader invoker(Class<?> clazz, String name) {
+		final Method method;
+		try {
+			method = clazz.getMethod(name);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException(clazz.getName() + "." + name, e);
+		}
+		return new StartupLoader.Loader() {
+			@Override
+			public void load() throws Exception {
+				try {
+					method.invoke(null);
+				} catch (InvocationTargetException e) {
+					if (e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
+			}
+		};
 	}
 
 	/**
@@ -398,6 +552,8 @@ public class GameServer extends Thread {
 			ClientThread.quitGame(pc);
 			L1World.getInstance().removeObject(pc);
 		}
+		InventoryItemWriter.getInstance().flush();
+		LogWriter.flushAll();
 	}
 
 	private class ServerShutdownThread extends Thread {
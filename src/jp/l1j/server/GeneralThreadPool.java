@@ -17,16 +17,21 @@ package jp.l1j.server;
 
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import jp.l1j.configure.Config;
 import jp.l1j.server.model.monitor.L1PcMonitor;
+import jp.l1j.server.utils.metrics.Gauge;
+import jp.l1j.server.utils.metrics.Histogram;
+import jp.l1j.server.utils.metrics.MetricRegistry;
 
 public class GeneralThreadPool {
 	private static Logger _log = Logger.getLogger(GeneralThreadPool.class
@@ -39,9 +44,16 @@ public class GeneralThreadPool {
 	private Executor _executor; // 汎用ExecutorService
 	private ScheduledExecutorService _scheduler; // 汎用ScheduledExecutorService
 	private ScheduledExecutorService _pcScheduler; // プレイヤーのモニター用ScheduledExecutorService
+	private Executor _packetWriter; // 送信キューの書き込み用ExecutorService。スレッド数はPacketWriterThreadsで制限する
 	// 一応L1Jデフォルトの状態で、map:4にいる何もしていないPCが1秒間に占有する実行時間は約6ms(AutoUpdate:約6ms,ExpMonitor:極小)
 	private final int _pcSchedulerPoolSize = 1 + Config.MAX_ONLINE_USERS / 20; // 適当(20Userに1つくらいの割り当て)
 
+	// 予定時刻から実際に実行が始まるまでの遅れ
+	private final Histogram _schedulerLag = MetricRegistry.getInstance()
+			.histogram("scheduler.general.lag");
+	private final Histogram _pcSchedulerLag = MetricRegistry.getInstance()
+			.histogram("scheduler.pc.lag");
+
 	public static GeneralThreadPool getInstance() {
 		if (_instance == null) {
 			_instance = new GeneralThreadPool();
@@ -65,6 +77,71 @@ public class GeneralThreadPool {
 		_pcScheduler = Executors.newScheduledThreadPool(_pcSchedulerPoolSize,
 				new PriorityThreadFactory("PcMonitorSTPool",
 						Thread.NORM_PRIORITY));
+		int writerThreads = Config.PACKET_WRITER_THREADS > 0 ? Config.PACKET_WRITER_THREADS
+				: 4 + Config.MAX_ONLINE_USERS / 10; // 適当(10Userに1つくらいの割り当て)
+		ThreadPoolExecutor packetWriterPool = new ThreadPoolExecutor(
+				writerThreads, writerThreads, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new PriorityThreadFactory("PacketWriterPool",
+						Thread.NORM_PRIORITY));
+		packetWriterPool.allowCoreThreadTimeOut(true);
+		_packetWriter = packetWriterPool;
+		registerQueueGauge("scheduler.general.queue", _scheduler);
+		registerQueueGauge("scheduler.pc.queue", _pcScheduler);
+		final ThreadPoolExecutor packetWriter = (ThreadPoolExecutor) _packetWriter;
+		MetricRegistry.getInstance().register("executor.writer.threads",
+				new Gauge() {
+					@Override
+					public long getValue() {
+						return packetWriter.getPoolSize();
+					}
+				});
+		if (_executor instanceof ThreadPoolExecutor) {
+			registerQueueGauge("executor.general.queue", _executor);
+			final ThreadPoolExecutor executor = (ThreadPoolExecutor) _executor;
+			MetricRegistry.getInstance().register("executor.general.active",
+					new Gauge() {
+						@Override
+						public long getValue() {
+							return executor.getActiveCount();
+						}
+					});
+		}
+	}
+
+	private static void registerQueueGauge(String name, Executor executor) {
+		final ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+		MetricRegistry.getInstance().register(name, new Gauge() {
+			@Override
+			public long getValue() {
+				return pool.getQueue().size();
+			}
+		});
+	}
+
+	/**
+	 * 予定時刻からの遅れを記録してから、タスクを実行する。
+	 */
+	private static class LagRecorder implements Runnable {
+		private final Runnable _task;
+		private final Histogram _lag;
+		private final long _period; // 固定間隔で実行する場合の間隔(ns)
+		private long _expected; // 次の実行予定時刻(System.nanoTime)
+
+		LagRecorder(Runnable task, Histogram lag, long delay, long period) {
+			_task = task;
+			_lag = lag;
+			_period = TimeUnit.MILLISECONDS.toNanos(period);
+			_expected = System.nanoTime()
+					+ TimeUnit.MILLISECONDS.toNanos(Math.max(delay, 0));
+		}
+
+		@Override
+		public void run() {
+			_lag.recordSince(_expected);
+			_expected += _period;
+			_task.run();
+		}
 	}
 
 	public void execute(Runnable r) {
@@ -80,13 +157,22 @@ public class GeneralThreadPool {
 		t.start();
 	}
 
+	/**
+	 * 送信キューの書き込みを実行するExecutorを返す。
+	 */
+	public Executor getPacketWriter() {
+		return _packetWriter;
+	}
+
 	public ScheduledFuture<?> schedule(Runnable r, long delay) {
 		try {
 			if (delay <= 0) {
 				_executor.execute(r);
 				return null;
 			}
-			return _scheduler.schedule(r, delay, TimeUnit.MILLISECONDS);
+			return _scheduler.schedule(
+					new LagRecorder(r, _schedulerLag, delay, 0), delay,
+					TimeUnit.MILLISECONDS);
 		} catch (RejectedExecutionException e) {
 			return null;
 		}
@@ -94,7 +180,8 @@ public class GeneralThreadPool {
 
 	public ScheduledFuture<?> scheduleAtFixedRate(Runnable r,
 			long initialDelay, long period) {
-		return _scheduler.scheduleAtFixedRate(r, initialDelay, period,
+		return _scheduler.scheduleAtFixedRate(new LagRecorder(r,
+				_schedulerLag, initialDelay, period), initialDelay, period,
 				TimeUnit.MILLISECONDS);
 	}
 
@@ -104,7 +191,9 @@ public class GeneralThreadPool {
 				_executor.execute(r);
 				return null;
 			}
-			return _pcScheduler.schedule(r, delay, TimeUnit.MILLISECONDS);
+			return _pcScheduler.schedule(
+					new LagRecorder(r, _pcSchedulerLag, delay, 0), delay,
+					TimeUnit.MILLISECONDS);
 		} catch (RejectedExecutionException e) {
 			return null;
 		}
@@ -112,7 +201,8 @@ public class GeneralThreadPool {
 
 	public ScheduledFuture<?> pcScheduleAtFixedRate(L1PcMonitor r,
 			long initialDelay, long period) {
-		return _pcScheduler.scheduleAtFixedRate(r, initialDelay, period,
+		return _pcScheduler.scheduleAtFixedRate(new LagRecorder(r,
+				_pcSchedulerLag, initialDelay, period), initialDelay, period,
 				TimeUnit.MILLISECONDS);
 	}
 
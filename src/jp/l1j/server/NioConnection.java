@@ -0,0 +1,412 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jp.l1j.server.packets.PacketHandler;
+
+/**
+ * ClientTransportType=2の場合の1接続分の状態。
+ * 受信データのフレーム分割と復号化はセレクタスレッドで行い、復号化したパケットは
+ * 接続ごとの受信レーンで受信順に処理する。受信レーンは従来の受信スレッドに相当し、
+ * そこから移動、行動の各レーンへの振り分けはClientThreadが従来通りに行う。
+ */
+class NioConnection {
+	private static Logger _log = Logger.getLogger(NioConnection.class
+			.getName());
+
+	private static final int INITIAL_READ_BUFFER_SIZE = 4096;
+
+	// 受信レーンに溜まったパケットがこの数を超えたら、処理が追いつくまで受信を止める
+	private static final int READ_BACKLOG_LIMIT = 16;
+
+	private final NioSelectorThread _selectorThread;
+
+	private final SocketChannel _channel;
+
+	private final Executor _workers;
+
+	private final SerialExecutor _readLane;
+
+	private final ConnectionOutputStream _out = new ConnectionOutputStream();
+
+	private final ClientThread _client;
+
+	private final Object _lock = new Object();
+
+	private final ArrayDeque<ByteBuffer> _writeQueue = new ArrayDeque<ByteBuffer>();
+
+	// _writeQueueに残っているバイト数。更新は_lockを取得した状態で行う
+	private volatile int _queuedBytes = 0;
+
+	// 全接続の_queuedBytesの合計
+	private static final AtomicLong _totalQueuedBytes = new AtomicLong();
+
+	private final AtomicBoolean _closed = new AtomicBoolean();
+
+	private SelectionKey _key;
+
+	private ByteBuffer _readBuffer = ByteBuffer
+			.allocate(INITIAL_READ_BUFFER_SIZE);
+
+	private boolean _readPaused = false;
+
+	NioConnection(NioSelectorThread selectorThread, SocketChannel channel,
+			Executor workers) throws IOException {
+		_selectorThread = selectorThread;
+		_channel = channel;
+		_channel.configureBlocking(false);
+		_workers = workers;
+		_readLane = new SerialExecutor(workers);
+		_client = new ClientThread(this);
+	}
+
+	Socket getSocket() {
+		return _channel.socket();
+	}
+
+	OutputStream getOutputStream() {
+		return _out;
+	}
+
+	Executor getWorkers() {
+		return _workers;
+	}
+
+	/**
+	 * 送信キューの書き込み先を返す。書き込まれたデータは送信待ちに加えられ、
+	 * 送信できなかった分はセレクタの送信可能通知を待ってまとめて送られる。
+	 */
+	SendQueue.Sink getSink() {
+		return new SendQueue.Sink() {
+			@Override
+			public void write(byte[] buffer, int length) {
+				send(ByteBuffer.wrap(Arrays.copyOf(buffer, length)));
+			}
+
+			@Override
+			public int getPendingBytes() {
+				return _queuedBytes;
+			}
+		};
+	}
+
+	/**
+	 * セレクタへ登録し、初期パケットを送信する。セレクタスレッドから呼び出される。
+	 */
+	void open(Selector selector) throws IOException {
+		synchronized (_lock) {
+			_key = _channel.register(selector, SelectionKey.OP_READ, this);
+		}
+		_client.startSession(
+				new PacketLane(ClientThread.M_CAPACITY),
+				new PacketLane(ClientThread.H_CAPACITY));
+	}
+
+	/**
+	 * 受信可能になった時にセレクタスレッドから呼び出される。
+	 */
+	void onReadable() {
+		int count;
+		try {
+			count = _channel.read(_readBuffer);
+		} catch (IOException e) {
+			close();
+			return;
+		}
+		if (count < 0) {
+			close();
+			return;
+		}
+
+		int required = 0;
+		_readBuffer.flip();
+		try {
+			while (_readBuffer.remaining() >= 2) {
+				int pos = _readBuffer.position();
+				int dataLength = _client.decodeDataLength(
+						_readBuffer.get(pos) & 0xFF,
+						_readBuffer.get(pos + 1) & 0xFF);
+				if (dataLength < 0) {
+					throw new IOException("Invalid packet length: "
+							+ dataLength);
+				}
+				if (_readBuffer.remaining() < dataLength + 2) {
+					required = dataLength + 2;
+					break;
+				}
+				byte data[] = new byte[dataLength];
+				_readBuffer.position(pos + 2);
+				_readBuffer.get(data);
+				dispatch(_client.decodeData(data));
+			}
+		} catch (Exception e) {
+			_log.log(Level.FINE, e.getLocalizedMessage(), e);
+			close();
+			return;
+		}
+		_readBuffer.compact();
+
+		if (_readBuffer.capacity() < required) {
+			ByteBuffer buffer = ByteBuffer.allocate(required);
+			_readBuffer.flip();
+			buffer.put(_readBuffer);
+			_readBuffer = buffer;
+		}
+	}
+
+	private void dispatch(final byte[] data) {
+		_readLane.offer(new Runnable() {
+			@Override
+			public void run() {
+				handleReceivedPacket(data);
+			}
+		});
+		if (_readLane.size() >= READ_BACKLOG_LIMIT) {
+			synchronized (_lock) {
+				_readPaused = true;
+				updateInterestOps();
+			}
+		}
+	}
+
+	private void handleReceivedPacket(byte[] data) {
+		if (_closed.get()) {
+			return;
+		}
+		try {
+			_client.autoSave();
+			_client.handleReceivedPacket(data);
+		} catch (Throwable e) {
+			_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
+			close();
+		} finally {
+			if (_readLane.size() < READ_BACKLOG_LIMIT / 2) {
+				synchronized (_lock) {
+					if (_readPaused) {
+						_readPaused = false;
+						updateInterestOps();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * 送信可能になった時にセレクタスレッドから呼び出される。
+	 */
+	void onWritable() {
+		boolean failed = false;
+		synchronized (_lock) {
+			try {
+				writeQueued();
+			} catch (IOException e) {
+				failed = true;
+			}
+			updateInterestOps();
+		}
+		if (failed) {
+			close();
+		}
+	}
+
+	private void send(ByteBuffer buffer) {
+		boolean failed = false;
+		synchronized (_lock) {
+			if (_closed.get()) {
+				return;
+			}
+			_writeQueue.add(buffer);
+			addQueuedBytes(buffer.remaining());
+			try {
+				writeQueued();
+			} catch (IOException e) {
+				failed = true;
+			}
+			if (!_writeQueue.isEmpty()) {
+				updateInterestOps();
+			}
+		}
+		if (failed) {
+			close();
+		}
+	}
+
+	// _lockを取得した状態で呼び出すこと
+	private void writeQueued() throws IOException {
+		if (_writeQueue.isEmpty()) {
+			return;
+		}
+		// 溜まっているバッファをまとめて1回で書き込む。書き切れなかった分は送信可能通知を待つ
+		ByteBuffer[] buffers = _writeQueue.toArray(new ByteBuffer[_writeQueue
+				.size()]);
+		addQueuedBytes((int) -_channel.write(buffers));
+		while (!_writeQueue.isEmpty() && !_writeQueue.peek().hasRemaining()) {
+			_writeQueue.poll();
+		}
+	}
+
+	// _lockを取得した状態で呼び出すこと
+	private void addQueuedBytes(int delta) {
+		_queuedBytes += delta;
+		_totalQueuedBytes.addAndGet(delta);
+	}
+
+	/**
+	 * 全接続の送信待ちのバイト数の合計を返す。
+	 */
+	static long getTotalQueuedBytes() {
+		return _totalQueuedBytes.get();
+	}
+
+	// _lockを取得した状態で呼び出すこと
+	private void updateInterestOps() {
+		if (_key == null || !_key.isValid()) {
+			return;
+		}
+		int ops = 0;
+		if (!_readPaused) {
+			ops |= SelectionKey.OP_READ;
+		}
+		if (!_writeQueue.isEmpty()) {
+			ops |= SelectionKey.OP_WRITE;
+		}
+		try {
+			if (_key.interestOps() != ops) {
+				_key.interestOps(ops);
+				_selectorThread.wakeup();
+			}
+		} catch (CancelledKeyException e) {
+		}
+	}
+
+	/**
+	 * 接続を閉じる。未送信のデータは可能な範囲で送信し、
+	 * 受信レーンに残っている処理の後でClientThreadの切断処理を行う。
+	 */
+	void close() {
+		if (!_closed.compareAndSet(false, true)) {
+			return;
+		}
+		synchronized (_lock) {
+			try {
+				writeQueued();
+			} catch (IOException e) {
+			}
+			_writeQueue.clear();
+			addQueuedBytes(-_queuedBytes);
+			if (_key != null) {
+				_key.cancel();
+			}
+		}
+		try {
+			_channel.close();
+		} catch (IOException e) {
+			_log.log(Level.FINE, e.getLocalizedMessage(), e);
+		}
+		_readLane.offer(new Runnable() {
+			@Override
+			public void run() {
+				_client.closeSession();
+			}
+		});
+	}
+
+	/**
+	 * 移動、行動の各パケット処理レーン。従来のHcPacketに相当し、容量を超えたパケットは破棄する。
+	 */
+	private class PacketLane implements ClientThread.PacketQueue {
+		private final SerialExecutor _executor;
+
+		PacketLane(int capacity) {
+			_executor = new SerialExecutor(_workers, capacity);
+		}
+
+		@Override
+		public boolean requestWork(final byte[] data) {
+			if (_closed.get()) {
+				return false;
+			}
+			return _executor.offer(new Runnable() {
+				@Override
+				public void run() {
+					if (!_closed.get()) {
+						_client.handleQueuedPacket(data);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * 接続直後の初期パケットの書き込みを溜め、flush時に送信待ちへ渡す。
+	 * 以降のパケットはClientThreadの送信キューからgetSinkを通して書き込まれる。
+	 */
+	private class ConnectionOutputStream extends OutputStream {
+		private byte[] _buf = new byte[256];
+
+		private int _count = 0;
+
+		private void ensureCapacity(int length) {
+			if (_count + length > _buf.length) {
+				_buf = Arrays.copyOf(_buf,
+						Math.max(_buf.length * 2, _count + length));
+			}
+		}
+
+		@Override
+		public void write(int b) {
+			ensureCapacity(1);
+			_buf[_count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			ensureCapacity(len);
+			System.arraycopy(b, off, _buf, _count, len);
+			_count += len;
+		}
+
+		@Override
+		public void flush() {
+			if (_count == 0) {
+				return;
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(Arrays.copyOf(_buf, _count));
+			_count = 0;
+			send(buffer);
+		}
+
+		@Override
+		public void close() {
+			NioConnection.this.close();
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ClientTransportType=2の場合の通信処理。
+ * 少数のセレクタスレッドで全接続の受信を行い、受信したパケットは共有のスレッドプールで
+ * 接続ごとに直列に処理する。
+ */
+public class NioNetworkEngine {
+	private final NioSelectorThread[] _selectors;
+
+	private final ExecutorService _workers;
+
+	private final AtomicInteger _next = new AtomicInteger();
+
+	/**
+	 * @param selectorThreads
+	 *            セレクタスレッドの数
+	 * @param workerThreads
+	 *            パケット処理スレッドの数。0の場合は必要に応じて生成し再利用する
+	 */
+	public NioNetworkEngine(int selectorThreads, int workerThreads)
+			throws IOException {
+		ThreadFactory factory = new ThreadFactory() {
+			private final AtomicInteger _threadNumber = new AtomicInteger(1);
+
+			@Override
+			public Thread newThread(Runnable r) {
+				return new Thread(r, "NioWorker-"
+						+ _threadNumber.getAndIncrement());
+			}
+		};
+		if (workerThreads > 0) {
+			_workers = Executors.newFixedThreadPool(workerThreads, factory);
+		} else {
+			_workers = Executors.newCachedThreadPool(factory);
+		}
+
+		_selectors = new NioSelectorThread[Math.max(1, selectorThreads)];
+		for (int i = 0; i < _selectors.length; i++) {
+			_selectors[i] = new NioSelectorThread("NioSelector-" + (i + 1),
+					_workers);
+			_selectors[i].start();
+		}
+	}
+
+	/**
+	 * 接続をいずれかのセレクタスレッドに割り当てる。
+	 */
+	public void register(SocketChannel channel) throws IOException {
+		int index = (_next.getAndIncrement() & Integer.MAX_VALUE)
+				% _selectors.length;
+		_selectors[index].register(channel);
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 複数の接続の受信と送信をまとめて扱うセレクタスレッド。
+ */
+class NioSelectorThread extends Thread {
+	private static Logger _log = Logger.getLogger(NioSelectorThread.class
+			.getName());
+
+	private final Selector _selector;
+
+	private final Executor _workers;
+
+	private final Queue<NioConnection> _pending = new ConcurrentLinkedQueue<NioConnection>();
+
+	NioSelectorThread(String name, Executor workers) throws IOException {
+		super(name);
+		_selector = Selector.open();
+		_workers = workers;
+	}
+
+	/**
+	 * 接続を受け持つ。セレクタへの登録はセレクタスレッドで行う。
+	 */
+	void register(SocketChannel channel) throws IOException {
+		_pending.add(new NioConnection(this, channel, _workers));
+		_selector.wakeup();
+	}
+
+	void wakeup() {
+		_selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				_selector.select();
+				registerPending();
+
+				Iterator<SelectionKey> keys = _selector.selectedKeys()
+						.iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					NioConnection connection = (NioConnection) key
+							.attachment();
+					try {
+						if (key.isValid() && key.isReadable()) {
+							connection.onReadable();
+						}
+						if (key.isValid() && key.isWritable()) {
+							connection.onWritable();
+						}
+					} catch (CancelledKeyException e) {
+						connection.close();
+					}
+				}
+			} catch (Exception e) {
+				_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
+			}
+		}
+	}
+
+	private void registerPending() {
+		NioConnection connection;
+		while ((connection = _pending.poll()) != null) {
+			try {
+				connection.open(_selector);
+			} catch (Exception e) {
+				_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
+				connection.close();
+			}
+		}
+	}
+}
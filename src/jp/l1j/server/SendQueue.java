@@ -0,0 +1,278 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jp.l1j.configure.Config;
+import jp.l1j.server.utils.Cipher;
+import jp.l1j.server.utils.metrics.Counter;
+import jp.l1j.server.utils.metrics.MetricRegistry;
+
+/**
+ * 接続ごとの送信キュー。
+ * 任意のスレッドからパケットを追加でき、追加したスレッドは送信を待たない。
+ * 送信はExecutor上で1つずつ行われ、溜まっているパケットは暗号化してまとめて1回で書き込む。
+ * 送信待ちのデータ量がSendQueueCapacityを超えるか、SendQueueHighWaterMarkを超えた状態が
+ * SendQueueKickTime秒続いた場合、offerはfalseを返すので呼び出し元で切断すること。
+ */
+class SendQueue implements Runnable {
+	private static Logger _log = Logger.getLogger(SendQueue.class.getName());
+
+	// 1回の書き込みにまとめる最大バイト数
+	private static final int MAX_BATCH_BYTES = 65536;
+
+	private static final Counter _sentPackets = MetricRegistry.getInstance()
+			.counter("net.sent.packets");
+
+	private static final Counter _sentBytes = MetricRegistry.getInstance()
+			.counter("net.sent.bytes");
+
+	// net.sent.packetsとの比が、1回の書き込みにまとめられたパケット数になる
+	private static final Counter _flushes = MetricRegistry.getInstance()
+			.counter("net.send.flushes");
+
+	private static final Counter _overflows = MetricRegistry.getInstance()
+			.counter("net.send.overflows");
+
+	// 全接続の_queuedBytesの合計
+	private static final AtomicLong _totalQueuedBytes = new AtomicLong();
+
+	/**
+	 * 暗号化済みのデータの書き込み先。
+	 */
+	interface Sink {
+		/**
+		 * データを書き込む。戻った後にbufferは再利用される。
+		 */
+		void write(byte[] buffer, int length) throws IOException;
+
+		/**
+		 * 書き込み済みで、まだ相手に送られていないバイト数を返す。
+		 */
+		int getPendingBytes();
+	}
+
+	private final Cipher _cipher;
+
+	private final Sink _sink;
+
+	private final Executor _executor;
+
+	private final Queue<byte[]> _queue = new ConcurrentLinkedQueue<byte[]>();
+
+	// キューに追加されてから、Sinkへの書き込みが終わるまでのバイト数
+	private final AtomicInteger _queuedBytes = new AtomicInteger();
+
+	private final AtomicBoolean _scheduled = new AtomicBoolean();
+
+	private final AtomicBoolean _overflowed = new AtomicBoolean();
+
+	private volatile boolean _closed = false;
+
+	private volatile boolean _shutdown = false; // 以降のパケットは受け付けず、残りを書き込んでから閉じる
+
+	private volatile Runnable _onDrained;
+
+	private final AtomicBoolean _finished = new AtomicBoolean();
+
+	private volatile long _overSince = 0; // SendQueueHighWaterMarkを超えた時刻。下回っている間は0
+
+	// 以下はthisのモニターを取得した状態で使う
+	private byte[] _buffer = new byte[1024];
+
+	SendQueue(Cipher cipher, Sink sink, Executor executor) {
+		_cipher = cipher;
+		_sink = sink;
+		_executor = executor;
+	}
+
+	/**
+	 * パケットを送信待ちに追加する。contentは複数の送信先で共有されるため書き換えない。
+	 *
+	 * @return 送信待ちが上限を超えて、接続を切断すべき場合はfalse。falseは1度だけ返す
+	 */
+	boolean offer(byte[] content) {
+		if (_closed || _shutdown) {
+			return true;
+		}
+		int size = _queuedBytes.addAndGet(content.length + 2)
+				+ _sink.getPendingBytes();
+		_totalQueuedBytes.addAndGet(content.length + 2);
+		_queue.add(content);
+		if (_closed) {
+			close(); // closeと競合した場合に、追加した分を破棄する
+			return true;
+		}
+		schedule();
+		if (size <= Config.SEND_QUEUE_HIGH_WATER_MARK) {
+			_overSince = 0;
+			return true;
+		}
+		long now = System.currentTimeMillis();
+		if (_overSince == 0) {
+			_overSince = now;
+		}
+		if (size > Config.SEND_QUEUE_CAPACITY
+				|| now - _overSince > Config.SEND_QUEUE_KICK_TIME * 1000L) {
+			if (_overflowed.compareAndSet(false, true)) {
+				_overflows.increment();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 送信待ちのバイト数を返す。
+	 */
+	int size() {
+		return _queuedBytes.get() + _sink.getPendingBytes();
+	}
+
+	/**
+	 * 全接続の送信待ちのバイト数の合計を返す。Sinkに書き込み済みのものは含まない。
+	 */
+	static long getTotalQueuedBytes() {
+		return _totalQueuedBytes.get();
+	}
+
+	private void schedule() {
+		if (_scheduled.compareAndSet(false, true)) {
+			try {
+				_executor.execute(this);
+			} catch (RejectedExecutionException e) {
+				_scheduled.set(false);
+				_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
+				if (_shutdown) {
+					finish();
+				}
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			flush();
+		} finally {
+			_scheduled.set(false);
+		}
+		if (!_queue.isEmpty() && !_closed) {
+			schedule();
+		} else if (_shutdown) {
+			finish();
+		}
+	}
+
+	/**
+	 * 以降のパケットを受け付けず、送信待ちのパケットを書き込み用のExecutorで書き込んでから
+	 * onDrainedを実行する。呼び出し元のスレッドは書き込みを待たない。
+	 */
+	void shutdown(Runnable onDrained) {
+		_onDrained = onDrained;
+		_shutdown = true;
+		schedule(); // 実行中の書き込みがあれば、その終わりでfinishされる
+	}
+
+	// 残りを破棄して閉じ、shutdownで渡された処理を1度だけ実行する
+	private void finish() {
+		if (!_finished.compareAndSet(false, true)) {
+			return;
+		}
+		close();
+		Runnable onDrained = _onDrained;
+		if (onDrained != null) {
+			try {
+				onDrained.run();
+			} catch (Exception e) {
+				_log.log(Level.WARNING, e.getLocalizedMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * 送信待ちのパケットを、呼び出し元のスレッドで書き込む。
+	 */
+	synchronized void flush() {
+		while (!_closed) {
+			int length = 0;
+			int count = 0;
+			while (length < MAX_BATCH_BYTES) {
+				byte[] content = _queue.poll();
+				if (content == null) {
+					break;
+				}
+				length = append(content, length);
+				count++;
+			}
+			if (count == 0) {
+				return;
+			}
+			try {
+				_sink.write(_buffer, length);
+			} catch (IOException e) {
+				// 切断は受信側で検出されるので、以降の送信を止めるだけにする
+				close();
+				return;
+			} finally {
+				_queuedBytes.addAndGet(-length);
+				_totalQueuedBytes.addAndGet(-length);
+			}
+			_flushes.increment();
+			_sentPackets.add(count);
+			_sentBytes.add(length);
+		}
+	}
+
+	// 送信バッファ上でヘッダを付けて暗号化する
+	private int append(byte[] content, int offset) {
+		int length = content.length + 2;
+		if (_buffer.length < offset + length) {
+			byte[] buffer = new byte[Math.max(offset + length,
+					_buffer.length * 2)];
+			System.arraycopy(_buffer, 0, buffer, 0, offset);
+			_buffer = buffer;
+		}
+		_buffer[offset] = (byte) (length & 0xff);
+		_buffer[offset + 1] = (byte) (length >> 8 & 0xff);
+		System.arraycopy(content, 0, _buffer, offset + 2, content.length);
+		_cipher.encrypt(_buffer, offset + 2, content.length);
+		return offset + length;
+	}
+
+	/**
+	 * 以降の送信を止め、送信待ちのパケットを破棄する。
+	 */
+	void close() {
+		_closed = true;
+		int length = 0;
+		byte[] content;
+		while ((content = _queue.poll()) != null) {
+			length += content.length + 2;
+		}
+		_queuedBytes.addAndGet(-length);
+		_totalQueuedBytes.addAndGet(-length);
+	}
+}
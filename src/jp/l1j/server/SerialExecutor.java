@@ -0,0 +1,123 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 共有スレッドプール上で、投入されたタスクを投入順に1つずつ実行する。
+ * 処理待ちのタスクが無い間はスレッドを占有しない。
+ */
+public class SerialExecutor implements Executor, Runnable {
+	private static Logger _log = Logger.getLogger(SerialExecutor.class
+			.getName());
+
+	// 1回の実行で処理するタスクの最大数。他の接続の処理を待たせない為
+	private static final int MAX_TASKS_PER_RUN = 32;
+
+	private final Executor _executor;
+
+	private final int _capacity;
+
+	private final Queue<Runnable> _tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	private final AtomicInteger _size = new AtomicInteger();
+
+	private final AtomicBoolean _scheduled = new AtomicBoolean();
+
+	public SerialExecutor(Executor executor) {
+		this(executor, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param capacity
+	 *            処理待ちにできるタスクの最大数。超えた分は破棄される
+	 */
+	public SerialExecutor(Executor executor, int capacity) {
+		_executor = executor;
+		_capacity = capacity;
+	}
+
+	/**
+	 * タスクを処理待ちに追加する。
+	 * 
+	 * @return 追加できた場合true。容量を超えていた場合false
+	 */
+	public boolean offer(Runnable task) {
+		if (_size.incrementAndGet() > _capacity) {
+			_size.decrementAndGet();
+			return false;
+		}
+		_tasks.add(task);
+		schedule();
+		return true;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		if (!offer(task)) {
+			throw new RejectedExecutionException();
+		}
+	}
+
+	/**
+	 * 処理待ちのタスク数を返す。
+	 */
+	public int size() {
+		return _size.get();
+	}
+
+	private void schedule() {
+		if (_scheduled.compareAndSet(false, true)) {
+			try {
+				_executor.execute(this);
+			} catch (RejectedExecutionException e) {
+				_scheduled.set(false);
+				_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			for (int i = 0; i < MAX_TASKS_PER_RUN; i++) {
+				Runnable task = _tasks.poll();
+				if (task == null) {
+					break;
+				}
+				_size.decrementAndGet();
+				try {
+					task.run();
+				} catch (Throwable e) {
+					_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
+				}
+			}
+		} finally {
+			_scheduled.set(false);
+		}
+		if (!_tasks.isEmpty()) {
+			schedule();
+		}
+	}
+}
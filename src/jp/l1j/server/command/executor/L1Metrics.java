@@ -0,0 +1,52 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.command.executor;
+
+import java.util.logging.Logger;
+import static jp.l1j.locale.I18N.*;
+import jp.l1j.server.model.instance.L1PcInstance;
+import jp.l1j.server.packets.server.S_OutputRawString;
+import jp.l1j.server.packets.server.S_SystemMessage;
+import jp.l1j.server.utils.metrics.MetricRegistry;
+
+/**
+ * 直前の集計間隔のメトリクスを表示する。引数を指定した場合は、その文字列で始まるものだけを表示する。
+ * 例: .metrics packet.
+ */
+public class L1Metrics implements L1CommandExecutor {
+	private static Logger _log = Logger.getLogger(L1Metrics.class.getName());
+
+	private L1Metrics() {
+	}
+
+	public static L1CommandExecutor getInstance() {
+		return new L1Metrics();
+	}
+
+	@Override
+	public void execute(L1PcInstance pc, String cmdName, String arg) {
+		try {
+			String msg = MetricRegistry.getInstance().report(arg.trim(), " / ");
+			if (msg.length() == 0) {
+				msg = "-"; // 空文字列ではウィンドウが閉じられてしまう
+			}
+			pc.sendPackets(new S_OutputRawString(pc.getId(), I18N_SERVER_METRICS, msg));
+		} catch (Exception e) {
+			pc.sendPackets(new S_SystemMessage(String.format(I18N_COMMAND_ERROR, cmdName)));
+			// .%s コマンドエラー
+		}
+	}
+}
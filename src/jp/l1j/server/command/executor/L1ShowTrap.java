@@ -38,6 +38,7 @@ public class L1ShowTrap implements L1CommandExecutor {
 	public void execute(L1PcInstance pc, String cmdName, String arg) {
 		if (arg.equalsIgnoreCase("on")) {
 			pc.setSkillEffect(GMSTATUS_SHOWTRAPS, 0);
+			pc.updateObject();
 		} else if (arg.equalsIgnoreCase("off")) {
 			pc.removeSkillEffect(GMSTATUS_SHOWTRAPS);
 			for (L1Object obj : pc.getKnownObjects()) {
@@ -24,6 +24,7 @@ import jp.l1j.server.datatables.HouseTable;
 import jp.l1j.server.datatables.ItemTable;
 import jp.l1j.server.model.L1Clan;
 import jp.l1j.server.model.L1World;
+import jp.l1j.server.model.gametime.L1GameClockScheduler;
 import jp.l1j.server.model.instance.L1ItemInstance;
 import jp.l1j.server.model.instance.L1PcInstance;
 import jp.l1j.server.model.item.L1ItemId;
@@ -44,15 +45,17 @@ public class AuctionTimeController implements Runnable {
 		return _instance;
 	}
 
+	/**
+	 * 競売の締め切りの確認を開始する。
+	 */
+	public void start() {
+		L1GameClockScheduler.getInstance().scheduleWithFixedDelay(
+				"AuctionTimeController", this, 0, 60000);
+	}
+
 	@Override
 	public void run() {
-		try {
-			while (true) {
-				checkAuctionDeadline();
-				Thread.sleep(60000);
-			}
-		} catch (Exception e1) {
-		}
+		checkAuctionDeadline();
 	}
 
 	public Calendar getRealTime() {
@@ -19,10 +19,10 @@ import java.util.List;
 import java.util.logging.Logger;
 import jp.l1j.configure.Config;
 import static jp.l1j.locale.I18N.*;
-import jp.l1j.server.GeneralThreadPool;
 import jp.l1j.server.model.L1HouseLocation;
 import jp.l1j.server.model.L1Object;
 import jp.l1j.server.model.L1World;
+import jp.l1j.server.model.gametime.L1GameClockScheduler;
 import jp.l1j.server.model.instance.L1ItemInstance;
 import jp.l1j.server.model.instance.L1PcInstance;
 import jp.l1j.server.model.inventory.L1Inventory;
@@ -37,32 +37,21 @@ public class DeleteItemController {
 	public DeleteItemController() {
 	}
 
+	// 削除の10秒前に予告し、10秒後の削除を登録する
 	private class DeleteTimer implements Runnable {
 		public DeleteTimer() {
 		}
 
 		@Override
 		public void run() {
-			int time = Config.ALT_ITEM_DELETION_TIME * 60 * 1000 - 10 * 1000;
-			for (;;) {
-				try {
-					Thread.sleep(time);
-				} catch (Exception exception) {
-					_log.warning("L1DeleteItemOnGround error: " + exception);
-					break;
+			L1World.getInstance().broadcastPacketToAll(new S_SystemMessage(String.format(I18N_REMOVE_ITEMS_AFTER_FEW_SECONDS, 10)));
+			L1GameClockScheduler.getInstance().scheduleOnce("DeleteItemController", new Runnable() {
+				@Override
+				public void run() {
+					deleteItem();
+					L1World.getInstance().broadcastPacketToAll(new S_SystemMessage(I18N_REMOVED_ITEMS_ON_WORLD_MAP));
 				}
-				L1World.getInstance().broadcastPacketToAll(new S_SystemMessage(String.format(I18N_REMOVE_ITEMS_AFTER_FEW_SECONDS, 10)));
-				// ワールドマップ上のアイテムが、%d秒後に削除されます。
-				try {
-					Thread.sleep(10000);
-				} catch (Exception exception) {
-					_log.warning("L1DeleteItemOnGround error: " + exception);
-					break;
-				}
-				deleteItem();
-				L1World.getInstance().broadcastPacketToAll(new S_SystemMessage(I18N_REMOVED_ITEMS_ON_WORLD_MAP));
-				// ワールドマップ上のアイテムが削除されました。
-			}
+			}, 10000);
 		}
 	}
 
@@ -71,7 +60,10 @@ public class DeleteItemController {
 			return;
 		}
 		_deleteTimer = new DeleteTimer();
-		GeneralThreadPool.getInstance().execute(_deleteTimer); // タイマー開始
+		long interval = Config.ALT_ITEM_DELETION_TIME * 60 * 1000L;
+		L1GameClockScheduler.getInstance().scheduleWithFixedDelay(
+				"DeleteItemController.notice", _deleteTimer, interval - 10 * 1000,
+				interval); // タイマー開始
 	}
 
 	private void deleteItem() {
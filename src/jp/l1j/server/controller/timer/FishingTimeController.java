@@ -21,6 +21,7 @@ import java.util.logging.Logger;
 import jp.l1j.configure.Config;
 import jp.l1j.server.datatables.ItemTable;
 import jp.l1j.server.model.L1World;
+import jp.l1j.server.model.gametime.L1GameClockScheduler;
 import jp.l1j.server.model.instance.L1ItemInstance;
 import jp.l1j.server.model.instance.L1PcInstance;
 import jp.l1j.server.model.inventory.L1Inventory;
@@ -38,22 +39,24 @@ public class FishingTimeController implements Runnable {
 	
 	private static RandomGenerator _random = RandomGeneratorFactory.newRandom();
 
-	public static FishingTimeController getInstance() {
+	public static synchronized FishingTimeController getInstance() {
 		if (_instance == null) {
 			_instance = new FishingTimeController();
 		}
 		return _instance;
 	}
 
+	/**
+	 * 釣りの判定を開始する。
+	 */
+	public void start() {
+		L1GameClockScheduler.getInstance().scheduleWithFixedDelay(
+				"FishingTimeController", this, 300, 300);
+	}
+
 	@Override
 	public void run() {
-		try {
-			while (true) {
-				Thread.sleep(300);
-				fishing();
-			}
-		} catch (Exception e1) {
-		}
+		fishing();
 	}
 
 	public void addMember(L1PcInstance pc) {
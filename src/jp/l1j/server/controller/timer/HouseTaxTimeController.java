@@ -24,6 +24,7 @@ import jp.l1j.server.datatables.ClanTable;
 import jp.l1j.server.datatables.HouseTable;
 import jp.l1j.server.model.L1Clan;
 import jp.l1j.server.model.L1World;
+import jp.l1j.server.model.gametime.L1GameClockScheduler;
 import jp.l1j.server.templates.L1AuctionHouse;
 import jp.l1j.server.templates.L1House;
 
@@ -39,15 +40,17 @@ public class HouseTaxTimeController implements Runnable {
 		return _instance;
 	}
 
+	/**
+	 * アジトの税金の期限の確認を開始する。
+	 */
+	public void start() {
+		L1GameClockScheduler.getInstance().scheduleWithFixedDelay(
+				"HouseTaxTimeController", this, 0, 600000);
+	}
+
 	@Override
 	public void run() {
-		try {
-			while (true) {
-				checkTaxDeadline();
-				Thread.sleep(600000);
-			}
-		} catch (Exception e1) {
-		}
+		checkTaxDeadline();
 	}
 
 	public Calendar getRealTime() {
@@ -19,6 +19,7 @@ import java.util.logging.Logger;
 import jp.l1j.server.datatables.SpawnLightTable;
 import jp.l1j.server.model.L1Object;
 import jp.l1j.server.model.L1World;
+import jp.l1j.server.model.gametime.L1GameClockScheduler;
 import jp.l1j.server.model.gametime.L1GameTimeClock;
 import jp.l1j.server.model.instance.L1FieldObjectInstance;
 
@@ -36,15 +37,17 @@ public class LightTimeController implements Runnable {
 		return _instance;
 	}
 
+	/**
+	 * 照明の点灯時間の確認を開始する。
+	 */
+	public void start() {
+		L1GameClockScheduler.getInstance().scheduleWithFixedDelay(
+				"LightTimeController", this, 0, 60000);
+	}
+
 	@Override
 	public void run() {
-		try {
-			while (true) {
-				checkLightTime();
-				Thread.sleep(60000);
-			}
-		} catch (Exception e1) {
-		}
+		checkLightTime();
 	}
 
 	private void checkLightTime() {
@@ -27,6 +27,7 @@ import javax.xml.bind.JAXBContext;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.*;
 import jp.l1j.server.datatables.MapTimerTable;
+import jp.l1j.server.model.gametime.L1GameClockScheduler;
 import jp.l1j.server.utils.PerformanceTimer;
 
 @XmlAccessorType(XmlAccessType.FIELD)
@@ -120,16 +121,17 @@ public class MapTimeController implements Runnable {
 		_dataMap = dataMap;
 	}
 	
+	/**
+	 * マップの滞在時間のリセット時刻の確認を開始する。
+	 */
+	public void start() {
+		L1GameClockScheduler.getInstance().scheduleEveryMinute(
+				"MapTimeController", this);
+	}
+
 	@Override
 	public void run() {
-		try {
-			while (true) {
-				checkResetTime();
-				Thread.sleep(60000);
-			}
-		} catch (Exception e1) {
-			_log.warning(e1.getMessage());
-		}
+		checkResetTime();
 	}
 
 	private void checkResetTime() {
@@ -23,6 +23,7 @@ import jp.l1j.configure.Config;
 import jp.l1j.server.datatables.NpcChatTable;
 import jp.l1j.server.model.L1Object;
 import jp.l1j.server.model.L1World;
+import jp.l1j.server.model.gametime.L1GameClockScheduler;
 import jp.l1j.server.model.instance.L1NpcInstance;
 import jp.l1j.server.templates.L1NpcChat;
 
@@ -38,16 +39,17 @@ public class NpcChatTimeController implements Runnable {
 		return _instance;
 	}
 
+	/**
+	 * NPCのチャット開始時間の確認を開始する。
+	 */
+	public void start() {
+		L1GameClockScheduler.getInstance().scheduleWithFixedDelay(
+				"NpcChatTimeController", this, 0, 60000);
+	}
+
 	@Override
 	public void run() {
-		try {
-			while (true) {
-				checkNpcChatTime(); // チャット開始時間をチェック
-				Thread.sleep(60000);
-			}
-		} catch (Exception e1) {
-			_log.warning(e1.getMessage());
-		}
+		checkNpcChatTime(); // チャット開始時間をチェック
 	}
 
 	private void checkNpcChatTime() {
@@ -26,6 +26,7 @@ import javax.xml.bind.JAXBContext;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.*;
 import jp.l1j.server.GameServer;
+import jp.l1j.server.model.gametime.L1GameClockScheduler;
 import jp.l1j.server.utils.PerformanceTimer;
 
 @XmlAccessorType(XmlAccessType.FIELD)
@@ -40,7 +41,7 @@ public class ShutdownTimeController implements Runnable {
 
 	private static ShutdownTimeController _instance;
 
-	public static ShutdownTimeController getInstance() {
+	public static synchronized ShutdownTimeController getInstance() {
 		if (_instance == null) {
 			_instance = new ShutdownTimeController();
 		}
@@ -103,16 +104,17 @@ public class ShutdownTimeController implements Runnable {
 		_dataMap = dataMap;
 	}
 	
+	/**
+	 * 自動シャットダウンの時刻の確認を開始する。
+	 */
+	public void start() {
+		L1GameClockScheduler.getInstance().scheduleEveryMinute(
+				"ShutdownTimeController", this);
+	}
+
 	@Override
 	public void run() {
-		try {
-			while (true) {
-				checkShutdownTime(); // Shutdown時刻をチェック
-				Thread.sleep(60000);
-			}
-		} catch (Exception e1) {
-			_log.warning(e1.getMessage());
-		}
+		checkShutdownTime(); // Shutdown時刻をチェック
 	}
 
 	private void checkShutdownTime() {
@@ -18,6 +18,7 @@ package jp.l1j.server.controller.timer;
 import java.util.logging.Logger;
 import jp.l1j.server.datatables.UbTable;
 import jp.l1j.server.model.L1UltimateBattle;
+import jp.l1j.server.model.gametime.L1GameClockScheduler;
 
 public class UbTimeController implements Runnable {
 	private static Logger _log = Logger.getLogger(UbTimeController.class.getName());
@@ -31,16 +32,17 @@ public class UbTimeController implements Runnable {
 		return _instance;
 	}
 
+	/**
+	 * UBの開始時間の確認を開始する。
+	 */
+	public void start() {
+		L1GameClockScheduler.getInstance().scheduleWithFixedDelay(
+				"UbTimeController", this, 0, 15000);
+	}
+
 	@Override
 	public void run() {
-		try {
-			while (true) {
-				checkUbTime(); // UB開始時間をチェック
-				Thread.sleep(15000);
-			}
-		} catch (Exception e1) {
-			_log.warning(e1.getMessage());
-		}
+		checkUbTime(); // UB開始時間をチェック
 	}
 
 	private void checkUbTime() {
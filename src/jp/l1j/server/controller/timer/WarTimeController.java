@@ -27,6 +27,7 @@ import jp.l1j.server.model.L1Object;
 import jp.l1j.server.model.L1Teleport;
 import jp.l1j.server.model.L1WarSpawn;
 import jp.l1j.server.model.L1World;
+import jp.l1j.server.model.gametime.L1GameClockScheduler;
 import jp.l1j.server.model.instance.L1CrownInstance;
 import jp.l1j.server.model.instance.L1DoorInstance;
 import jp.l1j.server.model.instance.L1FieldObjectInstance;
@@ -60,15 +61,17 @@ public final class WarTimeController implements Runnable {
 		return _instance;
 	}
 
+	/**
+	 * 攻城戦の時間の確認を開始する。
+	 */
+	public void start() {
+		L1GameClockScheduler.getInstance().scheduleWithFixedDelay(
+				"WarTimeController", this, 0, 1000);
+	}
+
 	@Override
 	public void run() {
-		try {
-			while (true) {
-				checkWarTime(); // 戦争時間をチェック
-				Thread.sleep(1000);
-			}
-		} catch (Exception e1) {
-		}
+		checkWarTime(); // 戦争時間をチェック
 	}
 
 	public Calendar getRealTime() {
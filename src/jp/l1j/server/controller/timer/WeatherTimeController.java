@@ -19,6 +19,7 @@ import java.util.logging.Logger;
 import jp.l1j.configure.Config;
 import static jp.l1j.locale.I18N.*;
 import jp.l1j.server.model.L1World;
+import jp.l1j.server.model.gametime.L1GameClockScheduler;
 import jp.l1j.server.packets.server.S_Weather;
 import jp.l1j.server.random.RandomGenerator;
 import jp.l1j.server.random.RandomGeneratorFactory;
@@ -37,15 +38,18 @@ public class WeatherTimeController implements Runnable {
 		return _instance;
 	}
 
+	/**
+	 * 天候の変更を開始する。
+	 */
+	public void start() {
+		long interval = Config.WEATHER_INTERVAL * 1000L;
+		L1GameClockScheduler.getInstance().scheduleWithFixedDelay(
+				"WeatherTimeController", this, interval, interval);
+	}
+
+	@Override
 	public void run() {
-		try {
-			while (true) {
-				Thread.sleep(Config.WEATHER_INTERVAL * 1000);
-				Weather();
-			}
-		} catch (Exception e1) {
-			_log.warning(e1.getMessage());
-		}
+		Weather();
 	}
 
 	private void Weather() {
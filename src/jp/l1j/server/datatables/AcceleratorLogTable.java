@@ -15,34 +15,17 @@
 
 package jp.l1j.server.datatables;
 
-import java.sql.PreparedStatement;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.sql.Timestamp;
 import jp.l1j.server.model.instance.L1PcInstance;
-import jp.l1j.server.utils.L1DatabaseFactory;
-import jp.l1j.server.utils.SqlUtil;
+import jp.l1j.server.storage.LogWriter;
 
 public class AcceleratorLogTable {
-	private static Logger _log = Logger.getLogger(AcceleratorLogTable.class.getName());
+	private static final LogWriter _writer = new LogWriter("accelerator_logs",
+			"INSERT INTO accelerator_logs SET account_id=?, char_id=?, clan_id=?, map_id=?, loc_x=?, loc_y=?, datetime=?");
 
 	public void storeLogAccelerator(L1PcInstance pc) {
-		java.sql.Connection con = null;
-		PreparedStatement pstm = null;
-		try {
-			con = L1DatabaseFactory.getInstance().getConnection();
-			pstm = con.prepareStatement("INSERT INTO accelerator_logs SET account_id=?, char_id=?, clan_id=?, map_id=?, loc_x=?, loc_y=?, datetime=SYSDATE()");
-			pstm.setInt(1, pc.getAccountId());
-			pstm.setInt(2, pc.getId());
-			pstm.setInt(3, pc.getClanId());
-			pstm.setInt(4, pc.getMapId());
-			pstm.setInt(5, pc.getX());
-			pstm.setInt(6, pc.getY());
-			pstm.execute();
-		} catch (Exception e) {
-			_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
-		} finally {
-			SqlUtil.close(pstm);
-			SqlUtil.close(con);
-		}
+		_writer.offer(pc.getAccountId(), pc.getId(), pc.getClanId(),
+				(int) pc.getMapId(), pc.getX(), pc.getY(),
+				new Timestamp(System.currentTimeMillis()));
 	}
 }
@@ -39,7 +39,7 @@ public class AuctionHouseTable {
 	private final Map<Integer, L1AuctionHouse> _boards =
 			new ConcurrentHashMap<Integer, L1AuctionHouse>();
 
-	private static AuctionHouseTable getInstance() {
+	private static synchronized AuctionHouseTable getInstance() {
 		if (_instance == null) {
 			_instance = new AuctionHouseTable();
 		}
@@ -19,22 +19,23 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jp.l1j.server.model.L1Buddy;
 import jp.l1j.server.model.L1World;
 import jp.l1j.server.model.instance.L1PcInstance;
 import jp.l1j.server.utils.L1DatabaseFactory;
+import jp.l1j.server.utils.L1QueryUtil;
+import jp.l1j.server.utils.PerformanceTimer;
 import jp.l1j.server.utils.SqlUtil;
+import jp.l1j.server.utils.collections.IntHashMap;
 
 public class BuddyTable {
 	private static Logger _log = Logger.getLogger(BuddyTable.class.getName());
 
 	private static BuddyTable _instance;
 
-	private final Map<Integer, L1Buddy> _buddys = new HashMap<Integer, L1Buddy>();
+	private final IntHashMap<L1Buddy> _buddys = new IntHashMap<L1Buddy>();
 
 	public static BuddyTable getInstance() {
 		if (_instance == null) {
@@ -44,47 +45,63 @@ public class BuddyTable {
 	}
 
 	private BuddyTable() {
+		load();
+	}
 
-		Connection con = null;
-		PreparedStatement charIdPS = null;
-		ResultSet charIdRS = null;
-		try {
-			con = L1DatabaseFactory.getInstance().getConnection();
-			charIdPS = con.prepareStatement("SELECT distinct(char_id) as char_id FROM character_buddys");
-			charIdRS = charIdPS.executeQuery();
-			while (charIdRS.next()) {
-				PreparedStatement buddysPS = null;
-				ResultSet buddysRS = null;
-				try {
-					buddysPS = con.prepareStatement("SELECT buddy_id FROM character_buddys WHERE char_id = ?");
-					int charId = charIdRS.getInt("char_id");
-					buddysPS.setInt(1, charId);
-					L1Buddy buddy = new L1Buddy(charId);
-					buddysRS = buddysPS.executeQuery();
-					while (buddysRS.next()) {
-						int id = buddysRS.getInt("buddy_id");
-						String name = CharacterTable.getInstance().getCharName(id);
-						buddy.add(id, name);
-					}
+	/**
+	 * DBから全てのキャラクターの友達リストを読み込み直す。
+	 * 参照中のL1Buddyは作り直さずに、内容だけを入れ替える。
+	 */
+	public void reload() {
+		load();
+	}
+
+	// 友達の名前と合わせて、1回のクエリで全ての友達リストを読み込む
+	private void load() {
+		PerformanceTimer timer = new PerformanceTimer();
+		// 読み込む間に追加、削除があった友達リストは、次回の読み込みまで更新しない
+		IntHashMap<Integer> versions = new IntHashMap<Integer>();
+		synchronized (this) {
+			for (int charId : _buddys.keys()) {
+				versions.put(charId, _buddys.get(charId).getVersion());
+			}
+		}
+		final IntHashMap<L1Buddy> buddys = new IntHashMap<L1Buddy>();
+		L1QueryUtil.selectEach(new L1QueryUtil.RowHandler() {
+			@Override
+			public void handle(ResultSet rs) throws SQLException {
+				int charId = rs.getInt("char_id");
+				L1Buddy buddy = buddys.get(charId);
+				if (buddy == null) {
+					buddy = new L1Buddy(charId);
+					buddys.put(charId, buddy);
+				}
+				buddy.add(rs.getInt("buddy_id"), rs.getString("name"));
+			}
+		}, "SELECT character_buddys.char_id, character_buddys.buddy_id, characters.name"
+				+ " FROM character_buddys"
+				+ " LEFT JOIN characters ON characters.id = character_buddys.buddy_id");
+		synchronized (this) {
+			for (int charId : versions.keys()) {
+				if (!buddys.containsKey(charId)) {
+					_buddys.get(charId).replace(new L1Buddy(charId),
+							versions.get(charId));
+				}
+			}
+			for (L1Buddy buddy : buddys.values()) {
+				L1Buddy current = _buddys.get(buddy.getCharId());
+				if (current == null) {
 					_buddys.put(buddy.getCharId(), buddy);
-				} catch (Exception e) {
-					_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
-				} finally {
-					SqlUtil.close(buddysRS);
-					SqlUtil.close(buddysPS);
+				} else if (versions.containsKey(buddy.getCharId())) {
+					current.replace(buddy, versions.get(buddy.getCharId()));
 				}
 			}
-			_log.fine("loaded buddy: " + _buddys.size() + " records");
-		} catch (SQLException e) {
-			_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
-		} finally {
-			SqlUtil.close(charIdRS);
-			SqlUtil.close(charIdPS);
-			SqlUtil.close(con);
 		}
+		_log.fine("loaded buddy: " + buddys.size() + " records, "
+				+ timer.elapsedTimeMillis() + "ms");
 	}
 
-	public L1Buddy getBuddyTable(int charId) {
+	public synchronized L1Buddy getBuddyTable(int charId) {
 		L1Buddy buddy = _buddys.get(charId);
 		if (buddy == null) {
 			buddy = new L1Buddy(charId);
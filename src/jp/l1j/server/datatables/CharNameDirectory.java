@@ -0,0 +1,163 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.datatables;
+
+import jp.l1j.server.utils.collections.IntHashMap;
+
+/**
+ * 全キャラクターの名前とオブジェクトIDの対応表。
+ * IDから名前、名前(大文字小文字を区別しない)からIDのどちらもO(1)で引ける。
+ * 名前からの索引はIDだけを格納するオープンアドレス法のテーブルで、名前の比較はIDから引いた名前で行う。
+ */
+class CharNameDirectory {
+	private final IntHashMap<String> _names;
+	private int[] _slots; // 名前のハッシュの位置に格納したID。0は空き
+	private int _size = 0;
+
+	CharNameDirectory(int initialCapacity) {
+		_names = new IntHashMap<String>(initialCapacity);
+		int capacity = 16;
+		while (capacity * 3 < initialCapacity * 4) {
+			capacity <<= 1;
+		}
+		_slots = new int[capacity];
+	}
+
+	// equalsIgnoreCaseと一致するよう、1文字ずつ大文字にしてから小文字にしたハッシュ
+	private static int hash(String name) {
+		int h = 0;
+		for (int i = 0; i < name.length(); i++) {
+			h = 31 * h
+					+ Character.toLowerCase(Character.toUpperCase(name
+							.charAt(i)));
+		}
+		return h ^ (h >>> 16);
+	}
+
+	// 名前の位置、無ければ-1
+	private int indexOf(String name) {
+		int mask = _slots.length - 1;
+		for (int i = hash(name) & mask; _slots[i] != 0; i = (i + 1) & mask) {
+			if (name.equalsIgnoreCase(_names.get(_slots[i]))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public synchronized String getName(int id) {
+		return _names.get(id);
+	}
+
+	/**
+	 * 名前からIDを返す。大文字小文字は区別しない。
+	 *
+	 * @return 見つからない場合は0
+	 */
+	public synchronized int getId(String name) {
+		int i = indexOf(name);
+		return i < 0 ? 0 : _slots[i];
+	}
+
+	public synchronized int size() {
+		return _names.size();
+	}
+
+	/**
+	 * キャラクターを登録する。同じIDや同じ名前が登録済みの場合は置き換える。
+	 */
+	public synchronized void put(int id, String name) {
+		if (id == 0 || name == null) {
+			return;
+		}
+		remove(id);
+		int i = indexOf(name);
+		if (i >= 0) {
+			_names.remove(_slots[i]); // 大文字小文字だけが異なる古い名前
+			_slots[i] = id;
+			_names.put(id, name);
+			return;
+		}
+		_names.put(id, name);
+		if (++_size * 4 > _slots.length * 3) {
+			rehash(_slots.length << 1);
+		}
+		int mask = _slots.length - 1;
+		int j = hash(name) & mask;
+		while (_slots[j] != 0) {
+			j = (j + 1) & mask;
+		}
+		_slots[j] = id;
+	}
+
+	/**
+	 * 名前を変更する。
+	 */
+	public synchronized void rename(int id, String newName) {
+		put(id, newName);
+	}
+
+	public synchronized void remove(int id) {
+		String name = _names.get(id);
+		if (name == null) {
+			return;
+		}
+		removeSlot(indexOf(name));
+		_names.remove(id);
+	}
+
+	public synchronized void remove(String name) {
+		int i = indexOf(name);
+		if (i < 0) {
+			return;
+		}
+		int id = _slots[i];
+		removeSlot(i);
+		_names.remove(id);
+	}
+
+	// 後続の要素を詰め、探索が途切れないようにする
+	private void removeSlot(int i) {
+		int mask = _slots.length - 1;
+		int hole = i;
+		for (int j = (i + 1) & mask; _slots[j] != 0; j = (j + 1) & mask) {
+			int home = hash(_names.get(_slots[j])) & mask;
+			// homeが(hole, j]の範囲に無ければ、holeへ移動できる
+			if (((j - home) & mask) >= ((j - hole) & mask)) {
+				_slots[hole] = _slots[j];
+				hole = j;
+			}
+		}
+		_slots[hole] = 0;
+		_size--;
+	}
+
+	private void rehash(int capacity) {
+		int[] slots = _slots;
+		_slots = new int[capacity];
+		int mask = capacity - 1;
+		for (int id : slots) {
+			if (id == 0) {
+				continue;
+			}
+			int j = hash(_names.get(id)) & mask;
+			while (_slots[j] != 0) {
+				j = (j + 1) & mask;
+			}
+			_slots[j] = id;
+		}
+	}
+}
@@ -19,8 +19,6 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jp.l1j.server.model.instance.L1PcInstance;
@@ -28,8 +26,8 @@ import jp.l1j.server.model.map.L1Map;
 import jp.l1j.server.model.map.L1WorldMap;
 import jp.l1j.server.storage.CharacterStorage;
 import jp.l1j.server.storage.mysql.MySqlCharacterStorage;
-import jp.l1j.server.templates.L1CharName;
 import jp.l1j.server.utils.L1DatabaseFactory;
+import jp.l1j.server.utils.L1QueryUtil;
 import jp.l1j.server.utils.SqlUtil;
 
 public class CharacterTable {
@@ -39,7 +37,7 @@ public class CharacterTable {
 
 	private static Logger _log = Logger.getLogger(CharacterTable.class.getName());
 
-	private final Map<String, L1CharName> _charNameList = new ConcurrentHashMap<String, L1CharName>();
+	private final CharNameDirectory _charNames = new CharNameDirectory(1024);
 
 	private CharacterTable() {
 		_charStorage = new MySqlCharacterStorage();
@@ -55,13 +53,7 @@ public class CharacterTable {
 	public void storeNewCharacter(L1PcInstance pc) throws Exception {
 		synchronized (pc) {
 			_charStorage.createCharacter(pc);
-			String name = pc.getName();
-			if (!_charNameList.containsKey(name)) {
-				L1CharName cn = new L1CharName();
-				cn.setName(name);
-				cn.setId(pc.getId());
-				_charNameList.put(name, cn);
-			}
+			_charNames.put(pc.getId(), pc.getName());
 			_log.finest("storeNewCharacter");
 		}
 	}
@@ -76,9 +68,7 @@ public class CharacterTable {
 	public void deleteCharacter(int accountId, String charName) throws Exception {
 		// 多分、同期は必要ない
 		_charStorage.deleteCharacter(accountId, charName);
-		if (_charNameList.containsKey(charName)) {
-			_charNameList.remove(charName);
-		}
+		_charNames.remove(charName);
 		_log.finest("deleteCharacter");
 	}
 
@@ -238,41 +228,32 @@ public class CharacterTable {
 	}
 
 	public void loadAllCharName() {
-		L1CharName cn = null;
-		String name = null;
-		Connection con = null;
-		PreparedStatement pstm = null;
-		ResultSet rs = null;
-		try {
-			con = L1DatabaseFactory.getInstance().getConnection();
-			pstm = con.prepareStatement("SELECT * FROM characters");
-			rs = pstm.executeQuery();
-			while (rs.next()) {
-				cn = new L1CharName();
-				name = rs.getString("name");
-				cn.setName(name);
-				cn.setId(rs.getInt("id"));
-				_charNameList.put(name, cn);
+		L1QueryUtil.selectEach(new L1QueryUtil.RowHandler() {
+			@Override
+			public void handle(ResultSet rs) throws SQLException {
+				_charNames.put(rs.getInt("id"), rs.getString("name"));
 			}
-		} catch (SQLException e) {
-			_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
-		} finally {
-			SqlUtil.close(rs);
-			SqlUtil.close(pstm);
-			SqlUtil.close(con);
-		}
+		}, "SELECT id, name FROM characters");
+		_log.config("キャラクター名 " + _charNames.size() + "件");
 	}
 
-	public L1CharName[] getCharNameList() {
-		return _charNameList.values().toArray(new L1CharName[_charNameList.size()]);
+	/**
+	 * キャラクター名を変更した際に、名前の対応表を更新する。
+	 */
+	public void updateCharName(int charId, String newName) {
+		_charNames.rename(charId, newName);
 	}
-	
+
 	public String getCharName(int charId) {
-		for (L1CharName cn : getCharNameList()) {
-			if (charId == cn.getId()) {
-				return cn.getName();
-			}
-		}
-		return null;
+		return _charNames.getName(charId);
+	}
+
+	/**
+	 * キャラクター名からオブジェクトIDを返す。大文字小文字は区別しない。
+	 *
+	 * @return 存在しない場合は0
+	 */
+	public int getCharId(String charName) {
+		return _charNames.getId(charName);
 	}
 }
@@ -15,25 +15,25 @@
 
 package jp.l1j.server.datatables;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.sql.Timestamp;
 import jp.l1j.configure.Config;
 import jp.l1j.server.model.instance.L1PcInstance;
-import jp.l1j.server.utils.L1DatabaseFactory;
-import jp.l1j.server.utils.SqlUtil;
+import jp.l1j.server.storage.LogWriter;
 
 public class ChatLogTable {
-	private static Logger _log = Logger.getLogger(ChatLogTable.class.getName());
-
 	/*
 	 * コード的にはHashMapを利用すべきだが、パフォーマンス上の問題があるかもしれない為、配列で妥協。
 	 * HashMapへの変更を検討する場合は、パフォーマンス上問題が無いか十分注意すること。
 	 */
 	private final boolean[] loggingConfig = new boolean[15];
 
+	// チャットの処理がDBへの書き込みを待たないよう、非同期で書き込む
+	private final LogWriter _writer = new LogWriter("chat_logs", String.format(
+			"INSERT INTO chat_logs SET %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s",
+			"account_id=?", "char_id=?", "clan_id=?", "map_id=?", "loc_x=?", "loc_y=?", "type=?",
+			"target_account_id=?", "target_char_id=?", "target_clan_id=?", "target_map_id=?", "target_loc_x=?", "target_loc_y=?",
+			"content=?", "datetime=?"));
+
 	private ChatLogTable() {
 		loadConfig();
 	}
@@ -62,6 +62,10 @@ public class ChatLogTable {
 		return loggingConfig[type];
 	}
 
+	public LogWriter getWriter() {
+		return _writer;
+	}
+
 	public void storeChat(L1PcInstance pc, L1PcInstance target, String text, int type) {
 		if (!isLoggingTarget(type)) {
 			return;
@@ -76,47 +80,17 @@ public class ChatLogTable {
 		// 11:パーティチャット
 		// 13:連合チャット
 		// 14:チャットパーティ
-		Connection con = null;
-		PreparedStatement pstm = null;
-		try {
-			con = L1DatabaseFactory.getInstance().getConnection();
-			if (target != null) {
-				pstm = con.prepareStatement(String.format("INSERT INTO chat_logs SET %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s",
-					"account_id=?", "char_id=?", "clan_id=?", "map_id=?", "loc_x=?", "loc_y=?", "type=?",
-					"target_account_id=?", "target_char_id=?", "target_clan_id=?", "target_map_id=?", "target_loc_x=?", "target_loc_y=?",
-					"content=?", "datetime=SYSDATE()"));
-				pstm.setInt(1, pc.getAccountId());
-				pstm.setInt(2, pc.getId());
-				pstm.setInt(3, pc.getClanId());
-				pstm.setInt(4, pc.getMapId());
-				pstm.setInt(5, pc.getX());
-				pstm.setInt(6, pc.getY());
-				pstm.setInt(7, type);
-				pstm.setInt(8, target.getAccountId());
-				pstm.setInt(9, target.getId());
-				pstm.setInt(10, target.getClanId());
-				pstm.setInt(11, target.getMapId());
-				pstm.setInt(12, target.getX());
-				pstm.setInt(13, target.getY());
-				pstm.setString(14, text);
-			} else {
-				pstm = con.prepareStatement(String.format("INSERT INTO chat_logs SET %s, %s, %s, %s, %s, %s, %s, %s, %s",
-					"account_id=?", "char_id=?", "clan_id=?", "map_id=?", "loc_x=?", "loc_y=?", "type=?", "content=?", "datetime=SYSDATE()"));
-				pstm.setInt(1, pc.getAccountId());
-				pstm.setInt(2, pc.getId());
-				pstm.setInt(3, pc.getClanId());
-				pstm.setInt(4, pc.getMapId());
-				pstm.setInt(5, pc.getX());
-				pstm.setInt(6, pc.getY());
-				pstm.setInt(7, type);
-				pstm.setString(8, text);
-			}
-			pstm.execute();
-		} catch (SQLException e) {
-			_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
-		} finally {
-			SqlUtil.close(pstm);
-			SqlUtil.close(con);
+		Timestamp datetime = new Timestamp(System.currentTimeMillis());
+		if (target != null) {
+			_writer.offer(pc.getAccountId(), pc.getId(), pc.getClanId(),
+					(int) pc.getMapId(), pc.getX(), pc.getY(), type,
+					target.getAccountId(), target.getId(), target.getClanId(),
+					(int) target.getMapId(), target.getX(), target.getY(),
+					text, datetime);
+		} else {
+			_writer.offer(pc.getAccountId(), pc.getId(), pc.getClanId(),
+					(int) pc.getMapId(), pc.getX(), pc.getY(), type, null,
+					null, null, null, null, null, text, datetime);
 		}
 	}
 }
\ No newline at end of file
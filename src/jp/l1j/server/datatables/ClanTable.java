@@ -20,21 +20,25 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jp.l1j.server.model.L1Clan;
 import jp.l1j.server.model.L1World;
 import jp.l1j.server.model.instance.L1PcInstance;
+import jp.l1j.server.templates.L1InventoryItem;
 import jp.l1j.server.utils.IdFactory;
 import jp.l1j.server.utils.L1DatabaseFactory;
+import jp.l1j.server.utils.L1QueryUtil;
+import jp.l1j.server.utils.PerformanceTimer;
 import jp.l1j.server.utils.SqlUtil;
+import jp.l1j.server.utils.collections.IntHashMap;
 
 public class ClanTable {
 	private static Logger _log = Logger.getLogger(ClanTable.class.getName());
 
-	private final HashMap<Integer, L1Clan> _clans = new HashMap<Integer, L1Clan>();
+	private final IntHashMap<L1Clan> _clans = new IntHashMap<L1Clan>();
 
 	private static ClanTable _instance;
 
@@ -46,63 +50,99 @@ public class ClanTable {
 	}
 
 	private ClanTable() {
-		{
-			Connection con = null;
-			PreparedStatement pstm = null;
-			ResultSet rs = null;
-			try {
-				con = L1DatabaseFactory.getInstance().getConnection();
-				pstm = con.prepareStatement("SELECT * FROM clans ORDER BY id");
-				rs = pstm.executeQuery();			
-				while (rs.next()) {
-					int clan_id = rs.getInt("id");
-					L1Clan clan = new L1Clan(clan_id);
+		load();
+	}
+
+	/**
+	 * DBから血盟を読み込み直す。読み込み済みの血盟は作り直さずに内容と血盟員を更新し、
+	 * 新しい血盟だけを追加して倉庫を読み込む。DBから削除された血盟はワールドから取り除く。
+	 */
+	public void reload() {
+		load();
+	}
+
+	// 血盟、血盟員、血盟倉庫をそれぞれ1回のクエリで読み込む
+	private synchronized void load() {
+		PerformanceTimer timer = new PerformanceTimer();
+		final IntHashMap<L1Clan> loaded = new IntHashMap<L1Clan>();
+		final List<L1Clan> created = new ArrayList<L1Clan>();
+		L1QueryUtil.selectEach(new L1QueryUtil.RowHandler() {
+			@Override
+			public void handle(ResultSet rs) throws SQLException {
+				int clanId = rs.getInt("id");
+				L1Clan clan = getTemplate(clanId);
+				if (clan == null) {
+					clan = new L1Clan(clanId);
 					clan.setClanName(rs.getString("name"));
-					clan.setLeaderId(rs.getInt("leader_id"));
-					clan.setLeaderName(CharacterTable.getInstance().getCharName(clan.getLeaderId()));
-					clan.setCastleId(rs.getInt("castle_id"));
-					clan.setHouseId(rs.getInt("house_id"));
-					clan.setCreatedAt(rs.getTimestamp("created_at"));
-					L1World.getInstance().storeClan(clan);
-					_clans.put(clan_id, clan);
+					created.add(clan);
 				}
-			} catch (SQLException e) {
-				_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
-			} finally {
-				SqlUtil.close(rs);
-				SqlUtil.close(pstm);
-				SqlUtil.close(con);
+				clan.setLeaderId(rs.getInt("leader_id"));
+				clan.setLeaderName(rs.getString("leader_name"));
+				clan.setCastleId(rs.getInt("castle_id"));
+				clan.setHouseId(rs.getInt("house_id"));
+				clan.setCreatedAt(rs.getTimestamp("created_at"));
+				loaded.put(clanId, clan);
 			}
+		}, "SELECT clans.*, characters.name AS leader_name FROM clans"
+				+ " LEFT JOIN characters ON characters.id = clans.leader_id");
+
+		// 血盟員を読み込む間に加入、脱退があった血盟は、次回の読み込みまで更新しない
+		IntHashMap<Integer> versions = new IntHashMap<Integer>();
+		for (L1Clan clan : loaded.values()) {
+			versions.put(clan.getClanId(), clan.getMemberVersion());
 		}
 
-		Collection<L1Clan> AllClan = L1World.getInstance().getAllClans();
-		for (L1Clan clan : AllClan) {
-			Connection con = null;
-			PreparedStatement pstm = null;
-			ResultSet rs = null;
-			try {
-				con = L1DatabaseFactory.getInstance().getConnection();
-				pstm = con.prepareStatement("SELECT name FROM characters WHERE clan_id = ?");
-				pstm.setInt(1, clan.getClanId());
-				rs = pstm.executeQuery();
-				while (rs.next()) {
-					clan.addMemberName(rs.getString("name"));
+		final IntHashMap<List<String>> members = new IntHashMap<List<String>>();
+		L1QueryUtil.selectEach(new L1QueryUtil.RowHandler() {
+			@Override
+			public void handle(ResultSet rs) throws SQLException {
+				int clanId = rs.getInt("clan_id");
+				List<String> names = members.get(clanId);
+				if (names == null) {
+					names = new ArrayList<String>();
+					members.put(clanId, names);
 				}
-			} catch (SQLException e) {
-				_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
-			} finally {
-				SqlUtil.close(rs);
-				SqlUtil.close(pstm);
-				SqlUtil.close(con);
+				names.add(rs.getString("name"));
 			}
+		}, "SELECT clan_id, name FROM characters WHERE clan_id <> 0");
+
+		// 登録済みの血盟も、血盟員のリストは新しいものに差し替える
+		for (L1Clan clan : loaded.values()) {
+			List<String> names = members.get(clan.getClanId());
+			clan.setMemberNames(names != null ? names
+					: new ArrayList<String>(), versions.get(clan.getClanId()));
 		}
-		// クラン倉庫のロード
-		for (L1Clan clan : AllClan) {
-			clan.getWarehouse().loadItems();
+
+		// クラン倉庫のロード。読み込み済みの血盟の倉庫はそのまま使う
+		if (!created.isEmpty()) {
+			IntHashMap<List<L1InventoryItem>> items = L1InventoryItem
+					.findAllByLocation(L1InventoryItem.LOC_CLAN_WAREHOUSE);
+			for (L1Clan clan : created) {
+				List<L1InventoryItem> clanItems = items.get(clan.getClanId());
+				if (clanItems != null) {
+					clan.getWarehouse().loadItems(clanItems);
+				}
+			}
 		}
+
+		// 血盟員と倉庫が揃ってからワールドに登録する
+		synchronized (_clans) {
+			for (int clanId : _clans.keys()) {
+				if (!loaded.containsKey(clanId)) {
+					L1World.getInstance().removeClan(_clans.remove(clanId));
+				}
+			}
+			for (L1Clan clan : created) {
+				L1World.getInstance().storeClan(clan);
+				_clans.put(clan.getClanId(), clan);
+			}
+		}
+		_log.fine("loaded clans: " + loaded.size() + " records, "
+				+ timer.elapsedTimeMillis() + "ms");
 	}
 
-	public L1Clan createClan(L1PcInstance player, String clanName) {
+	// 読み込み直しの途中で作られた血盟が、削除されたものとして扱われないよう同期する
+	public synchronized L1Clan createClan(L1PcInstance player, String clanName) {
 		for (L1Clan oldClans : L1World.getInstance().getAllClans()) {
 			if (oldClans.getClanName().equalsIgnoreCase(clanName)) {
 				return null;
@@ -133,7 +173,9 @@ public class ClanTable {
 			SqlUtil.close(con);
 		}
 		L1World.getInstance().storeClan(clan);
-		_clans.put(clan.getClanId(), clan);
+		synchronized (_clans) {
+			_clans.put(clan.getClanId(), clan);
+		}
 		player.setClanid(clan.getClanId());
 		player.setClanname(clan.getClanName());
 		player.setClanRank(L1Clan.CLAN_RANK_LEADER);
@@ -168,7 +210,7 @@ public class ClanTable {
 		}
 	}
 
-	public void deleteClan(String clan_name) {
+	public synchronized void deleteClan(String clan_name) {
 		L1Clan clan = L1World.getInstance().getClan(clan_name);
 		if (clan == null) {
 			return;
@@ -189,10 +231,14 @@ public class ClanTable {
 		clan.getWarehouse().clearItems();
 		clan.getWarehouse().deleteAllItems();
 		L1World.getInstance().removeClan(clan);
-		_clans.remove(clan.getClanId());
+		synchronized (_clans) {
+			_clans.remove(clan.getClanId());
+		}
 	}
 
 	public L1Clan getTemplate(int clan_id) {
-		return _clans.get(clan_id);
+		synchronized (_clans) {
+			return _clans.get(clan_id);
+		}
 	}
 }
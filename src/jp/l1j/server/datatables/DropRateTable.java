@@ -95,6 +95,7 @@ public final class DropRateTable {
 		Map<Integer, dropItemData> dropItems = new HashMap<Integer, dropItemData>();
 		loadDropItems(dropItems);
 		_dropItems = dropItems;
+		DropTable.getInstance().invalidate(); // 倍率適用済みのドロップリストを作り直させる
 	}
 	
 	public double getDropRate(int itemId) {
@@ -51,7 +51,8 @@ public class DropTable {
 
 	private static DropTable _instance;
 
-	private static HashMap<Integer, ArrayList<L1Drop>> _droplists; // モンスター毎のドロップリスト
+	// モンスター毎のドロップリストと、それを倍率適用済みに変換したもの。再読み込み時はまとめて差し替える
+	private volatile DropData _data;
 
 	public static DropTable getInstance() {
 		if (_instance == null) {
@@ -112,72 +113,162 @@ public class DropTable {
 	}
 
 	private void load() {
-		_droplists = allDropList();
+		_data = new DropData(allDropList());
 	}
 	
 	public void reload() {
 		load();
 	}
 
-	// インベントリにドロップを設定
-	public void setDrop(L1NpcInstance npc, L1Inventory inventory) {
-		// ドロップリストの取得
-		int mobId = npc.getNpcTemplate().getNpcId();
-		ArrayList<L1Drop> dropList = _droplists.get(mobId);
-		if (dropList == null) {
-			return;
+	/**
+	 * 倍率適用済みのドロップリストを破棄する。
+	 * マップやアイテムのドロップ倍率が変更された場合に呼び出す。
+	 */
+	public void invalidate() {
+		DropData data = _data;
+		if (data != null) {
+			_data = new DropData(data._droplists);
 		}
-		// レート取得
-		double droprate = Config.RATE_DROP_ITEMS;
-		if (droprate <= 0) {
-			droprate = 0;
+	}
+
+	/**
+	 * ドロップリストと、倍率を適用して変換したドロップリストの組。
+	 * 変換は(モンスター, 基本マップ)毎に、初めてドロップを設定する時に行う。
+	 */
+	private static class DropData {
+		private final HashMap<Integer, ArrayList<L1Drop>> _droplists;
+		private final HashMap<Integer, NpcDrops> _npcDrops = new HashMap<Integer, NpcDrops>();
+		// 変換時のConfigの倍率。変更された場合は作り直す
+		private final double _dropRate = Config.RATE_DROP_ITEMS;
+		private final double _adenaRate = Config.RATE_DROP_ADENA;
+		private final int _uniqueRate = Config.RATE_DROP_UNIQUE_ITEMS;
+
+		private DropData(HashMap<Integer, ArrayList<L1Drop>> droplists) {
+			_droplists = droplists;
+			for (Integer mobId : droplists.keySet()) {
+				_npcDrops.put(mobId, new NpcDrops());
+			}
 		}
-		double adenarate = Config.RATE_DROP_ADENA;
-		if (adenarate <= 0) {
-			adenarate = 0;
+
+		private boolean isCurrent() {
+			return _dropRate == Config.RATE_DROP_ITEMS
+					&& _adenaRate == Config.RATE_DROP_ADENA
+					&& _uniqueRate == Config.RATE_DROP_UNIQUE_ITEMS;
 		}
-		if (droprate <= 0 && adenarate <= 0) {
-			return;
+
+		private CompiledDrops get(int mobId, int mapId) {
+			NpcDrops npcDrops = _npcDrops.get(mobId);
+			if (npcDrops == null) {
+				return null;
+			}
+			CompiledDrops[] compiled = npcDrops._compiled;
+			for (CompiledDrops drops : compiled) {
+				if (drops._mapId == mapId) {
+					return drops;
+				}
+			}
+			synchronized (npcDrops) {
+				for (CompiledDrops drops : npcDrops._compiled) {
+					if (drops._mapId == mapId) {
+						return drops;
+					}
+				}
+				CompiledDrops drops = compile(_droplists.get(mobId), mapId);
+				compiled = npcDrops._compiled;
+				CompiledDrops[] newCompiled = new CompiledDrops[compiled.length + 1];
+				System.arraycopy(compiled, 0, newCompiled, 0, compiled.length);
+				newCompiled[compiled.length] = drops;
+				npcDrops._compiled = newCompiled;
+				return drops;
+			}
 		}
-		// ユニークドロップレートを取得
-		double uniqueDropRate = Config.RATE_DROP_UNIQUE_ITEMS;
-		if (uniqueDropRate <= 0) {
-			uniqueDropRate = 0;
+
+		private CompiledDrops compile(ArrayList<L1Drop> dropList, int mapId) {
+			double droprate = Math.max(_dropRate, 0);
+			double adenarate = Math.max(_adenaRate, 0);
+			double uniqueDropRate = Math.max(_uniqueRate, 0);
+			double rateOfMapId = MapTable.getInstance().getDropRate(mapId);
+			double uniqueRateOfMapId = Math.max(MapTable.getInstance().getUniqueRate(mapId), 0);
+			DropRateTable rates = DropRateTable.getInstance();
+
+			CompiledDrops drops = new CompiledDrops(mapId, dropList.size(), adenarate);
+			int size = 0;
+			for (L1Drop drop : dropList) {
+				int itemId = drop.getItemid();
+				if (itemId == L1ItemId.ADENA && adenarate == 0) {
+					continue; // アデナレート０でドロップがアデナの場合はスルー
+				}
+				// 乱数(1～1000000)がこの値以下であればドロップする
+				double chance = drop.getChance() * droprate * rateOfMapId * rates.getDropRate(itemId);
+				if (chance < 1) {
+					continue;
+				}
+				double amount = rates.getDropAmount(itemId);
+				drops._itemIds[size] = itemId;
+				drops._chances[size] = chance;
+				drops._mins[size] = (int) (drop.getMin() * amount);
+				drops._maxs[size] = (int) (drop.getMax() * amount);
+				drops._uniqueRates[size] = (int) (uniqueDropRate * uniqueRateOfMapId * rates.getUniqueRate(itemId));
+				size++;
+			}
+			drops._size = size;
+			return drops;
 		}
-		double uniqueRateOfMapId = MapTable.getInstance().getUniqueRate(npc.getMap().getBaseMapId());
-		if (uniqueRateOfMapId <= 0) {
-			uniqueRateOfMapId = 0;
+	}
+
+	private static class NpcDrops {
+		// マップ毎の変換済みドロップリスト。追加時は配列ごと差し替える
+		private volatile CompiledDrops[] _compiled = new CompiledDrops[0];
+	}
+
+	private static class CompiledDrops {
+		private final int _mapId;
+		private final double _adenaRate;
+		private final int[] _itemIds;
+		private final double[] _chances;
+		private final int[] _mins;
+		private final int[] _maxs;
+		private final int[] _uniqueRates;
+		private int _size;
+
+		private CompiledDrops(int mapId, int capacity, double adenaRate) {
+			_mapId = mapId;
+			_adenaRate = adenaRate;
+			_itemIds = new int[capacity];
+			_chances = new double[capacity];
+			_mins = new int[capacity];
+			_maxs = new int[capacity];
+			_uniqueRates = new int[capacity];
+		}
+	}
+
+	// インベントリにドロップを設定
+	public void setDrop(L1NpcInstance npc, L1Inventory inventory) {
+		DropData data = _data;
+		if (!data.isCurrent()) { // Configの倍率が変更された
+			invalidate();
+			data = _data;
+		}
+		CompiledDrops drops = data.get(npc.getNpcTemplate().getNpcId(), npc.getMap().getBaseMapId());
+		if (drops == null) {
+			return;
 		}
-		int itemId;
-		int itemCount;
-		int addCount;
-		int randomChance;
-		L1ItemInstance item;
 		RandomGenerator random = RandomGeneratorFactory.getSharedRandom();
-		for (L1Drop drop : dropList) {
-			// ドロップアイテムの取得
-			itemId = drop.getItemid();
-			if (adenarate == 0 && itemId == L1ItemId.ADENA) {
-				continue; // アデナレート０でドロップがアデナの場合はスルー
-			}
+		for (int i = 0; i < drops._size; i++) {
 			// ドロップチャンス判定
-			randomChance = random.nextInt(0xf4240) + 1;
-			double rateOfMapId = MapTable.getInstance().getDropRate(npc.getMap().getBaseMapId());
-			double rateOfItem = DropRateTable.getInstance().getDropRate(itemId);
-			if (droprate == 0 || drop.getChance() * droprate * rateOfMapId * rateOfItem < randomChance) {
+			int randomChance = random.nextInt(0xf4240) + 1;
+			if (drops._chances[i] < randomChance) {
 				continue;
 			}
 			// ドロップ個数を設定
-			double amount = DropRateTable.getInstance().getDropAmount(itemId);
-			int min = (int) (drop.getMin() * amount);
-			int max = (int) (drop.getMax() * amount);
-			itemCount = min;
-			addCount = max - min + 1;
+			int itemId = drops._itemIds[i];
+			int itemCount = drops._mins[i];
+			int addCount = drops._maxs[i] - itemCount + 1;
 			if (addCount > 1) {
 				itemCount += random.nextInt(addCount);
 			}
 			if (itemId == L1ItemId.ADENA) { // ドロップがアデナの場合はアデナレートを掛ける
-				itemCount *= adenarate;
+				itemCount *= drops._adenaRate;
 			}
 			if (itemCount <= 0) {
 				continue;	// 個数が0以下の場合は、アイテムを生成しない
@@ -186,14 +277,12 @@ public class DropTable {
 				itemCount = 2000000000;
 			}
 			// アイテムの生成
-			item = ItemTable.getInstance().createItem(itemId);
+			L1ItemInstance item = ItemTable.getInstance().createItem(itemId);
 			item.setCount(itemCount);
 			// アイテム格納
-			item = inventory.storeItem(item);	
+			item = inventory.storeItem(item);
 			// ユニークオプションを付加
-			double uniqueRateOfItem = DropRateTable.getInstance().getUniqueRate(itemId);
-			double uniqueRate = uniqueDropRate * uniqueRateOfMapId * uniqueRateOfItem;
-			item.setUniqueOptions((int) uniqueRate);
+			item.setUniqueOptions(drops._uniqueRates[i]);
 		}
 	}
 
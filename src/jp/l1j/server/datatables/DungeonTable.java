@@ -20,6 +20,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
@@ -28,6 +29,7 @@ import static jp.l1j.locale.I18N.I18N_DOES_NOT_EXIST_MAP_LIST;
 import jp.l1j.server.datatables.InnTable;
 import jp.l1j.server.model.L1DragonSlayer;
 import jp.l1j.server.model.L1Teleport;
+import jp.l1j.server.model.L1TileTriggers;
 import jp.l1j.server.model.gametime.L1GameTimeClock;
 import jp.l1j.server.model.instance.L1ItemInstance;
 import jp.l1j.server.model.instance.L1PcInstance;
@@ -43,7 +45,8 @@ public class DungeonTable {
 
 	private static DungeonTable _instance = null;
 
-	private static Map<String, NewDungeon> _dungeonMap = new HashMap<String, NewDungeon>();
+	// 入口の座標 -> 行き先。入口はL1TileTriggersに登録され、移動時はそこから引かれる
+	private static Map<Long, NewDungeon> _dungeonMap = new HashMap<Long, NewDungeon>();
 
 	private enum DungeonType {
 		NONE, SHIP_FOR_FI,
@@ -75,7 +78,7 @@ public class DungeonTable {
 		load();
 	}
 	
-	private void loadDungeons(Map<String, NewDungeon> dungeonMap) {
+	private void loadDungeons(Map<Long, NewDungeon> dungeonMap) {
 		Connection con = null;
 		PreparedStatement pstm = null;
 		ResultSet rs = null;
@@ -88,7 +91,7 @@ public class DungeonTable {
 				int srcMapId = rs.getInt("src_map_id");
 				int srcX = rs.getInt("src_x");
 				int srcY = rs.getInt("src_y");
-				String key = new StringBuilder().append(srcMapId).append(srcX).append(srcY).toString();
+				long key = L1TileTriggers.toKey(srcMapId, srcX, srcY);
 				int newX = rs.getInt("new_x");
 				int newY = rs.getInt("new_y");
 				int newMapId = rs.getInt("new_map_id");
@@ -177,10 +180,10 @@ public class DungeonTable {
 					dungeonType = DungeonType.LAIR_OF_LINDVIOR; // リンドビオルレア
 				}
 				// ヴァラカスレア(未実装)
-				NewDungeon newDungeon = new NewDungeon(newX, newY,
-						(short) newMapId, heading, dungeonType);
+				NewDungeon newDungeon = new NewDungeon(srcMapId, srcX, srcY,
+						newX, newY, (short) newMapId, heading, dungeonType);
 				if (dungeonMap.containsKey(key)) {
-					_log.log(Level.WARNING, "同じキーのdungeonデータがあります。key=" + key);
+					_log.log(Level.WARNING, "同じキーのdungeonデータがあります。key=" + srcMapId + "," + srcX + "," + srcY);
 				}
 				dungeonMap.put(key, newDungeon);
 			}
@@ -194,139 +197,178 @@ public class DungeonTable {
 
 	private void load() {
 		loadDungeons(_dungeonMap);
+		register(_dungeonMap.values());
 	}
 	
 	public void reload() {
-		Map<String, NewDungeon> dungeonMap = new HashMap<String, NewDungeon>();
+		Map<Long, NewDungeon> dungeonMap = new HashMap<Long, NewDungeon>();
 		loadDungeons(dungeonMap);
+		// 入口が一時的に無くならないよう、新しい入口を登録してから古い入口を外す
+		register(dungeonMap.values());
+		unregister(_dungeonMap.values());
 		_dungeonMap = dungeonMap;
 	}
+
+	private static void register(Collection<NewDungeon> dungeons) {
+		for (NewDungeon dungeon : dungeons) {
+			L1TileTriggers.getInstance().add(dungeon._srcMapId,
+					dungeon._srcX, dungeon._srcY, dungeon);
+		}
+	}
+
+	private static void unregister(Collection<NewDungeon> dungeons) {
+		for (NewDungeon dungeon : dungeons) {
+			L1TileTriggers.getInstance().remove(dungeon._srcMapId,
+					dungeon._srcX, dungeon._srcY, dungeon);
+		}
+	}
 	
-	private static class NewDungeon {
+	private static class NewDungeon extends L1TileTriggers.Trigger {
+		int _srcMapId;
+		int _srcX;
+		int _srcY;
 		int _newX;
 		int _newY;
 		short _newMapId;
 		int _heading;
 		DungeonType _dungeonType;
-		private NewDungeon(int newX, int newY, short newMapId, int heading,
-				DungeonType dungeonType) {
+		private NewDungeon(int srcMapId, int srcX, int srcY, int newX,
+				int newY, short newMapId, int heading, DungeonType dungeonType) {
+			_srcMapId = srcMapId;
+			_srcX = srcX;
+			_srcY = srcY;
 			_newX = newX;
 			_newY = newY;
 			_newMapId = newMapId;
 			_heading = heading;
 			_dungeonType = dungeonType;
 		}
+
+		@Override
+		public boolean onEnter(L1PcInstance pc) {
+			return getInstance().teleport(this, pc);
+		}
 	}
 
 	public boolean dg(int locX, int locY, int mapId, L1PcInstance pc) {
+		L1TileTriggers.Trigger[] triggers = L1TileTriggers.getInstance().get(
+				mapId, locX, locY);
+		if (triggers == null) {
+			return false;
+		}
+		for (L1TileTriggers.Trigger trigger : triggers) {
+			if (trigger instanceof NewDungeon) {
+				return teleport((NewDungeon) trigger, pc);
+			}
+		}
+		return false;
+	}
+
+	private boolean teleport(NewDungeon newDungeon, L1PcInstance pc) {
 		int servertime = L1GameTimeClock.getInstance().currentTime().getSeconds();
 		int nowtime = servertime % 86400;
-		String key = new StringBuilder().append(mapId).append(locX).append(locY).toString();
-		if (_dungeonMap.containsKey(key)) {
-			NewDungeon newDungeon = _dungeonMap.get(key);
-			short newMap = newDungeon._newMapId;
-			int newX = newDungeon._newX;
-			int newY = newDungeon._newY;
-			int heading = newDungeon._heading;
-			DungeonType dungeonType = newDungeon._dungeonType;
-			boolean teleportable = false;
-			if (dungeonType == DungeonType.NONE) {
-				teleportable = true;
-			} else if (dungeonType == DungeonType.LAIR_OF_ANTHARAS
-					|| dungeonType == DungeonType.LAIR_OF_FAFURION
-					|| dungeonType == DungeonType.LAIR_OF_LINDVIOR){
-				L1DragonSlayer.getInstance().startDragonSlayer(pc.getPortalNumber());
-				// デバッグ用なのでコメントアウト
-				//pc.sendPackets(new S_SystemMessage("まもなくレイドが開始されます。"));
-				teleportable = true;
-			} else {
-				if (dungeonType == DungeonType.TALKING_ISLAND_HOTEL
-						|| dungeonType == DungeonType.GLUDIO_HOTEL
-						|| dungeonType == DungeonType.WINDAWOOD_HOTEL
-						|| dungeonType == DungeonType.SILVER_KNIGHT_HOTEL
-						|| dungeonType == DungeonType.HEINE_HOTEL
-						|| dungeonType == DungeonType.GIRAN_HOTEL
-						|| dungeonType == DungeonType.OREN_HOTEL) {
-					int npcid = 0;
-					int[] data = null;
-					if (dungeonType == DungeonType.TALKING_ISLAND_HOTEL) {
-						npcid = 70012;
-						data = new int[] { 32745, 32803, 16384, 32743, 32808, 16896 };
-					} else if (dungeonType == DungeonType.GLUDIO_HOTEL) {
-						npcid = 70019;
-						data = new int[] { 32743, 32803, 17408, 32744, 32807, 17920 };
-					} else if (dungeonType == DungeonType.GIRAN_HOTEL) {
-						npcid = 70031;
-						data = new int[] { 32744, 32803, 18432, 32744, 32807, 18944 };
-					} else if (dungeonType == DungeonType.OREN_HOTEL) {
-						npcid = 70065;
-						data = new int[] { 32744, 32803, 19456, 32744, 32807, 19968 };
-					} else if (dungeonType == DungeonType.WINDAWOOD_HOTEL) {
-						npcid = 70070;
-						data = new int[] { 32744, 32803, 20480, 32744, 32807, 20992 };
-					} else if (dungeonType == DungeonType.SILVER_KNIGHT_HOTEL) {
-						npcid = 70075;
-						data = new int[] { 32744, 32803, 21504, 32744, 32807, 22016 };
-					} else if (dungeonType == DungeonType.HEINE_HOTEL) {
-						npcid = 70084;
-						data = new int[] { 32744, 32803, 22528, 32744, 32807, 23040 };
-					}
-					int type = checkInnKey(pc, npcid);
-					if (type == 1) { // 小部屋
-						newX = data[0];
-						newY = data[1];
-						newMap = (short) data[2];
-						heading = 6;
-						teleportable = true;
-					} else if (type == 2) { // ホール
-						newX = data[3];
-						newY = data[4];
-						newMap = (short) data[5];
-						heading = 6;
-						teleportable = true;
-					}
-				} else if (nowtime >= 15 * 360
-						&& nowtime < 25 * 360 // 1.30~2.30
-						|| nowtime >= 45 * 360
-						&& nowtime < 55 * 360 // 4.30~5.30
-						|| nowtime >= 75 * 360
-						&& nowtime < 85 * 360 // 7.30~8.30
-						|| nowtime >= 105 * 360
-						&& nowtime < 115 * 360 // 10.30~11.30
-						|| nowtime >= 135 * 360 && nowtime < 145 * 360
-						|| nowtime >= 165 * 360 && nowtime < 175 * 360
-						|| nowtime >= 195 * 360 && nowtime < 205 * 360
-						|| nowtime >= 225 * 360 && nowtime < 235 * 360) {
-					if ((pc.getInventory().checkItem(40299, 1) && dungeonType == DungeonType.SHIP_FOR_GLUDIN) // TalkingIslandShiptoAdenMainland
-							|| (pc.getInventory().checkItem(40301, 1) && dungeonType == DungeonType.SHIP_FOR_HEINE) // AdenMainlandShiptoForgottenIsland
-							|| (pc.getInventory().checkItem(40302, 1) && dungeonType == DungeonType.SHIP_FOR_PI)) { // ShipPirateislandtoHiddendock
-						teleportable = true;
-					}
-				} else if (nowtime >= 0 && nowtime < 360 || nowtime >= 30 * 360
-						&& nowtime < 40 * 360 || nowtime >= 60 * 360
-						&& nowtime < 70 * 360 || nowtime >= 90 * 360
-						&& nowtime < 100 * 360 || nowtime >= 120 * 360
-						&& nowtime < 130 * 360 || nowtime >= 150 * 360
-						&& nowtime < 160 * 360 || nowtime >= 180 * 360
-						&& nowtime < 190 * 360 || nowtime >= 210 * 360
-						&& nowtime < 220 * 360) {
-					if ((pc.getInventory().checkItem(40298, 1) && dungeonType == DungeonType.SHIP_FOR_TI) // AdenMainlandShiptoTalkingIsland
-							|| (pc.getInventory().checkItem(40300, 1) && dungeonType == DungeonType.SHIP_FOR_FI) // ForgottenIslandShiptoAdenMainland
-							|| (pc.getInventory().checkItem(40303, 1) && dungeonType == DungeonType.SHIP_FOR_HIDDENDOCK)) { // ShipHiddendocktoPirateisland
-						teleportable = true;
-					}
+		short newMap = newDungeon._newMapId;
+		int newX = newDungeon._newX;
+		int newY = newDungeon._newY;
+		int heading = newDungeon._heading;
+		DungeonType dungeonType = newDungeon._dungeonType;
+		boolean teleportable = false;
+		if (dungeonType == DungeonType.NONE) {
+			teleportable = true;
+		} else if (dungeonType == DungeonType.LAIR_OF_ANTHARAS
+				|| dungeonType == DungeonType.LAIR_OF_FAFURION
+				|| dungeonType == DungeonType.LAIR_OF_LINDVIOR){
+			L1DragonSlayer.getInstance().startDragonSlayer(pc.getPortalNumber());
+			// デバッグ用なのでコメントアウト
+			//pc.sendPackets(new S_SystemMessage("まもなくレイドが開始されます。"));
+			teleportable = true;
+		} else {
+			if (dungeonType == DungeonType.TALKING_ISLAND_HOTEL
+					|| dungeonType == DungeonType.GLUDIO_HOTEL
+					|| dungeonType == DungeonType.WINDAWOOD_HOTEL
+					|| dungeonType == DungeonType.SILVER_KNIGHT_HOTEL
+					|| dungeonType == DungeonType.HEINE_HOTEL
+					|| dungeonType == DungeonType.GIRAN_HOTEL
+					|| dungeonType == DungeonType.OREN_HOTEL) {
+				int npcid = 0;
+				int[] data = null;
+				if (dungeonType == DungeonType.TALKING_ISLAND_HOTEL) {
+					npcid = 70012;
+					data = new int[] { 32745, 32803, 16384, 32743, 32808, 16896 };
+				} else if (dungeonType == DungeonType.GLUDIO_HOTEL) {
+					npcid = 70019;
+					data = new int[] { 32743, 32803, 17408, 32744, 32807, 17920 };
+				} else if (dungeonType == DungeonType.GIRAN_HOTEL) {
+					npcid = 70031;
+					data = new int[] { 32744, 32803, 18432, 32744, 32807, 18944 };
+				} else if (dungeonType == DungeonType.OREN_HOTEL) {
+					npcid = 70065;
+					data = new int[] { 32744, 32803, 19456, 32744, 32807, 19968 };
+				} else if (dungeonType == DungeonType.WINDAWOOD_HOTEL) {
+					npcid = 70070;
+					data = new int[] { 32744, 32803, 20480, 32744, 32807, 20992 };
+				} else if (dungeonType == DungeonType.SILVER_KNIGHT_HOTEL) {
+					npcid = 70075;
+					data = new int[] { 32744, 32803, 21504, 32744, 32807, 22016 };
+				} else if (dungeonType == DungeonType.HEINE_HOTEL) {
+					npcid = 70084;
+					data = new int[] { 32744, 32803, 22528, 32744, 32807, 23040 };
 				}
-			}
-			if (teleportable) {
-				// 3秒間は無敵（アブソルートバリア状態）にする。
-				L1BuffUtil.barrier(pc, 3000);
-				if (heading == 10) { // DB newheding 10の場合、移動前の方向を維持する
-					heading = pc.getHeading();
+				int type = checkInnKey(pc, npcid);
+				if (type == 1) { // 小部屋
+					newX = data[0];
+					newY = data[1];
+					newMap = (short) data[2];
+					heading = 6;
+					teleportable = true;
+				} else if (type == 2) { // ホール
+					newX = data[3];
+					newY = data[4];
+					newMap = (short) data[5];
+					heading = 6;
+					teleportable = true;
+				}
+			} else if (nowtime >= 15 * 360
+					&& nowtime < 25 * 360 // 1.30~2.30
+					|| nowtime >= 45 * 360
+					&& nowtime < 55 * 360 // 4.30~5.30
+					|| nowtime >= 75 * 360
+					&& nowtime < 85 * 360 // 7.30~8.30
+					|| nowtime >= 105 * 360
+					&& nowtime < 115 * 360 // 10.30~11.30
+					|| nowtime >= 135 * 360 && nowtime < 145 * 360
+					|| nowtime >= 165 * 360 && nowtime < 175 * 360
+					|| nowtime >= 195 * 360 && nowtime < 205 * 360
+					|| nowtime >= 225 * 360 && nowtime < 235 * 360) {
+				if ((pc.getInventory().checkItem(40299, 1) && dungeonType == DungeonType.SHIP_FOR_GLUDIN) // TalkingIslandShiptoAdenMainland
+						|| (pc.getInventory().checkItem(40301, 1) && dungeonType == DungeonType.SHIP_FOR_HEINE) // AdenMainlandShiptoForgottenIsland
+						|| (pc.getInventory().checkItem(40302, 1) && dungeonType == DungeonType.SHIP_FOR_PI)) { // ShipPirateislandtoHiddendock
+					teleportable = true;
+				}
+			} else if (nowtime >= 0 && nowtime < 360 || nowtime >= 30 * 360
+					&& nowtime < 40 * 360 || nowtime >= 60 * 360
+					&& nowtime < 70 * 360 || nowtime >= 90 * 360
+					&& nowtime < 100 * 360 || nowtime >= 120 * 360
+					&& nowtime < 130 * 360 || nowtime >= 150 * 360
+					&& nowtime < 160 * 360 || nowtime >= 180 * 360
+					&& nowtime < 190 * 360 || nowtime >= 210 * 360
+					&& nowtime < 220 * 360) {
+				if ((pc.getInventory().checkItem(40298, 1) && dungeonType == DungeonType.SHIP_FOR_TI) // AdenMainlandShiptoTalkingIsland
+						|| (pc.getInventory().checkItem(40300, 1) && dungeonType == DungeonType.SHIP_FOR_FI) // ForgottenIslandShiptoAdenMainland
+						|| (pc.getInventory().checkItem(40303, 1) && dungeonType == DungeonType.SHIP_FOR_HIDDENDOCK)) { // ShipHiddendocktoPirateisland
+					teleportable = true;
 				}
-				L1Teleport.teleport(pc, newX, newY, newMap, heading, false);
-				return true;
 			}
 		}
+		if (teleportable) {
+			// 3秒間は無敵（アブソルートバリア状態）にする。
+			L1BuffUtil.barrier(pc, 3000);
+			if (heading == 10) { // DB newheding 10の場合、移動前の方向を維持する
+				heading = pc.getHeading();
+			}
+			L1Teleport.teleport(pc, newX, newY, newMap, heading, false);
+			return true;
+		}
 		return false;
 	}
 
@@ -15,31 +15,13 @@
 
 package jp.l1j.server.datatables;
 
-import java.sql.PreparedStatement;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import jp.l1j.server.utils.L1DatabaseFactory;
-import jp.l1j.server.utils.SqlUtil;
+import jp.l1j.server.storage.LogWriter;
 
 public class EnchantLogTable {
-	private static Logger _log = Logger.getLogger(EnchantLogTable.class.getName());
+	private static final LogWriter _writer = new LogWriter("enchant_logs",
+			"INSERT INTO enchant_logs SET char_id=?, item_id=?, old_enchant_level=?, new_enchant_level=?");
 
 	public void storeLogEnchant(int char_id, int item_id, int old_enchant_level, int new_enchant_level) {
-		java.sql.Connection con = null;
-		PreparedStatement pstm = null;
-		try {
-			con = L1DatabaseFactory.getInstance().getConnection();
-			pstm = con.prepareStatement("INSERT INTO enchant_logs SET char_id=?, item_id=?, old_enchant_level=?, new_enchant_level=?");
-			pstm.setInt(1, char_id);
-			pstm.setInt(2, item_id);
-			pstm.setInt(3, old_enchant_level);
-			pstm.setInt(4, new_enchant_level);
-			pstm.execute();
-		} catch (Exception e) {
-			_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
-		} finally {
-			SqlUtil.close(pstm);
-			SqlUtil.close(con);
-		}
+		_writer.offer(char_id, item_id, old_enchant_level, new_enchant_level);
 	}
 }
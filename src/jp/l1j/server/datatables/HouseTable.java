@@ -42,7 +42,7 @@ public class HouseTable {
 
 	private final Map<Integer, L1House> _house = new ConcurrentHashMap<Integer, L1House>();
 
-	public static HouseTable getInstance() {
+	public static synchronized HouseTable getInstance() {
 		if (_instance == null) {
 			_instance = new HouseTable();
 		}
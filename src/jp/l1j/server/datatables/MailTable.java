@@ -15,28 +15,133 @@
 
 package jp.l1j.server.datatables;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import jp.l1j.configure.Config;
 import jp.l1j.server.model.instance.L1PcInstance;
 import jp.l1j.server.templates.L1Mail;
 import jp.l1j.server.utils.IdFactory;
-import jp.l1j.server.utils.L1DatabaseFactory;
-import jp.l1j.server.utils.SqlUtil;
+import jp.l1j.server.utils.L1QueryUtil;
+import jp.l1j.server.utils.L1QueryUtil.EntityFactory;
+import jp.l1j.server.utils.collections.IntHashMap;
 
+/**
+ * キャラクター毎のメールボックス。
+ * メールボックスは最初に開かれた時に読み込み、本文を除いたヘッダーだけを保持する。
+ * 本文は読まれた時に読み込む。ログアウトしたキャラクターのメールボックスは
+ * 最近使われた順にMailboxCacheSize個まで保持し、それを超えると古いものから破棄する。
+ */
 public class MailTable {
-	private static Logger _log = Logger.getLogger(MailTable.class.getName());
-
 	private static MailTable _instance;
 
-	private static ArrayList<L1Mail> _allMail = new ArrayList<L1Mail>();
+	// オンラインのキャラクターが開いたメールボックス
+	private final IntHashMap<Mailbox> _online = new IntHashMap<Mailbox>();
+
+	// ログアウトしたキャラクターと、他のキャラクターから参照されたメールボックス
+	private final Map<Integer, Mailbox> _cache = new LinkedHashMap<Integer, Mailbox>(
+			16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, Mailbox> eldest) {
+			return size() > Config.MAILBOX_CACHE_SIZE;
+		}
+	};
+
+	private static class Mailbox {
+		private final List<L1Mail> _mails; // IDの昇順
+
+		private Mailbox(List<L1Mail> mails) {
+			_mails = mails;
+		}
+
+		private synchronized L1Mail get(int mailId) {
+			for (L1Mail mail : _mails) {
+				if (mail.getId() == mailId) {
+					return mail;
+				}
+			}
+			return null;
+		}
+
+		private synchronized List<L1Mail> getByType(int type) {
+			List<L1Mail> result = new ArrayList<L1Mail>();
+			for (L1Mail mail : _mails) {
+				if (mail.getType() == type) {
+					result.add(mail);
+				}
+			}
+			return result;
+		}
+
+		private synchronized int count(int type) {
+			int count = 0;
+			for (L1Mail mail : _mails) {
+				if (mail.getType() == type) {
+					count++;
+				}
+			}
+			return count;
+		}
+
+		// 読み込みと書き込みが前後した場合に、同じメールを二重に追加しない
+		private synchronized void add(L1Mail mail) {
+			if (get(mail.getId()) == null) {
+				_mails.add(mail);
+			}
+		}
+
+		private synchronized void remove(int mailId) {
+			L1Mail mail = get(mailId);
+			if (mail != null) {
+				_mails.remove(mail);
+			}
+		}
+	}
+
+	// DBから読み込み中のメールボックス。読み込み中に書かれたメールを、読み込み後に追加する
+	private static class PendingLoad {
+		private int _loaders = 0;
+		private final List<L1Mail> _written = new ArrayList<L1Mail>();
+	}
+
+	private final IntHashMap<PendingLoad> _loading = new IntHashMap<PendingLoad>();
+
+	private static class HeaderFactory implements EntityFactory<L1Mail> {
+		@Override
+		public L1Mail fromResultSet(ResultSet rs) throws SQLException {
+			L1Mail mail = new L1Mail();
+			mail.setId(rs.getInt("id"));
+			mail.setType(rs.getInt("type"));
+			mail.setSenderName(rs.getString("sender"));
+			mail.setReceiverName(rs.getString("receiver"));
+			mail.setDate(rs.getTimestamp("date"));
+			mail.setReadStatus(rs.getInt("read_status"));
+			mail.setInBoxId(rs.getInt("inbox_id"));
+			mail.setSubject(rs.getBytes("subject"));
+			return mail;
+		}
+	}
+
+	private static class ContentFactory implements EntityFactory<byte[]> {
+		@Override
+		public byte[] fromResultSet(ResultSet rs) throws SQLException {
+			byte[] content = rs.getBytes("content");
+			return content == null ? new byte[0] : content;
+		}
+	}
 
-	public static MailTable getInstance() {
+	private static class CountFactory implements EntityFactory<Integer> {
+		@Override
+		public Integer fromResultSet(ResultSet rs) throws SQLException {
+			return rs.getInt("cnt");
+		}
+	}
+
+	public static synchronized MailTable getInstance() {
 		if (_instance == null) {
 			_instance = new MailTable();
 		}
@@ -44,110 +149,170 @@ public class MailTable {
 	}
 
 	private MailTable() {
-		loadMail();
 	}
 
-	private void loadMail() {
-		Connection con = null;
-		PreparedStatement pstm = null;
-		ResultSet rs = null;
+	/**
+	 * メールボックスを返す。読み込まれていなければDBから読み込む。
+	 * DBからの読み込みはロックの外で行い、先に他のスレッドが読み込んだ場合はそちらを使う。
+	 *
+	 * @param online
+	 *            trueの場合は、ログアウトするまで破棄しない
+	 */
+	private Mailbox getMailbox(int inboxId, boolean online) {
+		PendingLoad pending;
+		synchronized (this) {
+			Mailbox mailbox = findMailbox(inboxId, online);
+			if (mailbox != null) {
+				return mailbox;
+			}
+			pending = _loading.get(inboxId);
+			if (pending == null) {
+				pending = new PendingLoad();
+				_loading.put(inboxId, pending);
+			}
+			pending._loaders++;
+		}
+		List<L1Mail> mails;
 		try {
-			con = L1DatabaseFactory.getInstance().getConnection();
-			pstm = con.prepareStatement("SELECT * FROM mails");
-			rs = pstm.executeQuery();
-			while (rs.next()) {
-				L1Mail mail =  new L1Mail();
-				mail.setId(rs.getInt("id"));
-				mail.setType(rs.getInt("type"));
-				mail.setSenderName(rs.getString("sender"));
-				mail.setReceiverName(rs.getString("receiver"));
-				mail.setDate(rs.getTimestamp("date"));
-				mail.setReadStatus(rs.getInt("read_status"));
-				mail.setInBoxId(rs.getInt("inbox_id"));
-				mail.setSubject(rs.getBytes("subject"));
-				mail.setContent(rs.getBytes("content"));
-				_allMail.add(mail);
+			mails = L1QueryUtil.selectAll(new HeaderFactory(),
+					"SELECT id, type, sender, receiver, date, read_status, inbox_id, subject"
+							+ " FROM mails WHERE inbox_id=? ORDER BY id",
+					inboxId);
+		} catch (RuntimeException e) {
+			synchronized (this) {
+				releasePending(inboxId, pending);
 			}
-		} catch(SQLException e) {
-			_log.log(Level.SEVERE, "error while creating mails table", e);
-		} finally {
-			SqlUtil.close(rs);
-			SqlUtil.close(pstm);
-			SqlUtil.close(con);
+			throw e;
+		}
+		synchronized (this) {
+			releasePending(inboxId, pending);
+			Mailbox mailbox = findMailbox(inboxId, online);
+			if (mailbox != null) {
+				return mailbox; // 他のスレッドが先に読み込んだ
+			}
+			mailbox = new Mailbox(mails);
+			for (L1Mail mail : pending._written) {
+				mailbox.add(mail);
+			}
+			if (online) {
+				_online.put(inboxId, mailbox);
+			} else {
+				_cache.put(inboxId, mailbox);
+			}
+			return mailbox;
 		}
 	}
 
-	public void setReadStatus(int mailId) {
-		Connection con = null;
-		PreparedStatement pstm = null;
-		ResultSet rs = null;
-		try {
-			con = L1DatabaseFactory.getInstance().getConnection();
-			pstm = con.prepareStatement("SELECT * FROM mails WHERE id=?");
-			pstm.setInt(1,mailId);
-			rs = pstm.executeQuery();
-			if (rs != null && rs.next()) {
-				pstm = con.prepareStatement("UPDATE mails SET read_status=? WHERE id=?");
-				pstm.setInt(1, 1);
-				pstm.setInt(2, mailId);
-				pstm.execute();
-				changeMailStatus(mailId);
+	// thisのロックを保持して呼ぶこと
+	private void releasePending(int inboxId, PendingLoad pending) {
+		if (--pending._loaders == 0) {
+			_loading.remove(inboxId);
+		}
+	}
+
+	// thisのロックを保持して呼ぶこと
+	private Mailbox findMailbox(int inboxId, boolean online) {
+		Mailbox mailbox = _online.get(inboxId);
+		if (mailbox != null) {
+			return mailbox;
+		}
+		if (!online) {
+			return _cache.get(inboxId);
+		}
+		mailbox = _cache.remove(inboxId);
+		if (mailbox != null) {
+			_online.put(inboxId, mailbox);
+		}
+		return mailbox;
+	}
+
+	/**
+	 * ログアウトしたキャラクターのメールボックスを、破棄できるようにする。
+	 */
+	public synchronized void releaseMailbox(int inboxId) {
+		Mailbox mailbox = _online.remove(inboxId);
+		if (mailbox != null) {
+			_cache.put(inboxId, mailbox);
+		}
+	}
+
+	/**
+	 * pcのメールボックスの、指定した種類のメールを返す。
+	 */
+	public List<L1Mail> getMails(L1PcInstance pc, int type) {
+		return getMailbox(pc.getId(), true).getByType(type);
+	}
+
+	public L1Mail getMail(L1PcInstance pc, int mailId) {
+		return getMailbox(pc.getId(), true).get(mailId);
+	}
+
+	/**
+	 * 指定したメールボックスにある、指定した種類のメールの数を返す。
+	 * 読み込まれていないメールボックスは、読み込まずにDBで数える。
+	 */
+	public int getMailCount(int inboxId, int type) {
+		Mailbox mailbox;
+		synchronized (this) {
+			mailbox = _online.get(inboxId);
+			if (mailbox == null) {
+				mailbox = _cache.get(inboxId);
 			}
-		} catch (SQLException e) {
-			_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
-		} finally {
-			SqlUtil.close(rs);
-			SqlUtil.close(pstm);
-			SqlUtil.close(con);
 		}
+		if (mailbox != null) {
+			return mailbox.count(type);
+		}
+		Integer count = L1QueryUtil.selectFirst(new CountFactory(),
+				"SELECT COUNT(*) AS cnt FROM mails WHERE inbox_id=? AND type=?",
+				inboxId, type);
+		return count == null ? 0 : count;
 	}
 
-	public void setMailType(int mailId, int type) {
-		Connection con = null;
-		PreparedStatement pstm = null;
-		ResultSet rs = null;
-		try {
-			con = L1DatabaseFactory.getInstance().getConnection();
-			pstm = con.prepareStatement("SELECT * FROM mails WHERE id=?");
-			pstm.setInt(1,mailId);
-			rs = pstm.executeQuery();
-			if (rs != null && rs.next()) {
-				pstm = con.prepareStatement("UPDATE mails SET type=? WHERE id=?");
-				pstm.setInt(1, type);
-				pstm.setInt(2, mailId);
-				pstm.execute();
-				changeMailType(mailId, type);
+	/**
+	 * メールの本文を返す。読み込まれていなければDBから読み込む。
+	 */
+	public byte[] getContent(L1Mail mail) {
+		byte[] content = mail.getContent();
+		if (content == null) {
+			content = L1QueryUtil.selectFirst(new ContentFactory(),
+					"SELECT content FROM mails WHERE id=?", mail.getId());
+			if (content == null) {
+				content = new byte[0];
 			}
-		} catch (SQLException e) {
-			_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
-		} finally {
-			SqlUtil.close(rs);
-			SqlUtil.close(pstm);
-			SqlUtil.close(con);
+			mail.setContent(content);
 		}
+		return content;
 	}
 
-	public void deleteMail(int mailId) {
-		Connection con = null;
-		PreparedStatement pstm = null;
-		try {
-			con = L1DatabaseFactory.getInstance().getConnection();
-			pstm = con.prepareStatement("DELETE FROM mails WHERE id=?");
-			pstm.setInt(1,mailId);
-			pstm.execute();
-			delMail(mailId);
-		} catch (SQLException e) {
-			_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
-		} finally {
-			SqlUtil.close(pstm);
-			SqlUtil.close(con);
+	public void setReadStatus(L1PcInstance pc, int mailId) {
+		L1QueryUtil.execute(
+				"UPDATE mails SET read_status=1 WHERE id=? AND inbox_id=?",
+				mailId, pc.getId());
+		L1Mail mail = getMail(pc, mailId);
+		if (mail != null) {
+			mail.setReadStatus(1);
+		}
+	}
+
+	public void setMailType(L1PcInstance pc, int mailId, int type) {
+		L1QueryUtil.execute("UPDATE mails SET type=? WHERE id=? AND inbox_id=?",
+				type, mailId, pc.getId());
+		L1Mail mail = getMail(pc, mailId);
+		if (mail != null) {
+			mail.setType(type);
 		}
 	}
 
-	public int writeMail(int type, String receiver, L1PcInstance writer, byte[] text, int inboxId) {
+	public void deleteMail(L1PcInstance pc, int mailId) {
+		L1QueryUtil.execute("DELETE FROM mails WHERE id=? AND inbox_id=?",
+				mailId, pc.getId());
+		getMailbox(pc.getId(), true).remove(mailId);
+	}
+
+	public L1Mail writeMail(int type, String receiver, L1PcInstance writer,
+			byte[] text, int inboxId) {
 		Timestamp date = new Timestamp(System.currentTimeMillis());
 		int readStatus = 0;
-		int id = 0;
 		// subjectとcontentの区切り(0x00 0x00)位置を見つける
 		int spacePosition1 = 0;
 		int spacePosition2 = 0;
@@ -171,85 +336,33 @@ public class MailTable {
 		byte[] content = new byte[contentLength];
 		System.arraycopy(text, 0, subject, 0, subjectLength);
 		System.arraycopy(text, subjectLength, content, 0, contentLength);
-		Connection con = null;
-		PreparedStatement pstm2 = null;
-		try {
-			con = L1DatabaseFactory.getInstance().getConnection();
-			pstm2 = con.prepareStatement("INSERT INTO mails SET id=?, type=?, sender=?, receiver=?, date=?, read_status=?, inbox_id=?, subject=?, content=?");
-			id = IdFactory.getInstance().nextId();
-			pstm2.setInt(1, id);
-			pstm2.setInt(2, type);
-			pstm2.setString(3, writer.getName());
-			pstm2.setString(4, receiver);
-			pstm2.setTimestamp(5, date);
-			pstm2.setInt(6, readStatus);
-			pstm2.setInt(7, inboxId);
-			pstm2.setBytes(8, subject);
-			pstm2.setBytes(9, content);
-			pstm2.execute();
-			L1Mail mail =  new L1Mail();
-			mail.setId(id);
-			mail.setType(type);
-			mail.setSenderName(writer.getName());
-			mail.setReceiverName(receiver);
-			mail.setDate(date);
-			mail.setReadStatus(readStatus);
-			mail.setInBoxId(inboxId);
-			mail.setSubject(subject);
-			mail.setContent(content);
-			_allMail.add(mail);
-		} catch (SQLException e) {
-			_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
-		} finally {
-			SqlUtil.close(pstm2);
-			SqlUtil.close(con);
-		}
-		return id;
-	}
-
-	public static ArrayList<L1Mail> getAllMail() {
-		return _allMail;
-	}
-
-	public static L1Mail getMail(int mailId) {
-		for (L1Mail mail : _allMail) {
-			if (mail.getId() == mailId) {
-				return mail;
-			}
-		}
-		return null;
-	}
-
-	private void changeMailStatus(int mailId) {
-		for (L1Mail mail : _allMail) {
-			if (mail.getId() == mailId) {
-				L1Mail newMail = mail;
-				newMail.setReadStatus(1);
-				_allMail.remove(mail);
-				_allMail.add(newMail);
-				break;
-			}
-		}
-	}
-
-	private void changeMailType(int mailId, int type) {
-		for (L1Mail mail : _allMail) {
-			if (mail.getId() == mailId) {
-				L1Mail newMail = mail;
-				newMail.setType(type);
-				_allMail.remove(mail);
-				_allMail.add(newMail);
-				break;
-			}
-		}
-	}
-
-	private void delMail(int mailId) {
-		for (L1Mail mail : _allMail) {
-			if(mail.getId() == mailId) {
-				_allMail.remove(mail);
-				break;
+		int id = IdFactory.getInstance().nextId();
+		L1QueryUtil.execute("INSERT INTO mails SET id=?, type=?, sender=?, receiver=?,"
+				+ " date=?, read_status=?, inbox_id=?, subject=?, content=?",
+				id, type, writer.getName(), receiver, date, readStatus,
+				inboxId, subject, content);
+		L1Mail mail = new L1Mail();
+		mail.setId(id);
+		mail.setType(type);
+		mail.setSenderName(writer.getName());
+		mail.setReceiverName(receiver);
+		mail.setDate(date);
+		mail.setReadStatus(readStatus);
+		mail.setInBoxId(inboxId);
+		mail.setSubject(subject);
+		mail.setContent(content);
+		// 読み込まれていないメールボックスは、開かれた時にDBから読み込まれる
+		synchronized (this) {
+			Mailbox mailbox = findMailbox(inboxId, false);
+			if (mailbox != null) {
+				mailbox.add(mail);
+			} else {
+				PendingLoad pending = _loading.get(inboxId);
+				if (pending != null) {
+					pending._written.add(mail);
+				}
 			}
 		}
+		return mail;
 	}
 }
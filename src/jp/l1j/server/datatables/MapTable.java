@@ -118,6 +118,7 @@ public final class MapTable {
 		Map<Integer, MapData> maps = new HashMap<Integer, MapData>();
 		loadMaps(maps);
 		_maps = maps;
+		DropTable.getInstance().invalidate(); // 倍率適用済みのドロップリストを作り直させる
 	}
 
 	/**
@@ -18,12 +18,14 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import static jp.l1j.locale.I18N.I18N_DOES_NOT_EXIST_MAP_LIST;
 import jp.l1j.server.model.L1Teleport;
+import jp.l1j.server.model.L1TileTriggers;
 import jp.l1j.server.model.instance.L1PcInstance;
 import jp.l1j.server.model.skill.L1BuffUtil;
 import jp.l1j.server.random.RandomGenerator;
@@ -40,7 +42,8 @@ public class RandomDungeonTable {
 
 	private static RandomDungeonTable _instance = null;
 
-	private static Map<String, NewDungeonRandom> _dungeons = new HashMap<String, NewDungeonRandom>();
+	// 入口の座標 -> 行き先。入口はL1TileTriggersに登録され、移動時はそこから引かれる
+	private static Map<Long, NewDungeonRandom> _dungeons = new HashMap<Long, NewDungeonRandom>();
 
 	public static RandomDungeonTable getInstance() {
 		if (_instance == null) {
@@ -51,9 +54,10 @@ public class RandomDungeonTable {
 
 	private RandomDungeonTable() {
 		loadRandomDungeons(_dungeons);
+		register(_dungeons.values());
 	}
 	
-	private void loadRandomDungeons(Map<String, NewDungeonRandom> dungeons) {
+	private void loadRandomDungeons(Map<Long, NewDungeonRandom> dungeons) {
 		Connection con = null;
 		PreparedStatement pstm = null;
 		ResultSet rs = null;
@@ -105,7 +109,7 @@ public class RandomDungeonTable {
 				}
 				int srcX = rs.getInt("src_x");
 				int srcY = rs.getInt("src_y");
-				String key = new StringBuilder().append(srcMapId).append(srcX).append(srcY).toString();
+				long key = L1TileTriggers.toKey(srcMapId, srcX, srcY);
 				int[] newX = new int[5];
 				int[] newY = new int[5];
 				short[] newMapId = new short[5];
@@ -125,10 +129,10 @@ public class RandomDungeonTable {
 				newY[4] = rs.getInt("new_y5");
 				newMapId[4] = newMapId5;
 				int heading = rs.getInt("new_heading");
-				NewDungeonRandom newDungeonRandom = new NewDungeonRandom(newX,
-						newY, newMapId, heading);
+				NewDungeonRandom newDungeonRandom = new NewDungeonRandom(
+						srcMapId, srcX, srcY, newX, newY, newMapId, heading);
 				if (dungeons.containsKey(key)) {
-					_log.log(Level.WARNING, "同じキーのdungeonデータがあります。key=" + key);
+					_log.log(Level.WARNING, "同じキーのdungeonデータがあります。key=" + srcMapId + "," + srcX + "," + srcY);
 				}
 				dungeons.put(key, newDungeonRandom);
 			}
@@ -141,18 +145,41 @@ public class RandomDungeonTable {
 	}
 
 	public void reload() {
-		Map<String, NewDungeonRandom> dungeons = new HashMap<String, NewDungeonRandom>();
+		Map<Long, NewDungeonRandom> dungeons = new HashMap<Long, NewDungeonRandom>();
 		loadRandomDungeons(dungeons);
+		// 入口が一時的に無くならないよう、新しい入口を登録してから古い入口を外す
+		register(dungeons.values());
+		unregister(_dungeons.values());
 		_dungeons = dungeons;
 	}
+
+	private static void register(Collection<NewDungeonRandom> dungeons) {
+		for (NewDungeonRandom dungeon : dungeons) {
+			L1TileTriggers.getInstance().add(dungeon._srcMapId,
+					dungeon._srcX, dungeon._srcY, dungeon);
+		}
+	}
+
+	private static void unregister(Collection<NewDungeonRandom> dungeons) {
+		for (NewDungeonRandom dungeon : dungeons) {
+			L1TileTriggers.getInstance().remove(dungeon._srcMapId,
+					dungeon._srcX, dungeon._srcY, dungeon);
+		}
+	}
 	
-	private static class NewDungeonRandom {
+	private static class NewDungeonRandom extends L1TileTriggers.Trigger {
+		int _srcMapId;
+		int _srcX;
+		int _srcY;
 		int[] _newX = new int[5];
 		int[] _newY = new int[5];
 		short[] _newMapId = new short[5];
 		int _heading;
-		private NewDungeonRandom(int[] newX, int[] newY, short[] newMapId,
-				int heading) {
+		private NewDungeonRandom(int srcMapId, int srcX, int srcY,
+				int[] newX, int[] newY, short[] newMapId, int heading) {
+			_srcMapId = srcMapId;
+			_srcX = srcX;
+			_srcY = srcY;
 			for (int i = 0; i < 5; i++) {
 				_newX[i] = newX[i];
 				_newY[i] = newY[i];
@@ -160,22 +187,37 @@ public class RandomDungeonTable {
 			}
 			_heading = heading;
 		}
+
+		@Override
+		public boolean onEnter(L1PcInstance pc) {
+			teleport(this, pc);
+			return true;
+		}
 	}
 
 	public boolean dg(int locX, int locY, int mapId, L1PcInstance pc) {
-		String key = new StringBuilder().append(mapId).append(locX).append(locY).toString();
-		if (_dungeons.containsKey(key)) {
-			int rnd = _random.nextInt(5);
-			NewDungeonRandom newDungeonRandom = _dungeons.get(key);
-			short newMap = newDungeonRandom._newMapId[rnd];
-			int newX = newDungeonRandom._newX[rnd];
-			int newY = newDungeonRandom._newY[rnd];
-			int heading = newDungeonRandom._heading;
-			// 3秒間は無敵（アブソルートバリア状態）にする。
-			L1BuffUtil.barrier(pc, 3000);
-			L1Teleport.teleport(pc, newX, newY, newMap, heading, false);
-			return true;
+		L1TileTriggers.Trigger[] triggers = L1TileTriggers.getInstance().get(
+				mapId, locX, locY);
+		if (triggers == null) {
+			return false;
+		}
+		for (L1TileTriggers.Trigger trigger : triggers) {
+			if (trigger instanceof NewDungeonRandom) {
+				teleport((NewDungeonRandom) trigger, pc);
+				return true;
+			}
 		}
 		return false;
 	}
+
+	private static void teleport(NewDungeonRandom newDungeonRandom, L1PcInstance pc) {
+		int rnd = _random.nextInt(5);
+		short newMap = newDungeonRandom._newMapId[rnd];
+		int newX = newDungeonRandom._newX[rnd];
+		int newY = newDungeonRandom._newY[rnd];
+		int heading = newDungeonRandom._heading;
+		// 3秒間は無敵（アブソルートバリア状態）にする。
+		L1BuffUtil.barrier(pc, 3000);
+		L1Teleport.teleport(pc, newX, newY, newMap, heading, false);
+	}
 }
@@ -17,7 +17,6 @@ package jp.l1j.server.model;
 
 import static jp.l1j.server.model.skill.L1SkillId.*;
 
-import java.util.TimerTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,7 +27,7 @@ import jp.l1j.server.random.RandomGeneratorFactory;
 import jp.l1j.server.templates.L1MagicDoll;
 import jp.l1j.server.types.Point;
 
-public class HpRegeneration extends TimerTask {
+public class HpRegeneration extends L1RegenerationScheduler.Task {
 
 	private static Logger _log = Logger.getLogger(HpRegeneration.class
 			.getName());
@@ -58,10 +57,10 @@ public class HpRegeneration extends TimerTask {
 	}
 
 	@Override
-	public void run() {
+	protected long regenerate() {
 		try {
 			if (_pc.isDead()) {
-				return;
+				return getInterval();
 			}
 
 			_regenPoint += _curPoint;
@@ -70,12 +69,28 @@ public class HpRegeneration extends TimerTask {
 			synchronized (this) {
 				if (_regenMax <= _regenPoint) {
 					_regenPoint = 0;
-					regenHp();
+					if (!isFull()) {
+						regenHp();
+					}
 				}
 			}
 		} catch (Throwable e) {
 			_log.log(Level.WARNING, e.getLocalizedMessage(), e);
 		}
+		return getInterval();
+	}
+
+	// HPが最大で、回復処理を行っても変化しない場合はtrue
+	private boolean isFull() {
+		if (_pc.getCurrentHp() < _pc.getMaxHp() || _pc.getHpr() < 0) {
+			return false;
+		}
+		// 水中などHPが減少する場所では、最大でも処理を行う
+		if (_pc.getMap().isUnderwater() || isLv50Quest(_pc)
+				|| _pc.getMapId() == 410) {
+			return false;
+		}
+		return L1MagicDoll.getNatHprByDoll(_pc) >= 0;
 	}
 
 	public void updateLevel() {
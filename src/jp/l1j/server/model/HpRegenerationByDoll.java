@@ -15,7 +15,6 @@
 
 package jp.l1j.server.model;
 
-import java.util.TimerTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jp.l1j.server.model.instance.L1DollInstance;
@@ -23,7 +22,7 @@ import jp.l1j.server.model.instance.L1PcInstance;
 import jp.l1j.server.packets.server.S_SkillSound;
 import jp.l1j.server.templates.L1MagicDoll;
 
-public class HpRegenerationByDoll extends TimerTask {
+public class HpRegenerationByDoll extends L1RegenerationScheduler.Task {
 	private static Logger _log = Logger.getLogger(HpRegenerationByDoll.class.getName());
 
 	private final L1PcInstance _pc;
@@ -35,15 +34,15 @@ public class HpRegenerationByDoll extends TimerTask {
 	}
 
 	@Override
-	public void run() {
+	protected long regenerate() {
 		try {
-			if (_pc.isDead()) {
-				return;
+			if (!_pc.isDead()) {
+				regenHp();
 			}
-			regenHp();
 		} catch (Throwable e) {
 			_log.log(Level.WARNING, e.getLocalizedMessage(), e);
 		}
+		return getInterval();
 	}
 
 	public void regenHp() {
@@ -25,6 +25,9 @@ public class L1Buddy {
 
 	private final LinkedHashMap<Integer, String> _buddys = new LinkedHashMap<Integer, String>();
 
+	// 友達の追加、削除の回数
+	private int _version = 0;
+
 	public L1Buddy(int charId) {
 		_charId = charId;
 	}
@@ -33,20 +36,25 @@ public class L1Buddy {
 		return _charId;
 	}
 
-	public boolean add(int objId, String name) {
+	public synchronized boolean add(int objId, String name) {
 		if (_buddys.containsKey(objId)) {
 			return false;
 		}
 		_buddys.put(objId, name);
+		_version++;
 		return true;
 	}
 
-	public boolean remove(int objId) {
+	public synchronized boolean remove(int objId) {
 		String result = _buddys.remove(objId);
-		return (result != null ? true : false);
+		if (result == null) {
+			return false;
+		}
+		_version++;
+		return true;
 	}
 
-	public boolean remove(String name) {
+	public synchronized boolean remove(String name) {
 		int id = 0;
 		for (Map.Entry<Integer, String> buddy : _buddys.entrySet()) {
 			if (name.equalsIgnoreCase(buddy.getValue())) {
@@ -58,10 +66,11 @@ public class L1Buddy {
 			return false;
 		}
 		_buddys.remove(id);
+		_version++;
 		return true;
 	}
 
-	public String getOnlineBuddyListString() {
+	public synchronized String getOnlineBuddyListString() {
 		String result = new String("");
 		for (L1PcInstance pc : L1World.getInstance().getAllPlayers()) {
 			if (_buddys.containsKey(pc.getId())) {
@@ -71,7 +80,7 @@ public class L1Buddy {
 		return result;
 	}
 
-	public String getBuddyListString() {
+	public synchronized String getBuddyListString() {
 		String result = new String("");
 		for (String name : _buddys.values()) {
 			result += name + " ";
@@ -79,11 +88,11 @@ public class L1Buddy {
 		return result;
 	}
 
-	public boolean containsId(int objId) {
+	public synchronized boolean containsId(int objId) {
 		return _buddys.containsKey(objId);
 	}
 
-	public boolean containsName(String name) {
+	public synchronized boolean containsName(String name) {
 		for (String buddyName : _buddys.values()) {
 			if (name.equalsIgnoreCase(buddyName)) {
 				return true;
@@ -92,7 +101,33 @@ public class L1Buddy {
 		return false;
 	}
 
-	public int size() {
+	public synchronized int size() {
 		return _buddys.size();
 	}
+
+	public synchronized int getVersion() {
+		return _version;
+	}
+
+	/**
+	 * 友達リストをDBから読み込んだ内容に入れ替える。
+	 *
+	 * @param version
+	 *            読み込みを始める前のgetVersion()の値。その後に追加、削除があった場合は入れ替えない
+	 * @return 入れ替えた場合はtrue
+	 */
+	public boolean replace(L1Buddy loaded, int version) {
+		LinkedHashMap<Integer, String> buddys;
+		synchronized (loaded) {
+			buddys = new LinkedHashMap<Integer, String>(loaded._buddys);
+		}
+		synchronized (this) {
+			if (_version != version) {
+				return false;
+			}
+			_buddys.clear();
+			_buddys.putAll(buddys);
+			return true;
+		}
+	}
 }
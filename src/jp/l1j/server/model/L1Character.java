@@ -15,10 +15,13 @@
 
 package jp.l1j.server.model;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import jp.l1j.server.model.instance.L1DollInstance;
 import jp.l1j.server.model.instance.L1FollowerInstance;
@@ -37,11 +40,13 @@ import jp.l1j.server.packets.server.S_PetCtrlMenu;
 import jp.l1j.server.packets.server.S_Poison;
 import jp.l1j.server.packets.server.S_RemoveObject;
 import jp.l1j.server.packets.server.ServerBasePacket;
+import jp.l1j.server.packets.server.SharedPacket;
 import jp.l1j.server.random.RandomGenerator;
 import jp.l1j.server.random.RandomGeneratorFactory;
 import jp.l1j.server.templates.L1MagicDoll;
 import jp.l1j.server.types.Point;
 import jp.l1j.server.utils.IntRange;
+import jp.l1j.server.utils.collections.IntHashMap;
 
 // Referenced classes of package jp.l1j.server.model:
 // L1Object, Die, L1PcInstance, L1MonsterInstance,
@@ -61,7 +66,8 @@ public class L1Character extends L1Object {
 
 	private final Map<Integer, L1NpcInstance> _petlist = new HashMap<Integer, L1NpcInstance>();
 	private final Map<Integer, L1DollInstance> _dolllist = new HashMap<Integer, L1DollInstance>();
-	private final Map<Integer, L1SkillTimer> _skillEffect = new HashMap<Integer, L1SkillTimer>();
+	// スキルタイマーのワーカーとパケット、AIのスレッドから操作されるため、自身で同期する
+	private final IntHashMap<L1SkillTimer> _skillEffect = new IntHashMap<L1SkillTimer>();
 	private final Map<Integer, L1ItemDelay.ItemDelayTimer> _itemdelay = new HashMap<Integer, L1ItemDelay.ItemDelayTimer>();
 	private final Map<Integer, L1FollowerInstance> _followerlist = new HashMap<Integer, L1FollowerInstance>();
 
@@ -224,6 +230,7 @@ public class L1Character extends L1Object {
 	 *            送信するパケットを表すServerBasePacketオブジェクト。
 	 */
 	public void broadcastPacket(ServerBasePacket packet) {
+		packet = SharedPacket.of(packet);
 		for (L1PcInstance pc : L1World.getInstance().getVisiblePlayer(this)) {
 			if (pc.getMapId() <= 10000) {
 				pc.sendPackets(packet);
@@ -243,6 +250,7 @@ public class L1Character extends L1Object {
 	 */
 	public void broadcastPacketExceptTargetSight(ServerBasePacket packet,
 			L1Character target) {
+		packet = SharedPacket.of(packet);
 		for (L1PcInstance pc : L1World.getInstance()
 				.getVisiblePlayerExceptTargetSight(this, target)) {
 			pc.sendPackets(packet);
@@ -259,6 +267,7 @@ public class L1Character extends L1Object {
 	 */
 	public void broadcastPacketForFindInvis(ServerBasePacket packet,
 			boolean isFindInvis) {
+		packet = SharedPacket.of(packet);
 		for (L1PcInstance pc : L1World.getInstance().getVisiblePlayer(this)) {
 			if (isFindInvis) {
 				if (pc.hasSkillEffect(GMSTATUS_FINDINVIS)) {
@@ -279,6 +288,7 @@ public class L1Character extends L1Object {
 	 *            送信するパケットを表すServerBasePacketオブジェクト。
 	 */
 	public void wideBroadcastPacket(ServerBasePacket packet) {
+		packet = SharedPacket.of(packet);
 		for (L1PcInstance pc : L1World.getInstance().getVisiblePlayer(this, 50)) {
 			pc.sendPackets(packet);
 		}
@@ -463,7 +473,9 @@ public class L1Character extends L1Object {
 			timer = L1SkillTimerCreator.create(this, skillId, timeMillis);
 			timer.begin();
 		}
-		_skillEffect.put(skillId, timer);
+		synchronized (_skillEffect) {
+			_skillEffect.put(skillId, timer);
+		}
 	}
 
 	/**
@@ -498,9 +510,13 @@ public class L1Character extends L1Object {
 	 *            削除する効果のスキルID
 	 */
 	public void removeSkillEffect(int skillId) {
-		L1SkillTimer timer = _skillEffect.remove(skillId);
+		L1SkillTimer timer;
+		synchronized (_skillEffect) {
+			timer = _skillEffect.remove(skillId);
+		}
 		if (timer != null) {
 			timer.end();
+			refreshInvisible(skillId);
 		}
 	}
 
@@ -511,9 +527,20 @@ public class L1Character extends L1Object {
 	 *            削除するタイマーのスキルＩＤ
 	 */
 	public void killSkillEffectTimer(int skillId) {
-		L1SkillTimer timer = _skillEffect.remove(skillId);
+		L1SkillTimer timer;
+		synchronized (_skillEffect) {
+			timer = _skillEffect.remove(skillId);
+		}
 		if (timer != null) {
 			timer.kill();
+			refreshInvisible(skillId);
+		}
+	}
+
+	// 透明状態が解けたことを周囲のプレイヤーの認識処理に知らせる
+	private void refreshInvisible(int skillId) {
+		if (skillId == INVISIBILITY || skillId == BLIND_HIDING) {
+			L1World.getInstance().refreshVisibleObject(this);
 		}
 	}
 
@@ -521,12 +548,16 @@ public class L1Character extends L1Object {
 	 * キャラクターから、全てのスキル効果タイマーを削除する。スキル効果は削除されない。
 	 */
 	public void clearSkillEffectTimer() {
-		for (L1SkillTimer timer : _skillEffect.values()) {
+		List<L1SkillTimer> timers;
+		synchronized (_skillEffect) {
+			timers = _skillEffect.values(); // コピーが返る
+			_skillEffect.clear();
+		}
+		for (L1SkillTimer timer : timers) {
 			if (timer != null) {
 				timer.kill();
 			}
 		}
-		_skillEffect.clear();
 	}
 
 	/**
@@ -537,7 +568,9 @@ public class L1Character extends L1Object {
 	 * @return 魔法効果があればtrue、なければfalse。
 	 */
 	public boolean hasSkillEffect(int skillId) {
-		return _skillEffect.containsKey(skillId);
+		synchronized (_skillEffect) {
+			return _skillEffect.containsKey(skillId);
+		}
 	}
 
 	/**
@@ -548,7 +581,10 @@ public class L1Character extends L1Object {
 	 * @return スキル効果の残り時間(秒)。スキルがかかっていないか効果時間が無限の場合、-1。
 	 */
 	public int getSkillEffectTimeSec(int skillId) {
-		L1SkillTimer timer = _skillEffect.get(skillId);
+		L1SkillTimer timer;
+		synchronized (_skillEffect) {
+			timer = _skillEffect.get(skillId);
+		}
 		if (timer == null) {
 			return -1;
 		}
@@ -823,8 +859,11 @@ public class L1Character extends L1Object {
 	}
 
 	// ■■■■■■■■■■ L1PcInstanceへ移動するプロパティ ■■■■■■■■■■
-	private final List<L1Object> _knownObjects = new CopyOnWriteArrayList<L1Object>();
-	private final List<L1PcInstance> _knownPlayer = new CopyOnWriteArrayList<L1PcInstance>();
+	// 認識の追加と削除、含まれているかの判定が多いため、ハッシュで管理する
+	private final Set<L1Object> _knownObjects = Collections
+			.newSetFromMap(new ConcurrentHashMap<L1Object, Boolean>());
+	private final Set<L1PcInstance> _knownPlayer = Collections
+			.newSetFromMap(new ConcurrentHashMap<L1PcInstance, Boolean>());
 
 	/**
 	 * 指定されたオブジェクトを、キャラクターが認識しているかを返す。
@@ -840,18 +879,18 @@ public class L1Character extends L1Object {
 	/**
 	 * キャラクターが認識している全てのオブジェクトを返す。
 	 *
-	 * @return キャラクターが認識しているオブジェクトを表すL1Objectが格納されたArrayList。
+	 * @return キャラクターが認識しているオブジェクトを表すL1Objectが格納されたCollection。
 	 */
-	public List<L1Object> getKnownObjects() {
+	public Collection<L1Object> getKnownObjects() {
 		return _knownObjects;
 	}
 
 	/**
 	 * キャラクターが認識している全てのプレイヤーを返す。
 	 *
-	 * @return キャラクターが認識しているオブジェクトを表すL1PcInstanceが格納されたArrayList。
+	 * @return キャラクターが認識しているオブジェクトを表すL1PcInstanceが格納されたCollection。
 	 */
-	public List<L1PcInstance> getKnownPlayers() {
+	public Collection<L1PcInstance> getKnownPlayers() {
 		return _knownPlayer;
 	}
 
@@ -862,8 +901,7 @@ public class L1Character extends L1Object {
 	 *            新たに認識するオブジェクト。
 	 */
 	public void addKnownObject(L1Object obj) {
-		if (!_knownObjects.contains(obj)) {
-			_knownObjects.add(obj);
+		if (_knownObjects.add(obj)) {
 			if (obj instanceof L1PcInstance) {
 				_knownPlayer.add((L1PcInstance) obj);
 			}
@@ -17,6 +17,8 @@ package jp.l1j.server.model;
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import static jp.l1j.locale.I18N.*;
@@ -52,7 +54,11 @@ public class L1Clan {
 
 	private final L1WarehouseInventory _clanWarehouse;
 
-	private final ArrayList<String> membersNameList = new ArrayList<String>();
+	// 参照するスレッドは複製を辿るため、変更はこの血盟で同期して行う
+	private volatile CopyOnWriteArrayList<String> membersNameList = new CopyOnWriteArrayList<String>();
+
+	// 血盟員の加入、脱退の回数
+	private int _memberVersion = 0;
 
 	public L1Clan(int clanId) {
 		_clanId = clanId;
@@ -112,15 +118,37 @@ public class L1Clan {
 		_createdAt = createdAt;
 	}
 
-	public void addMemberName(String memberName) {
-		if (!membersNameList.contains(memberName)) {
-			membersNameList.add(memberName);
+	public synchronized void addMemberName(String memberName) {
+		if (membersNameList.addIfAbsent(memberName)) {
+			_memberVersion++;
+		}
+	}
+
+	public synchronized int getMemberVersion() {
+		return _memberVersion;
+	}
+
+	/**
+	 * 血盟員の名前を全て入れ替える。DBからの一括読み込みで使う。
+	 * 参照中のリストは変更せず、新しいリストに差し替える。
+	 *
+	 * @param version
+	 *            読み込みを始める前のgetMemberVersion()の値。
+	 *            その後に加入、脱退があった場合は入れ替えない
+	 * @return 入れ替えた場合はtrue
+	 */
+	public synchronized boolean setMemberNames(List<String> memberNames,
+			int version) {
+		if (_memberVersion != version) {
+			return false;
 		}
+		membersNameList = new CopyOnWriteArrayList<String>(memberNames);
+		return true;
 	}
 
-	public void delMemberName(String memberName) {
-		if (membersNameList.contains(memberName)) {
-			membersNameList.remove(memberName);
+	public synchronized void delMemberName(String memberName) {
+		if (membersNameList.remove(memberName)) {
+			_memberVersion++;
 		}
 	}
 
@@ -200,7 +228,7 @@ public class L1Clan {
 	}
 
 	public String[] getAllMembers() {
-		return membersNameList.toArray(new String[membersNameList.size()]);
+		return membersNameList.toArray(new String[0]);
 	}
 
 	public L1WarehouseInventory getWarehouse() {
@@ -1,37 +1,42 @@
-/**
+/*
  * This program is free software: you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
  * the Free Software Foundation, either version 3 of the License, or
  * (at your option) any later version.
- * 
+ *
  * This program is distributed in the hope that it will be useful,
  * but WITHOUT ANY WARRANTY; without even the implied warranty of
  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
  * GNU General Public License for more details.
- * 
+ *
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
+
 package jp.l1j.server.model;
 
-import java.util.Timer;
+import jp.l1j.configure.Config;
+import jp.l1j.server.utils.TimingWheel;
 
 /**
- * NPCの自然回復TimerTaskをスケジュールするためのTimerクラス
- * 
+ * 全てのNPCのAIを駆動する共有スケジューラ。
+ * NpcAIImplTypeに"3"を指定した場合に使用される。
  */
-public class L1NpcRegenerationTimer extends Timer {
+public class L1NpcAIScheduler extends TimingWheel {
+	private static final int TICK_MILLIS = 10;
 
-	private static L1NpcRegenerationTimer _instance = null;
+	private static final int WHEEL_SIZE = 1024; // 1周約10秒
 
-	private L1NpcRegenerationTimer() {
-	}
+	private static L1NpcAIScheduler _instance;
 
-	public static L1NpcRegenerationTimer getInstance() {
+	public static synchronized L1NpcAIScheduler getInstance() {
 		if (_instance == null) {
-			_instance = new L1NpcRegenerationTimer();
+			_instance = new L1NpcAIScheduler();
 		}
 		return _instance;
 	}
 
+	private L1NpcAIScheduler() {
+		super("NpcAI", TICK_MILLIS, WHEEL_SIZE, Config.NPCAI_WORKER_THREADS);
+	}
 }
@@ -20,6 +20,7 @@ import java.io.Serializable;
 import jp.l1j.server.model.instance.L1PcInstance;
 import jp.l1j.server.model.map.L1Map;
 import jp.l1j.server.model.map.L1WorldMap;
+import jp.l1j.server.types.Point;
 
 // Referenced classes of package jp.l1j.server.model:
 // L1PcInstance, L1Character
@@ -127,7 +128,101 @@ public class L1Object implements Serializable {
 		_loc.setY(y);
 	}
 
-	private L1Location _loc = new L1Location();
+	private L1Location _loc = new ObjectLocation(this);
+
+	/**
+	 * 座標が変更された際に、L1Worldの空間インデックスへ通知するL1Location。
+	 * L1Locationを直接書き換えた場合も通知されるように、全ての変更メソッドを上書きする。
+	 */
+	private static class ObjectLocation extends L1Location {
+		private final L1Object _owner;
+
+		// 前回通知した位置。移動前の認識範囲にいたプレイヤーへの通知に使う
+		// テレポートではmoveVisibleObjectの後にsetX、setY、setMapの順で変更されるため、
+		// 通知が行われなかった途中の座標では更新しない
+		private int _lastX;
+		private int _lastY;
+		private int _lastMapId = -1;
+
+		ObjectLocation(L1Object owner) {
+			_owner = owner;
+		}
+
+		private void moved() {
+			if (L1World.getInstance().updateGrid(_owner, _lastX, _lastY,
+					_lastMapId)) {
+				_lastX = getX();
+				_lastY = getY();
+				_lastMapId = getMapId();
+			}
+		}
+
+		@Override
+		public void setX(int x) {
+			super.setX(x);
+			moved();
+		}
+
+		@Override
+		public void setY(int y) {
+			super.setY(y);
+			moved();
+		}
+
+		@Override
+		public void set(Point pt) {
+			super.set(pt);
+			moved();
+		}
+
+		@Override
+		public void set(int x, int y) {
+			super.set(x, y);
+			moved();
+		}
+
+		@Override
+		public void set(L1Location loc) {
+			super.set(loc);
+			moved();
+		}
+
+		@Override
+		public void set(int x, int y, L1Map map) {
+			super.set(x, y, map);
+			moved();
+		}
+
+		@Override
+		public void set(Point pt, L1Map map) {
+			super.set(pt, map);
+			moved();
+		}
+
+		@Override
+		public void forward(int heading) {
+			super.forward(heading);
+			moved();
+		}
+
+		@Override
+		public void backward(int heading) {
+			super.backward(heading);
+			moved();
+		}
+
+		@Override
+		public void setMap(L1Map map) {
+			super.setMap(map);
+			moved();
+		}
+
+		@Override
+		public void setMap(int mapId) {
+			super.setMap(mapId);
+			moved();
+		}
+	}
 
 	/**
 	 * オブジェクトが存在する位置を保持する、L1Locationオブジェクトへの参照を返す。
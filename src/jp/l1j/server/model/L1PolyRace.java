@@ -25,6 +25,8 @@ import jp.l1j.server.model.instance.L1DoorInstance;
 import jp.l1j.server.model.instance.L1ItemInstance;
 import jp.l1j.server.model.instance.L1PcInstance;
 import jp.l1j.server.model.inventory.L1Inventory;
+import jp.l1j.server.model.map.L1Map;
+import jp.l1j.server.model.map.L1WorldMap;
 import jp.l1j.server.model.skill.L1SkillId;
 import jp.l1j.server.model.skill.L1SkillUse;
 import jp.l1j.server.packets.server.S_EffectLocation;
@@ -507,45 +509,37 @@ public class L1PolyRace {
 	}
 
 	// 床パネル設定
-	private void onEffectTrap(L1PcInstance pc) {
-		int x = pc.getX();
-		int y = pc.getY();
-		if (x == 32748 && (y == 32845 || y == 32846)) {
-			speedUp(pc, 32748, 32845);
-		} else if (x == 32748 && (y == 32847 || y == 32848)) {
-			speedUp(pc, 32748, 32847);
-		} else if (x == 32748 && (y == 32849 || y == 32850)) {
-			speedUp(pc, 32748, 32849);
-		} else if (x == 32748 && y == 32851) {
-			speedUp(pc, 32748, 32851);
-		} else if (x == 32762 && (y == 32811 || y == 32812)) {
-			speedUp(pc, 32762, 32811);
-		} else if ((x == 32799 || x == 32800) && y == 32830) {
-			speedUp(pc, 32800, 32830);
-		} else if ((x == 32736 || x == 32737) && y == 32840) {
-			randomPoly(pc, 32737, 32840);
-			speedUp2(pc, 32737, 32840);
-		} else if ((x == 32738 || x == 32739) && y == 32840) {
-			randomPoly(pc, 32739, 32840);
-			speedUp2(pc, 32739, 32840);
-		} else if ((x == 32740 || x == 32741) && y == 32840) {
-			randomPoly(pc, 32741, 32840);
-			speedUp2(pc, 32741, 32840);
-		} else if (x == 32749 && (y == 32818 || y == 32817)) {
-			randomPoly(pc, 32749, 32817);
-		} else if (x == 32749 && (y == 32816 || y == 32815)) {
-			randomPoly(pc, 32749, 32815);
-		} else if (x == 32749 && (y == 32814 || y == 32813)) {
-			randomPoly(pc, 32749, 32813);
-		} else if (x == 32749 && (y == 32812 || y == 32811)) {
-			randomPoly(pc, 32749, 32811);
-		} else if (x == 32790 && (y == 32812 || y == 32813)) {
-			randomPoly(pc, 32790, 32812);
-			speedUp2(pc, 32790, 32812);
-		} else if ((x == 32793 || x == 32794) && y == 32831) {
-			randomPoly(pc, 32794, 32831);
-			speedUp2(pc, 32794, 32831);
-
+	private static final int PANEL_SPEED_UP = 1; // 加速
+	private static final int PANEL_POLY = 2; // 変身
+	private static final int PANEL_SPEED_UP2 = 4; // 変身パネル用の加速
+
+	// {X1, Y1, X2, Y2, 効果, エフェクトのX, エフェクトのY}
+	private static final int[][] PANELS = {
+			{ 32748, 32845, 32748, 32846, PANEL_SPEED_UP, 32748, 32845 },
+			{ 32748, 32847, 32748, 32848, PANEL_SPEED_UP, 32748, 32847 },
+			{ 32748, 32849, 32748, 32850, PANEL_SPEED_UP, 32748, 32849 },
+			{ 32748, 32851, 32748, 32851, PANEL_SPEED_UP, 32748, 32851 },
+			{ 32762, 32811, 32762, 32812, PANEL_SPEED_UP, 32762, 32811 },
+			{ 32799, 32830, 32800, 32830, PANEL_SPEED_UP, 32800, 32830 },
+			{ 32736, 32840, 32737, 32840, PANEL_POLY | PANEL_SPEED_UP2, 32737, 32840 },
+			{ 32738, 32840, 32739, 32840, PANEL_POLY | PANEL_SPEED_UP2, 32739, 32840 },
+			{ 32740, 32840, 32741, 32840, PANEL_POLY | PANEL_SPEED_UP2, 32741, 32840 },
+			{ 32749, 32817, 32749, 32818, PANEL_POLY, 32749, 32817 },
+			{ 32749, 32815, 32749, 32816, PANEL_POLY, 32749, 32815 },
+			{ 32749, 32813, 32749, 32814, PANEL_POLY, 32749, 32813 },
+			{ 32749, 32811, 32749, 32812, PANEL_POLY, 32749, 32811 },
+			{ 32790, 32812, 32790, 32813, PANEL_POLY | PANEL_SPEED_UP2, 32790, 32812 },
+			{ 32793, 32831, 32794, 32831, PANEL_POLY | PANEL_SPEED_UP2, 32794, 32831 } };
+
+	private void onEffectTrap(L1PcInstance pc, int[] panel) {
+		if ((panel[4] & PANEL_SPEED_UP) != 0) {
+			speedUp(pc, panel[5], panel[6]);
+		}
+		if ((panel[4] & PANEL_POLY) != 0) {
+			randomPoly(pc, panel[5], panel[6]);
+		}
+		if ((panel[4] & PANEL_SPEED_UP2) != 0) {
+			speedUp2(pc, panel[5], panel[6]);
 		}
 	}
 
@@ -603,81 +597,89 @@ public class L1PolyRace {
 	// 加速処理（変身パネル用　ヘイスト速度） end
 
 	// 周回数判定処理　start
-	public void checkLapFinish(L1PcInstance pc) {
-		if (pc.getMapId() != 5143 || getGameStatus() != STATUS_PLAYING) {
-			return;
-		}
+	private static final int RACE_MAP_ID = 5143;
+	private static final int MIN_LOC = Integer.MIN_VALUE;
+	private static final int MAX_LOC = Integer.MAX_VALUE;
+
+	// 順に通過するチェックポイント {X1, Y1, X2, Y2}。最後がゴール
+	private static final int[][] CHECKPOINTS = {
+			{ 32760, 32845, 32760, MAX_LOC }, { 32754, 32845, 32754, MAX_LOC },
+			{ 32748, 32845, 32748, MAX_LOC }, { MIN_LOC, 32844, 32743, 32844 },
+			{ MIN_LOC, 32840, 32742, 32840 }, { MIN_LOC, 32835, 32742, 32835 },
+			{ MIN_LOC, 32830, 32742, 32830 }, { MIN_LOC, 32826, 32742, 32826 },
+			{ MIN_LOC, 32822, 32742, 32822 }, { 32749, MIN_LOC, 32749, 32818 },
+			{ 32755, MIN_LOC, 32755, 32818 }, { 32760, MIN_LOC, 32760, 32818 },
+			{ 32765, MIN_LOC, 32765, 32818 }, { 32770, MIN_LOC, 32770, 32818 },
+			{ 32775, MIN_LOC, 32775, 32818 }, { 32780, MIN_LOC, 32780, 32818 },
+			{ 32785, MIN_LOC, 32785, 32818 }, { 32789, MIN_LOC, 32789, 32818 },
+			{ 32792, 32821, MAX_LOC, 32821 }, { 32793, 32826, MAX_LOC, 32826 },
+			{ 32793, 32831, MAX_LOC, 32831 }, { 32793, 32836, MAX_LOC, 32836 },
+			{ 32793, 32842, MAX_LOC, 32842 }, { 32790, 32845, 32790, MAX_LOC },
+			{ 32785, 32845, 32785, MAX_LOC }, { 32780, 32845, 32780, MAX_LOC },
+			{ 32775, 32845, 32775, MAX_LOC }, { 32770, 32845, 32770, MAX_LOC },
+			{ 32764, 32845, 32764, MAX_LOC } };
+
+	private L1PolyRace() {
+		registerTriggers();
+	}
 
-		onEffectTrap(pc);
-		int x = pc.getX();
-		int y = pc.getY();
-		int check = pc.getLapCheck();
+	/**
+	 * 床パネルとチェックポイントのタイルを、仕掛けの索引に登録する。
+	 * 移動の度に呼ばれていた判定が、これらのタイルの上でのみ行われるようになる。
+	 */
+	private void registerTriggers() {
+		L1Map map = L1WorldMap.getInstance().getMap((short) RACE_MAP_ID);
+		for (final int[] panel : PANELS) {
+			register(map, panel, new L1TileTriggers.Trigger() {
+				@Override
+				public void onStep(L1PcInstance pc) {
+					if (getGameStatus() == STATUS_PLAYING) {
+						onEffectTrap(pc, panel);
+					}
+				}
+			});
+		}
+		for (int i = 0; i < CHECKPOINTS.length; i++) {
+			final int check = i;
+			register(map, CHECKPOINTS[i], new L1TileTriggers.Trigger() {
+				@Override
+				public void onStep(L1PcInstance pc) {
+					if (getGameStatus() == STATUS_PLAYING) {
+						onCheckpoint(pc, check);
+					}
+				}
+			});
+		}
+	}
 
-		if (x == 32760 && y >= 32845 && check == 0) {
-			pc.setLapCheck(check + 1);
-		} else if (x == 32754 && y >= 32845 && check == 1) {
-			pc.setLapCheck(check + 1);
-		} else if (x == 32748 && y >= 32845 && check == 2) {
-			pc.setLapCheck(check + 1);
-		} else if (x <= 32743 && y == 32844 && check == 3) {
-			pc.setLapCheck(check + 1);
-		} else if (x <= 32742 && y == 32840 && check == 4) {
-			pc.setLapCheck(check + 1);
-		} else if (x <= 32742 && y == 32835 && check == 5) {
-			pc.setLapCheck(check + 1);
-		} else if (x <= 32742 && y == 32830 && check == 6) {
-			pc.setLapCheck(check + 1);
-		} else if (x <= 32742 && y == 32826 && check == 7) {
-			pc.setLapCheck(check + 1);
-		} else if (x <= 32742 && y == 32822 && check == 8) {
-			pc.setLapCheck(check + 1);
-		} else if (x == 32749 && y <= 32818 && check == 9) {
-			pc.setLapCheck(check + 1);
-		} else if (x == 32755 && y <= 32818 && check == 10) {
-			pc.setLapCheck(check + 1);
-		} else if (x == 32760 && y <= 32818 && check == 11) {
-			pc.setLapCheck(check + 1);
-		} else if (x == 32765 && y <= 32818 && check == 12) {
-			pc.setLapCheck(check + 1);
-		} else if (x == 32770 && y <= 32818 && check == 13) {
-			pc.setLapCheck(check + 1);
-		} else if (x == 32775 && y <= 32818 && check == 14) {
-			pc.setLapCheck(check + 1);
-		} else if (x == 32780 && y <= 32818 && check == 15) {
-			pc.setLapCheck(check + 1);
-		} else if (x == 32785 && y <= 32818 && check == 16) {
-			pc.setLapCheck(check + 1);
-		} else if (x == 32789 && y <= 32818 && check == 17) {
-			pc.setLapCheck(check + 1);
-		} else if (x >= 32792 && y == 32821 && check == 18) {
-			pc.setLapCheck(check + 1);
-		} else if (x >= 32793 && y == 32826 && check == 19) {
-			pc.setLapCheck(check + 1);
-		} else if (x >= 32793 && y == 32831 && check == 20) {
-			pc.setLapCheck(check + 1);
-		} else if (x >= 32793 && y == 32836 && check == 21) {
-			pc.setLapCheck(check + 1);
-		} else if (x >= 32793 && y == 32842 && check == 22) {
-			pc.setLapCheck(check + 1);
-		} else if (x == 32790 && y >= 32845 && check == 23) {
-			pc.setLapCheck(check + 1);
-		} else if (x == 32785 && y >= 32845 && check == 24) {
-			pc.setLapCheck(check + 1);
-		} else if (x == 32780 && y >= 32845 && check == 25) {
-			pc.setLapCheck(check + 1);
-		} else if (x == 32775 && y >= 32845 && check == 26) {
-			pc.setLapCheck(check + 1);
-		} else if (x == 32770 && y >= 32845 && check == 27) {
-			pc.setLapCheck(check + 1);
-		} else if (x == 32764 && y >= 32845 && check == 28) {
-			if (pc.getLap() == maxLap) {
-				setGameWinner(pc);
+	// 範囲の開いた辺はマップの端までとする
+	private static void register(L1Map map, int[] area,
+			L1TileTriggers.Trigger trigger) {
+		int x1 = Math.max(area[0], map.getX());
+		int y1 = Math.max(area[1], map.getY());
+		int x2 = Math.min(area[2], map.getX() + map.getWidth() - 1);
+		int y2 = Math.min(area[3], map.getY() + map.getHeight() - 1);
+		for (int x = x1; x <= x2; x++) {
+			for (int y = y1; y <= y2; y++) {
+				L1TileTriggers.getInstance().add(RACE_MAP_ID, x, y, trigger);
 			}
-			pc.setLapCheck(0);
-			pc.setLap(pc.getLap() + 1);
-			pc.sendPackets(new S_Race(maxLap, pc.getLap()));// lap
+		}
+	}
 
+	private void onCheckpoint(L1PcInstance pc, int check) {
+		if (pc.getLapCheck() != check) {
+			return; // 順に通過していない
+		}
+		if (check < CHECKPOINTS.length - 1) {
+			pc.setLapCheck(check + 1);
+			return;
+		}
+		if (pc.getLap() == maxLap) {
+			setGameWinner(pc);
 		}
+		pc.setLapCheck(0);
+		pc.setLap(pc.getLap() + 1);
+		pc.sendPackets(new S_Race(maxLap, pc.getLap()));// lap
 	}
 
 	// 周回数判定処理　end
@@ -0,0 +1,92 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.model;
+
+import jp.l1j.configure.Config;
+import jp.l1j.server.utils.TimingWheel;
+
+/**
+ * PC・NPC・マジックドールのHP/MP自然回復を駆動する共有スケジューラ。
+ * 同じティックに期限の来た回復タスクはまとめて取り出され、複数のワーカースレッドで並列に処理される。
+ * 1つの回復タスクが遅れても、他のキャラクターの回復を待たせない。
+ */
+public class L1RegenerationScheduler extends TimingWheel {
+	private static final int TICK_MILLIS = 50;
+
+	private static final int WHEEL_SIZE = 1024; // 1周約51秒
+
+	private static L1RegenerationScheduler _instance;
+
+	public static synchronized L1RegenerationScheduler getInstance() {
+		if (_instance == null) {
+			_instance = new L1RegenerationScheduler();
+		}
+		return _instance;
+	}
+
+	private L1RegenerationScheduler() {
+		super("Regeneration", TICK_MILLIS, WHEEL_SIZE,
+				Config.REGENERATION_WORKER_THREADS);
+	}
+
+	/**
+	 * 自然回復のタスク。
+	 */
+	public static abstract class Task extends TimingWheel.Task {
+		private volatile boolean _cancelled = false;
+		private long _interval;
+
+		/**
+		 * 回復処理を行う。
+		 *
+		 * @return 次に回復するまでの時間(ms)。0未満を返すと回復を終了する。
+		 */
+		protected abstract long regenerate();
+
+		@Override
+		protected final long execute() {
+			if (_cancelled) {
+				return -1;
+			}
+			long delay = regenerate();
+			// 実行中に停止された場合は、再登録しない
+			return _cancelled ? -1 : delay;
+		}
+
+		/**
+		 * 指定した間隔で回復を開始する。最初の回復は1間隔後に行われる。
+		 */
+		public void start(long interval) {
+			_interval = interval;
+			getInstance().schedule(this, interval);
+		}
+
+		/**
+		 * 開始時に指定された回復間隔(ms)を返す。
+		 */
+		protected long getInterval() {
+			return _interval;
+		}
+
+		/**
+		 * 回復を停止する。停止したタスクは再開できない。
+		 */
+		public void cancel() {
+			_cancelled = true;
+			getInstance().cancel(this);
+		}
+	}
+}
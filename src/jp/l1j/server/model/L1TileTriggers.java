@@ -0,0 +1,230 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.model;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import jp.l1j.server.model.instance.L1PcInstance;
+import jp.l1j.server.utils.collections.Lists;
+
+/**
+ * タイルに設置された仕掛け(トラップ、ダンジョンの入口など)を、(マップID, X, Y)を詰めたlongで引く索引。
+ * PCの移動の度に参照されるため、参照はロックを取らずオブジェクトも生成しない。
+ * 登録と削除は頻度が低いため、ロックを取って該当するバケットの連結を作り直す。
+ */
+public class L1TileTriggers {
+	private static final int INITIAL_CAPACITY = 4096;
+
+	private static L1TileTriggers _instance;
+
+	public static synchronized L1TileTriggers getInstance() {
+		if (_instance == null) {
+			_instance = new L1TileTriggers();
+		}
+		return _instance;
+	}
+
+	/**
+	 * タイルに設置される仕掛け。
+	 */
+	public static abstract class Trigger {
+		/**
+		 * PCがタイルへ移動しようとした時に呼ばれる。
+		 *
+		 * @return 移動を中断する場合(別の場所へテレポートさせた場合など)はtrue
+		 */
+		public boolean onEnter(L1PcInstance pc) {
+			return false;
+		}
+
+		/**
+		 * PCがタイルへ移動した後に呼ばれる。
+		 */
+		public void onStep(L1PcInstance pc) {
+		}
+	}
+
+	// バケットの連結。書き換えずに作り直すため、参照側はロック無しで辿れる
+	private static final class Node {
+		private final long _key;
+		private final Trigger[] _triggers;
+		private final Node _next;
+
+		private Node(long key, Trigger[] triggers, Node next) {
+			_key = key;
+			_triggers = triggers;
+			_next = next;
+		}
+	}
+
+	private volatile AtomicReferenceArray<Node> _table = new AtomicReferenceArray<Node>(
+			INITIAL_CAPACITY);
+	private int _size = 0; // 登録されているタイル数。thisで保護される
+
+	private L1TileTriggers() {
+	}
+
+	/**
+	 * (マップID, X, Y)を1つのlongに詰める。座標は16ビットに収まる前提。
+	 */
+	public static long toKey(int mapId, int x, int y) {
+		return ((long) mapId << 32) | ((x & 0xffffL) << 16) | (y & 0xffffL);
+	}
+
+	private static int indexOf(long key, int length) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & (length - 1);
+	}
+
+	/**
+	 * タイルに設置されている仕掛けを返す。返された配列は変更しないこと。
+	 *
+	 * @return 仕掛けの配列。無い場合はnull
+	 */
+	public Trigger[] get(int mapId, int x, int y) {
+		long key = toKey(mapId, x, y);
+		AtomicReferenceArray<Node> table = _table;
+		for (Node node = table.get(indexOf(key, table.length())); node != null; node = node._next) {
+			if (node._key == key) {
+				return node._triggers;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 範囲内(両端を含む)のタイルに設置されている仕掛けを返す。
+	 */
+	public List<Trigger> get(int mapId, int x1, int y1, int x2, int y2) {
+		List<Trigger> result = Lists.newArrayList();
+		for (int x = x1; x <= x2; x++) {
+			for (int y = y1; y <= y2; y++) {
+				Trigger[] triggers = get(mapId, x, y);
+				if (triggers != null) {
+					for (Trigger trigger : triggers) {
+						result.add(trigger);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * タイルに仕掛けを登録する。同じタイルには複数の仕掛けを登録でき、登録した順に呼ばれる。
+	 */
+	public synchronized void add(int mapId, int x, int y, Trigger trigger) {
+		long key = toKey(mapId, x, y);
+		Trigger[] triggers = get(mapId, x, y);
+		Trigger[] newTriggers;
+		if (triggers == null) {
+			newTriggers = new Trigger[] { trigger };
+			if (++_size > _table.length() * 3 / 4) {
+				resize();
+			}
+		} else {
+			newTriggers = new Trigger[triggers.length + 1];
+			System.arraycopy(triggers, 0, newTriggers, 0, triggers.length);
+			newTriggers[triggers.length] = trigger;
+		}
+		replace(key, newTriggers);
+	}
+
+	/**
+	 * タイルから仕掛けを削除する。
+	 *
+	 * @return 登録されていた場合はtrue
+	 */
+	public synchronized boolean remove(int mapId, int x, int y, Trigger trigger) {
+		Trigger[] triggers = get(mapId, x, y);
+		if (triggers == null) {
+			return false;
+		}
+		int index = -1;
+		for (int i = 0; i < triggers.length; i++) {
+			if (triggers[i] == trigger) {
+				index = i;
+				break;
+			}
+		}
+		if (index < 0) {
+			return false;
+		}
+		Trigger[] newTriggers = null;
+		if (triggers.length > 1) {
+			newTriggers = new Trigger[triggers.length - 1];
+			System.arraycopy(triggers, 0, newTriggers, 0, index);
+			System.arraycopy(triggers, index + 1, newTriggers, index,
+					triggers.length - index - 1);
+		} else {
+			_size--;
+		}
+		replace(toKey(mapId, x, y), newTriggers);
+		return true;
+	}
+
+	// thisのロックを保持して呼ぶこと。triggersがnullの場合はタイルを削除する
+	private void replace(long key, Trigger[] triggers) {
+		AtomicReferenceArray<Node> table = _table;
+		int index = indexOf(key, table.length());
+		// Nodeは書き換えず、バケットの連結全体を作り直す
+		Node head = triggers == null ? null : new Node(key, triggers, null);
+		for (Node node = table.get(index); node != null; node = node._next) {
+			if (node._key != key) {
+				head = new Node(node._key, node._triggers, head);
+			}
+		}
+		table.set(index, head);
+	}
+
+	// thisのロックを保持して呼ぶこと
+	private void resize() {
+		AtomicReferenceArray<Node> table = _table;
+		AtomicReferenceArray<Node> newTable = new AtomicReferenceArray<Node>(
+				table.length() * 2);
+		for (int i = 0; i < table.length(); i++) {
+			for (Node node = table.get(i); node != null; node = node._next) {
+				int index = indexOf(node._key, newTable.length());
+				newTable.set(index, new Node(node._key, node._triggers,
+						newTable.get(index)));
+			}
+		}
+		_table = newTable;
+	}
+
+	/**
+	 * 移動先のタイルの仕掛けのonEnterを順に呼ぶ。
+	 *
+	 * @return いずれかの仕掛けが移動を中断した場合はtrue
+	 */
+	public static boolean enter(Trigger[] triggers, L1PcInstance pc) {
+		for (Trigger trigger : triggers) {
+			if (trigger.onEnter(pc)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 移動したタイルの仕掛けのonStepを順に呼ぶ。
+	 */
+	public static void step(Trigger[] triggers, L1PcInstance pc) {
+		for (Trigger trigger : triggers) {
+			trigger.onStep(pc);
+		}
+	}
+}
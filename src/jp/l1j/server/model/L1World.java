@@ -31,6 +31,7 @@ import jp.l1j.server.model.inventory.L1GroundInventory;
 import jp.l1j.server.model.map.L1Map;
 import jp.l1j.server.packets.server.S_SystemMessage;
 import jp.l1j.server.packets.server.ServerBasePacket;
+import jp.l1j.server.packets.server.SharedPacket;
 import jp.l1j.server.types.Point;
 
 public class L1World {
@@ -41,6 +42,9 @@ public class L1World {
 	private final ConcurrentHashMap<Integer, L1SummonInstance> _allSummons;
 	private final ConcurrentHashMap<Integer, L1Object> _allObjects;
 	private final ConcurrentHashMap<Integer, L1Object>[] _visibleObjects;
+	private final L1WorldGrid[] _visibleGrids;
+	private final L1WorldGrid[] _playerGrids;
+	private final ConcurrentHashMap<Integer, Integer> _playerGridMaps;
 	private final CopyOnWriteArrayList<L1War> _allWars;
 	private final ConcurrentHashMap<String, L1Clan> _allClans;
 
@@ -63,9 +67,14 @@ public class L1World {
 		_visibleObjects = new ConcurrentHashMap[MAX_MAP_ID + 1]; // マップ毎のオブジェクト(L1Inventory入り、L1ItemInstanceはなし)
 		_allWars = new CopyOnWriteArrayList<L1War>(); // 全ての戦争
 		_allClans = new ConcurrentHashMap<String, L1Clan>(); // 全てのクラン(Online/Offlineどちらも)
+		_visibleGrids = new L1WorldGrid[MAX_MAP_ID + 1]; // _visibleObjectsの空間インデックス
+		_playerGrids = new L1WorldGrid[MAX_MAP_ID + 1]; // _allPlayersのマップ毎の空間インデックス
+		_playerGridMaps = new ConcurrentHashMap<Integer, Integer>(); // プレイヤーが登録されている_playerGrids
 
 		for (int i = 0; i <= MAX_MAP_ID; i++) {
 			_visibleObjects[i] = new ConcurrentHashMap<Integer, L1Object>();
+			_visibleGrids[i] = new L1WorldGrid();
+			_playerGrids[i] = new L1WorldGrid();
 		}
 	}
 
@@ -93,6 +102,7 @@ public class L1World {
 		if (object instanceof L1PcInstance) {
 			_allPlayers.put(((L1PcInstance) object).getName(),
 					(L1PcInstance) object);
+			storePlayerGrid((L1PcInstance) object);
 		}
 		if (object instanceof L1PetInstance) {
 			_allPets.put(object.getId(), (L1PetInstance) object);
@@ -110,6 +120,7 @@ public class L1World {
 		_allObjects.remove(object.getId());
 		if (object instanceof L1PcInstance) {
 			_allPlayers.remove(((L1PcInstance) object).getName());
+			removePlayerGrid((L1PcInstance) object);
 		}
 		if (object instanceof L1PetInstance) {
 			_allPets.remove(object.getId());
@@ -151,12 +162,15 @@ public class L1World {
 	public void addVisibleObject(L1Object object) {
 		if (object.getMapId() <= MAX_MAP_ID) {
 			_visibleObjects[object.getMapId()].put(object.getId(), object);
+			_visibleGrids[object.getMapId()].put(object);
+			refreshVisibleObject(object);
 		}
 	}
 
 	public void removeVisibleObject(L1Object object) {
 		if (object.getMapId() <= MAX_MAP_ID) {
 			_visibleObjects[object.getMapId()].remove(object.getId());
+			_visibleGrids[object.getMapId()].remove(object);
 		}
 	}
 
@@ -165,13 +179,145 @@ public class L1World {
 		if (object.getMapId() != newMap) {
 			if (object.getMapId() <= MAX_MAP_ID) {
 				_visibleObjects[object.getMapId()].remove(object.getId());
+				_visibleGrids[object.getMapId()].remove(object);
 			}
 			if (newMap <= MAX_MAP_ID) {
 				_visibleObjects[newMap].put(object.getId(), object);
+				_visibleGrids[newMap].put(object);
 			}
 		}
 	}
 
+	/**
+	 * オブジェクトの座標またはマップが変更された際に、L1Objectから呼び出される。
+	 * 空間インデックス上の位置を現在の座標に合わせ、移動の前後で周囲にいるプレイヤーに通知する。
+	 *
+	 * @param oldMapId
+	 *            移動前のマップID。移動前の位置が無い場合は-1
+	 * @return 周囲のプレイヤーに通知した場合はtrue。
+	 *         現在のマップに可視オブジェクトとして登録されていない場合はfalse
+	 */
+	boolean updateGrid(L1Object object, int oldX, int oldY, int oldMapId) {
+		int mapId = object.getMapId();
+		if (0 <= mapId && mapId <= MAX_MAP_ID) {
+			_visibleGrids[mapId].update(object);
+		}
+		if (object instanceof L1PcInstance) {
+			updatePlayerGrid((L1PcInstance) object);
+		}
+		if (!isVisibleObject(object)) {
+			return false;
+		}
+		int range = getSearchRange(Config.PC_RECOGNIZE_RANGE);
+		int x = object.getX();
+		int y = object.getY();
+		if (oldMapId == mapId && Math.abs(x - oldX) <= 1
+				&& Math.abs(y - oldY) <= 1) {
+			// 1歩の移動であれば、移動前の認識範囲は1タイル広げた範囲に含まれる
+			notifyPlayers(object, mapId, x, y, range + 1);
+		} else {
+			notifyPlayers(object, mapId, x, y, range);
+			notifyPlayers(object, oldMapId, oldX, oldY, range);
+		}
+		return true;
+	}
+
+	/**
+	 * 透明化の解除など、座標は変わらずに見え方が変わったオブジェクトについて、
+	 * 周囲のプレイヤーに再認識させる。
+	 */
+	public void refreshVisibleObject(L1Object object) {
+		if (isVisibleObject(object)) {
+			notifyPlayers(object, object.getMapId(), object.getX(), object
+					.getY(), getSearchRange(Config.PC_RECOGNIZE_RANGE));
+		}
+	}
+
+	private boolean isVisibleObject(L1Object object) {
+		int mapId = object.getMapId();
+		return 0 <= mapId && mapId <= MAX_MAP_ID
+				&& _visibleGrids[mapId].contains(object);
+	}
+
+	/**
+	 * 指定された座標からrange以内に掛かるセルのプレイヤーへ、オブジェクトの変化を通知する。
+	 * 認識範囲に入ったか出たかの判定は、各プレイヤーの次回の更新で行う。
+	 */
+	private void notifyPlayers(L1Object object, int mapId, int x, int y,
+			int range) {
+		if (mapId < 0 || MAX_MAP_ID < mapId || _playerGrids[mapId].size() == 0) {
+			return;
+		}
+		for (L1Object obj : getGridObjects(_playerGrids, mapId, x, y, range)) {
+			if (obj != object) {
+				((L1PcInstance) obj).notifyViewChanged(object);
+			}
+		}
+	}
+
+	/**
+	 * プレイヤーの認識範囲の中心が(oldX, oldY)から(x, y)へ移った際に、
+	 * 認識範囲に出入りし得る可視オブジェクトを返す。範囲の判定はPoint.isInScreenに合わせる。
+	 */
+	public Collection<L1Object> getRecognizeBoundaryObjects(int mapId,
+			int oldX, int oldY, int x, int y) {
+		if (mapId < 0 || MAX_MAP_ID < mapId) {
+			return Collections.emptyList();
+		}
+		int radius = Config.PC_RECOGNIZE_RANGE;
+		if (radius == -1) {
+			// 画面内はマンハッタン距離18以内、19は端の判定があり、20以上は画面外
+			return _visibleGrids[mapId].getBoundaryObjects(oldX, oldY, x, y,
+					true, SCREEN_RANGE - 1, SCREEN_RANGE);
+		}
+		int range = getSearchRange(radius);
+		return _visibleGrids[mapId].getBoundaryObjects(oldX, oldY, x, y, false,
+				range, range);
+	}
+
+	private void storePlayerGrid(L1PcInstance pc) {
+		synchronized (pc.getLocation()) {
+			removePlayerGrid(pc);
+			int mapId = pc.getMapId();
+			if (0 <= mapId && mapId <= MAX_MAP_ID) {
+				_playerGrids[mapId].put(pc);
+				_playerGridMaps.put(pc.getId(), mapId);
+			}
+		}
+	}
+
+	private void removePlayerGrid(L1PcInstance pc) {
+		synchronized (pc.getLocation()) {
+			Integer mapId = _playerGridMaps.remove(pc.getId());
+			if (mapId != null) {
+				_playerGrids[mapId].remove(pc);
+			}
+		}
+	}
+
+	private void updatePlayerGrid(L1PcInstance pc) {
+		synchronized (pc.getLocation()) {
+			Integer mapId = _playerGridMaps.get(pc.getId());
+			if (mapId == null) {
+				return;
+			}
+			if (mapId.intValue() == pc.getMapId()) {
+				_playerGrids[mapId].update(pc);
+			} else {
+				storePlayerGrid(pc);
+			}
+		}
+	}
+
+	/**
+	 * 指定された座標を中心に、range以内のタイルに掛かるセルの可視オブジェクトを返す。
+	 */
+	private Collection<L1Object> getGridObjects(L1WorldGrid[] grids,
+			int mapId, int x, int y, int range) {
+		return grids[mapId].getObjects(x - range, y - range, x + range, y
+				+ range);
+	}
+
 	private ConcurrentHashMap<Integer, Integer> createLineMap(Point src,
 			Point target) {
 		ConcurrentHashMap<Integer, Integer> lineMap = new ConcurrentHashMap<Integer, Integer>();
@@ -235,7 +381,12 @@ public class L1World {
 		ArrayList<L1Object> result = new ArrayList<L1Object>();
 
 		if (map <= MAX_MAP_ID) {
-			for (L1Object element : _visibleObjects[map].values()) {
+			int x0 = Math.min(src.getX(), target.getX());
+			int y0 = Math.min(src.getY(), target.getY());
+			int x1 = Math.max(src.getX(), target.getX());
+			int y1 = Math.max(src.getY(), target.getY());
+			for (L1Object element : _visibleGrids[map].getObjects(x0, y0, x1,
+					y1)) {
 				if (element.equals(src)) {
 					continue;
 				}
@@ -262,7 +413,8 @@ public class L1World {
 		double sinSita = Math.sin(headingRotate[heading] * Math.PI / 4);
 
 		if (map <= MAX_MAP_ID) {
-			for (L1Object element : _visibleObjects[map].values()) {
+			for (L1Object element : getGridObjects(_visibleGrids, map, x, y,
+					Math.max(width, height))) {
 				if (element.equals(object)) {
 					continue;
 				}
@@ -313,12 +465,23 @@ public class L1World {
 		return getVisibleObjects(object, -1);
 	}
 
+	// 画面内(Point.isInScreen)と判定され得る最大のタイル数
+	private static final int SCREEN_RANGE = 19;
+
+	/**
+	 * 半径の指定(-1:画面内, 0:同一座標, その他:直線タイル数)から、検索するタイル数を返す。
+	 */
+	private static int getSearchRange(int radius) {
+		return radius == -1 ? SCREEN_RANGE : Math.max(radius, 0);
+	}
+
 	public ArrayList<L1Object> getVisibleObjects(L1Object object, int radius) {
 		L1Map map = object.getMap();
 		Point pt = object.getLocation();
 		ArrayList<L1Object> result = new ArrayList<L1Object>();
 		if (map.getId() <= MAX_MAP_ID) {
-			for (L1Object element : _visibleObjects[map.getId()].values()) {
+			for (L1Object element : getGridObjects(_visibleGrids, map.getId(),
+					pt.getX(), pt.getY(), getSearchRange(radius))) {
 				if (element.equals(object)) {
 					continue;
 				}
@@ -350,7 +513,8 @@ public class L1World {
 		int mapId = loc.getMapId(); // ループ内で呼ぶと重いため
 
 		if (mapId <= MAX_MAP_ID) {
-			for (L1Object element : _visibleObjects[mapId].values()) {
+			for (L1Object element : getGridObjects(_visibleGrids, mapId, loc
+					.getX(), loc.getY(), Math.max(radius, 0))) {
 				if (mapId != element.getMapId()) {
 					continue;
 				}
@@ -372,8 +536,13 @@ public class L1World {
 		int map = object.getMapId();
 		Point pt = object.getLocation();
 		ArrayList<L1PcInstance> result = new ArrayList<L1PcInstance>();
+		if (map < 0 || MAX_MAP_ID < map) {
+			return result;
+		}
 
-		for (L1PcInstance element : _allPlayers.values()) {
+		for (L1Object obj : getGridObjects(_playerGrids, map, pt.getX(), pt
+				.getY(), getSearchRange(radius))) {
+			L1PcInstance element = (L1PcInstance) obj;
 			if (element.equals(object)) {
 				continue;
 			}
@@ -405,8 +574,13 @@ public class L1World {
 		Point objectPt = object.getLocation();
 		Point targetPt = target.getLocation();
 		ArrayList<L1PcInstance> result = new ArrayList<L1PcInstance>();
+		if (map < 0 || MAX_MAP_ID < map) {
+			return result;
+		}
 
-		for (L1PcInstance element : _allPlayers.values()) {
+		for (L1Object obj : getGridObjects(_playerGrids, map, objectPt.getX(),
+				objectPt.getY(), getSearchRange(Config.PC_RECOGNIZE_RANGE))) {
+			L1PcInstance element = (L1PcInstance) obj;
 			if (element.equals(object)) {
 				continue;
 			}
@@ -584,6 +758,7 @@ public class L1World {
 	 */
 	public void broadcastPacketToAll(ServerBasePacket packet) {
 		_log.finest("players to notify : " + getAllPlayers().size());
+		packet = SharedPacket.of(packet);
 		for (L1PcInstance pc : getAllPlayers()) {
 			pc.sendPackets(packet);
 		}
@@ -0,0 +1,195 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 1マップ分のオブジェクトを16x16タイルのセル単位で管理する空間インデックス。
+ * 座標の変更はL1Objectの位置から通知され、範囲の検索では範囲に掛かるセルだけを参照する。
+ * 同じオブジェクトに対する操作は、そのオブジェクトのL1Locationで同期する。
+ */
+class L1WorldGrid {
+	private static final int CELL_SHIFT = 4; // 1セル = 16x16タイル
+
+	private final ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, L1Object>> _cells = new ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, L1Object>>();
+
+	// オブジェクトID -> 登録されているセル
+	private final ConcurrentHashMap<Integer, Integer> _positions = new ConcurrentHashMap<Integer, Integer>();
+
+	private final ConcurrentHashMap<Integer, L1Object> _objects = new ConcurrentHashMap<Integer, L1Object>();
+
+	private static int cellKey(int x, int y) {
+		return ((x >> CELL_SHIFT) << 16) | ((y >> CELL_SHIFT) & 0xFFFF);
+	}
+
+	private ConcurrentHashMap<Integer, L1Object> getCell(int key) {
+		ConcurrentHashMap<Integer, L1Object> cell = _cells.get(key);
+		if (cell == null) {
+			ConcurrentHashMap<Integer, L1Object> newCell = new ConcurrentHashMap<Integer, L1Object>();
+			cell = _cells.putIfAbsent(key, newCell);
+			if (cell == null) {
+				cell = newCell;
+			}
+		}
+		return cell;
+	}
+
+	private void removeFromCell(int key, int objectId) {
+		ConcurrentHashMap<Integer, L1Object> cell = _cells.get(key);
+		if (cell != null) {
+			cell.remove(objectId);
+		}
+	}
+
+	/**
+	 * オブジェクトを現在の座標のセルに登録する。
+	 */
+	void put(L1Object object) {
+		L1Location loc = object.getLocation();
+		synchronized (loc) {
+			int key = cellKey(loc.getX(), loc.getY());
+			Integer old = _positions.put(object.getId(), key);
+			if (old != null && old.intValue() != key) {
+				removeFromCell(old, object.getId());
+			}
+			getCell(key).put(object.getId(), object);
+			_objects.put(object.getId(), object);
+		}
+	}
+
+	void remove(L1Object object) {
+		synchronized (object.getLocation()) {
+			Integer old = _positions.remove(object.getId());
+			if (old != null) {
+				removeFromCell(old, object.getId());
+			}
+			_objects.remove(object.getId());
+		}
+	}
+
+	/**
+	 * 登録済みのオブジェクトであれば、現在の座標のセルへ移す。
+	 */
+	void update(L1Object object) {
+		L1Location loc = object.getLocation();
+		synchronized (loc) {
+			Integer old = _positions.get(object.getId());
+			if (old == null) {
+				return;
+			}
+			int key = cellKey(loc.getX(), loc.getY());
+			if (old.intValue() != key) {
+				removeFromCell(old, object.getId());
+				getCell(key).put(object.getId(), object);
+				_positions.put(object.getId(), key);
+			}
+		}
+	}
+
+	boolean contains(L1Object object) {
+		return _positions.containsKey(object.getId());
+	}
+
+	int size() {
+		return _objects.size();
+	}
+
+	Collection<L1Object> getObjects() {
+		return _objects.values();
+	}
+
+	/**
+	 * 指定された矩形範囲に掛かるセルのオブジェクトを返す。範囲外のオブジェクトも含まれる。
+	 * 範囲が登録数に比べて広い場合は、セルを辿らずに全てのオブジェクトを返す。
+	 */
+	Collection<L1Object> getObjects(int x0, int y0, int x1, int y1) {
+		long cells = (long) ((x1 >> CELL_SHIFT) - (x0 >> CELL_SHIFT) + 1)
+				* ((y1 >> CELL_SHIFT) - (y0 >> CELL_SHIFT) + 1);
+		if (cells > _objects.size()) {
+			return _objects.values();
+		}
+		ArrayList<L1Object> result = new ArrayList<L1Object>();
+		int cx1 = x1 >> CELL_SHIFT;
+		int cy1 = y1 >> CELL_SHIFT;
+		for (int cx = x0 >> CELL_SHIFT; cx <= cx1; cx++) {
+			for (int cy = y0 >> CELL_SHIFT; cy <= cy1; cy++) {
+				ConcurrentHashMap<Integer, L1Object> cell = _cells
+						.get((cx << 16) | (cy & 0xFFFF));
+				if (cell != null) {
+					result.addAll(cell.values());
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 中心が(ox, oy)から(nx, ny)へ移った際に、範囲の内外が変わり得るセルのオブジェクトを返す。
+	 * 範囲は中心からの距離がinner以下なら内側、outerより大きければ外側とし、
+	 * 移動の前後どちらでも内側、またはどちらでも外側になるセルは参照しない。
+	 *
+	 * @param manhattan
+	 *            trueならマンハッタン距離、falseならチェビシェフ距離で範囲を判定する
+	 */
+	Collection<L1Object> getBoundaryObjects(int ox, int oy, int nx, int ny,
+			boolean manhattan, int inner, int outer) {
+		ArrayList<L1Object> result = new ArrayList<L1Object>();
+		int cx1 = (Math.max(ox, nx) + outer) >> CELL_SHIFT;
+		int cy1 = (Math.max(oy, ny) + outer) >> CELL_SHIFT;
+		for (int cx = (Math.min(ox, nx) - outer) >> CELL_SHIFT; cx <= cx1; cx++) {
+			for (int cy = (Math.min(oy, ny) - outer) >> CELL_SHIFT; cy <= cy1; cy++) {
+				ConcurrentHashMap<Integer, L1Object> cell = _cells
+						.get((cx << 16) | (cy & 0xFFFF));
+				if (cell == null || cell.isEmpty()) {
+					continue;
+				}
+				int x0 = cx << CELL_SHIFT;
+				int y0 = cy << CELL_SHIFT;
+				int x1 = x0 + (1 << CELL_SHIFT) - 1;
+				int y1 = y0 + (1 << CELL_SHIFT) - 1;
+				if (farDistance(x0, y0, x1, y1, ox, oy, manhattan) <= inner
+						&& farDistance(x0, y0, x1, y1, nx, ny, manhattan) <= inner) {
+					continue; // 前後とも範囲内
+				}
+				if (nearDistance(x0, y0, x1, y1, ox, oy, manhattan) > outer
+						&& nearDistance(x0, y0, x1, y1, nx, ny, manhattan) > outer) {
+					continue; // 前後とも範囲外
+				}
+				result.addAll(cell.values());
+			}
+		}
+		return result;
+	}
+
+	// 矩形内で中心に最も近いタイルまでの距離
+	private static int nearDistance(int x0, int y0, int x1, int y1, int x,
+			int y, boolean manhattan) {
+		int dx = Math.max(0, Math.max(x0 - x, x - x1));
+		int dy = Math.max(0, Math.max(y0 - y, y - y1));
+		return manhattan ? dx + dy : Math.max(dx, dy);
+	}
+
+	// 矩形内で中心から最も遠いタイルまでの距離
+	private static int farDistance(int x0, int y0, int x1, int y1, int x,
+			int y, boolean manhattan) {
+		int dx = Math.max(Math.abs(x - x0), Math.abs(x - x1));
+		int dy = Math.max(Math.abs(y - y0), Math.abs(y - y1));
+		return manhattan ? dx + dy : Math.max(dx, dy);
+	}
+}
@@ -15,7 +15,6 @@
 
 package jp.l1j.server.model;
 
-import java.util.TimerTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -25,7 +24,7 @@ import jp.l1j.server.types.Point;
 import jp.l1j.server.templates.L1MagicDoll;
 import static jp.l1j.server.model.skill.L1SkillId.*;
 
-public class MpRegeneration extends TimerTask {
+public class MpRegeneration extends L1RegenerationScheduler.Task {
 	private static Logger _log = Logger.getLogger(MpRegeneration.class
 			.getName());
 
@@ -48,10 +47,10 @@ public class MpRegeneration extends TimerTask {
 	}
 
 	@Override
-	public void run() {
+	protected long regenerate() {
 		try {
 			if (_pc.isDead()) {
-				return;
+				return getInterval();
 			}
 
 			_regenPoint += _curPoint;
@@ -59,11 +58,22 @@ public class MpRegeneration extends TimerTask {
 
 			if (64 <= _regenPoint) {
 				_regenPoint = 0;
-				regenMp();
+				if (!isFull()) {
+					regenMp();
+				}
 			}
 		} catch (Throwable e) {
 			_log.log(Level.WARNING, e.getLocalizedMessage(), e);
 		}
+		return getInterval();
+	}
+
+	// MPが最大で、回復処理を行っても変化しない場合はtrue
+	private boolean isFull() {
+		if (_pc.getCurrentMp() < _pc.getMaxMp() || _pc.getMpr() < 0) {
+			return false;
+		}
+		return L1MagicDoll.getNatMprByDoll(_pc) >= 0;
 	}
 
 	public void regenMp() {
@@ -51,6 +51,7 @@ import jp.l1j.server.packets.server.S_SkillSound;
 import jp.l1j.server.packets.server.S_Sound;
 import jp.l1j.server.packets.server.S_YellowMessage;
 import jp.l1j.server.packets.server.ServerBasePacket;
+import jp.l1j.server.packets.server.SharedPacket;
 import jp.l1j.server.random.RandomGenerator;
 import jp.l1j.server.random.RandomGeneratorFactory;
 import jp.l1j.server.templates.L1DoorGfx;
@@ -1084,6 +1085,7 @@ public class L1OrimQuestInstance {
 	 * @param serverbasepacket 送信するパケット
 	 */
 	private void sendPackets(ServerBasePacket serverbasepacket) {
+		serverbasepacket = SharedPacket.of(serverbasepacket);
 		for (L1PcInstance pc  :  L1World.getInstance().getAllPlayers()) {
 			if (pc.getMapId() == _mapId) {
 				pc.sendPackets(serverbasepacket);
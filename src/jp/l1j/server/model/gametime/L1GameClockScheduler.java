@@ -0,0 +1,157 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.model.gametime;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jp.l1j.configure.Config;
+import jp.l1j.server.utils.TimingWheel;
+import jp.l1j.server.utils.metrics.Counter;
+import jp.l1j.server.utils.metrics.Histogram;
+import jp.l1j.server.utils.metrics.MetricRegistry;
+
+/**
+ * タイムコントローラーやゲーム内時計の定期処理を実行する共有スケジューラ。
+ * 各処理がスレッドを占有してsleepで待つ代わりに、ジョブとして登録して少数のワーカースレッドで実行する。
+ * 実行の遅れはwheel.GameClock.*、ジョブ毎の所要時間はtimer.*のメトリクスで参照できる。
+ */
+public class L1GameClockScheduler extends TimingWheel {
+	private static Logger _log = Logger.getLogger(L1GameClockScheduler.class
+			.getName());
+
+	private static final int TICK_MILLIS = 100;
+
+	private static final int WHEEL_SIZE = 1024; // 1周約102秒
+
+	private static final long MINUTE_MILLIS = 60 * 1000;
+
+	private static L1GameClockScheduler _instance;
+
+	public static synchronized L1GameClockScheduler getInstance() {
+		if (_instance == null) {
+			_instance = new L1GameClockScheduler();
+		}
+		return _instance;
+	}
+
+	private final Counter _overruns = MetricRegistry.getInstance().counter(
+			"timer.overruns");
+
+	private L1GameClockScheduler() {
+		super("GameClock", TICK_MILLIS, WHEEL_SIZE,
+				Config.GAME_CLOCK_WORKER_THREADS);
+	}
+
+	/**
+	 * スケジューラに登録されたジョブ。
+	 */
+	public class Job extends TimingWheel.Task {
+		private final String _name;
+		private final Runnable _command;
+		private final long _period; // 0以下の場合は1度だけ実行する
+		private final boolean _everyMinute;
+		private final Histogram _timer;
+		private volatile boolean _cancelled = false;
+
+		private Job(String name, Runnable command, long period,
+				boolean everyMinute) {
+			_name = name;
+			_command = command;
+			_period = period;
+			_everyMinute = everyMinute;
+			_timer = MetricRegistry.getInstance().histogram("timer." + name);
+		}
+
+		@Override
+		protected long execute() {
+			if (_cancelled) {
+				return -1;
+			}
+			long start = System.nanoTime();
+			try {
+				_command.run();
+			} catch (Exception e) {
+				// 例外が発生しても、次回以降の実行は続ける
+				_log.log(Level.SEVERE, _name + "で例外が発生しました。", e);
+			}
+			_timer.recordSince(start);
+			long elapsed = (System.nanoTime() - start) / 1000000L;
+			if (_period > 0 && elapsed > _period) {
+				_overruns.increment();
+				_log.warning(String.format("%sの実行に%dms掛かり、実行間隔(%dms)を超えました。",
+						_name, elapsed, _period));
+			}
+			if (_cancelled || _period <= 0) {
+				return -1;
+			}
+			return _everyMinute ? untilNextMinute() : _period;
+		}
+
+		public String getName() {
+			return _name;
+		}
+
+		/**
+		 * ジョブを停止する。実行中の場合は、その実行の終了後に停止する。
+		 */
+		public void cancel() {
+			_cancelled = true;
+			L1GameClockScheduler.this.cancel(this);
+		}
+	}
+
+	// 次の分の0秒までの時間。ティックの分だけ遅らせて、前の分のうちに実行されないようにする
+	private static long untilNextMinute() {
+		return MINUTE_MILLIS - System.currentTimeMillis() % MINUTE_MILLIS
+				+ TICK_MILLIS;
+	}
+
+	/**
+	 * 前回の実行が終わってから、指定した間隔を空けて繰り返し実行する。
+	 *
+	 * @param name
+	 *            ジョブ名(ログとメトリクスに使われる)
+	 * @param initialDelay
+	 *            最初の実行までの時間(ms)
+	 * @param delay
+	 *            実行間隔(ms)
+	 */
+	public Job scheduleWithFixedDelay(String name, Runnable command,
+			long initialDelay, long delay) {
+		Job job = new Job(name, command, delay, false);
+		schedule(job, initialDelay);
+		return job;
+	}
+
+	/**
+	 * 毎分0秒に実行する。時刻を"HH:mm"の単位で判定する処理に使う。
+	 * sleepで60秒ずつ待つ場合と違い、実行時間の分だけずれて判定する分を飛ばすことがない。
+	 */
+	public Job scheduleEveryMinute(String name, Runnable command) {
+		Job job = new Job(name, command, MINUTE_MILLIS, true);
+		schedule(job, untilNextMinute());
+		return job;
+	}
+
+	/**
+	 * 指定した時間の後に1度だけ実行する。
+	 */
+	public Job scheduleOnce(String name, Runnable command, long delay) {
+		Job job = new Job(name, command, 0, false);
+		schedule(job, delay);
+		return job;
+	}
+}
@@ -18,9 +18,7 @@ package jp.l1j.server.model.gametime;
 import java.util.Calendar;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.logging.Level;
 import java.util.logging.Logger;
-import jp.l1j.server.GeneralThreadPool;
 
 public class L1GameTimeClock {
 	private static Logger _log = Logger.getLogger(L1GameTimeClock.class
@@ -36,17 +34,9 @@ public class L1GameTimeClock {
 	private class TimeUpdater implements Runnable {
 		@Override
 		public void run() {
-			while (true) {
-				_previousTime = _currentTime;
-				_currentTime = L1GameTime.fromSystemCurrentTime();
-				notifyChanged();
-
-				try {
-					Thread.sleep(500);
-				} catch (InterruptedException e) {
-					_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
-				}
-			}
+			_previousTime = _currentTime;
+			_currentTime = L1GameTime.fromSystemCurrentTime();
+			notifyChanged();
 		}
 	}
 
@@ -78,7 +68,8 @@ public class L1GameTimeClock {
 	}
 
 	private L1GameTimeClock() {
-		GeneralThreadPool.getInstance().execute(new TimeUpdater());
+		L1GameClockScheduler.getInstance().scheduleWithFixedDelay(
+				"L1GameTimeClock", new TimeUpdater(), 500, 500);
 	}
 
 	public static void init() {
@@ -254,7 +254,7 @@ public class L1DollInstance extends L1NpcInstance {
 		int interval = L1MagicDoll.getHprTimeByDoll(this) * 1000;
 		if (!_hpRegenActive) {
 			_hprTask = new HpRegenerationByDoll((L1PcInstance) _master, this);
-			_timer.scheduleAtFixedRate(_hprTask, interval, interval);
+			_hprTask.start(interval);
 			_hpRegenActive = true;
 		}
 	}
@@ -273,7 +273,7 @@ public class L1DollInstance extends L1NpcInstance {
 		int interval = L1MagicDoll.getMprTimeByDoll(this) * 1000;
 		if (!_mpRegenActive) {
 			_mprTask = new MpRegenerationByDoll((L1PcInstance) _master, this);
-			_timer.scheduleAtFixedRate(_mprTask, interval, interval);
+			_mprTask.start(interval);
 			_mpRegenActive = true;
 		}
 	}
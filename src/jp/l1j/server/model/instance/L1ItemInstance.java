@@ -20,6 +20,8 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 import jp.l1j.configure.Config;
@@ -34,6 +36,7 @@ import jp.l1j.server.model.L1ExpirationTimer;
 import jp.l1j.server.model.L1ItemOwnerTimer;
 import jp.l1j.server.model.L1Object;
 import jp.l1j.server.model.L1World;
+import jp.l1j.server.model.inventory.L1ItemList;
 import static jp.l1j.server.model.item.L1ItemOptionId.*;
 import jp.l1j.server.model.item.executor.L1EnchantBonus;
 import jp.l1j.server.model.item.executor.L1SpellIcon;
@@ -42,6 +45,7 @@ import jp.l1j.server.packets.server.S_OwnCharStatus;
 import jp.l1j.server.packets.server.S_ServerMessage;
 import jp.l1j.server.random.RandomGenerator;
 import jp.l1j.server.random.RandomGeneratorFactory;
+import jp.l1j.server.storage.InventoryItemWriter;
 import jp.l1j.server.templates.L1Armor;
 import jp.l1j.server.templates.L1InventoryItem;
 import jp.l1j.server.templates.L1Item;
@@ -65,6 +69,9 @@ public class L1ItemInstance extends L1Object {
 
 	private int _lastWeight;
 
+	// このアイテムを格納しているインベントリのリスト
+	private volatile L1ItemList _itemList;
+
 	private L1PcInstance _pc;
 
 	private boolean _isRunning = false;
@@ -84,6 +91,23 @@ public class L1ItemInstance extends L1Object {
 	@Override
 	public void setId(int id) {
 		_inventoryItem.setId(id);
+		notifyItemList();
+	}
+
+	public L1ItemList getItemList() {
+		return _itemList;
+	}
+
+	public void setItemList(L1ItemList itemList) {
+		_itemList = itemList;
+	}
+
+	// 格納しているリストに、索引と重量を更新させる
+	private void notifyItemList() {
+		L1ItemList itemList = _itemList;
+		if (itemList != null) {
+			itemList.onItemChanged(this);
+		}
 	}
 
 	public L1ItemInstance() {
@@ -195,6 +219,7 @@ public class L1ItemInstance extends L1Object {
 	 */
 	public void setCount(int count) {
 		_inventoryItem.setItemCount(count);
+		notifyItemList();
 	}
 
 	/**
@@ -223,6 +248,7 @@ public class L1ItemInstance extends L1Object {
 	public void setItem(L1Item item) {
 		_item = item;
 		_inventoryItem.setItemId(item.getItemId());
+		notifyItemList();
 	}
 
 	public int getItemId() {
@@ -231,6 +257,7 @@ public class L1ItemInstance extends L1Object {
 
 	public void setItemId(int itemId) {
 		_inventoryItem.setItemId(itemId);
+		notifyItemList();
 	}
 
 	public boolean isStackable() {
@@ -2339,13 +2366,31 @@ public class L1ItemInstance extends L1Object {
 		_inventoryItem.save(con);
 	}
 
+	public boolean isDirty() {
+		return _inventoryItem.isDirty();
+	}
+
+	/**
+	 * 変更のあったアイテムだけを、1つのトランザクションでまとめて保存する。
+	 */
+	public static int saveAll(Collection<L1ItemInstance> items) {
+		List<L1InventoryItem> inventoryItems = new ArrayList<L1InventoryItem>(
+				items.size());
+		for (L1ItemInstance item : items) {
+			inventoryItems.add(item._inventoryItem);
+		}
+		return L1InventoryItem.saveAll(inventoryItems);
+	}
+
 	public void delete() {
 		onDelete();
+		InventoryItemWriter.getInstance().remove(this);
 		_inventoryItem.delete();
 	}
 
 	public void delete(Connection con) {
 		onDelete();
+		InventoryItemWriter.getInstance().remove(this);
 		_inventoryItem.delete(con);
 	}
 
@@ -16,8 +16,8 @@
 package jp.l1j.server.model.instance;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Timer;
@@ -39,8 +39,9 @@ import jp.l1j.server.model.L1Magic;
 import jp.l1j.server.model.L1MobGroupInfo;
 import jp.l1j.server.model.L1MobSkillUse;
 import jp.l1j.server.model.L1MobSkillUse.L1AvailableSkill;
+import jp.l1j.server.model.L1NpcAIScheduler;
 import jp.l1j.server.model.L1NpcChatTimer;
-import jp.l1j.server.model.L1NpcRegenerationTimer;
+import jp.l1j.server.model.L1RegenerationScheduler;
 import jp.l1j.server.model.L1Object;
 import jp.l1j.server.model.L1OrimQuest;
 import jp.l1j.server.model.L1Spawn;
@@ -49,6 +50,7 @@ import jp.l1j.server.model.inventory.L1GroundInventory;
 import jp.l1j.server.model.inventory.L1Inventory;
 import static jp.l1j.server.model.item.L1ItemId.*;
 import jp.l1j.server.model.map.L1Map;
+import jp.l1j.server.model.map.L1PathFinder;
 import jp.l1j.server.model.map.L1WorldMap;
 import static jp.l1j.server.model.skill.L1SkillId.*;
 import jp.l1j.server.model.skill.L1SkillUse;
@@ -66,6 +68,7 @@ import jp.l1j.server.templates.L1Npc;
 import jp.l1j.server.templates.L1NpcChat;
 import jp.l1j.server.types.Point;
 import jp.l1j.server.utils.TimerPool;
+import jp.l1j.server.utils.TimingWheel;
 import jp.l1j.server.utils.collections.Lists;
 
 public class L1NpcInstance extends L1Character {
@@ -103,6 +106,9 @@ public class L1NpcInstance extends L1Character {
 	// 経路探索範囲（半径） ※上げすぎ注意！！
 	public static int courceRange = 15;
 
+	// 探索済みの経路
+	private L1PathFinder.Path _path;
+
 	// 吸われたMP
 	private int _drainedMana = 0;
 
@@ -125,6 +131,8 @@ public class L1NpcInstance extends L1Character {
 			new NpcAITimerImpl().start();
 		} else if (Config.NPCAI_IMPLTYPE == 2) {
 			new NpcAIThreadImpl().start();
+		} else if (Config.NPCAI_IMPLTYPE == 3) {
+			new NpcAISchedulerImpl().start();
 		} else {
 			new NpcAITimerImpl().start();
 		}
@@ -199,10 +207,64 @@ public class L1NpcInstance extends L1Character {
 				_log.log(Level.WARNING, "NpcAIで例外が発生しました。", e);
 			}
 		}
+	}
+
+	private boolean notContinued() {
+		return _destroyed || isDead() || getCurrentHp() <= 0
+				|| getHiddenStatus() != HIDDEN_STATUS_NONE;
+	}
+
+	/**
+	 * 共有スケジューラによる実装。ティック毎のタスク生成やスレッドの占有を行わない。
+	 */
+	class NpcAISchedulerImpl extends TimingWheel.Task implements NpcAI {
+		private boolean _stopped = false; // 死亡処理の終了待ちか
+
+		@Override
+		public void start() {
+			setAiRunning(true);
+			L1NpcAIScheduler.getInstance().schedule(this, 0);
+		}
+
+		private long stop() {
+			_mobSkill.resetAllSkillUsedCount();
+			_stopped = true;
+			return 0; // 死亡同期を開始
+		}
+
+		@Override
+		protected long execute() {
+			if (_stopped) {
+				if (isDeathProcessing()) {
+					return getSleepTime();
+				}
+				allTargetClear();
+				setAiRunning(false);
+				return -1;
+			}
+			try {
+				if (notContinued()) {
+					return stop();
+				}
 
-		private boolean notContinued() {
-			return _destroyed || isDead() || getCurrentHp() <= 0
-					|| getHiddenStatus() != HIDDEN_STATUS_NONE;
+				if (0 < _paralysisTime) {
+					int delay = _paralysisTime;
+					_paralysisTime = 0;
+					setParalyzed(false);
+					return delay;
+				} else if (isParalyzed() || isSleeped()) {
+					return 200;
+				}
+
+				if (!AIProcess()) { // AIを続けるべきであれば、次の実行までの時間を返す
+					return getSleepTime();
+				}
+				return stop();
+			} catch (Exception e) {
+				// 例外でAIが止まったままにならないよう、次の実行を続ける
+				_log.log(Level.WARNING, "NpcAIで例外が発生しました。", e);
+				return getSleepTime();
+			}
 		}
 	}
 
@@ -356,7 +418,7 @@ public class L1NpcInstance extends L1Character {
 
 	// 仲間意識によりアクティブになるＮＰＣの検索（攻撃者がプレイヤーのみ有効）
 	public void serchLink(L1PcInstance targetPlayer, int family) {
-		List<L1Object> targetKnownObjects = targetPlayer.getKnownObjects();
+		Collection<L1Object> targetKnownObjects = targetPlayer.getKnownObjects();
 		for (Object knownObject : targetKnownObjects) {
 			if (knownObject instanceof L1NpcInstance) {
 				L1NpcInstance npc = (L1NpcInstance) knownObject;
@@ -970,8 +1032,7 @@ public class L1NpcInstance extends L1Character {
 		int hpr = getNpcTemplate().getHpr();
 		if (!_hprRunning && hprInterval > 0 && hpr > 0) {
 			_hprTimer = new HprTimer(hpr);
-			L1NpcRegenerationTimer.getInstance().scheduleAtFixedRate(_hprTimer,
-					hprInterval, hprInterval);
+			_hprTimer.start(hprInterval);
 			_hprRunning = true;
 		}
 	}
@@ -989,8 +1050,7 @@ public class L1NpcInstance extends L1Character {
 		int mpr = getNpcTemplate().getMpr();
 		if (!_mprRunning && mprInterval > 0 && mpr > 0) {
 			_mprTimer = new MprTimer(mpr);
-			L1NpcRegenerationTimer.getInstance().scheduleAtFixedRate(_mprTimer,
-					mprInterval, mprInterval);
+			_mprTimer.start(mprInterval);
 			_mprRunning = true;
 		}
 	}
@@ -1004,25 +1064,37 @@ public class L1NpcInstance extends L1Character {
 
 	// ■■■■■■■■■■■■ タイマー関連 ■■■■■■■■■■
 
+	// 周囲にプレイヤーがいない間は、回復間隔をこの倍数に延ばしてまとめて回復する
+	private static final int UNOBSERVED_REGENERATION_TIMES = 5;
+
+	private int getRegenerationTimes() {
+		if (L1World.getInstance().getRecognizePlayer(this).isEmpty()) {
+			return UNOBSERVED_REGENERATION_TIMES;
+		}
+		return 1;
+	}
+
 	// ＨＰ自然回復
 	private boolean _hprRunning = false;
 
 	private HprTimer _hprTimer;
 
-	class HprTimer extends TimerTask {
+	class HprTimer extends L1RegenerationScheduler.Task {
 		@Override
-		public void run() {
+		protected long regenerate() {
 			try {
 				if ((!_destroyed && !isDead())
 						&& (getCurrentHp() > 0 && getCurrentHp() < getMaxHp())) {
-					setCurrentHp(getCurrentHp() + _point);
+					setCurrentHp(getCurrentHp() + _point * _times);
 				} else {
-					cancel();
 					_hprRunning = false;
+					return -1;
 				}
 			} catch (Exception e) {
 				_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
 			}
+			_times = getRegenerationTimes();
+			return getInterval() * _times;
 		}
 
 		public HprTimer(int point) {
@@ -1033,6 +1105,8 @@ public class L1NpcInstance extends L1Character {
 		}
 
 		private final int _point;
+
+		private int _times = 1; // 次回まとめて回復する回数
 	}
 
 	// ＭＰ自然回復
@@ -1040,20 +1114,22 @@ public class L1NpcInstance extends L1Character {
 
 	private MprTimer _mprTimer;
 
-	class MprTimer extends TimerTask {
+	class MprTimer extends L1RegenerationScheduler.Task {
 		@Override
-		public void run() {
+		protected long regenerate() {
 			try {
 				if ((!_destroyed && !isDead())
 						&& (getCurrentHp() > 0 && getCurrentMp() < getMaxMp())) {
-					setCurrentMp(getCurrentMp() + _point);
+					setCurrentMp(getCurrentMp() + _point * _times);
 				} else {
-					cancel();
 					_mprRunning = false;
+					return -1;
 				}
 			} catch (Exception e) {
 				_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
 			}
+			_times = getRegenerationTimes();
+			return getInterval() * _times;
 		}
 
 		public MprTimer(int point) {
@@ -1064,6 +1140,8 @@ public class L1NpcInstance extends L1Character {
 		}
 
 		private final int _point;
+
+		private int _times = 1; // 次回まとめて回復する回数
 	}
 
 	// アイテム消化
@@ -1707,185 +1785,11 @@ public class L1NpcInstance extends L1Character {
 	// ※目標を中心とした探索範囲のマップで探索
 	protected int _serchCource(int x, int y) // 目標点Ｘ 目標点Ｙ
 	{
-		int i;
-		int locCenter = courceRange + 1;
-		int diff_x = x - locCenter; // Ｘの実際のロケーションとの差
-		int diff_y = y - locCenter; // Ｙの実際のロケーションとの差
-		int[] locBace = { getX() - diff_x, getY() - diff_y, 0, 0 }; // Ｘ Ｙ
-		// 方向
-		// 初期方向
-		int[] locNext = new int[4];
-		int[] locCopy;
-		int[] dirFront = new int[5];
-		boolean serchMap[][] = new boolean[locCenter * 2 + 1][locCenter * 2 + 1];
-		LinkedList<int[]> queueSerch = new LinkedList<int[]>();
-
-		// 探索用マップの設定
-		for (int j = courceRange * 2 + 1; j > 0; j--) {
-			for (i = courceRange - Math.abs(locCenter - j); i >= 0; i--) {
-				serchMap[j][locCenter + i] = true;
-				serchMap[j][locCenter - i] = true;
-			}
-		}
-
-		// 初期方向の設置
-		int[] firstCource = { 2, 4, 6, 0, 1, 3, 5, 7 };
-		for (i = 0; i < 8; i++) {
-			System.arraycopy(locBace, 0, locNext, 0, 4);
-			_moveLocation(locNext, firstCource[i]);
-			if (locNext[0] - locCenter == 0 && locNext[1] - locCenter == 0) {
-				// 最短経路が見つかった場合:隣
-				return firstCource[i];
-			}
-			if (serchMap[locNext[0]][locNext[1]]) {
-				int tmpX = locNext[0] + diff_x;
-				int tmpY = locNext[1] + diff_y;
-				boolean found = false;
-				if (i == 0) {
-					found = getMap().isPassable(tmpX, tmpY + 1, i);
-				} else if (i == 1) {
-					found = getMap().isPassable(tmpX - 1, tmpY + 1, i);
-				} else if (i == 2) {
-					found = getMap().isPassable(tmpX - 1, tmpY, i);
-				} else if (i == 3) {
-					found = getMap().isPassable(tmpX - 1, tmpY - 1, i);
-				} else if (i == 4) {
-					found = getMap().isPassable(tmpX, tmpY - 1, i);
-				} else if (i == 5) {
-					found = getMap().isPassable(tmpX + 1, tmpY - 1, i);
-				} else if (i == 6) {
-					found = getMap().isPassable(tmpX + 1, tmpY, i);
-				} else if (i == 7) {
-					found = getMap().isPassable(tmpX + 1, tmpY + 1, i);
-				}
-				if (found)// 移動経路があった場合
-				{
-					locCopy = new int[4];
-					System.arraycopy(locNext, 0, locCopy, 0, 4);
-					locCopy[2] = firstCource[i];
-					locCopy[3] = firstCource[i];
-					queueSerch.add(locCopy);
-				}
-				serchMap[locNext[0]][locNext[1]] = false;
-			}
-		}
-		locBace = null;
-
-		// 最短経路を探索
-		while (queueSerch.size() > 0) {
-			locBace = queueSerch.removeFirst();
-			_getFront(dirFront, locBace[2]);
-			for (i = 4; i >= 0; i--) {
-				System.arraycopy(locBace, 0, locNext, 0, 4);
-				_moveLocation(locNext, dirFront[i]);
-				if (locNext[0] - locCenter == 0 && locNext[1] - locCenter == 0) {
-					return locNext[3];
-				}
-				if (serchMap[locNext[0]][locNext[1]]) {
-					int tmpX = locNext[0] + diff_x;
-					int tmpY = locNext[1] + diff_y;
-					boolean found = false;
-					if (i == 0) {
-						found = getMap().isPassable(tmpX, tmpY + 1, i);
-					} else if (i == 1) {
-						found = getMap().isPassable(tmpX - 1, tmpY + 1, i);
-					} else if (i == 2) {
-						found = getMap().isPassable(tmpX - 1, tmpY, i);
-					} else if (i == 3) {
-						found = getMap().isPassable(tmpX - 1, tmpY - 1, i);
-					} else if (i == 4) {
-						found = getMap().isPassable(tmpX, tmpY - 1, i);
-					}
-					if (found) // 移動経路があった場合
-					{
-						locCopy = new int[4];
-						System.arraycopy(locNext, 0, locCopy, 0, 4);
-						locCopy[2] = dirFront[i];
-						queueSerch.add(locCopy);
-					}
-					serchMap[locNext[0]][locNext[1]] = false;
-				}
-			}
-			locBace = null;
-		}
-		return -1; // 目標までの経路がない場合
-	}
-
-	private void _moveLocation(int[] ary, int d) {
-		if (d == 1) {
-			ary[0] = ary[0] + 1;
-			ary[1] = ary[1] - 1;
-		} else if (d == 2) {
-			ary[0] = ary[0] + 1;
-		} else if (d == 3) {
-			ary[0] = ary[0] + 1;
-			ary[1] = ary[1] + 1;
-		} else if (d == 4) {
-			ary[1] = ary[1] + 1;
-		} else if (d == 5) {
-			ary[0] = ary[0] - 1;
-			ary[1] = ary[1] + 1;
-		} else if (d == 6) {
-			ary[0] = ary[0] - 1;
-		} else if (d == 7) {
-			ary[0] = ary[0] - 1;
-			ary[1] = ary[1] - 1;
-		} else if (d == 0) {
-			ary[1] = ary[1] - 1;
-		}
-		ary[2] = d;
-	}
-
-	private void _getFront(int[] ary, int d) {
-		if (d == 1) {
-			ary[4] = 2;
-			ary[3] = 0;
-			ary[2] = 1;
-			ary[1] = 3;
-			ary[0] = 7;
-		} else if (d == 2) {
-			ary[4] = 2;
-			ary[3] = 4;
-			ary[2] = 0;
-			ary[1] = 1;
-			ary[0] = 3;
-		} else if (d == 3) {
-			ary[4] = 2;
-			ary[3] = 4;
-			ary[2] = 1;
-			ary[1] = 3;
-			ary[0] = 5;
-		} else if (d == 4) {
-			ary[4] = 2;
-			ary[3] = 4;
-			ary[2] = 6;
-			ary[1] = 3;
-			ary[0] = 5;
-		} else if (d == 5) {
-			ary[4] = 4;
-			ary[3] = 6;
-			ary[2] = 3;
-			ary[1] = 5;
-			ary[0] = 7;
-		} else if (d == 6) {
-			ary[4] = 4;
-			ary[3] = 6;
-			ary[2] = 0;
-			ary[1] = 5;
-			ary[0] = 7;
-		} else if (d == 7) {
-			ary[4] = 6;
-			ary[3] = 0;
-			ary[2] = 1;
-			ary[1] = 5;
-			ary[0] = 7;
-		} else if (d == 0) {
-			ary[4] = 2;
-			ary[3] = 6;
-			ary[2] = 0;
-			ary[1] = 1;
-			ary[0] = 7;
+		if (_path == null) {
+			_path = new L1PathFinder.Path();
 		}
+		return L1PathFinder.nextHeading(_path, getMap(), getX(), getY(), x, y,
+				courceRange);
 	}
 
 	// ■■■■■■■■■■■■ アイテム関連 ■■■■■■■■■■
@@ -2104,6 +2008,10 @@ public class L1NpcInstance extends L1Character {
 
 	public void setHiddenStatus(int i) {
 		_hiddenStatus = i;
+		if (i != 0) {
+			// 認識済みのプレイヤーに、近付いたかの判定を始めさせる
+			L1World.getInstance().refreshVisibleObject(this);
+		}
 	}
 
 	// 行動距離
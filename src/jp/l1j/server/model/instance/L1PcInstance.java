@@ -39,8 +39,13 @@ import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.Timer;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -230,7 +235,7 @@ public class L1PcInstance extends L1Character {
 
 		if (!_hpRegenActive) {
 			_hpRegen = new HpRegeneration(this);
-			_timer.scheduleAtFixedRate(_hpRegen, INTERVAL, INTERVAL);
+			_hpRegen.start(INTERVAL);
 			_hpRegenActive = true;
 		}
 	}
@@ -248,7 +253,7 @@ public class L1PcInstance extends L1Character {
 
 		if (!_mpRegenActive) {
 			_mpRegen = new MpRegeneration(this);
-			_timer.scheduleAtFixedRate(_mpRegen, INTERVAL, INTERVAL);
+			_mpRegen.start(INTERVAL);
 			_mpRegenActive = true;
 		}
 	}
@@ -522,8 +527,122 @@ public class L1PcInstance extends L1Character {
 		}
 	}
 
+	// 差分の取りこぼしに備え、この回数に一度は全ての認識処理を行う
+	private static final int FULL_UPDATE_INTERVAL = 100;
+
+	// これを超えて一度に移動した場合は、差分を求めずに全ての認識処理を行う
+	private static final int MAX_VIEW_STEP = 4;
+
+	private int _updateObjectCount = 0;
+
+	// 前回の認識処理を行った位置
+	private int _viewX = -1;
+	private int _viewY = -1;
+	private int _viewMapId = -1;
+
+	// 周囲で移動や出現があり、次回の更新で認識を判定し直すオブジェクト
+	private final Set<L1Object> _viewChanges = Collections
+			.newSetFromMap(new ConcurrentHashMap<L1Object, Boolean>());
+
+	// 認識済みの隠れているNPC
+	private final Set<L1NpcInstance> _hiddenNpcs = Collections
+			.newSetFromMap(new ConcurrentHashMap<L1NpcInstance, Boolean>());
+
+	/**
+	 * 認識範囲の近くでオブジェクトが移動、出現した際に、L1Worldから呼び出される。
+	 */
+	public void notifyViewChanged(L1Object object) {
+		_viewChanges.add(object);
+	}
+
+	private boolean isInRecognizeRange(L1Object object) {
+		if (Config.PC_RECOGNIZE_RANGE == -1) {
+			return getLocation().isInScreen(object.getLocation());
+		}
+		return getLocation().getTileLineDistance(object.getLocation()) <= Config.PC_RECOGNIZE_RANGE;
+	}
+
+	// 1つのオブジェクトについて、認識範囲への出入りを判定する
+	private void updateView(L1Object object) {
+		if (object == this) {
+			return;
+		}
+		boolean inRange = object.getMapId() == getMapId()
+				&& isInRecognizeRange(object);
+		if (knownsObject(object)) {
+			if (!inRange) {
+				removeKnownObject(object);
+				sendPackets(new S_RemoveObject(object));
+			}
+		} else if (inRange
+				&& L1World.getInstance().findObject(object.getId()) != null) {
+			object.onPerceive(this);
+		}
+		if (object instanceof L1NpcInstance) {
+			trackHiddenNpc((L1NpcInstance) object);
+		}
+	}
+
+	private void trackHiddenNpc(L1NpcInstance npc) {
+		if (npc.getHiddenStatus() != 0 && knownsObject(npc)) {
+			_hiddenNpcs.add(npc);
+		} else {
+			_hiddenNpcs.remove(npc);
+		}
+	}
+
+	/**
+	 * 自分の移動と周囲からの通知をもとに、認識範囲に出入りしたオブジェクトだけを処理する。
+	 * マップの移動や大きな移動、宿屋内、HPバー表示中と、一定回数毎には全ての認識処理を行う。
+	 */
+	public void checkUpdateObject() {
+		int x = getX();
+		int y = getY();
+		if (++_updateObjectCount >= FULL_UPDATE_INTERVAL
+				|| hasSkillEffect(GMSTATUS_HPBAR) || getMapId() > 10000
+				|| getMapId() != _viewMapId
+				|| Math.abs(x - _viewX) > MAX_VIEW_STEP
+				|| Math.abs(y - _viewY) > MAX_VIEW_STEP) {
+			updateObject();
+			return;
+		}
+		if (x != _viewX || y != _viewY) {
+			// 移動の前後で認識範囲の境界に掛かるセルだけを判定する
+			for (L1Object object : L1World.getInstance()
+					.getRecognizeBoundaryObjects(getMapId(), _viewX, _viewY, x,
+							y)) {
+				_viewChanges.remove(object);
+				updateView(object);
+			}
+			_viewX = x;
+			_viewY = y;
+		}
+		for (Iterator<L1Object> i = _viewChanges.iterator(); i.hasNext();) {
+			L1Object object = i.next();
+			i.remove();
+			updateView(object);
+		}
+		// 認識済みの隠れているNPCには、近付いたかの判定を続ける
+		for (Iterator<L1NpcInstance> i = _hiddenNpcs.iterator(); i.hasNext();) {
+			L1NpcInstance npc = i.next();
+			if (npc.getHiddenStatus() == 0 || !knownsObject(npc)) {
+				i.remove();
+			} else if (getLocation().isInScreen(npc.getLocation())) {
+				npc.approachPlayer(this);
+			}
+		}
+	}
+
 	// オブジェクト認識処理
 	public void updateObject() {
+		// 処理中に届いた通知は次回に判定する
+		_updateObjectCount = 0;
+		_viewX = getX();
+		_viewY = getY();
+		_viewMapId = getMapId();
+		_viewChanges.clear();
+		_hiddenNpcs.clear();
+
 		removeOutOfRangeObjects();
 
 		if (getMapId() <= 10000) {
@@ -541,6 +660,9 @@ public class L1PcInstance extends L1Character {
 						}
 					}
 				}
+				if (visible instanceof L1NpcInstance) {
+					trackHiddenNpc((L1NpcInstance) visible);
+				}
 				if (hasSkillEffect(GMSTATUS_HPBAR)
 						&& L1HpBar.isHpBarTarget(visible)) {
 					sendPackets(new S_HpMeter((L1Character) visible));
@@ -699,6 +821,7 @@ public class L1PcInstance extends L1Character {
 
 	public void setGmInvis(boolean flag) {
 		_gmInvis = flag;
+		L1World.getInstance().refreshVisibleObject(this);
 	}
 
 	public int getCurrentWeapon() {
@@ -870,7 +993,7 @@ public class L1PcInstance extends L1Character {
 	 * @param playersList
 	 *            通知するプレイヤーの配列
 	 */
-	private void notifyPlayersLogout(List<L1PcInstance> playersArray) {
+	private void notifyPlayersLogout(Collection<L1PcInstance> playersArray) {
 		for (L1PcInstance player : playersArray) {
 			if (player.knownsObject(this)) {
 				player.removeKnownObject(this);
@@ -2726,9 +2849,7 @@ public class L1PcInstance extends L1Character {
 	 * このプレイヤーのインベントリアイテムの状態をストレージへ書き込む。
 	 */
 	public void saveInventory() {
-		for (L1ItemInstance item : getInventory().getItems()) {
-			getInventory().saveItem(item);
-		}
+		L1ItemInstance.saveAll(getInventory().getItems());
 	}
 
 	public static final int REGENSTATE_NONE = 4;
@@ -2951,6 +3072,7 @@ public class L1PcInstance extends L1Character {
 
 	private void setGhost(boolean flag) {
 		_ghost = flag;
+		L1World.getInstance().refreshVisibleObject(this);
 	}
 
 	private boolean _ghostCanTalk = true; // NPCに話しかけられるか
@@ -18,10 +18,8 @@ package jp.l1j.server.model.inventory;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jp.l1j.configure.Config;
@@ -50,7 +48,7 @@ public class L1Inventory extends L1Object {
 	
 	private static final long serialVersionUID = 1L;
 
-	protected List<L1ItemInstance> _items = new CopyOnWriteArrayList<L1ItemInstance>();
+	protected final L1ItemList _items = new L1ItemList();
 
 	public static final int MAX_AMOUNT = 2000000000; // 2G
 
@@ -72,13 +70,7 @@ public class L1Inventory extends L1Object {
 
 	// インベントリ内の総重量
 	public int getWeight() {
-		int weight = 0;
-
-		for (L1ItemInstance item : _items) {
-			weight += item.getWeight();
-		}
-
-		return weight;
+		return _items.getWeight();
 	}
 
 	// 引数のアイテムを追加しても容量と重量が大丈夫か確認
@@ -531,40 +523,22 @@ public class L1Inventory extends L1Object {
 
 	// アイテムＩＤから検索
 	public L1ItemInstance findItemId(int id) {
-		for (L1ItemInstance item : _items) {
-			if (item.getItem().getItemId() == id) {
-				return item;
-			}
-		}
-		return null;
+		return _items.findByItemId(id);
 	}
 
 	public L1ItemInstance findKeyId(int id) {
-		for (L1ItemInstance item : _items) {
-			if (item.getId() == id) {
-				return item;
-			}
-		}
-		return null;
+		return _items.getById(id);
 	}
 
 	public L1ItemInstance[] findItemsId(int id) {
-		ArrayList<L1ItemInstance> itemList = new ArrayList<L1ItemInstance>();
-		for (L1ItemInstance item : _items) {
-			if (item.getItemId() == id) {
-				itemList.add(item);
-			}
-		}
-		return itemList.toArray(new L1ItemInstance[] {});
+		return _items.findAllByItemId(id).clone();
 	}
 
 	public L1ItemInstance[] findItemsIdNotEquipped(int id) {
 		ArrayList<L1ItemInstance> itemList = new ArrayList<L1ItemInstance>();
-		for (L1ItemInstance item : _items) {
-			if (item.getItemId() == id) {
-				if (!item.isEquipped()) {
-					itemList.add(item);
-				}
+		for (L1ItemInstance item : _items.findAllByItemId(id)) {
+			if (!item.isEquipped()) {
+				itemList.add(item);
 			}
 		}
 		return itemList.toArray(new L1ItemInstance[] {});
@@ -572,13 +546,7 @@ public class L1Inventory extends L1Object {
 
 	// オブジェクトＩＤから検索
 	public L1ItemInstance getItem(int objectId) {
-		for (Object itemObject : _items) {
-			L1ItemInstance item = (L1ItemInstance) itemObject;
-			if (item.getId() == objectId) {
-				return item;
-			}
-		}
-		return null;
+		return _items.getById(objectId);
 	}
 
 	// 特定のアイテムを指定された個数以上所持しているか確認（矢とか魔石の確認）
@@ -596,8 +564,7 @@ public class L1Inventory extends L1Object {
 				return true;
 			}
 		} else {
-			Object[] itemList = findItemsId(id);
-			if (itemList.length >= count) {
+			if (_items.findAllByItemId(id).length >= count) {
 				return true;
 			}
 		}
@@ -608,11 +575,11 @@ public class L1Inventory extends L1Object {
 	// 装備中のアイテムは所持していないと判別する
 	public boolean checkEnchantItem(int id, int enchant, int count) {
 		int num = 0;
-		for (L1ItemInstance item : _items) {
+		for (L1ItemInstance item : _items.findAllByItemId(id)) {
 			if (item.isEquipped()) { // 装備しているものは該当しない
 				continue;
 			}
-			if (item.getItemId() == id && item.getEnchantLevel() == enchant) {
+			if (item.getEnchantLevel() == enchant) {
 				num++;
 				if (num == count) {
 					return true;
@@ -625,11 +592,11 @@ public class L1Inventory extends L1Object {
 	// 強化された特定のアイテムを消費する
 	// 装備中のアイテムは所持していないと判別する
 	public boolean consumeEnchantItem(int id, int enchant, int count) {
-		for (L1ItemInstance item : _items) {
+		for (L1ItemInstance item : _items.findAllByItemId(id)) {
 			if (item.isEquipped()) { // 装備しているものは該当しない
 				continue;
 			}
-			if (item.getItemId() == id && item.getEnchantLevel() == enchant) {
+			if (item.getEnchantLevel() == enchant) {
 				removeItem(item);
 				return true;
 			}
@@ -677,14 +644,19 @@ public class L1Inventory extends L1Object {
 				return item.getCount();
 			}
 		} else {
-			L1ItemInstance[] itemList = findItemsIdNotEquipped(id);
-			return itemList.length;
+			int count = 0;
+			for (L1ItemInstance item : _items.findAllByItemId(id)) {
+				if (!item.isEquipped()) {
+					count++;
+				}
+			}
+			return count;
 		}
 		return 0;
 	}
 
 	public void shuffle() {
-		Collections.shuffle(_items);
+		_items.shuffle();
 	}
 
 	// インベントリ内の全てのアイテムを消す（所有者を消すときなど）
@@ -797,9 +769,8 @@ public class L1Inventory extends L1Object {
 	 * @return
 	 */
 	public boolean checkEquipped(int id) {
-		for (Object itemObject : _items) {
-			L1ItemInstance item = (L1ItemInstance) itemObject;
-			if (item.getItem().getItemId() == id && item.isEquipped()) {
+		for (L1ItemInstance item : _items.findAllByItemId(id)) {
+			if (item.isEquipped()) {
 				return true;
 			}
 		}
@@ -0,0 +1,393 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.model.inventory;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import jp.l1j.server.model.instance.L1ItemInstance;
+
+/**
+ * インベントリのアイテムリスト。
+ * オブジェクトIDとアイテムIDの索引、総重量を追加・削除の度に更新し、検索を一定時間で行う。
+ * 読み込みはロックを取らず、追加・削除の時点のスナップショットを参照する。
+ * 追加は配列の空きに書き込むため、CopyOnWriteArrayListのように毎回配列を複製しない。
+ */
+public class L1ItemList extends AbstractList<L1ItemInstance> implements
+		RandomAccess {
+	private static final L1ItemInstance[] EMPTY = new L1ItemInstance[0];
+
+	// 配列と要素数の組。公開後に変更されるのは、要素数より後ろの領域だけ
+	private static class Snapshot {
+		private final L1ItemInstance[] _array;
+		private final int _size;
+
+		private Snapshot(L1ItemInstance[] array, int size) {
+			_array = array;
+			_size = size;
+		}
+	}
+
+	// 索引に登録した時点のアイテムの属性。変更を通知された時に差分を求める
+	private static class Entry {
+		private int _objectId;
+		private int _itemId;
+		private int _weight;
+	}
+
+	private final Object _lock = new Object();
+	private volatile Snapshot _snapshot = new Snapshot(EMPTY, 0);
+	private volatile int _weight = 0;
+	// 末尾の要素を配列を作り直さずに削除した場合はtrue。次の追加では配列を作り直す
+	private boolean _shared = false;
+
+	private final IdentityHashMap<L1ItemInstance, Entry> _entries = new IdentityHashMap<L1ItemInstance, Entry>();
+	private final ConcurrentHashMap<Integer, L1ItemInstance> _byObjectId = new ConcurrentHashMap<Integer, L1ItemInstance>();
+	private final ConcurrentHashMap<Integer, L1ItemInstance[]> _byItemId = new ConcurrentHashMap<Integer, L1ItemInstance[]>();
+
+	@Override
+	public L1ItemInstance get(int index) {
+		Snapshot snapshot = _snapshot;
+		if (index < 0 || snapshot._size <= index) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ snapshot._size);
+		}
+		return snapshot._array[index];
+	}
+
+	@Override
+	public int size() {
+		return _snapshot._size;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if (!(o instanceof L1ItemInstance)) {
+			return false;
+		}
+		L1ItemInstance item = (L1ItemInstance) o;
+		return _byObjectId.get(item.getId()) == item || super.contains(o);
+	}
+
+	@Override
+	public Iterator<L1ItemInstance> iterator() {
+		final Snapshot snapshot = _snapshot;
+		return new Iterator<L1ItemInstance>() {
+			private int _index = 0;
+
+			@Override
+			public boolean hasNext() {
+				return _index < snapshot._size;
+			}
+
+			@Override
+			public L1ItemInstance next() {
+				if (snapshot._size <= _index) {
+					throw new NoSuchElementException();
+				}
+				return snapshot._array[_index++];
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public boolean add(L1ItemInstance item) {
+		synchronized (_lock) {
+			Snapshot snapshot = _snapshot;
+			L1ItemInstance[] array = snapshot._array;
+			int size = snapshot._size;
+			if (_shared || array.length <= size) {
+				L1ItemInstance[] newArray = new L1ItemInstance[Math.max(
+						size + (size >> 1), size + 8)];
+				System.arraycopy(array, 0, newArray, 0, size);
+				array = newArray;
+				_shared = false;
+			}
+			array[size] = item;
+			_snapshot = new Snapshot(array, size + 1);
+			index(item);
+		}
+		return true;
+	}
+
+	@Override
+	public L1ItemInstance remove(int index) {
+		synchronized (_lock) {
+			L1ItemInstance item = get(index);
+			removeAt(index);
+			return item;
+		}
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		synchronized (_lock) {
+			int index = indexOf(o);
+			if (index < 0) {
+				return false;
+			}
+			removeAt(index);
+			return true;
+		}
+	}
+
+	// _lockを保持して呼ぶこと
+	private void removeAt(int index) {
+		Snapshot snapshot = _snapshot;
+		L1ItemInstance[] array = snapshot._array;
+		int size = snapshot._size;
+		L1ItemInstance item = array[index];
+		if (index == size - 1) {
+			// 末尾であれば、要素数を減らすだけでよい
+			_snapshot = new Snapshot(array, size - 1);
+			_shared = true;
+		} else {
+			L1ItemInstance[] newArray = new L1ItemInstance[array.length];
+			System.arraycopy(array, 0, newArray, 0, index);
+			System.arraycopy(array, index + 1, newArray, index, size - index
+					- 1);
+			_snapshot = new Snapshot(newArray, size - 1);
+			_shared = false;
+		}
+		if (indexOf(item) < 0) { // 同じアイテムが重複して格納されていなければ索引から外す
+			unindex(item);
+		}
+	}
+
+	@Override
+	public L1ItemInstance set(int index, L1ItemInstance item) {
+		synchronized (_lock) {
+			Snapshot snapshot = _snapshot;
+			L1ItemInstance old = get(index);
+			L1ItemInstance[] newArray = snapshot._array.clone();
+			newArray[index] = item;
+			_snapshot = new Snapshot(newArray, snapshot._size);
+			_shared = false;
+			if (indexOf(old) < 0) {
+				unindex(old);
+			}
+			if (_entries.containsKey(item)) {
+				reindexItemId(item); // 並び順が変わった
+			} else {
+				index(item);
+			}
+			return old;
+		}
+	}
+
+	@Override
+	public void clear() {
+		synchronized (_lock) {
+			for (L1ItemInstance item : _entries.keySet()) {
+				if (item.getItemList() == this) {
+					item.setItemList(null);
+				}
+			}
+			_snapshot = new Snapshot(EMPTY, 0);
+			_shared = false;
+			_entries.clear();
+			_byObjectId.clear();
+			_byItemId.clear();
+			_weight = 0;
+		}
+	}
+
+	/**
+	 * 並び順をランダムに入れ替える。
+	 */
+	public void shuffle() {
+		synchronized (_lock) {
+			Snapshot snapshot = _snapshot;
+			L1ItemInstance[] array = new L1ItemInstance[snapshot._array.length];
+			System.arraycopy(snapshot._array, 0, array, 0, snapshot._size);
+			Collections.shuffle(Arrays.asList(array).subList(0,
+					snapshot._size));
+			_snapshot = new Snapshot(array, snapshot._size);
+			_shared = false;
+			for (L1ItemInstance item : _entries.keySet()) {
+				reindexItemId(item);
+			}
+		}
+	}
+
+	// _lockを保持して呼ぶこと
+	private void index(L1ItemInstance item) {
+		if (_entries.containsKey(item)) {
+			return;
+		}
+		Entry entry = new Entry();
+		entry._objectId = item.getId();
+		entry._itemId = item.getItemId();
+		entry._weight = item.getWeight();
+		_entries.put(item, entry);
+		_byObjectId.put(entry._objectId, item);
+		addToGroup(entry._itemId, item);
+		_weight += entry._weight;
+		item.setItemList(this);
+	}
+
+	// _lockを保持して呼ぶこと
+	private void unindex(L1ItemInstance item) {
+		Entry entry = _entries.remove(item);
+		if (entry == null) {
+			return;
+		}
+		_byObjectId.remove(entry._objectId, item);
+		removeFromGroup(entry._itemId, item);
+		_weight -= entry._weight;
+		if (item.getItemList() == this) {
+			item.setItemList(null);
+		}
+	}
+
+	// _lockを保持して呼ぶこと
+	private void reindexItemId(L1ItemInstance item) {
+		Entry entry = _entries.get(item);
+		removeFromGroup(entry._itemId, item);
+		addToGroup(entry._itemId, item);
+	}
+
+	// グループ内はリストと同じ順に並べる。_lockを保持して呼ぶこと
+	private void addToGroup(int itemId, L1ItemInstance item) {
+		L1ItemInstance[] group = _byItemId.get(itemId);
+		if (group == null) {
+			_byItemId.put(itemId, new L1ItemInstance[] { item });
+			return;
+		}
+		Snapshot snapshot = _snapshot;
+		int insert = group.length;
+		if (snapshot._array[snapshot._size - 1] != item) { // 末尾への追加であれば、グループでも末尾になる
+			int position = indexOf(snapshot, item);
+			while (insert > 0
+					&& position < indexOf(snapshot, group[insert - 1])) {
+				insert--;
+			}
+		}
+		L1ItemInstance[] newGroup = new L1ItemInstance[group.length + 1];
+		System.arraycopy(group, 0, newGroup, 0, insert);
+		newGroup[insert] = item;
+		System.arraycopy(group, insert, newGroup, insert + 1, group.length
+				- insert);
+		_byItemId.put(itemId, newGroup);
+	}
+
+	// _lockを保持して呼ぶこと
+	private void removeFromGroup(int itemId, L1ItemInstance item) {
+		L1ItemInstance[] group = _byItemId.get(itemId);
+		if (group == null) {
+			return;
+		}
+		for (int i = 0; i < group.length; i++) {
+			if (group[i] != item) {
+				continue;
+			}
+			if (group.length == 1) {
+				_byItemId.remove(itemId);
+				return;
+			}
+			L1ItemInstance[] newGroup = new L1ItemInstance[group.length - 1];
+			System.arraycopy(group, 0, newGroup, 0, i);
+			System.arraycopy(group, i + 1, newGroup, i, group.length - i - 1);
+			_byItemId.put(itemId, newGroup);
+			return;
+		}
+	}
+
+	private static int indexOf(Snapshot snapshot, L1ItemInstance item) {
+		for (int i = snapshot._size - 1; i >= 0; i--) {
+			if (snapshot._array[i] == item) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		Snapshot snapshot = _snapshot;
+		for (int i = 0; i < snapshot._size; i++) {
+			if (snapshot._array[i] == o) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 格納されているアイテムの個数・種類・オブジェクトIDが変更された場合に、L1ItemInstanceから呼び出される。
+	 */
+	public void onItemChanged(L1ItemInstance item) {
+		synchronized (_lock) {
+			Entry entry = _entries.get(item);
+			if (entry == null) {
+				return;
+			}
+			int weight = item.getWeight();
+			_weight += weight - entry._weight;
+			entry._weight = weight;
+			if (entry._objectId != item.getId()) {
+				_byObjectId.remove(entry._objectId, item);
+				entry._objectId = item.getId();
+				_byObjectId.put(entry._objectId, item);
+			}
+			if (entry._itemId != item.getItemId()) {
+				removeFromGroup(entry._itemId, item);
+				entry._itemId = item.getItemId();
+				addToGroup(entry._itemId, item);
+			}
+		}
+	}
+
+	/**
+	 * 全てのアイテムの重量の合計を返す。
+	 */
+	public int getWeight() {
+		return _weight;
+	}
+
+	/**
+	 * 指定したオブジェクトIDのアイテムを返す。
+	 */
+	public L1ItemInstance getById(int objectId) {
+		return _byObjectId.get(objectId);
+	}
+
+	/**
+	 * 指定したアイテムIDのアイテムのうち、最初に格納されたものを返す。
+	 */
+	public L1ItemInstance findByItemId(int itemId) {
+		L1ItemInstance[] group = _byItemId.get(itemId);
+		return group == null ? null : group[0];
+	}
+
+	/**
+	 * 指定したアイテムIDのアイテムを、格納された順に返す。返された配列は変更してはならない。
+	 */
+	public L1ItemInstance[] findAllByItemId(int itemId) {
+		L1ItemInstance[] group = _byItemId.get(itemId);
+		return group == null ? EMPTY : group;
+	}
+}
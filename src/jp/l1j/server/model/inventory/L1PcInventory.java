@@ -509,9 +509,8 @@ public class L1PcInventory extends L1Inventory {
 
 	// 特定のアイテムを装備しているか確認
 	public boolean checkEquipped(int id) {
-		for (Object itemObject : _items) {
-			L1ItemInstance item = (L1ItemInstance) itemObject;
-			if (item.getItem().getItemId() == id && item.isEquipped()) {
+		for (L1ItemInstance item : _items.findAllByItemId(id)) {
+			if (item.isEquipped()) {
 				return true;
 			}
 		}
@@ -43,9 +43,14 @@ public class L1WarehouseInventory extends L1Inventory {
 	// DBの読込
 	@Override
 	public void loadItems() {
-		List<L1InventoryItem> inventoryItems = L1InventoryItem
-				.findByOwnerIdAndLocation(_ownerId, _ownerLocation);
+		loadItems(L1InventoryItem.findByOwnerIdAndLocation(_ownerId,
+				_ownerLocation));
+	}
 
+	/**
+	 * 一括で読み込み済みのアイテムを倉庫に格納する。
+	 */
+	public void loadItems(List<L1InventoryItem> inventoryItems) {
 		List<L1ItemInstance> items = L1InventoryItem
 				.instantiate(inventoryItems);
 		for (L1ItemInstance item : items) {
@@ -23,14 +23,25 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.logging.Logger;
 import jp.l1j.server.datatables.MapTable;
 
 /**
- * テキストマップをキャッシングして読み込み時間を短縮する.
+ * 全マップのタイルを1つのアーカイブ(./data/mapcache/maps.bin)にキャッシュし、メモリマップして読み込む.
+ * タイルはヒープに読み込まれず、アクセスされた部分だけがOSによってメモリに読み込まれる.
+ * アーカイブが無いか古い場合は、マップ毎のキャッシュ(./data/mapcache/\d*.map)かテキストマップから並列に作り直す.
  */
 public class CachedMapReader extends MapReader {
+	private static Logger _log = Logger.getLogger(CachedMapReader.class
+			.getName());
 
 	/** テキストマップホルダー. */
 	private static final String MAP_DIR = "./maps/";
@@ -38,44 +49,244 @@ public class CachedMapReader extends MapReader {
 	/** キャッシングするマップホルダー. */
 	private static final String CACHE_DIR = "./data/mapcache/";
 
+	/** アーカイブのファイル名. */
+	private static final String ARCHIVE_FILE = CACHE_DIR + "maps.bin";
+
+	/** アーカイブの識別子("L1MP"). */
+	private static final int MAGIC = 0x4c314d50;
+
+	/** アーカイブの形式のバージョン. 形式を変更した場合は上げること. */
+	private static final int VERSION = 1;
+
+	/** ヘッダのサイズ(識別子, バージョン, マップ数). */
+	private static final int HEADER_SIZE = 12;
+
+	/** 索引1件のサイズ(マップ番号, X, Y, 幅, 高さ, タイルの位置). */
+	private static final int ENTRY_SIZE = 28;
+
+	/** マップ毎のキャッシュのヘッダのサイズ(マップ番号, X, Y, 幅, 高さ). */
+	private static final int LEGACY_HEADER_SIZE = 20;
+
+	/** アーカイブの索引. */
+	private static class Entry {
+		private int _mapId;
+		private int _x;
+		private int _y;
+		private int _width;
+		private int _height;
+		private long _offset;
+	}
+
+	private ByteBuffer _archive;
+
+	private Map<Integer, Entry> _entries;
+
 	/**
-	 * 指定のマップ番号のテキストマップをキャッシュマップに変更する.
+	 * アーカイブを開く. 無いか古い場合は作り直す.
 	 * 
-	 * @param mapId
-	 *            マップ番号
-	 * @return L1V1Map
 	 * @throws IOException
 	 */
-	private L1V1Map cacheMap(final int mapId) throws IOException {
-		File file = new File(CACHE_DIR);
+	private synchronized void open() throws IOException {
+		if (_entries != null) {
+			return;
+		}
+		File file = new File(ARCHIVE_FILE);
+		Map<Integer, Entry> entries = readIndex(file);
+		if (entries == null || !isValid(file, entries)) {
+			_log.info("マップのアーカイブを作成します: " + ARCHIVE_FILE);
+			build(file);
+			entries = readIndex(file);
+			if (entries == null || !isValid(file, entries)) {
+				throw new IOException("マップのアーカイブの作成に失敗しました");
+			}
+		}
+		// 検証の済んだアーカイブのみメモリマップする(マップ中のファイルは削除できない環境があるため)
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			_archive = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel
+					.size());
+		} finally {
+			raf.close(); // 閉じてもメモリマップは有効
+		}
+		_entries = entries;
+	}
+
+	/**
+	 * アーカイブの索引を読み込む.
+	 * 
+	 * @return 索引。アーカイブが無いか形式が一致しない場合はnull
+	 * @throws IOException
+	 */
+	private static Map<Integer, Entry> readIndex(File file) throws IOException {
 		if (!file.exists()) {
-			file.mkdir();
+			return null;
+		}
+		long length = file.length();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try {
+			if (length < HEADER_SIZE || in.readInt() != MAGIC
+					|| in.readInt() != VERSION) {
+				return null;
+			}
+			int count = in.readInt();
+			if (count < 0 || length < HEADER_SIZE + (long) count * ENTRY_SIZE) {
+				return null;
+			}
+			Map<Integer, Entry> entries = new HashMap<Integer, Entry>();
+			for (int i = 0; i < count; i++) {
+				Entry entry = new Entry();
+				entry._mapId = in.readInt();
+				entry._x = in.readInt();
+				entry._y = in.readInt();
+				entry._width = in.readInt();
+				entry._height = in.readInt();
+				entry._offset = in.readLong();
+				if (length < entry._offset + (long) entry._width
+						* entry._height) {
+					return null;
+				}
+				entries.put(entry._mapId, entry);
+			}
+			return entries;
+		} finally {
+			in.close();
 		}
+	}
 
-		L1V1Map map = (L1V1Map) new TextMapReader().read(mapId);
+	/**
+	 * アーカイブにマップテーブルの全てのマップが同じサイズで含まれ、元のマップより新しいかを調べる.
+	 * 
+	 * @return アーカイブを使用できる場合はtrue
+	 */
+	private static boolean isValid(File file, Map<Integer, Entry> entries) {
+		long lastModified = file.lastModified();
+		for (ArrayList<Integer> info : MapTable.getInstance().getMapInfo()) {
+			int mapId = info.get(TextMapReader.MAPINFO_MAP_NO);
+			Entry entry = entries.get(mapId);
+			if (entry == null
+					|| entry._x != info.get(TextMapReader.MAPINFO_START_X)
+					|| entry._y != info.get(TextMapReader.MAPINFO_START_Y)
+					|| entry._width != width(info)
+					|| entry._height != height(info)) {
+				return false;
+			}
+			if (lastModified < new File(MAP_DIR + mapId + ".txt").lastModified()
+					|| lastModified < new File(CACHE_DIR + mapId + ".map")
+							.lastModified()) {
+				return false;
+			}
+		}
+		return true;
+	}
 
-		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
-				new FileOutputStream(CACHE_DIR + mapId + ".map")));
+	private static int width(ArrayList<Integer> info) {
+		return info.get(TextMapReader.MAPINFO_END_X)
+				- info.get(TextMapReader.MAPINFO_START_X) + 1;
+	}
 
-		out.writeInt(map.getId());
-		out.writeInt(map.getX());
-		out.writeInt(map.getY());
-		out.writeInt(map.getWidth());
-		out.writeInt(map.getHeight());
+	private static int height(ArrayList<Integer> info) {
+		return info.get(TextMapReader.MAPINFO_END_Y)
+				- info.get(TextMapReader.MAPINFO_START_Y) + 1;
+	}
+
+	/**
+	 * 全マップのタイルを並列に読み込み、アーカイブを作成する.
+	 * 
+	 * @throws IOException
+	 */
+	private static void build(File file) throws IOException {
+		final List<ArrayList<Integer>> infos = MapTable.getInstance()
+				.getMapInfo();
+		List<Callable<byte[]>> tasks = new ArrayList<Callable<byte[]>>();
+		for (final ArrayList<Integer> info : infos) {
+			tasks.add(new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws IOException {
+					return readTiles(info.get(TextMapReader.MAPINFO_MAP_NO),
+							width(info), height(info));
+				}
+			});
+		}
+		List<byte[]> tiles = invokeAll(tasks);
+
+		File dir = new File(CACHE_DIR);
+		if (!dir.exists()) {
+			dir.mkdir();
+		}
+		File temp = new File(ARCHIVE_FILE + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(temp), 65536));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(infos.size());
+			long offset = HEADER_SIZE + (long) infos.size() * ENTRY_SIZE;
+			for (int i = 0; i < infos.size(); i++) {
+				ArrayList<Integer> info = infos.get(i);
+				out.writeInt(info.get(TextMapReader.MAPINFO_MAP_NO));
+				out.writeInt(info.get(TextMapReader.MAPINFO_START_X));
+				out.writeInt(info.get(TextMapReader.MAPINFO_START_Y));
+				out.writeInt(width(info));
+				out.writeInt(height(info));
+				out.writeLong(offset);
+				offset += tiles.get(i).length;
+			}
+			for (byte[] tile : tiles) {
+				out.write(tile);
+			}
+		} finally {
+			out.close();
+		}
+		if (file.exists() && !file.delete()) {
+			throw new IOException("古いマップのアーカイブを削除できません: " + ARCHIVE_FILE);
+		}
+		if (!temp.renameTo(file)) {
+			throw new IOException("マップのアーカイブを作成できません: " + ARCHIVE_FILE);
+		}
+	}
 
-		for (byte[] line : map.getRawTiles()) {
-			for (byte tile : line) {
-				out.writeByte(tile);
+	/**
+	 * マップ毎のキャッシュがあればそこから、無ければテキストマップからタイルを読み込む.
+	 * 
+	 * @return X座標毎の列を連結したタイル
+	 * @throws IOException
+	 */
+	private static byte[] readTiles(int mapId, int width, int height)
+			throws IOException {
+		File file = new File(CACHE_DIR + mapId + ".map");
+		if (file.length() == LEGACY_HEADER_SIZE + (long) width * height) {
+			DataInputStream in = new DataInputStream(new FileInputStream(file));
+			try {
+				int id = in.readInt();
+				in.readInt(); // X
+				in.readInt(); // Y
+				if (id == mapId && in.readInt() == width
+						&& in.readInt() == height) {
+					byte[] tiles = new byte[width * height];
+					in.readFully(tiles);
+					return tiles;
+				}
+			} finally {
+				in.close();
 			}
+			_log.warning("MapId: " + mapId + " のキャッシュが一致しないため、テキストマップから読み込みます");
 		}
-		out.flush();
-		out.close();
+		return TextMapReader.readTiles(mapId, width, height);
+	}
 
-		return map;
+	private L1V1Map newMap(Entry entry) {
+		// 各マップはアーカイブの該当範囲を共有するだけで、タイルはコピーしない
+		ByteBuffer tiles = _archive.duplicate();
+		tiles.position((int) entry._offset);
+		tiles.limit((int) entry._offset + entry._width * entry._height);
+		return newV1Map(entry._mapId, tiles.slice(), entry._x, entry._y,
+				entry._width, entry._height);
 	}
 
 	/**
-	 * 指定のマップ番号のキャッシュマップを読み込む.
+	 * 指定のマップ番号のマップを読み込む.
 	 * 
 	 * @param mapId
 	 *            マップ番号
@@ -84,54 +295,23 @@ public class CachedMapReader extends MapReader {
 	 */
 	@Override
 	public L1Map read(final int mapId) throws IOException {
-		File file = new File(CACHE_DIR + mapId + ".map");
-		if (!file.exists()) {
-			return cacheMap(mapId);
+		open();
+		Entry entry = _entries.get(mapId);
+		if (entry == null) {
+			throw new FileNotFoundException("MapId: " + mapId);
 		}
-
-		DataInputStream in = new DataInputStream(new BufferedInputStream(
-				new FileInputStream(CACHE_DIR + mapId + ".map")));
-
-		int id = in.readInt();
-		if (mapId != id) {
-			throw new FileNotFoundException();
-		}
-
-		int xLoc = in.readInt();
-		int yLoc = in.readInt();
-		int width = in.readInt();
-		int height = in.readInt();
-
-		byte[][] tiles = new byte[width][height];
-		for (byte[] line : tiles) {
-			in.read(line);
-		}
-
-		in.close();
-		L1V1Map map = new L1V1Map(id, tiles, xLoc, yLoc, MapTable
-				.getInstance().locationname(mapId),// TODO マップ名称検索用
-				MapTable.getInstance().isUnderwater(mapId), MapTable
-						.getInstance().isMarkable(mapId), MapTable
-						.getInstance().isTeleportable(mapId), MapTable
-						.getInstance().isEscapable(mapId), MapTable
-						.getInstance().isUseResurrection(mapId), MapTable
-						.getInstance().isUsePainwand(mapId), MapTable
-						.getInstance().isEnabledDeathPenalty(mapId), MapTable
-						.getInstance().isTakePets(mapId), MapTable
-						.getInstance().isRecallPets(mapId), MapTable
-						.getInstance().isUsableItem(mapId), MapTable
-						.getInstance().isUsableSkill(mapId));
-		return map;
+		return newMap(entry);
 	}
 
 	/**
-	 * 全てのテキストマップを読み込む.
+	 * 全てのマップを読み込む.
 	 * 
 	 * @return Map
 	 * @throws IOException
 	 */
 	@Override
 	public Map<Integer, L1Map> read() throws IOException {
+		open();
 		Map<Integer, L1Map> maps = new HashMap<Integer, L1Map>();
 		for (int id : TextMapReader.listMapIds()) {
 			maps.put(id, read(id));
@@ -0,0 +1,291 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.model.map;
+
+import java.util.Arrays;
+
+/**
+ * A*による経路探索。
+ * 探索は目標を中心としたタイル距離range以内の菱形の範囲で行い、探索用の配列はスレッド毎に使いまわす。
+ * 求めた経路はPathに保存され、目標が大きく動くか経路から外れるまで再探索しない。
+ */
+public class L1PathFinder {
+	private static final int[] HEADING_TABLE_X = { 0, 1, 1, 1, 0, -1, -1, -1 };
+	private static final int[] HEADING_TABLE_Y = { -1, -1, 0, 1, 1, 1, 0, -1 };
+
+	// 目標がこのタイル数以上動いた場合は経路を求め直す
+	private static final int REPATH_DISTANCE = 2;
+
+	private L1PathFinder() {
+	}
+
+	/**
+	 * NPC毎に保持する、探索済みの経路。
+	 */
+	public static class Path {
+		private byte[] _headings;
+		private int _length = 0;
+		private int _index = 0;
+		private int _mapId = -1;
+		private int _x; // 次の方向へ進む前の座標
+		private int _y;
+		private int _targetX;
+		private int _targetY;
+
+		public void clear() {
+			_length = 0;
+			_index = 0;
+		}
+
+		private boolean isValid(L1Map map, int x, int y, int tx, int ty) {
+			return _index < _length && _mapId == map.getId() && _x == x
+					&& _y == y
+					&& Math.abs(_targetX - tx) < REPATH_DISTANCE
+					&& Math.abs(_targetY - ty) < REPATH_DISTANCE;
+		}
+	}
+
+	// スレッド毎の探索用バッファ
+	private static class Buffer {
+		private int _width = 0;
+		private int[] _cost;
+		private int[] _visited; // 探索毎の世代番号。一致するノードだけが有効
+		private int[] _closed;
+		private byte[] _from; // 直前のノードから進んだ方向
+		private int[] _heap; // ノード番号の二分ヒープ(評価値の昇順)
+		private int[] _heapScore;
+		private int _heapSize;
+		private int _generation = 0;
+
+		private void ensure(int width) {
+			if (_width == width) {
+				return;
+			}
+			int size = width * width;
+			_width = width;
+			_cost = new int[size];
+			_visited = new int[size];
+			_closed = new int[size];
+			_from = new byte[size];
+			_heap = new int[size * 8 + 1];
+			_heapScore = new int[size * 8 + 1];
+			_generation = 0;
+		}
+
+		// 評価値はヒープの要素ごとに持ち、更新前に積まれた重複と混ざらないようにする
+		private void push(int node, int score) {
+			int i = _heapSize++;
+			while (i > 0) {
+				int parent = (i - 1) >> 1;
+				if (_heapScore[parent] <= score) {
+					break;
+				}
+				_heap[i] = _heap[parent];
+				_heapScore[i] = _heapScore[parent];
+				i = parent;
+			}
+			_heap[i] = node;
+			_heapScore[i] = score;
+		}
+
+		private int pop() {
+			int result = _heap[0];
+			int last = _heap[--_heapSize];
+			int lastScore = _heapScore[_heapSize];
+			int i = 0;
+			while (true) {
+				int child = (i << 1) + 1;
+				if (child >= _heapSize) {
+					break;
+				}
+				if (child + 1 < _heapSize
+						&& _heapScore[child + 1] < _heapScore[child]) {
+					child++;
+				}
+				if (lastScore <= _heapScore[child]) {
+					break;
+				}
+				_heap[i] = _heap[child];
+				_heapScore[i] = _heapScore[child];
+				i = child;
+			}
+			_heap[i] = last;
+			_heapScore[i] = lastScore;
+			return result;
+		}
+	}
+
+	private static final ThreadLocal<Buffer> _buffers = new ThreadLocal<Buffer>() {
+		@Override
+		protected Buffer initialValue() {
+			return new Buffer();
+		}
+	};
+
+	/**
+	 * 目標へ向かう経路の、次に進む方向を返す。保存済みの経路が使えればそれを辿る。
+	 *
+	 * @param path
+	 *            保存済みの経路
+	 * @param map
+	 *            探索するマップ
+	 * @param x
+	 *            現在のX座標
+	 * @param y
+	 *            現在のY座標
+	 * @param tx
+	 *            目標のX座標
+	 * @param ty
+	 *            目標のY座標
+	 * @param range
+	 *            探索範囲(目標からのタイル距離)
+	 * @return 次に進む方向。経路が無い場合は-1
+	 */
+	public static int nextHeading(Path path, L1Map map, int x, int y, int tx,
+			int ty, int range) {
+		if (path.isValid(map, x, y, tx, ty)) {
+			int heading = path._headings[path._index];
+			int nx = x + HEADING_TABLE_X[heading];
+			int ny = y + HEADING_TABLE_Y[heading];
+			// 経路上に他のキャラクターなどが現れた場合は求め直す
+			if ((nx == tx && ny == ty) || map.isPassable(x, y, heading)) {
+				return advance(path, heading);
+			}
+		}
+		path.clear();
+		if (!findPath(path, map, x, y, tx, ty, range)) {
+			return -1;
+		}
+		return advance(path, path._headings[0]);
+	}
+
+	private static int advance(Path path, int heading) {
+		path._x += HEADING_TABLE_X[heading];
+		path._y += HEADING_TABLE_Y[heading];
+		path._index++;
+		return heading;
+	}
+
+	/**
+	 * 目標までの最短経路を探索してpathに保存する。目標のタイルへの移動は、通行可否を問わない。
+	 *
+	 * @return 経路が見つかった場合はtrue
+	 */
+	public static boolean findPath(Path path, L1Map map, int x, int y, int tx,
+			int ty, int range) {
+		if (x == tx && y == ty) {
+			return false;
+		}
+		int width = range * 2 + 3; // 開始地点は菱形の外にあってもよいよう、1タイルの余白を取る
+		int origin = range + 1;
+		int startX = x - tx + origin;
+		int startY = y - ty + origin;
+		if (startX < 0 || startY < 0 || width <= startX || width <= startY) {
+			return false;
+		}
+
+		Buffer buf = _buffers.get();
+		buf.ensure(width);
+		int generation = ++buf._generation;
+		if (generation == 0) { // 一周した場合は過去の世代をすべて消す
+			Arrays.fill(buf._visited, 0);
+			Arrays.fill(buf._closed, 0);
+			generation = buf._generation = 1;
+		}
+		int goal = origin * width + origin;
+		int start = startY * width + startX;
+		buf._heapSize = 0;
+		buf._visited[start] = generation;
+		buf._cost[start] = 0;
+		buf.push(start, heuristic(startX, startY, origin));
+
+		boolean found = false;
+		while (buf._heapSize > 0) {
+			int node = buf.pop();
+			if (buf._closed[node] == generation) {
+				continue; // 評価値が更新される前にヒープに積まれた重複
+			}
+			buf._closed[node] = generation;
+			int lx = node % width;
+			int ly = node / width;
+			int wx = lx - origin + tx;
+			int wy = ly - origin + ty;
+			int cost = buf._cost[node] + 1;
+			for (int heading = 0; heading < 8; heading++) {
+				int nx = lx + HEADING_TABLE_X[heading];
+				int ny = ly + HEADING_TABLE_Y[heading];
+				if (Math.abs(nx - origin) + Math.abs(ny - origin) > range) {
+					continue; // 探索範囲外
+				}
+				int next = ny * width + nx;
+				if (next == goal) {
+					buf._from[goal] = (byte) heading;
+					found = true;
+					break;
+				}
+				if (buf._closed[next] == generation) {
+					continue;
+				}
+				if (buf._visited[next] == generation
+						&& buf._cost[next] <= cost) {
+					continue;
+				}
+				if (!map.isPassable(wx, wy, heading)) {
+					continue;
+				}
+				buf._visited[next] = generation;
+				buf._cost[next] = cost;
+				buf._from[next] = (byte) heading;
+				buf.push(next, cost + heuristic(nx, ny, origin));
+			}
+			if (found) {
+				break;
+			}
+		}
+		if (!found) {
+			return false;
+		}
+
+		// 目標から開始地点へ辿り、方向を逆順に格納する
+		int length = 0;
+		for (int node = goal; node != start; length++) {
+			int heading = buf._from[node];
+			node -= HEADING_TABLE_Y[heading] * width + HEADING_TABLE_X[heading];
+		}
+		if (path._headings == null || path._headings.length < length) {
+			path._headings = new byte[Math.max(length, range * 2)];
+		}
+		int i = length;
+		for (int node = goal; node != start;) {
+			int heading = buf._from[node];
+			path._headings[--i] = (byte) heading;
+			node -= HEADING_TABLE_Y[heading] * width + HEADING_TABLE_X[heading];
+		}
+		path._length = length;
+		path._index = 0;
+		path._mapId = map.getId();
+		path._x = x;
+		path._y = y;
+		path._targetX = tx;
+		path._targetY = ty;
+		return true;
+	}
+
+	// 8方向に移動できるため、縦横の差の大きい方が最短の歩数になる
+	private static int heuristic(int x, int y, int origin) {
+		return Math.max(Math.abs(x - origin), Math.abs(y - origin));
+	}
+}
@@ -15,6 +15,8 @@
 
 package jp.l1j.server.model.map;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import jp.l1j.server.codes.ActionCodes;
 import jp.l1j.server.datatables.DoorTable;
 import jp.l1j.server.model.Heading;
@@ -36,7 +38,17 @@ public class L1V1Map extends L1Map {
 
 	private int _worldBottomRightY;
 
-	private byte _map[][];
+	/*
+	 * 読み込んだタイルを、X座標毎の列を連結した1次元の配列で保持する。
+	 * インスタンスマップなどの複製と共有するため、読み込み後は書き換えない。
+	 */
+	private ByteBuffer _tiles;
+
+	// 1列のタイル数(_tilesのストライド)
+	private int _height;
+
+	// Mobなどによる通行不可フラグ。タイル毎に1ビットで、最初に書き込まれた時に生成する
+	private volatile AtomicIntegerArray _impassable;
 
 	private String _locationname;// TODO マップ名称検索用
 
@@ -70,6 +82,10 @@ public class L1V1Map extends L1Map {
 	 */
 	private static final byte BITFLAG_IS_IMPASSABLE = (byte) 128; // 1000 0000
 
+	// 通行できないタイルの判定でL1Locationを生成しないよう、移動先の座標は直接求める
+	private static final int HEADING_TABLE_X[] = { 0, 1, 1, 1, 0, -1, -1, -1 };
+	private static final int HEADING_TABLE_Y[] = { -1, -1, 0, 1, 1, 1, 0, -1 };
+
 	protected L1V1Map() {
 
 	}
@@ -83,14 +99,37 @@ public class L1V1Map extends L1Map {
 			boolean escapable, boolean useResurrection, boolean usePainwand,
 			boolean enabledDeathPenalty, boolean takePets, boolean recallPets,
 			boolean usableItem, boolean usableSkill) {
+		this(mapId, ByteBuffer.wrap(flatten(map)), worldTopLeftX,
+				worldTopLeftY, map.length, map[0].length, locationname,
+				underwater, markable, teleportable, escapable,
+				useResurrection, usePainwand, enabledDeathPenalty, takePets,
+				recallPets, usableItem, usableSkill);
+	}
+
+	/**
+	 * @param tiles
+	 *            X座標毎の列を連結したタイル。width * heightバイトの読み込み専用のバッファでもよい。
+	 */
+	public L1V1Map(int mapId,
+			ByteBuffer tiles,
+			int worldTopLeftX,
+			int worldTopLeftY,
+			int width,
+			int height,
+			String locationname,// TODO マップ名称検索用
+			boolean underwater, boolean markable, boolean teleportable,
+			boolean escapable, boolean useResurrection, boolean usePainwand,
+			boolean enabledDeathPenalty, boolean takePets, boolean recallPets,
+			boolean usableItem, boolean usableSkill) {
 		_mapId = mapId;
 		_baseMapId = mapId;
-		_map = map;
+		_tiles = tiles;
+		_height = height;
 		_worldTopLeftX = worldTopLeftX;
 		_worldTopLeftY = worldTopLeftY;
 
-		_worldBottomRightX = worldTopLeftX + map.length - 1;
-		_worldBottomRightY = worldTopLeftY + map[0].length - 1;
+		_worldBottomRightX = worldTopLeftX + width - 1;
+		_worldBottomRightY = worldTopLeftY + height - 1;
 
 		_locationname = locationname;// TODO マップ名称検索用
 		_isUnderwater = underwater;
@@ -110,11 +149,10 @@ public class L1V1Map extends L1Map {
 		_mapId = map._mapId;
 		_baseMapId = map._mapId;
 
-		// _mapをコピー
-		_map = new byte[map._map.length][];
-		for (int i = 0; i < map._map.length; i++) {
-			_map[i] = map._map[i].clone();
-		}
+		// タイルは共有し、通行不可フラグのみコピー
+		_tiles = map._tiles;
+		_height = map._height;
+		_impassable = copyOf(map._impassable);
 
 		_worldTopLeftX = map._worldTopLeftX;
 		_worldTopLeftY = map._worldTopLeftY;
@@ -123,30 +161,84 @@ public class L1V1Map extends L1Map {
 
 	}
 
+	private static byte[] flatten(byte map[][]) {
+		int height = map[0].length;
+		byte[] result = new byte[map.length * height];
+		for (int i = 0; i < map.length; i++) {
+			System.arraycopy(map[i], 0, result, i * height, height);
+		}
+		return result;
+	}
+
+	private static AtomicIntegerArray copyOf(AtomicIntegerArray array) {
+		if (array == null) {
+			return null;
+		}
+		AtomicIntegerArray result = new AtomicIntegerArray(array.length());
+		for (int i = 0; i < array.length(); i++) {
+			result.set(i, array.get(i));
+		}
+		return result;
+	}
+
+	private int indexOf(int x, int y) {
+		return (x - _worldTopLeftX) * _height + (y - _worldTopLeftY);
+	}
+
 	private int accessTile(int x, int y) {
 		if (!isInMap(x, y)) { // XXX とりあえずチェックする。これは良くない。
 			return 0;
 		}
 
-		return _map[x - _worldTopLeftX][y - _worldTopLeftY];
+		int index = indexOf(x, y);
+		byte tile = _tiles.get(index);
+		AtomicIntegerArray impassable = _impassable;
+		if (impassable != null
+				&& (impassable.get(index >>> 5) & (1 << (index & 31))) != 0) {
+			tile |= BITFLAG_IS_IMPASSABLE;
+		}
+		return tile;
 	}
 
 	private int accessOriginalTile(int x, int y) {
 		return accessTile(x, y) & (~BITFLAG_IS_IMPASSABLE);
 	}
 
-	private void setTile(int x, int y, int tile) {
+	private void setImpassable(int x, int y, boolean impassable) {
 		if (!isInMap(x, y)) { // XXX とりあえずチェックする。これは良くない。
 			return;
 		}
-		_map[x - _worldTopLeftX][y - _worldTopLeftY] = (byte) tile;
+		AtomicIntegerArray flags = _impassable;
+		if (flags == null) {
+			if (!impassable) {
+				return;
+			}
+			flags = allocateImpassable();
+		}
+		int index = indexOf(x, y);
+		int i = index >>> 5;
+		int bit = 1 << (index & 31);
+		while (true) {
+			int old = flags.get(i);
+			int value = impassable ? (old | bit) : (old & ~bit);
+			if (old == value || flags.compareAndSet(i, old, value)) {
+				return;
+			}
+		}
 	}
 
-	/*
-	 * ものすごく良くない気がする
+	private synchronized AtomicIntegerArray allocateImpassable() {
+		if (_impassable == null) {
+			_impassable = new AtomicIntegerArray((getWidth() * _height + 31) >>> 5);
+		}
+		return _impassable;
+	}
+
+	/**
+	 * 読み込み時のタイルを、X座標毎の列を連結した読み込み専用のバッファで返す。
 	 */
-	public byte[][] getRawTiles() {
-		return _map;
+	public ByteBuffer getTiles() {
+		return _tiles.asReadOnlyBuffer();
 	}
 
 	@Override
@@ -213,12 +305,12 @@ public class L1V1Map extends L1Map {
 
 	@Override
 	public boolean isPassable(int x, int y, int heading) {
-		L1Location newLoc = new L1Location(x, y, _mapId);
-		newLoc.forward(heading);
+		int newX = x + HEADING_TABLE_X[heading];
+		int newY = y + HEADING_TABLE_Y[heading];
 		// 現在のタイル
 		int tile1 = accessTile(x, y);
 		// 移動予定のタイル
-		int tile2 = accessTile(newLoc.getX(), newLoc.getY());
+		int tile2 = accessTile(newX, newY);
 
 		if ((tile2 & BITFLAG_IS_IMPASSABLE) == BITFLAG_IS_IMPASSABLE) {
 			return false;
@@ -229,12 +321,14 @@ public class L1V1Map extends L1Map {
 		}
 		
 		if (heading == Heading.UP) {
-			int dir = DoorTable.getInstance().getDoorDirection(newLoc);
+			int dir = DoorTable.getInstance().getDoorDirection(
+					new L1Location(newX, newY, _mapId));
 			return (tile1 & 0x02) == 0x02 && dir != 0;
 		} else if (heading == Heading.UP_RIGHT) {
 			return isPassableUpThenRight(x, y) || isPassableRightThenUp(x, y);
 		} else if (heading == Heading.RIGHT) {
-			int dir = DoorTable.getInstance().getDoorDirection(newLoc);
+			int dir = DoorTable.getInstance().getDoorDirection(
+					new L1Location(newX, newY, _mapId));
 			return (tile1 & 0x01) == 0x01 && dir != 1;
 		} else if (heading == Heading.DOWN_RIGHT) {
 			return isPassableRightThenDown(x, y)
@@ -301,11 +395,7 @@ public class L1V1Map extends L1Map {
 
 	@Override
 	public void setPassable(int x, int y, boolean isPassable) {
-		if (isPassable) {
-			setTile(x, y, (short) (accessTile(x, y) & (~BITFLAG_IS_IMPASSABLE)));
-		} else {
-			setTile(x, y, (short) (accessTile(x, y) | BITFLAG_IS_IMPASSABLE));
-		}
+		setImpassable(x, y, !isPassable);
 	}
 
 	@Override
@@ -543,11 +633,8 @@ public class L1V1Map extends L1Map {
 	@Override
 	public L1V1Map clone() {
 		L1V1Map result = (L1V1Map) super.clone();
-		// _mapをdeep copy
-		result._map = new byte[_map.length][];
-		for (int i = 0; i < _map.length; i++) {
-			result._map[i] = _map[i].clone();
-		}
+		// タイルは書き換えないため共有し、通行不可フラグのみコピーする
+		result._impassable = copyOf(_impassable);
 		return result;
 	}
 
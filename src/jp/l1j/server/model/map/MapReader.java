@@ -16,8 +16,17 @@
 package jp.l1j.server.model.map;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import jp.l1j.configure.Config;
+import jp.l1j.server.datatables.MapTable;
+import jp.l1j.server.utils.collections.Lists;
 
 /**
  * マップを読み込む為の抽象クラス.
@@ -55,4 +64,53 @@ public abstract class MapReader {
 		}
 		return new TextMapReader();
 	}
+
+	/**
+	 * タイルとマップテーブルの設定から、L1V1Mapを生成する.
+	 * 
+	 * @param tiles
+	 *            X座標毎の列を連結したタイル
+	 * @return L1V1Map
+	 */
+	static L1V1Map newV1Map(int mapId, ByteBuffer tiles, int xLoc, int yLoc,
+			int width, int height) {
+		MapTable table = MapTable.getInstance();
+		return new L1V1Map(mapId, tiles, xLoc, yLoc, width, height,
+				table.locationname(mapId),// TODO マップ名称検索用
+				table.isUnderwater(mapId), table.isMarkable(mapId),
+				table.isTeleportable(mapId), table.isEscapable(mapId),
+				table.isUseResurrection(mapId), table.isUsePainwand(mapId),
+				table.isEnabledDeathPenalty(mapId), table.isTakePets(mapId),
+				table.isRecallPets(mapId), table.isUsableItem(mapId),
+				table.isUsableSkill(mapId));
+	}
+
+	/**
+	 * マップの読み込み処理を並列に実行する.
+	 * 
+	 * @param tasks
+	 *            マップ毎の読み込み処理
+	 * @return 各処理の結果(tasksと同じ順)
+	 * @throws IOException
+	 */
+	static <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime
+				.getRuntime().availableProcessors());
+		try {
+			List<T> results = Lists.newArrayList();
+			for (Future<T> future : pool.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
 }
@@ -19,12 +19,12 @@ import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.LineNumberReader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jp.l1j.server.datatables.MapTable;
@@ -65,34 +65,66 @@ public class TextMapReader extends MapReader {
 	 *            X座標のサイズ
 	 * @param ySize
 	 *            Y座標のサイズ
-	 * @return byte[][]
+	 * @return X座標毎の列を連結したタイル(xSize * ySizeバイト)
 	 * @throws IOException
 	 */
-	public byte[][] read(final int mapId, final int xSize, final int ySize)
-			throws IOException {
-		byte[][] map = new byte[xSize][ySize];
-		LineNumberReader in = new LineNumberReader(new BufferedReader(
-				new FileReader(MAP_DIR + mapId + ".txt")));
-
-		int y = 0;
-		String line;
-		while ((line = in.readLine()) != null) {
-			if (line.trim().length() == 0 || line.startsWith("#")) {
-				continue; // 空行とコメントをスキップ
+	public static byte[] readTiles(final int mapId, final int xSize,
+			final int ySize) throws IOException {
+		byte[] tiles = new byte[xSize * ySize];
+		BufferedReader in = new BufferedReader(new FileReader(MAP_DIR + mapId
+				+ ".txt"), 65536);
+		try {
+			int y = 0;
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.trim().length() == 0 || line.startsWith("#")) {
+					continue; // 空行とコメントをスキップ
+				}
+				if (y >= ySize) {
+					throw new IOException("MapId: " + mapId + " の行数がマップサイズを超えています");
+				}
+
+				// StringTokenizerとByte.parseByteを使わず、1文字ずつ数値に変換する
+				int x = 0;
+				int value = 0;
+				boolean negative = false;
+				boolean hasValue = false;
+				for (int i = 0, length = line.length(); i <= length; i++) {
+					char c = i < length ? line.charAt(i) : ',';
+					if (c == ',') {
+						if (!hasValue) {
+							continue;
+						}
+						if (x >= xSize) {
+							throw new IOException("MapId: " + mapId + " の列数がマップサイズを超えています");
+						}
+						tiles[x * ySize + y] = (byte) (negative ? -value : value);
+						x++;
+						value = 0;
+						negative = false;
+						hasValue = false;
+					} else if ('0' <= c && c <= '9') {
+						value = value * 10 + (c - '0');
+						hasValue = true;
+					} else if (c == '-') {
+						negative = true;
+					}
+				}
+				y++;
 			}
-
-			int x = 0;
-			StringTokenizer tok = new StringTokenizer(line, ",");
-			while (tok.hasMoreTokens()) {
-				byte tile = Byte.parseByte(tok.nextToken());
-				map[x][y] = tile;
-
-				x++;
-			}
-			y++;
+		} finally {
+			in.close();
 		}
-		in.close();
-		return map;
+		return tiles;
+	}
+
+	private static L1V1Map readMap(ArrayList<Integer> info) throws IOException {
+		int mapId = info.get(MAPINFO_MAP_NO);
+		int xSize = info.get(MAPINFO_END_X) - info.get(MAPINFO_START_X) + 1;
+		int ySize = info.get(MAPINFO_END_Y) - info.get(MAPINFO_START_Y) + 1;
+		return newV1Map(mapId, ByteBuffer.wrap(readTiles(mapId, xSize, ySize)),
+				info.get(MAPINFO_START_X), info.get(MAPINFO_START_Y), xSize,
+				ySize);
 	}
 
 	/**
@@ -106,74 +138,42 @@ public class TextMapReader extends MapReader {
 	@Override
 	public L1Map read(final int id) throws IOException {
 		for (ArrayList<Integer> info : MAP_INFO) {
-			int mapId = info.get(MAPINFO_MAP_NO);
-			int xSize = info.get(MAPINFO_END_X) - info.get(MAPINFO_START_X) + 1;
-			int ySize = info.get(MAPINFO_END_Y) - info.get(MAPINFO_START_Y) + 1;
-
-			if (mapId == id) {
-				L1V1Map map = new L1V1Map((short) mapId,
-						this.read(mapId, xSize, ySize),
-						info.get(MAPINFO_START_X),
-						info.get(MAPINFO_START_Y),
-						MapTable.getInstance().locationname(mapId),// TODO
-						// マップ名称検索用
-						MapTable.getInstance().isUnderwater(mapId), MapTable
-								.getInstance().isMarkable(mapId), MapTable
-								.getInstance().isTeleportable(mapId), MapTable
-								.getInstance().isEscapable(mapId), MapTable
-								.getInstance().isUseResurrection(mapId),
-						MapTable.getInstance().isUsePainwand(mapId), MapTable
-								.getInstance().isEnabledDeathPenalty(mapId),
-						MapTable.getInstance().isTakePets(mapId), MapTable
-								.getInstance().isRecallPets(mapId), MapTable
-								.getInstance().isUsableItem(mapId), MapTable
-								.getInstance().isUsableSkill(mapId));
-				return map;
+			if (info.get(MAPINFO_MAP_NO) == id) {
+				return readMap(info);
 			}
 		}
 		throw new FileNotFoundException("MapId: " + id);
 	}
 
 	/**
-	 * 全てのテキストマップを読み込む.
+	 * 全てのテキストマップを並列に読み込む.
 	 * 
 	 * @return Map
 	 * @throws IOException
 	 */
 	@Override
 	public Map<Integer, L1Map> read() throws IOException {
-		Map<Integer, L1Map> maps = new HashMap<Integer, L1Map>();
+		List<Callable<L1V1Map>> tasks = new ArrayList<Callable<L1V1Map>>();
+		for (final ArrayList<Integer> info : MAP_INFO) {
+			tasks.add(new Callable<L1V1Map>() {
+				@Override
+				public L1V1Map call() {
+					try {
+						return readMap(info);
+					} catch (IOException e) {
+						_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
+						return null;
+					}
+				}
+			});
+		}
 
-		for (ArrayList<Integer> info : MAP_INFO) {
-			int mapId = info.get(MAPINFO_MAP_NO);
-			int xSize = info.get(MAPINFO_END_X) - info.get(MAPINFO_START_X) + 1;
-			int ySize = info.get(MAPINFO_END_Y) - info.get(MAPINFO_START_Y) + 1;
-
-			try {
-				L1V1Map map = new L1V1Map((short) mapId,
-						this.read(mapId, xSize, ySize),
-						info.get(MAPINFO_START_X),
-						info.get(MAPINFO_START_Y),
-						MapTable.getInstance().locationname(mapId),// TODO
-						// マップ名称検索用
-						MapTable.getInstance().isUnderwater(mapId), MapTable
-								.getInstance().isMarkable(mapId), MapTable
-								.getInstance().isTeleportable(mapId), MapTable
-								.getInstance().isEscapable(mapId), MapTable
-								.getInstance().isUseResurrection(mapId),
-						MapTable.getInstance().isUsePainwand(mapId), MapTable
-								.getInstance().isEnabledDeathPenalty(mapId),
-						MapTable.getInstance().isTakePets(mapId), MapTable
-								.getInstance().isRecallPets(mapId), MapTable
-								.getInstance().isUsableItem(mapId), MapTable
-								.getInstance().isUsableSkill(mapId));
-
-				maps.put(mapId, map);
-			} catch (IOException e) {
-				_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
+		Map<Integer, L1Map> maps = new HashMap<Integer, L1Map>();
+		for (L1V1Map map : invokeAll(tasks)) {
+			if (map != null) {
+				maps.put(map.getId(), map);
 			}
 		}
-
 		return maps;
 	}
 
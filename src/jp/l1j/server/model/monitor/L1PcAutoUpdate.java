@@ -25,6 +25,6 @@ public class L1PcAutoUpdate extends L1PcMonitor {
 
 	@Override
 	public void execTask(L1PcInstance pc) {
-		pc.updateObject();
+		pc.checkUpdateObject();
 	}
 }
@@ -51,6 +51,7 @@ import jp.l1j.server.packets.server.S_SkillIconWisdomPotion;
 import jp.l1j.server.packets.server.S_SpMr;
 import jp.l1j.server.packets.server.S_Strup;
 import jp.l1j.server.templates.L1Skill;
+import jp.l1j.server.utils.TimingWheel;
 
 public interface L1SkillTimer {
 	public int getRemainingTime();
@@ -959,4 +960,55 @@ class L1SkillTimerTimerImpl implements L1SkillTimer, Runnable {
 	private final int _timeMillis;
 	private final int _skillId;
 	private int _remainingTime;
+}
+
+class L1SkillTimerWheelImpl extends TimingWheel.Task implements L1SkillTimer {
+	private static Logger _log = Logger.getLogger(L1SkillTimerWheelImpl.class
+			.getName());
+
+	public L1SkillTimerWheelImpl(L1Character cha, int skillId, int timeMillis) {
+		_cha = cha;
+		_skillId = skillId;
+		_timeMillis = timeMillis;
+	}
+
+	@Override
+	protected long execute() {
+		_cha.removeSkillEffect(_skillId);
+		return -1;
+	}
+
+	@Override
+	public void begin() {
+		L1SkillTimerScheduler.getInstance().schedule(this, _timeMillis);
+	}
+
+	@Override
+	public void end() {
+		kill();
+		try {
+			L1SkillStop.stopSkill(_cha, _skillId);
+		} catch (Throwable e) {
+			_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
+		}
+	}
+
+	@Override
+	public void kill() {
+		L1SkillTimerScheduler.getInstance().cancel(this);
+	}
+
+	@Override
+	public int getRemainingTime() {
+		// 他の実装に合わせ、1秒未満の端数は切り上げる
+		long delay = L1SkillTimerScheduler.getInstance().getDelay(this);
+		if (delay <= 0) {
+			return 0;
+		}
+		return (int) ((delay + 999) / 1000);
+	}
+
+	private final L1Character _cha;
+	private final int _timeMillis;
+	private final int _skillId;
 }
\ No newline at end of file
@@ -24,6 +24,8 @@ public class L1SkillTimerCreator {
 			return new L1SkillTimerTimerImpl(cha, skillId, timeMillis);
 		} else if (Config.SKILLTIMER_IMPLTYPE == 2) {
 			return new L1SkillTimerThreadImpl(cha, skillId, timeMillis);
+		} else if (Config.SKILLTIMER_IMPLTYPE == 3) {
+			return new L1SkillTimerWheelImpl(cha, skillId, timeMillis);
 		}
 
 		// 不正な値の場合は、とりあえずTimer
@@ -0,0 +1,43 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.model.skill;
+
+import jp.l1j.configure.Config;
+import jp.l1j.server.utils.TimingWheel;
+
+/**
+ * 全てのキャラクターのスキル効果の終了を管理する共有スケジューラ。
+ * SkillTimerImplTypeに"3"を指定した場合に使用される。
+ */
+public class L1SkillTimerScheduler extends TimingWheel {
+	private static final int TICK_MILLIS = 100;
+
+	private static final int WHEEL_SIZE = 4096; // 1周約7分
+
+	private static L1SkillTimerScheduler _instance;
+
+	public static synchronized L1SkillTimerScheduler getInstance() {
+		if (_instance == null) {
+			_instance = new L1SkillTimerScheduler();
+		}
+		return _instance;
+	}
+
+	private L1SkillTimerScheduler() {
+		super("SkillTimer", TICK_MILLIS, WHEEL_SIZE,
+				Config.SKILLTIMER_WORKER_THREADS);
+	}
+}
@@ -22,6 +22,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.logging.Level;
@@ -30,11 +31,13 @@ import jp.l1j.server.datatables.TrapTable;
 import jp.l1j.server.model.instance.L1PcInstance;
 import jp.l1j.server.model.instance.L1TrapInstance;
 import jp.l1j.server.model.L1Location;
+import jp.l1j.server.model.L1TileTriggers;
 import jp.l1j.server.model.L1World;
 import jp.l1j.server.types.Point;
 import jp.l1j.server.utils.IdFactory;
 import jp.l1j.server.utils.L1DatabaseFactory;
 import jp.l1j.server.utils.SqlUtil;
+import jp.l1j.server.utils.collections.Maps;
 
 public class L1WorldTraps {
 	private static Logger _log = Logger.getLogger(L1WorldTraps.class.getName());
@@ -42,6 +45,12 @@ public class L1WorldTraps {
 	private List<L1TrapInstance> _allTraps = new ArrayList<L1TrapInstance>();
 	private List<L1TrapInstance> _allBases = new ArrayList<L1TrapInstance>();
 
+	// トラップのオブジェクトID -> 有効なトラップを索引に登録したもの
+	private final Map<Integer, TrapTrigger> _triggers = Maps.newConcurrentHashMap();
+
+	// 画面内とみなすタイル距離(Point#isInScreen)
+	private static final int SCREEN_RANGE = 19;
+
 	private Timer _timer = new Timer();
 
 	private static L1WorldTraps _instance;
@@ -87,6 +96,7 @@ public class L1WorldTraps {
 							.getInstance().nextId(), trapTemp, loc, rndPt, span);
 					L1World.getInstance().addVisibleObject(trap);
 					_allTraps.add(trap);
+					register(trap);
 				}
 				L1TrapInstance base = new L1TrapInstance(IdFactory
 						.getInstance().nextId(), loc);
@@ -108,17 +118,46 @@ public class L1WorldTraps {
 		L1WorldTraps oldInstance = _instance;
 		_instance = new L1WorldTraps();
 		oldInstance.resetTimer();
-		removeTraps(oldInstance._allTraps);
-		removeTraps(oldInstance._allBases);
+		oldInstance.removeTraps(oldInstance._allTraps);
+		oldInstance.removeTraps(oldInstance._allBases);
 	}
 
-	private static void removeTraps(List<L1TrapInstance> traps) {
+	private void removeTraps(List<L1TrapInstance> traps) {
 		for (L1TrapInstance trap : traps) {
+			unregister(trap);
 			trap.disableTrap();
 			L1World.getInstance().removeVisibleObject(trap);
 		}
 	}
 
+	/**
+	 * 有効なトラップを、現在の座標で仕掛けの索引に登録する。
+	 */
+	private void register(L1TrapInstance trap) {
+		TrapTrigger trigger = new TrapTrigger(trap);
+		TrapTrigger old = _triggers.put(trap.getId(), trigger);
+		if (old != null) {
+			old.remove();
+		}
+		L1TileTriggers.getInstance().add(trigger._mapId, trigger._x,
+				trigger._y, trigger);
+	}
+
+	private void unregister(L1TrapInstance trap) {
+		TrapTrigger trigger = _triggers.remove(trap.getId());
+		if (trigger != null) {
+			trigger.remove();
+		}
+	}
+
+	// 再配置してから有効にする
+	private void respawn(L1TrapInstance trap) {
+		unregister(trap);
+		trap.resetLocation();
+		trap.enableTrap();
+		register(trap);
+	}
+
 	private void resetTimer() {
 		synchronized (this) {
 			_timer.cancel();
@@ -127,6 +166,7 @@ public class L1WorldTraps {
 	}
 
 	private void disableTrap(L1TrapInstance trap) {
+		unregister(trap);
 		trap.disableTrap();
 
 		synchronized (this) {
@@ -136,18 +176,24 @@ public class L1WorldTraps {
 
 	public void resetAllTraps() {
 		for (L1TrapInstance trap : _allTraps) {
-			trap.resetLocation();
-			trap.enableTrap();
+			respawn(trap);
 		}
 	}
 
+	/**
+	 * プレイヤーのいるタイルのトラップを発動させる。
+	 * 通常の移動では、C_MoveCharが仕掛けの索引から直接TrapTriggerを呼ぶ。
+	 */
 	public void onPlayerMoved(L1PcInstance player) {
 		L1Location loc = player.getLocation();
-
-		for (L1TrapInstance trap : _allTraps) {
-			if (trap.isEnable() && loc.equals(trap.getLocation()) && !player.isGmInvis()) {
-				trap.onTrod(player);
-				disableTrap(trap);
+		L1TileTriggers.Trigger[] triggers = L1TileTriggers.getInstance().get(
+				loc.getMapId(), loc.getX(), loc.getY());
+		if (triggers == null) {
+			return;
+		}
+		for (L1TileTriggers.Trigger trigger : triggers) {
+			if (trigger instanceof TrapTrigger) {
+				trigger.onStep(player);
 			}
 		}
 	}
@@ -155,7 +201,15 @@ public class L1WorldTraps {
 	public void onDetection(L1PcInstance caster) {
 		L1Location loc = caster.getLocation();
 
-		for (L1TrapInstance trap : _allTraps) {
+		// 画面内の範囲のタイルだけを索引から引く
+		for (L1TileTriggers.Trigger trigger : L1TileTriggers.getInstance().get(
+				loc.getMapId(), loc.getX() - SCREEN_RANGE,
+				loc.getY() - SCREEN_RANGE, loc.getX() + SCREEN_RANGE,
+				loc.getY() + SCREEN_RANGE)) {
+			if (!(trigger instanceof TrapTrigger)) {
+				continue;
+			}
+			L1TrapInstance trap = ((TrapTrigger) trigger)._trap;
 			if (trap.isEnable() && loc.isInScreen(trap.getLocation())) {
 				trap.onDetection(caster);
 				disableTrap(trap);
@@ -163,6 +217,35 @@ public class L1WorldTraps {
 		}
 	}
 
+	/**
+	 * 有効なトラップを、登録時の座標のタイルに設置する仕掛け。
+	 */
+	private class TrapTrigger extends L1TileTriggers.Trigger {
+		private final L1TrapInstance _trap;
+		private final int _mapId;
+		private final int _x;
+		private final int _y;
+
+		public TrapTrigger(L1TrapInstance trap) {
+			_trap = trap;
+			_mapId = trap.getMapId();
+			_x = trap.getX();
+			_y = trap.getY();
+		}
+
+		private void remove() {
+			L1TileTriggers.getInstance().remove(_mapId, _x, _y, this);
+		}
+
+		@Override
+		public void onStep(L1PcInstance pc) {
+			if (_trap.isEnable() && !pc.isGmInvis()) {
+				_trap.onTrod(pc);
+				disableTrap(_trap);
+			}
+		}
+	}
+
 	private class TrapSpawnTimer extends TimerTask {
 		private final L1TrapInstance _targetTrap;
 
@@ -172,8 +255,12 @@ public class L1WorldTraps {
 
 		@Override
 		public void run() {
-			_targetTrap.resetLocation();
-			_targetTrap.enableTrap();
+			synchronized (L1WorldTraps.this) {
+				if (!_allTraps.contains(_targetTrap)) {
+					return; // 外部から削除されたトラップ
+				}
+			}
+			respawn(_targetTrap);
 		}
 	}
 
@@ -181,6 +268,9 @@ public class L1WorldTraps {
 	/*************外部からトラップ情報を操作する**********************/
 	public synchronized void addTrap(L1TrapInstance trap) {
 		_allTraps.add(trap);
+		if (trap.isEnable()) {
+			register(trap);
+		}
 		//_allBases.add(trap);
 	}
 
@@ -14,9 +14,12 @@
  */
 package jp.l1j.server.packets;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.logging.Logger;
 import jp.l1j.configure.Config;
 import jp.l1j.server.ClientThread;
+import jp.l1j.server.codes.Opcodes;
 import static jp.l1j.server.codes.Opcodes.*;
 import jp.l1j.server.model.instance.L1PcInstance;
 import jp.l1j.server.packets.client.C_AddBookmark;
@@ -107,296 +110,723 @@ import jp.l1j.server.packets.client.C_UsePetItem;
 import jp.l1j.server.packets.client.C_UseSkill;
 import jp.l1j.server.packets.client.C_War;
 import jp.l1j.server.packets.client.C_Who;
+import jp.l1j.server.packets.client.ClientBasePacket;
+import jp.l1j.server.packets.client.ClientPacketHandler;
+import jp.l1j.server.packets.client.ClientPacketReader;
+import jp.l1j.server.utils.metrics.Histogram;
+import jp.l1j.server.utils.metrics.MetricRegistry;
 
 public class PacketHandler {
 	private static Logger _log = Logger.getLogger(PacketHandler.class.getName());
 
+	/**
+	 * パケットを処理するスレッドの区分。キャラクター選択前のパケットは区分によらず受信スレッドで処理する。
+	 */
+	public enum Lane {
+		/** 受信スレッドで受信順に処理する。破棄してはいけないパケット(リスタート、アイテムドロップ、アイテム削除) */
+		RECEIVE,
+		/** 移動専用スレッド。移動はなるべく確実に行う */
+		MOVE,
+		/** 行動処理スレッド */
+		ACTION
+	}
+
+	private static class Entry {
+		private final Lane _lane;
+		private final ClientPacketHandler _handler;
+
+		private Entry(Lane lane, ClientPacketHandler handler) {
+			_lane = lane;
+			_handler = handler;
+		}
+	}
+
+	/**
+	 * コンストラクタで処理を行う従来のC_*クラスを、ClientPacketHandlerとして呼び出す。
+	 */
+	private static abstract class LegacyHandler implements ClientPacketHandler {
+		@Override
+		public void handle(ClientBasePacket packet, ClientThread client)
+				throws Exception {
+			handle(((ClientPacketReader) packet).getBytes(), client);
+		}
+
+		protected abstract void handle(byte[] data, ClientThread client)
+				throws Exception;
+	}
+
+	// 受け取るだけで何もしないパケット
+	private static final ClientPacketHandler IGNORE = new ClientPacketHandler() {
+		@Override
+		public void handle(ClientBasePacket packet, ClientThread client) {
+		}
+	};
+
+	// オペコード -> 処理。登録の無いオペコードは読み捨てる
+	private static final Entry[] _entries = new Entry[256];
+
+	// パケットの読み込みに使うClientPacketReaderは、処理するスレッド毎に使い回す
+	private static final ThreadLocal<ClientPacketReader> _readers = new ThreadLocal<ClientPacketReader>() {
+		@Override
+		protected ClientPacketReader initialValue() {
+			return new ClientPacketReader();
+		}
+	};
+
+	// 複数のオペコードで共用する処理
+	private static final ClientPacketHandler ATTACK = new C_Attack();
+
+	private static final ClientPacketHandler CHAT = new C_Chat();
+
+	private static void register(int opcode, Lane lane,
+			ClientPacketHandler handler) {
+		if (_entries[opcode] != null) {
+			throw new IllegalStateException("Duplicate opcode: " + opcode);
+		}
+		_entries[opcode] = new Entry(lane, handler);
+	}
+
+	static {
+		register(C_OPCODE_SENDLOCATION, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_SendLocation(data, client);
+			}
+		});
+		register(C_OPCODE_EXCLUDE, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Exclude(data, client);
+			}
+		});
+		register(C_OPCODE_CHARACTERCONFIG, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_CharcterConfig(data, client);
+			}
+		});
+		register(C_OPCODE_DOOR, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Door(data, client);
+			}
+		});
+		register(C_OPCODE_TITLE, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Title(data, client);
+			}
+		});
+		register(C_OPCODE_BOARDDELETE, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_BoardDelete(data, client);
+			}
+		});
+		register(C_OPCODE_PLEDGE, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Pledge(data, client);
+			}
+		});
+		register(C_OPCODE_CHANGEHEADING, Lane.ACTION, new C_ChangeHeading());
+		register(C_OPCODE_NPCACTION, Lane.ACTION, new C_NpcAction());
+		register(C_OPCODE_USESKILL, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_UseSkill(data, client);
+			}
+		});
+		register(C_OPCODE_EMBLEM, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Emblem(data, client);
+			}
+		});
+		register(C_OPCODE_TRADEADDCANCEL, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_TradeCancel(data, client);
+			}
+		});
+		register(C_OPCODE_CHANGEWARTIME, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_ChangeWarTime(data, client);
+			}
+		});
+		register(C_OPCODE_BOOKMARK, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_AddBookmark(data, client);
+			}
+		});
+		register(C_OPCODE_CREATECLAN, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_CreateClan(data, client);
+			}
+		});
+		register(C_OPCODE_CLIENTVERSION, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_ServerVersion(data, client);
+			}
+		});
+		register(C_OPCODE_PROPOSE, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Propose(data, client);
+			}
+		});
+		register(C_OPCODE_SKILLBUY, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_SkillBuy(data, client);
+			}
+		});
+		register(C_OPCODE_BOARDNEXT, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_BoardBack(data, client);
+			}
+		});
+		register(C_OPCODE_SHOP, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Shop(data, client);
+			}
+		});
+		register(C_OPCODE_BOARDREAD, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_BoardRead(data, client);
+			}
+		});
+		register(C_OPCODE_TRADE, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Trade(data, client);
+			}
+		});
+		register(C_OPCODE_DELETECHAR, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_DeleteChar(data, client);
+			}
+		});
+		register(C_OPCODE_KEEPALIVE, Lane.ACTION, new C_KeepAlive());
+		register(C_OPCODE_ATTR, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Attr(data, client);
+			}
+		});
+		register(C_OPCODE_LOGINPACKET, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_AuthLogin(data, client);
+			}
+		});
+		register(C_OPCODE_RESULT, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Result(data, client);
+			}
+		});
+		register(C_OPCODE_DEPOSIT, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Deposit(data, client);
+			}
+		});
+		register(C_OPCODE_DRAWAL, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Drawal(data, client);
+			}
+		});
+		register(C_OPCODE_LOGINTOSERVEROK, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_LoginToServerOK(data, client);
+			}
+		});
+		register(C_OPCODE_SKILLBUYOK, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_SkillBuyOK(data, client);
+			}
+		});
+		register(C_OPCODE_TRADEADDITEM, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_TradeAddItem(data, client);
+			}
+		});
+		register(C_OPCODE_ADDBUDDY, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_AddBuddy(data, client);
+			}
+		});
+		register(C_OPCODE_RETURNTOLOGIN, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_ReturnToLogin(data, client);
+			}
+		});
+		register(C_OPCODE_CHAT, Lane.ACTION, CHAT);
+		register(C_OPCODE_TRADEADDOK, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_TradeOK(data, client);
+			}
+		});
+		register(C_OPCODE_CHECKPK, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_CheckPK(data, client);
+			}
+		});
+		register(C_OPCODE_TAXRATE, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_TaxRate(data, client);
+			}
+		});
+		register(C_OPCODE_CHANGECHAR, Lane.RECEIVE, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_NewCharSelect(data, client);
+				new C_CommonClick(client);
+			}
+		});
+		register(C_OPCODE_BUDDYLIST, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Buddy(data, client);
+			}
+		});
+		register(C_OPCODE_DROPITEM, Lane.RECEIVE, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_DropItem(data, client);
+			}
+		});
+		register(C_OPCODE_LEAVEPARTY, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_LeaveParty(data, client);
+			}
+		});
+		register(C_OPCODE_ATTACK, Lane.ACTION, ATTACK);
+		register(C_OPCODE_ARROWATTACK, Lane.ACTION, ATTACK);
+		// キャラクターのショートカットやインベントリの状態がプレイ中に変動した場合に
+		// ショートカットやインベントリの状態を付加してクライアントから送信されてくる
+		// 送られてくるタイミングはクライアント終了時
+		register(C_OPCODE_QUITGAME, Lane.ACTION, IGNORE);
+		register(C_OPCODE_BANCLAN, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_BanClan(data, client);
+			}
+		});
+		register(C_OPCODE_BOARD, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Board(data, client);
+			}
+		});
+		register(C_OPCODE_DELETEINVENTORYITEM, Lane.RECEIVE, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_DeleteInventoryItem(data, client);
+			}
+		});
+		register(C_OPCODE_CHATWHISPER, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_ChatWhisper(data, client);
+			}
+		});
+		register(C_OPCODE_PARTYLIST, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Party(data, client);
+			}
+		});
+		register(C_OPCODE_PICKUPITEM, Lane.ACTION, new C_PickUpItem());
+		register(C_OPCODE_WHO, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Who(data, client);
+			}
+		});
+		register(C_OPCODE_GIVEITEM, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_GiveItem(data, client);
+			}
+		});
+		register(C_OPCODE_MOVECHAR, Lane.MOVE, new C_MoveChar());
+		register(C_OPCODE_BOOKMARKDELETE, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_DeleteBookmark(data, client);
+			}
+		});
+		register(C_OPCODE_RESTART, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Restart(data, client);
+			}
+		});
+		register(C_OPCODE_LEAVECLANE, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_LeaveClan(data, client);
+			}
+		});
+		register(C_OPCODE_NPCTALK, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_NpcTalk(data, client);
+			}
+		});
+		register(C_OPCODE_BANPARTY, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_BanParty(data, client);
+			}
+		});
+		register(C_OPCODE_DELETEBUDDY, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_DeleteBuddy(data, client);
+			}
+		});
+		register(C_OPCODE_WAR, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_War(data, client);
+			}
+		});
+		register(C_OPCODE_LOGINTOSERVER, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_LoginToServer(data, client);
+			}
+		});
+		register(C_OPCODE_PRIVATESHOPLIST, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_ShopList(data, client);
+			}
+		});
+		register(C_OPCODE_CHATGLOBAL, Lane.ACTION, CHAT);
+		register(C_OPCODE_JOINCLAN, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_JoinClan(data, client);
+			}
+		});
+		register(C_OPCODE_COMMONCLICK, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_CommonClick(client);
+			}
+		});
+		register(C_OPCODE_NEWCHAR, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_CreateChar(data, client);
+			}
+		});
+		register(C_OPCODE_EXTCOMMAND, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_ExtraCommand(data, client);
+			}
+		});
+		register(C_OPCODE_BOARDWRITE, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_BoardWrite(data, client);
+			}
+		});
+		register(C_OPCODE_USEITEM, Lane.ACTION, new C_UseItem());
+		register(C_OPCODE_CREATEPARTY, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_CreateParty(data, client);
+			}
+		});
+		register(C_OPCODE_ENTERPORTAL, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_EnterPortal(data, client);
+			}
+		});
+		register(C_OPCODE_AMOUNT, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Amount(data, client);
+			}
+		});
+		register(C_OPCODE_FIX_WEAPON_LIST, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_FixWeaponList(data, client);
+			}
+		});
+		register(C_OPCODE_SELECTLIST, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_SelectList(data, client);
+			}
+		});
+		register(C_OPCODE_EXIT_GHOST, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_ExitGhost(data, client);
+			}
+		});
+		register(C_OPCODE_CALL, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_CallPlayer(data, client);
+			}
+		});
+		register(C_OPCODE_HIRESOLDIER, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_HireSoldier(data, client);
+			}
+		});
+		register(C_OPCODE_FISHCLICK, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_FishClick(data, client);
+			}
+		});
+		register(C_OPCODE_SELECTTARGET, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_SelectTarget(data, client);
+			}
+		});
+		register(C_OPCODE_PETMENU, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_PetMenu(data, client);
+			}
+		});
+		register(C_OPCODE_USEPETITEM, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_UsePetItem(data, client);
+			}
+		});
+		register(C_OPCODE_TELEPORT, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Teleport(data, client);
+			}
+		});
+		register(C_OPCODE_RANK, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Rank(data, client);
+			}
+		});
+		register(C_OPCODE_CAHTPARTY, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_ChatParty(data, client);
+			}
+		});
+		register(C_OPCODE_FIGHT, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Fight(data, client);
+			}
+		});
+		register(C_OPCODE_SHIP, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Ship(data, client);
+			}
+		});
+		register(C_OPCODE_MAIL, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Mail(data, client);
+			}
+		});
+		register(C_OPCODE_CHARRESET, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_CharReset(data, client);
+			}
+		});
+		register(C_OPCODE_CLAN, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_Clan(data, client);
+			}
+		});
+		register(C_OPCODE_PLEDGE_RECOMMENDATION, Lane.ACTION, new LegacyHandler() {
+			@Override
+			protected void handle(byte[] data, ClientThread client)
+					throws Exception {
+				new C_PledgeRecommendation(data, client);
+			}
+		});
+	}
+
+	/**
+	 * オペコードのパケットを処理するスレッドの区分を返す。登録の無いオペコードはACTION。
+	 */
+	public static Lane getLane(int opcode) {
+		Entry entry = _entries[opcode & 0xff];
+		return entry == null ? Lane.ACTION : entry._lane;
+	}
+
 	private final ClientThread _client;
 	
 	public PacketHandler(ClientThread clientthread) {
 		_client = clientthread;
 	}
 
+	// オペコードごとの処理時間。最初にそのオペコードを受信した時に生成する
+	private static final Histogram[] _timers = new Histogram[256];
+
+	private static final String[] _opcodeNames = new String[256];
+
+	static {
+		for (Field field : Opcodes.class.getFields()) {
+			if (!Modifier.isStatic(field.getModifiers())
+					|| !field.getName().startsWith("C_OPCODE_")) {
+				continue;
+			}
+			try {
+				int opcode = field.getInt(null) & 0xff;
+				String name = field.getName().substring("C_OPCODE_".length());
+				_opcodeNames[opcode] = _opcodeNames[opcode] == null ? name
+						: _opcodeNames[opcode] + "/" + name;
+			} catch (IllegalAccessException e) {
+			}
+		}
+	}
+
+	private static Histogram getTimer(int opcode) {
+		Histogram timer = _timers[opcode];
+		if (timer == null) {
+			String name = _opcodeNames[opcode] != null ? _opcodeNames[opcode]
+					: String.valueOf(opcode);
+			// 同じ名前からは同じインスタンスが返されるため、競合して代入しても問題ない
+			timer = MetricRegistry.getInstance().histogram("packet." + name);
+			_timers[opcode] = timer;
+		}
+		return timer;
+	}
+
 	public void handlePacket(byte abyte0[], L1PcInstance object) throws Exception {
 		int i = abyte0[0] & 0xff;
 		if (Config.DEBUG_MODE) {
 			System.out.println("Client OPCODE: " + i);
 		}
-		switch (i) {
-		case C_OPCODE_SENDLOCATION:
-			new C_SendLocation(abyte0, _client);
-			break;
-		case C_OPCODE_EXCLUDE:
-			new C_Exclude(abyte0, _client);
-			break;
-		case C_OPCODE_CHARACTERCONFIG:
-			new C_CharcterConfig(abyte0, _client);
-			break;
-		case C_OPCODE_DOOR:
-			new C_Door(abyte0, _client);
-			break;
-		case C_OPCODE_TITLE:
-			new C_Title(abyte0, _client);
-			break;
-		case C_OPCODE_BOARDDELETE:
-			new C_BoardDelete(abyte0, _client);
-			break;
-		case C_OPCODE_PLEDGE:
-			new C_Pledge(abyte0, _client);
-			break;
-		case C_OPCODE_CHANGEHEADING:
-			new C_ChangeHeading(abyte0, _client);
-			break;
-		case C_OPCODE_NPCACTION:
-			new C_NpcAction(abyte0, _client);
-			break;
-		case C_OPCODE_USESKILL:
-			new C_UseSkill(abyte0, _client);
-			break;
-		case C_OPCODE_EMBLEM:
-			new C_Emblem(abyte0, _client);
-			break;
-		case C_OPCODE_TRADEADDCANCEL:
-			new C_TradeCancel(abyte0, _client);
-			break;
-		case C_OPCODE_CHANGEWARTIME:
-			new C_ChangeWarTime(abyte0, _client);
-			break;
-		case C_OPCODE_BOOKMARK:
-			new C_AddBookmark(abyte0, _client);
-			break;
-		case C_OPCODE_CREATECLAN:
-			new C_CreateClan(abyte0, _client);
-			break;
-		case C_OPCODE_CLIENTVERSION:
-			new C_ServerVersion(abyte0, _client);
-			break;
-		case C_OPCODE_PROPOSE:
-			new C_Propose(abyte0, _client);
-			break;
-		case C_OPCODE_SKILLBUY:
-			new C_SkillBuy(abyte0, _client);
-			break;
-		case C_OPCODE_BOARDNEXT:
-			new C_BoardBack(abyte0, _client);
-			break;
-		case C_OPCODE_SHOP:
-			new C_Shop(abyte0, _client);
-			break;
-		case C_OPCODE_BOARDREAD:
-			new C_BoardRead(abyte0, _client);
-			break;
-		case C_OPCODE_TRADE:
-			new C_Trade(abyte0, _client);
-			break;
-		case C_OPCODE_DELETECHAR:
-			new C_DeleteChar(abyte0, _client);
-			break;
-		case C_OPCODE_KEEPALIVE:
-			new C_KeepAlive(abyte0, _client);
-			break;
-		case C_OPCODE_ATTR:
-			new C_Attr(abyte0, _client);
-			break;
-		case C_OPCODE_LOGINPACKET:
-			new C_AuthLogin(abyte0, _client);
-			break;
-		case C_OPCODE_RESULT:
-			new C_Result(abyte0, _client);
-			break;
-		case C_OPCODE_DEPOSIT:
-			new C_Deposit(abyte0, _client);
-			break;
-		case C_OPCODE_DRAWAL:
-			new C_Drawal(abyte0, _client);
-			break;
-		case C_OPCODE_LOGINTOSERVEROK:
-			new C_LoginToServerOK(abyte0, _client);
-			break;
-		case C_OPCODE_SKILLBUYOK:
-			new C_SkillBuyOK(abyte0, _client);
-			break;
-		case C_OPCODE_TRADEADDITEM:
-			new C_TradeAddItem(abyte0, _client);
-			break;
-		case C_OPCODE_ADDBUDDY:
-			new C_AddBuddy(abyte0, _client);
-			break;
-		case C_OPCODE_RETURNTOLOGIN:
-			new C_ReturnToLogin(abyte0, _client);
-			break;
-		case C_OPCODE_CHAT:
-			new C_Chat(abyte0, _client);
-			break;
-		case C_OPCODE_TRADEADDOK:
-			new C_TradeOK(abyte0, _client);
-			break;
-		case C_OPCODE_CHECKPK:
-			new C_CheckPK(abyte0, _client);
-			break;
-		case C_OPCODE_TAXRATE:
-			new C_TaxRate(abyte0, _client);
-			break;
-		case C_OPCODE_CHANGECHAR:
-			new C_NewCharSelect(abyte0, _client);
-			new C_CommonClick(_client);
-			break;
-		case C_OPCODE_BUDDYLIST:
-			new C_Buddy(abyte0, _client);
-			break;
-		case C_OPCODE_DROPITEM:
-			new C_DropItem(abyte0, _client);
-			break;
-		case C_OPCODE_LEAVEPARTY:
-			new C_LeaveParty(abyte0, _client);
-			break;
-		case C_OPCODE_ATTACK:
-		case C_OPCODE_ARROWATTACK:
-			new C_Attack(abyte0, _client);
-			break;
-		// キャラクターのショートカットやインベントリの状態がプレイ中に変動した場合に
-		// ショートカットやインベントリの状態を付加してクライアントから送信されてくる
-		// 送られてくるタイミングはクライアント終了時
-		case C_OPCODE_QUITGAME:
-			break;
-		case C_OPCODE_BANCLAN:
-			new C_BanClan(abyte0, _client);
-			break;
-		case C_OPCODE_BOARD:
-			new C_Board(abyte0, _client);
-			break;
-		case C_OPCODE_DELETEINVENTORYITEM:
-			new C_DeleteInventoryItem(abyte0, _client);
-			break;
-		case C_OPCODE_CHATWHISPER:
-			new C_ChatWhisper(abyte0, _client);
-			break;
-		case C_OPCODE_PARTYLIST:
-			new C_Party(abyte0, _client);
-			break;
-		case C_OPCODE_PICKUPITEM:
-			new C_PickUpItem(abyte0, _client);
-			break;
-		case C_OPCODE_WHO:
-			new C_Who(abyte0, _client);
-			break;
-		case C_OPCODE_GIVEITEM:
-			new C_GiveItem(abyte0, _client);
-			break;
-		case C_OPCODE_MOVECHAR:
-			new C_MoveChar(abyte0, _client);
-			break;
-		case C_OPCODE_BOOKMARKDELETE:
-			new C_DeleteBookmark(abyte0, _client);
-			break;
-		case C_OPCODE_RESTART:
-			new C_Restart(abyte0, _client);
-			break;
-		case C_OPCODE_LEAVECLANE:
-			new C_LeaveClan(abyte0, _client);
-			break;
-		case C_OPCODE_NPCTALK:
-			new C_NpcTalk(abyte0, _client);
-			break;
-		case C_OPCODE_BANPARTY:
-			new C_BanParty(abyte0, _client);
-			break;
-		case C_OPCODE_DELETEBUDDY:
-			new C_DeleteBuddy(abyte0, _client);
-			break;
-		case C_OPCODE_WAR:
-			new C_War(abyte0, _client);
-			break;
-		case C_OPCODE_LOGINTOSERVER:
-			new C_LoginToServer(abyte0, _client);
-			break;
-		case C_OPCODE_PRIVATESHOPLIST:
-			new C_ShopList(abyte0, _client);
-			break;
-		case C_OPCODE_CHATGLOBAL:
-			new C_Chat(abyte0, _client);
-			break;
-		case C_OPCODE_JOINCLAN:
-			new C_JoinClan(abyte0, _client);
-			break;
-		case C_OPCODE_COMMONCLICK:
-			new C_CommonClick(_client);
-			break;
-		case C_OPCODE_NEWCHAR:
-			new C_CreateChar(abyte0, _client);
-			break;
-		case C_OPCODE_EXTCOMMAND:
-			new C_ExtraCommand(abyte0, _client);
-			break;
-		case C_OPCODE_BOARDWRITE:
-			new C_BoardWrite(abyte0, _client);
-			break;
-		case C_OPCODE_USEITEM:
-			new C_UseItem(abyte0, _client);
-			break;
-		case C_OPCODE_CREATEPARTY:
-			new C_CreateParty(abyte0, _client);
-			break;
-		case C_OPCODE_ENTERPORTAL:
-			new C_EnterPortal(abyte0, _client);
-			break;
-		case C_OPCODE_AMOUNT:
-			new C_Amount(abyte0, _client);
-			break;
-		case C_OPCODE_FIX_WEAPON_LIST:
-			new C_FixWeaponList(abyte0, _client);
-			break;
-		case C_OPCODE_SELECTLIST:
-			new C_SelectList(abyte0, _client);
-			break;
-		case C_OPCODE_EXIT_GHOST:
-			new C_ExitGhost(abyte0, _client);
-			break;
-		case C_OPCODE_CALL:
-			new C_CallPlayer(abyte0, _client);
-			break;
-		case C_OPCODE_HIRESOLDIER:
-			new C_HireSoldier(abyte0, _client);
-			break;
-		case C_OPCODE_FISHCLICK:
-			new C_FishClick(abyte0, _client);
-			break;
-		case C_OPCODE_SELECTTARGET:
-			new C_SelectTarget(abyte0, _client);
-			break;
-		case C_OPCODE_PETMENU:
-			new C_PetMenu(abyte0, _client);
-			break;
-		case C_OPCODE_USEPETITEM:
-			new C_UsePetItem(abyte0, _client);
-			break;
-		case C_OPCODE_TELEPORT:
-			new C_Teleport(abyte0, _client);
-			break;
-		case C_OPCODE_RANK:
-			new C_Rank(abyte0, _client);
-			break;
-		case C_OPCODE_CAHTPARTY:
-			new C_ChatParty(abyte0, _client);
-			break;
-		case C_OPCODE_FIGHT:
-			new C_Fight(abyte0, _client);
-			break;
-		case C_OPCODE_SHIP:
-			new C_Ship(abyte0, _client);
- 			break;
-		case C_OPCODE_MAIL:
-			new C_Mail(abyte0, _client);
-			break;
-		case C_OPCODE_CHARRESET:
-			new C_CharReset(abyte0, _client);
-			break;
-		case C_OPCODE_CLAN:
-			new C_Clan(abyte0, _client);
-			break;
-		case C_OPCODE_PLEDGE_RECOMMENDATION:
-			new C_PledgeRecommendation(abyte0, _client);
-			break;
+		Entry entry = _entries[i];
+		if (entry == null) {
+			return;
+		}
+		ClientPacketReader reader = _readers.get();
+		reader.reset(abyte0);
+		long start = System.nanoTime();
+		try {
+			entry._handler.handle(reader, _client);
+		} finally {
+			getTimer(i).recordSince(start);
 		}
 	}
 }
@@ -22,7 +22,6 @@ import jp.l1j.server.datatables.CharacterTable;
 import jp.l1j.server.model.instance.L1PcInstance;
 import jp.l1j.server.model.L1Buddy;
 import jp.l1j.server.packets.server.S_ServerMessage;
-import jp.l1j.server.templates.L1CharName;
 
 // Referenced classes of package jp.l1j.server.clientpackets:
 // ClientBasePacket
@@ -47,14 +46,12 @@ public class C_AddBuddy extends ClientBasePacket {
 			return;
 		}
 
-		for (L1CharName cn : CharacterTable.getInstance().getCharNameList()) {
-			if (charName.equalsIgnoreCase(cn.getName())) {
-				int objId = cn.getId();
-				String name = cn.getName();
-				buddyList.add(objId, name);
-				buddyTable.addBuddy(pc.getId(), objId);
-				return;
-			}
+		CharacterTable charTable = CharacterTable.getInstance();
+		int objId = charTable.getCharId(charName);
+		if (objId != 0) {
+			buddyList.add(objId, charTable.getCharName(objId));
+			buddyTable.addBuddy(pc.getId(), objId);
+			return;
 		}
 		pc.sendPackets(new S_ServerMessage(109, charName)); // %0という名前の人はいません。
 	}
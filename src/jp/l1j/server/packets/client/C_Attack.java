@@ -35,21 +35,19 @@ import jp.l1j.server.packets.server.S_UseArrowSkill;
 // Referenced classes of package jp.l1j.server.clientpackets:
 // ClientBasePacket
 
-public class C_Attack extends ClientBasePacket {
+/**
+ * 攻撃。頻繁に送られてくるパケットのため、状態を持たない処理としてPacketHandlerに1つだけ登録される。
+ */
+public class C_Attack implements ClientPacketHandler {
 
 	private static Logger _log = Logger.getLogger(C_Attack.class.getName());
 
-	private int _targetX = 0;
-
-	private int _targetY = 0;
-
-	public C_Attack(byte[] decrypt, ClientThread client) {
-		super(decrypt);
-		int targetId = readD();
-		int x = readH();
-		int y = readH();
-		_targetX = x;
-		_targetY = y;
+	@Override
+	public void handle(ClientBasePacket packet, ClientThread client)
+			throws Exception {
+		int targetId = packet.readD();
+		int x = packet.readH();
+		int y = packet.readH();
 
 		L1PcInstance pc = client.getActiveChar();
 
@@ -133,25 +131,27 @@ public class C_Attack extends ClientBasePacket {
 			}
 			pc.setHeading(pc.targetDirection(x, y));
 			if (weaponType == 20 && (weaponId == 190 || arrow != null)) {
-				calcOrbit(pc.getX(), pc.getY(), pc.getHeading()); // 軌道計算
+				int[] orbit = calcOrbit(pc.getX(), pc.getY(), pc.getHeading(),
+						x, y); // 軌道計算
 				if (arrow != null) { // 矢がある場合
-					pc.sendPackets(new S_UseArrowSkill(pc, 0, 66, _targetX,
-							_targetY, true));
-					pc.broadcastPacket(new S_UseArrowSkill(pc, 0, 66, _targetX,
-							_targetY, true));
+					pc.sendPackets(new S_UseArrowSkill(pc, 0, 66, orbit[0],
+							orbit[1], true));
+					pc.broadcastPacket(new S_UseArrowSkill(pc, 0, 66, orbit[0],
+							orbit[1], true));
 					pc.getInventory().removeItem(arrow, 1);
 				} else if (weaponId == 190) { // /L1J2/src/l1j/server/server/clientpackets/C_Attack.java
-					pc.sendPackets(new S_UseArrowSkill(pc, 0, 2349, _targetX,
-							_targetY, true));
+					pc.sendPackets(new S_UseArrowSkill(pc, 0, 2349, orbit[0],
+							orbit[1], true));
 					pc.broadcastPacket(new S_UseArrowSkill(pc, 0, 2349,
-							_targetX, _targetY, true));
+							orbit[0], orbit[1], true));
 				}
 			} else if (weaponType == 62 && sting != null) {
-				calcOrbit(pc.getX(), pc.getY(), pc.getHeading()); // 軌道計算
-				pc.sendPackets(new S_UseArrowSkill(pc, 0, 2989, _targetX,
-						_targetY, true));
-				pc.broadcastPacket(new S_UseArrowSkill(pc, 0, 2989, _targetX,
-						_targetY, true));
+				int[] orbit = calcOrbit(pc.getX(), pc.getY(), pc.getHeading(),
+						x, y); // 軌道計算
+				pc.sendPackets(new S_UseArrowSkill(pc, 0, 2989, orbit[0],
+						orbit[1], true));
+				pc.broadcastPacket(new S_UseArrowSkill(pc, 0, 2989, orbit[0],
+						orbit[1], true));
 				pc.getInventory().removeItem(sting, 1);
 			} else {
 				pc.sendPackets(new S_AttackPacket(pc, 0,
@@ -162,9 +162,11 @@ public class C_Attack extends ClientBasePacket {
 		}
 	}
 
-	private void calcOrbit(int cX, int cY, int head) {
-		float disX = Math.abs(cX - _targetX);
-		float disY = Math.abs(cY - _targetY);
+	// 目標地点の先まで伸ばした軌道の終点を返す
+	private int[] calcOrbit(int cX, int cY, int head, int targetX,
+			int targetY) {
+		float disX = Math.abs(cX - targetX);
+		float disY = Math.abs(cY - targetY);
 		float dis = Math.max(disX, disY);
 		float avgX = 0;
 		float avgY = 0;
@@ -202,14 +204,13 @@ public class C_Attack extends ClientBasePacket {
 		int addX = (int) Math.floor((avgX * 15) + 0.59f);
 		int addY = (int) Math.floor((avgY * 15) + 0.59f);
 
-		if (cX > _targetX) {
+		if (cX > targetX) {
 			addX *= -1;
 		}
-		if (cY > _targetY) {
+		if (cY > targetY) {
 			addY *= -1;
 		}
 
-		_targetX = _targetX + addX;
-		_targetY = _targetY + addY;
+		return new int[] { targetX + addX, targetY + addY };
 	}
 }
@@ -15,23 +15,24 @@
 
 package jp.l1j.server.packets.client;
 
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import jp.l1j.server.ClientThread;
 import jp.l1j.server.model.instance.L1PcInstance;
 import jp.l1j.server.packets.server.S_ChangeHeading;
 
-public class C_ChangeHeading extends ClientBasePacket {
-	
-	private static final String C_CHANGE_HEADING = "[C] C_ChangeHeading";
+public class C_ChangeHeading implements ClientPacketHandler {
 	
 	private static Logger _log = Logger.getLogger(C_ChangeHeading.class.getName());
 
-	public C_ChangeHeading(byte[] decrypt, ClientThread client) {
-		super(decrypt);
-		int heading = readC();
+	@Override
+	public void handle(ClientBasePacket packet, ClientThread client) {
+		int heading = packet.readC();
 		L1PcInstance pc = client.getActiveChar();
 		pc.setHeading(heading);
-		_log.finest("Change Heading: " + pc.getHeading());
+		if (_log.isLoggable(Level.FINEST)) {
+			_log.finest("Change Heading: " + pc.getHeading());
+		}
 		if (pc.isGmInvis() || pc.isGhost()) {
 		} else if (pc.isInvisble()) {
 			pc.broadcastPacketForFindInvis(new S_ChangeHeading(pc), true);
@@ -39,9 +40,4 @@ public class C_ChangeHeading extends ClientBasePacket {
 			pc.broadcastPacket(new S_ChangeHeading(pc));
 		}
 	}
-
-	@Override
-	public String getType() {
-		return C_CHANGE_HEADING;
-	}
 }
\ No newline at end of file
@@ -35,17 +35,20 @@ import jp.l1j.server.packets.server.S_ServerMessage;
 // Referenced classes of package jp.l1j.server.clientpackets:
 // ClientBasePacket
 
-public class C_Chat extends ClientBasePacket {
+/**
+ * チャット。頻繁に送られてくるパケットのため、状態を持たない処理としてPacketHandlerに1つだけ登録される。
+ */
+public class C_Chat implements ClientPacketHandler {
 
-	private static final String C_CHAT = "[C] C_Chat";
 	private static Logger _log = Logger.getLogger(C_Chat.class.getName());
 
-	public C_Chat(byte abyte0[], ClientThread clientthread) {
-		super(abyte0);
+	@Override
+	public void handle(ClientBasePacket packet, ClientThread clientthread)
+			throws Exception {
 
 		L1PcInstance pc = clientthread.getActiveChar();
-		int chatType = readC();
-		String chatText = readS();
+		int chatType = packet.readC();
+		String chatText = packet.readS();
 		if (pc.hasSkillEffect(SILENCE) || pc.hasSkillEffect(AREA_OF_SILENCE)
 				|| pc.hasSkillEffect(STATUS_POISON_SILENCE)
 				|| pc.hasSkillEffect(ELZABE_AREA_SILENCE)) {
@@ -269,8 +272,4 @@ public class C_Chat extends ClientBasePacket {
 		}
 	}
 
-	@Override
-	public String getType() {
-		return C_CHAT;
-	}
 }
\ No newline at end of file
@@ -21,19 +21,13 @@ import jp.l1j.server.ClientThread;
 // Referenced classes of package jp.l1j.server.clientpackets:
 // ClientBasePacket
 
-public class C_KeepAlive extends ClientBasePacket {
+public class C_KeepAlive implements ClientPacketHandler {
 	private static Logger _log = Logger.getLogger(C_KeepAlive.class.getName());
-	private static final String C_KEEP_ALIVE = "[C] C_KeepAlive";
 
-	public C_KeepAlive(byte decrypt[], ClientThread client) {
-		super(decrypt);
+	@Override
+	public void handle(ClientBasePacket packet, ClientThread client) {
 		// XXX:GameTimeを送信（3バイトのデータを送って来ているのでそれを何かに利用しないといけないかもしれない）
 // L1PcInstance pc = client.getActiveChar();
 // pc.sendPackets(new S_GameTime());
 	}
-
-	@Override
-	public String getType() {
-		return C_KEEP_ALIVE;
-	}
 }
\ No newline at end of file
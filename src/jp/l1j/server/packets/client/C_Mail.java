@@ -15,7 +15,6 @@
 
 package jp.l1j.server.packets.client;
 
-import java.util.ArrayList;
 import java.util.logging.Logger;
 import jp.l1j.server.ClientThread;
 import jp.l1j.server.datatables.CharacterTable;
@@ -50,11 +49,14 @@ public class C_Mail extends ClientBasePacket {
 			pc.sendPackets(new S_Mail(pc, type));
 		} else if (type == 0x10 || type == 0x11 || type == 0x12) { // 読む
 			int mailId = readD();
-			L1Mail mail = MailTable.getInstance().getMail(mailId);
+			L1Mail mail = MailTable.getInstance().getMail(pc, mailId);
+			if (mail == null) {
+				return;
+			}
 			if (mail.getReadStatus() == 0) {
-				MailTable.getInstance().setReadStatus(mailId);
+				MailTable.getInstance().setReadStatus(pc, mailId);
 			}
-			pc.sendPackets(new S_Mail(mailId, type));
+			pc.sendPackets(new S_Mail(mail, type));
 		} else if (type == 0x20) { // 一般メールを書く
 			if (!pc.getInventory().checkItem(40308, 50)) {
 				pc.sendPackets(new S_ServerMessage(189)); // アデナが不足しています。
@@ -70,17 +72,18 @@ public class C_Mail extends ClientBasePacket {
 				// %0という名前の人はいません。
 				return;
 			}
-			if (getMailSizeByReceiver(receiver, TYPE_NORMAL_MAIL) >= 40) {
+			if (MailTable.getInstance().getMailCount(receiver.getId(),
+					TYPE_NORMAL_MAIL) >= 40) {
 				pc.sendPackets(new S_Mail(type, false));
 				return;
 			}
-			int mailId = MailTable.getInstance().writeMail(
+			L1Mail draft = MailTable.getInstance().writeMail(
 							TYPE_NORMAL_MAIL, receiverName, pc, text, pc.getId());
-			pc.sendPackets(new S_Mail(receiver, mailId, true));
-			int mailId2 = MailTable.getInstance().writeMail(
+			pc.sendPackets(new S_Mail(receiver, draft, true));
+			L1Mail mail = MailTable.getInstance().writeMail(
 							TYPE_NORMAL_MAIL, receiverName, pc, text, receiver.getId());
 			if (receiver.getOnlineStatus() == 1) {
-				receiver.sendPackets(new S_Mail(pc, mailId2, false));
+				receiver.sendPackets(new S_Mail(pc, mail, false));
 				receiver.sendPackets(new S_SkillSound(receiver.getId(), 1091));
 			}
 			pc.getInventory().consumeItem(40308, 50);
@@ -97,11 +100,12 @@ public class C_Mail extends ClientBasePacket {
 			if (clan != null) {
 				for (String name : clan.getAllMembers()) {
 					L1PcInstance clanPc = CharacterTable.getInstance().restoreCharacter(name);
-					int size = getMailSizeByReceiver(clanPc, TYPE_CLAN_MAIL);
+					int size = MailTable.getInstance().getMailCount(
+							clanPc.getId(), TYPE_CLAN_MAIL);
 					if (size >= 80) {
 						continue;
 					}
-					int mailId = MailTable.getInstance().writeMail(TYPE_CLAN_MAIL, name,
+					MailTable.getInstance().writeMail(TYPE_CLAN_MAIL, name,
 									pc, text, clanPc.getId());
 					if (clanPc.getOnlineStatus() == 1) { // オンライン中
 						clanPc.sendPackets(new S_Mail(clanPc, TYPE_CLAN_MAIL));
@@ -112,32 +116,27 @@ public class C_Mail extends ClientBasePacket {
 			}
 		} else if (type == 0x30 || type == 0x31 || type == 0x32) { // 削除
 			int mailId = readD();
-			MailTable.getInstance().deleteMail(mailId);
+			MailTable.getInstance().deleteMail(pc, mailId);
 			pc.sendPackets(new S_Mail(mailId, type));
 		} else if (type == 0x60 || type == 0x61 || type == 0x62) { // 複数削除
 			int count = readD();
 			for (int i = 0; i < count; i++) {
 				int mailId = readD();
-				pc.sendPackets(new S_Mail(mailId, (MailTable.getMail(mailId).getType() + 0x30)));
-				MailTable.getInstance().deleteMail(mailId);
+				L1Mail mail = MailTable.getInstance().getMail(pc, mailId);
+				if (mail == null) {
+					continue;
+				}
+				pc.sendPackets(new S_Mail(mailId, (mail.getType() + 0x30)));
+				MailTable.getInstance().deleteMail(pc, mailId);
 			}
 		} else if(type == 0x40 || type == 0x41) { // 保管箱に保存
 			int mailId = readD();
-			MailTable.getInstance().setMailType(mailId, TYPE_MAIL_BOX);
-			pc.sendPackets(new S_Mail(mailId, type));
-		}
-	}
-
-	private int getMailSizeByReceiver(L1PcInstance pc, int type) {
-		ArrayList<L1Mail> mails = new ArrayList<L1Mail>();
-		for (L1Mail mail : MailTable.getInstance().getAllMail()) {
-			if (mail.getInBoxId() == pc.getId()) {
-				if (mail.getType() == type) {
-					mails.add(mail);
-				}
+			MailTable.getInstance().setMailType(pc, mailId, TYPE_MAIL_BOX);
+			L1Mail mail = MailTable.getInstance().getMail(pc, mailId);
+			if (mail != null) {
+				pc.sendPackets(new S_Mail(mail, type));
 			}
 		}
-		return mails.size();
 	}
 
 	@Override
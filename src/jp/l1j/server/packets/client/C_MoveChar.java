@@ -19,19 +19,17 @@ import java.util.logging.Logger;
 import jp.l1j.configure.Config;
 import jp.l1j.server.ClientThread;
 import jp.l1j.server.model.AcceleratorChecker;
-import jp.l1j.server.datatables.DungeonTable;
-import jp.l1j.server.datatables.RandomDungeonTable;
+import jp.l1j.server.model.L1TileTriggers;
 import jp.l1j.server.model.instance.L1PcInstance;
 import static jp.l1j.server.model.instance.L1PcInstance.REGENSTATE_MOVE;
 import static jp.l1j.server.model.skill.L1SkillId.*;
-import jp.l1j.server.model.trap.L1WorldTraps;
 import jp.l1j.server.packets.server.S_MoveCharPacket;
 import jp.l1j.server.packets.server.S_SystemMessage;
 
-// Referenced classes of package jp.l1j.server.clientpackets:
-// ClientBasePacket
-
-public class C_MoveChar extends ClientBasePacket {
+/**
+ * 移動。最も頻繁に送られてくるパケットのため、状態を持たない処理としてPacketHandlerに1つだけ登録される。
+ */
+public class C_MoveChar implements ClientPacketHandler {
 
 	private static Logger _log = Logger.getLogger(C_MoveChar.class.getName());
 
@@ -48,12 +46,12 @@ public class C_MoveChar extends ClientBasePacket {
 	}
 
 	// 移動
-	public C_MoveChar(byte decrypt[], ClientThread client)
+	@Override
+	public void handle(ClientBasePacket packet, ClientThread client)
 			throws Exception {
-		super(decrypt);
-		int locx = readH();
-		int locy = readH();
-		int heading = readC();
+		int locx = packet.readH();
+		int locy = packet.readH();
+		int heading = packet.readC();
 
 		L1PcInstance pc = client.getActiveChar();
 
@@ -88,11 +86,10 @@ public class C_MoveChar extends ClientBasePacket {
 		locx += HEADING_TABLE_X[heading];
 		locy += HEADING_TABLE_Y[heading];
 
-		if (DungeonTable.getInstance().dg(locx, locy, pc.getMap().getId(), pc)) { // ダンジョンにテレポートした場合
-			return;
-		}
-		if (RandomDungeonTable.getInstance().dg(locx, locy, pc.getMap().getId(),
-				pc)) { // テレポート先がランダムなテレポート地点
+		// 移動先のタイルの仕掛け(ダンジョンの入口、トラップなど)
+		L1TileTriggers.Trigger[] triggers = L1TileTriggers.getInstance().get(
+				pc.getMap().getId(), locx, locy);
+		if (triggers != null && L1TileTriggers.enter(triggers, pc)) { // ダンジョンにテレポートした場合
 			return;
 		}
 
@@ -107,10 +104,10 @@ public class C_MoveChar extends ClientBasePacket {
 
 		// sendMapTileLog(pc); // 移動先タイルの情報を送る(マップ調査用)
 
-		// TODO ペットレース用　start
-				jp.l1j.server.model.L1PolyRace.getInstance().checkLapFinish(pc);
-		// TODO ペットレース用　end
-		L1WorldTraps.getInstance().onPlayerMoved(pc);
+		// トラップ、ペットレースのチェックポイントなど
+		if (triggers != null) {
+			L1TileTriggers.step(triggers, pc);
+		}
 
 		pc.getMap().setPassable(pc.getLocation(), false);
 		// user.UpdateObject(); // 可視範囲内の全オブジェクト更新
@@ -116,27 +116,30 @@ import jp.l1j.server.templates.L1Npc;
 import jp.l1j.server.templates.L1Skill;
 import jp.l1j.server.templates.L1Town;
 
-public class C_NpcAction extends ClientBasePacket {
+/**
+ * NPCへのアクション。頻繁に送られてくるパケットのため、状態を持たない処理としてPacketHandlerに1つだけ登録される。
+ */
+public class C_NpcAction implements ClientPacketHandler {
 
-	private static final String C_NPC_ACTION = "[C] C_NpcAction";
 	private static Logger _log = Logger.getLogger(C_NpcAction.class.getName());
 	private static RandomGenerator _random = RandomGeneratorFactory.newRandom();
 
-	public C_NpcAction(byte abyte0[], ClientThread client) throws Exception {
-		super(abyte0);
-		int objid = readD();
-		String s = readS();
+	@Override
+	public void handle(ClientBasePacket packet, ClientThread client)
+			throws Exception {
+		int objid = packet.readD();
+		String s = packet.readS();
 
 		String s2 = null;
 		if (s.equalsIgnoreCase("select") // 競売掲示板のリストを選択
 				|| s.equalsIgnoreCase("map") // アジトの位置を確かめる
 				|| s.equalsIgnoreCase("apply")) { // 競売に参加する
-			s2 = readS();
+			s2 = packet.readS();
 		} else if (s.equalsIgnoreCase("ent")) {
 			L1Object obj = L1World.getInstance().findObject(objid);
 			if (obj != null && obj instanceof L1NpcInstance) {
 				if (((L1NpcInstance) obj).getNpcTemplate().getNpcId() == 80088) {
-					s2 = readS();
+					s2 = packet.readS();
 				}
 			}
 		}
@@ -209,7 +212,7 @@ public class C_NpcAction extends ClientBasePacket {
 		// XML化されたアクション
 		L1NpcAction action = NpcActionTable.getInstance().get(s, pc, obj);
 		if (action != null) {
-			L1NpcHtml result = action.execute(s, pc, obj, readByte());
+			L1NpcHtml result = action.execute(s, pc, obj, packet.readByte());
 			if (result != null) {
 				pc.sendPackets(new S_NpcTalkReturn(obj.getId(), result));
 			}
@@ -7543,9 +7546,5 @@ public class C_NpcAction extends ClientBasePacket {
 		return htmlid;
 	}
 
-	@Override
-	public String getType() {
-		return C_NPC_ACTION;
-	}
 
 }
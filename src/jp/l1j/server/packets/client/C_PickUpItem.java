@@ -29,17 +29,19 @@ import jp.l1j.server.packets.server.S_AttackPacket;
 import jp.l1j.server.packets.server.S_ServerMessage;
 import jp.l1j.server.packets.server.S_SystemMessage;
 
-public class C_PickUpItem extends ClientBasePacket {
-	private static final String C_PICK_UP_ITEM = "[C] C_PickUpItem";
-	
+/**
+ * アイテムの拾得。頻繁に送られてくるパケットのため、状態を持たない処理としてPacketHandlerに1つだけ登録される。
+ */
+public class C_PickUpItem implements ClientPacketHandler {
 	private static Logger _log = Logger.getLogger(C_PickUpItem.class.getName());
 
-	public C_PickUpItem(byte decrypt[], ClientThread client) throws Exception {
-		super(decrypt);
-		int x = readH();
-		int y = readH();
-		int objectId = readD();
-		int pickupCount = readD();
+	@Override
+	public void handle(ClientBasePacket packet, ClientThread client)
+			throws Exception {
+		int x = packet.readH();
+		int y = packet.readH();
+		int objectId = packet.readD();
+		int pickupCount = packet.readD();
 		L1PcInstance pc = client.getActiveChar();
 		if (pc.isDead() || pc.isGhost() || objectId == pc.getId()) {
 			return;
@@ -87,8 +89,4 @@ public class C_PickUpItem extends ClientBasePacket {
 		}
 	}
 
-	@Override
-	public String getType() {
-		return C_PICK_UP_ITEM;
-	}
 }
\ No newline at end of file
@@ -127,17 +127,20 @@ import jp.l1j.server.templates.L1Pet;
 import jp.l1j.server.templates.L1Skill;
 import jp.l1j.server.utils.L1ItemUtil;
 
-public class C_UseItem extends ClientBasePacket {
+/**
+ * アイテムの使用。頻繁に送られてくるパケットのため、状態を持たない処理としてPacketHandlerに1つだけ登録される。
+ */
+public class C_UseItem implements ClientPacketHandler {
 
-	private static final String C_ITEM_USE = "[C] C_ItemUse";
 	private static Logger _log = Logger.getLogger(C_UseItem.class.getName());
 
 	private static RandomGenerator _random = RandomGeneratorFactory.newRandom();
 	private static Random _randomForGaussian = new Random();
 
-	public C_UseItem(byte abyte0[], ClientThread client) throws Exception {
-		super(abyte0);
-		int itemObjid = readD();
+	@Override
+	public void handle(ClientBasePacket packet, ClientThread client)
+			throws Exception {
+		int itemObjid = packet.readD();
 
 		L1PcInstance pc = client.getActiveChar();
 		if (pc.isGhost()) {
@@ -179,34 +182,34 @@ public class C_UseItem extends ClientBasePacket {
 
 		int use_type = item.getItem().getUseType();
 		if (use_type == 16) { // 変身スクロール(sosc)
-			s = readS();
+			s = packet.readS();
 		} else if (use_type == 7 || use_type == 14 || use_type == 26
 				|| use_type == 27) {
 			// 確認スクロール(identify)、choice、武器強化スクロール(dai)、
 			// 防具強化スクロール(zel)
-			objid = readD();
+			objid = packet.readD();
 		} else if (use_type == 6 || use_type == 29) {
 			// テレポートスクロール(ntele)、祝福されたテレポートスクロール(btele)
-			mapid = readH();
-			objid = readD();
+			mapid = packet.readH();
+			objid = packet.readD();
 			pc.sendPackets(new S_Paralysis(S_Paralysis.TYPE_TELEPORT_UNLOCK, false));
 		} else if (use_type == 28 ) { // ブランクスクロール(blank)
-			skillid = readC();
+			skillid = packet.readC();
 		} else if (use_type == 30) { // スペルスクロール(spell_buff)
-			objid = readD();
+			objid = packet.readD();
 		} else if (use_type == 5 || use_type == 17 || use_type == 39) {
 			// spell_long、spell_short、spell_point
-			objid = readD();
-			locx = readH();
-			locy = readH();
+			objid = packet.readD();
+			locx = packet.readH();
+			locy = packet.readH();
 		} else if (use_type == 8) { // 復活スクロール、祝福された復活スクロール(res)
-			objid = readD();
+			objid = packet.readD();
 		} else if (use_type == 42) {
 			// スペルスクロール(spell_point)、釣り竿(fishing_rod)
-			locx = readH();
-			locy = readH();
+			locx = packet.readH();
+			locy = packet.readH();
 		} else {
-			objid = readC();
+			objid = packet.readC();
 		}
 
 		if (pc.getCurrentHp() <= 0) {
@@ -1981,8 +1984,4 @@ public class C_UseItem extends ClientBasePacket {
 		return true;
 	}
 
-	@Override
-	public String getType() {
-		return C_ITEM_USE;
-	}
 }
@@ -33,7 +33,23 @@ public abstract class ClientBasePacket {
 	private int _off;
 
 	public ClientBasePacket(byte abyte0[]) {
-		_log.finest("type=" + getType() + ", len=" + abyte0.length);
+		if (_log.isLoggable(Level.FINEST)) {
+			_log.finest("type=" + getType() + ", len=" + abyte0.length);
+		}
+		_decrypt = abyte0;
+		_off = 1;
+	}
+
+	/**
+	 * resetで読み込むパケットを指定する、使い回し用のコンストラクタ。
+	 */
+	protected ClientBasePacket() {
+	}
+
+	/**
+	 * 読み込むパケットを差し替え、読み込み位置をオペコードの次に戻す。
+	 */
+	void reset(byte abyte0[]) {
 		_decrypt = abyte0;
 		_off = 1;
 	}
@@ -89,8 +105,13 @@ public abstract class ClientBasePacket {
 			int startOffset = _off + adjust;
 			int remainingLength = _decrypt.length - startOffset;
 			
+			// 【調試日誌】の文字列はFINESTが有効な場合だけ組み立てる
+			boolean finest = _log.isLoggable(Level.FINEST);
+
 			// 【調試日誌】打印讀取前的狀態
-			_log.finest("readS() - startOffset=" + startOffset + ", remainingLength=" + remainingLength);
+			if (finest) {
+				_log.finest("readS() - startOffset=" + startOffset + ", remainingLength=" + remainingLength);
+			}
 			
 			if (remainingLength <= 0) {
 				_log.warning("readS() - No remaining bytes to read!");
@@ -98,19 +119,25 @@ public abstract class ClientBasePacket {
 			}
 			
 			// 【調試日誌】打印要讀取的字節（前32字節）
-			StringBuilder bytesHex = new StringBuilder();
-			for (int i = startOffset; i < _decrypt.length && i < startOffset + 32; i++) {
-				bytesHex.append(String.format("%02X ", _decrypt[i] & 0xFF));
+			if (finest) {
+				StringBuilder bytesHex = new StringBuilder();
+				for (int i = startOffset; i < _decrypt.length && i < startOffset + 32; i++) {
+					bytesHex.append(String.format("%02X ", _decrypt[i] & 0xFF));
+				}
+				_log.finest("readS() - Bytes to read (hex): " + bytesHex.toString());
 			}
-			_log.finest("readS() - Bytes to read (hex): " + bytesHex.toString());
 			
 			s = new String(_decrypt, startOffset, remainingLength, CLIENT_LANGUAGE_CODE);
 			
 			// 【調試日誌】打印解碼後的字符串（前100字符）
-			_log.finest("readS() - Decoded string (first 100 chars): " + (s.length() > 100 ? s.substring(0, 100) : s));
+			if (finest) {
+				_log.finest("readS() - Decoded string (first 100 chars): " + (s.length() > 100 ? s.substring(0, 100) : s));
+			}
 			
 			int nullIndex = s.indexOf('\0');
-			_log.finest("readS() - Null terminator index: " + nullIndex);
+			if (finest) {
+				_log.finest("readS() - Null terminator index: " + nullIndex);
+			}
 			
 			if (nullIndex < 0) {
 				_log.warning("readS() - Null terminator not found! String length: " + s.length());
@@ -127,7 +154,9 @@ public abstract class ClientBasePacket {
 			s = s.substring(0, nullIndex);
 			_off += s.getBytes(CLIENT_LANGUAGE_CODE).length + 1;
 			
-			_log.finest("readS() - Successfully read: '" + s + "', new _off=" + (_off - 1));
+			if (finest) {
+				_log.finest("readS() - Successfully read: '" + s + "', new _off=" + (_off - 1));
+			}
 		} catch (StringIndexOutOfBoundsException e) {
 			// TODO 生存の叫び(Ctrl+E)時、87行目でエラーが発生する。
 			_log.warning("readS() - StringIndexOutOfBoundsException: " + e.getMessage());
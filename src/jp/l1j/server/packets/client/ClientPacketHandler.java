@@ -0,0 +1,31 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.packets.client;
+
+import jp.l1j.server.ClientThread;
+
+/**
+ * オペコード1つ分のクライアントパケットの処理。
+ * PacketHandlerの振り分け表に1つだけ登録され、すべての接続から呼び出されるため、状態を持たないこと。
+ */
+public interface ClientPacketHandler {
+	/**
+	 * @param packet
+	 *            読み込み位置がオペコードの次にあるパケット。呼び出しから戻った後は再利用される
+	 */
+	public void handle(ClientBasePacket packet, ClientThread client)
+			throws Exception;
+}
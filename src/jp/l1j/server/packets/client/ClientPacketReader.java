@@ -0,0 +1,48 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.packets.client;
+
+/**
+ * 受信したパケットを読み込むための、使い回しのできるClientBasePacket。
+ * スレッド間で共有せず、resetで次のパケットを指定して使う。
+ */
+public class ClientPacketReader extends ClientBasePacket {
+	private byte[] _bytes;
+
+	public ClientPacketReader() {
+	}
+
+	/**
+	 * 読み込むパケットを差し替える。
+	 */
+	@Override
+	public void reset(byte abyte0[]) {
+		super.reset(abyte0);
+		_bytes = abyte0;
+	}
+
+	/**
+	 * 読み込み中のパケット全体(オペコードを含む)を返す。
+	 */
+	public byte[] getBytes() {
+		return _bytes;
+	}
+
+	@Override
+	public String getType() {
+		return "[C] opcode " + (_bytes[0] & 0xff);
+	}
+}
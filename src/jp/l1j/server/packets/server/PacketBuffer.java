@@ -0,0 +1,179 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.packets.server;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * サーバーパケットの書き込み先。ByteArrayOutputStreamの代わりに使う。
+ * 書き込み中のバッファはスレッドごとのプールから借り、toByteArrayで確定した時点で返却する。
+ * 確定後は確定したbyte配列そのものを保持するので、toByteArrayを何度呼び出してもコピーは発生しない。
+ */
+final class PacketBuffer {
+	// プールするバッファのサイズ。大半のパケットはこのサイズに収まる
+	private static final int POOLED_BUFFER_SIZE = 256;
+
+	// スレッドごとにプールしておくバッファの最大数
+	private static final int MAX_POOLED_BUFFERS = 64;
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private static final ThreadLocal<ArrayDeque<byte[]>> _pool = new ThreadLocal<ArrayDeque<byte[]>>() {
+		@Override
+		protected ArrayDeque<byte[]> initialValue() {
+			return new ArrayDeque<byte[]>();
+		}
+	};
+
+	private byte[] _buf = EMPTY;
+
+	private int _count = 0;
+
+	private boolean _pooled = false;
+
+	private static byte[] acquire() {
+		byte[] buf = _pool.get().poll();
+		if (buf == null) {
+			buf = new byte[POOLED_BUFFER_SIZE];
+		}
+		return buf;
+	}
+
+	private static void release(byte[] buf) {
+		ArrayDeque<byte[]> pool = _pool.get();
+		if (pool.size() < MAX_POOLED_BUFFERS) {
+			pool.push(buf);
+		}
+	}
+
+	private void ensureCapacity(int length) {
+		int required = _count + length;
+		if (required <= _buf.length) {
+			return;
+		}
+		if (_buf == EMPTY && required <= POOLED_BUFFER_SIZE) {
+			_buf = acquire();
+			_pooled = true;
+			return;
+		}
+		byte[] buf = Arrays.copyOf(_buf, Math.max(_buf.length * 2, required));
+		if (_pooled) {
+			release(_buf);
+			_pooled = false;
+		}
+		_buf = buf;
+	}
+
+	public void write(int value) {
+		ensureCapacity(1);
+		_buf[_count++] = (byte) value;
+	}
+
+	public void write(byte[] b) {
+		write(b, 0, b.length);
+	}
+
+	public void write(byte[] b, int off, int len) {
+		ensureCapacity(len);
+		System.arraycopy(b, off, _buf, _count, len);
+		_count += len;
+	}
+
+	public void writeShort(int value) {
+		ensureCapacity(2);
+		_buf[_count++] = (byte) (value & 0xff);
+		_buf[_count++] = (byte) (value >> 8 & 0xff);
+	}
+
+	public void writeInt(int value) {
+		ensureCapacity(4);
+		_buf[_count++] = (byte) (value & 0xff);
+		_buf[_count++] = (byte) (value >> 8 & 0xff);
+		_buf[_count++] = (byte) (value >> 16 & 0xff);
+		_buf[_count++] = (byte) (value >> 24 & 0xff);
+	}
+
+	public void writeLong(long value) {
+		ensureCapacity(8);
+		for (int i = 0; i < 8; i++) {
+			_buf[_count++] = (byte) (value >> (i * 8) & 0xff);
+		}
+	}
+
+	/**
+	 * 文字列を指定された文字コードで書き込む。終端の0は書き込まない。
+	 * クライアントの文字コードはいずれもASCII互換なので、ASCIIのみの文字列はそのまま書き込む。
+	 */
+	public void writeString(String text, Charset charset) {
+		int length = text.length();
+		ensureCapacity(length);
+		int start = _count;
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c >= 0x80) {
+				_count = start;
+				encode(text, charset);
+				return;
+			}
+			_buf[_count++] = (byte) c;
+		}
+	}
+
+	private static final ThreadLocal<CharsetEncoder> _encoder = new ThreadLocal<CharsetEncoder>();
+
+	private void encode(String text, Charset charset) {
+		CharsetEncoder encoder = _encoder.get();
+		if (encoder == null || !encoder.charset().equals(charset)) {
+			// String.getBytesと同様に、変換できない文字は置換文字にする
+			encoder = charset.newEncoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			_encoder.set(encoder);
+		}
+		ensureCapacity((int) Math.ceil(text.length()
+				* (double) encoder.maxBytesPerChar()));
+		ByteBuffer out = ByteBuffer.wrap(_buf, _count, _buf.length - _count);
+		encoder.reset();
+		encoder.encode(CharBuffer.wrap(text), out, true);
+		encoder.flush(out);
+		_count = out.position();
+	}
+
+	public int size() {
+		return _count;
+	}
+
+	/**
+	 * 書き込んだ内容を確定して返す。借りていたバッファはプールへ返却する。
+	 */
+	public byte[] toByteArray() {
+		if (_pooled || _buf.length != _count) {
+			byte[] result = Arrays.copyOf(_buf, _count);
+			if (_pooled) {
+				release(_buf);
+				_pooled = false;
+			}
+			_buf = result;
+		}
+		return _buf;
+	}
+}
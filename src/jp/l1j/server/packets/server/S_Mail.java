@@ -15,7 +15,7 @@
 
 package jp.l1j.server.packets.server;
 
-import java.util.ArrayList;
+import java.util.List;
 import java.util.StringTokenizer;
 import java.util.logging.Logger;
 import jp.l1j.server.codes.Opcodes;
@@ -47,14 +47,7 @@ public class S_Mail extends ServerBasePacket {
  */
 	// 打開收信夾 ?封信件顯示標題
 	public S_Mail(L1PcInstance pc, int type) {
-		ArrayList<L1Mail> mails = new ArrayList<L1Mail>();
-		for (L1Mail mail : MailTable.getInstance().getAllMail()) {
-			if(mail.getInBoxId() == pc.getId()){
-				if (mail.getType() == type) {
-					mails.add(mail);
-				}
-			}
-		}
+		List<L1Mail> mails = MailTable.getInstance().getMails(pc, type);
 		if (mails.isEmpty()) {
 			return;
 		}
@@ -82,12 +75,10 @@ public class S_Mail extends ServerBasePacket {
 		writeC(isDelivered ? 1 : 0);
 	}
 
-	public S_Mail(L1PcInstance pc, int mailId, boolean isDraft){
-		MailTable.getInstance();
-		L1Mail mail = MailTable.getMail(mailId);
+	public S_Mail(L1PcInstance pc, L1Mail mail, boolean isDraft){
 		writeC(Opcodes.S_OPCODE_MAIL);
 		writeC(0x50);
-		writeD(mailId);
+		writeD(mail.getId());
 		writeC(isDraft ? 1 : 0);
 		writeS(pc.getName());
 		writeBytes(mail.getSubject());
@@ -101,22 +92,34 @@ public class S_Mail extends ServerBasePacket {
  * 
  */
 	public S_Mail(int mailId,int type) {
-		// 刪除信件
-		// 0x30: 刪除一般 0x31:刪除血盟 0x32:?般存到保管箱 0x40:刪除保管箱
-		if (type == 0x30 || type == 0x31 || type == 0x32 || type == 0x40) {
-			writeC(Opcodes.S_OPCODE_MAIL);
-			writeC(type);
-			writeD(mailId);
-			writeC(1);
+		writeResult(mailId, type);
+	}
+
+	public S_Mail(L1Mail mail, int type) {
+		if (isResultType(type)) {
+			writeResult(mail.getId(), type);
 			return;
 		}
-		L1Mail mail = MailTable.getInstance().getMail(mailId);
-		if (mail != null) {
-			writeC(Opcodes.S_OPCODE_MAIL);
-			writeC(type);
-			writeD(mail.getId());
-			writeBytes(mail.getContent());
+		writeC(Opcodes.S_OPCODE_MAIL);
+		writeC(type);
+		writeD(mail.getId());
+		writeBytes(MailTable.getInstance().getContent(mail));
+	}
+
+	// 刪除信件
+	// 0x30: 刪除一般 0x31:刪除血盟 0x32:?般存到保管箱 0x40:刪除保管箱
+	private static boolean isResultType(int type) {
+		return type == 0x30 || type == 0x31 || type == 0x32 || type == 0x40;
+	}
+
+	private void writeResult(int mailId, int type) {
+		if (!isResultType(type)) {
+			return;
 		}
+		writeC(Opcodes.S_OPCODE_MAIL);
+		writeC(type);
+		writeD(mailId);
+		writeC(1);
 	}
 
 	@Override
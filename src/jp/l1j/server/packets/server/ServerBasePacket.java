@@ -14,8 +14,8 @@
  */
 package jp.l1j.server.packets.server;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jp.l1j.configure.Config;
@@ -24,23 +24,30 @@ public abstract class ServerBasePacket {
 	private static Logger _log = Logger.getLogger(ServerBasePacket.class
 			.getName());
 
-	private static final String CLIENT_LANGUAGE_CODE = Config.CLIENT_LANGUAGE_CODE;
+	private static final Charset CLIENT_CHARSET = lookupCharset(Config.CLIENT_LANGUAGE_CODE);
 
-	ByteArrayOutputStream _bao = new ByteArrayOutputStream();
+	PacketBuffer _bao = new PacketBuffer();
 
 	protected ServerBasePacket() {
 	}
 
+	private static Charset lookupCharset(String charsetName) {
+		try {
+			if (charsetName != null) {
+				return Charset.forName(charsetName);
+			}
+		} catch (Exception e) {
+			_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
+		}
+		return Charset.defaultCharset();
+	}
+
 	protected void writeD(int value) {
-		_bao.write(value & 0xff);
-		_bao.write(value >> 8 & 0xff);
-		_bao.write(value >> 16 & 0xff);
-		_bao.write(value >> 24 & 0xff);
+		_bao.writeInt(value);
 	}
 
 	protected void writeH(int value) {
-		_bao.write(value & 0xff);
-		_bao.write(value >> 8 & 0xff);
+		_bao.writeShort(value);
 	}
 
 	protected void writeC(int value) {
@@ -56,36 +63,20 @@ public abstract class ServerBasePacket {
 	}
 
 	protected void writeF(double org) {
-		long value = Double.doubleToRawLongBits(org);
-		_bao.write((int) (value & 0xff));
-		_bao.write((int) (value >> 8 & 0xff));
-		_bao.write((int) (value >> 16 & 0xff));
-		_bao.write((int) (value >> 24 & 0xff));
-		_bao.write((int) (value >> 32 & 0xff));
-		_bao.write((int) (value >> 40 & 0xff));
-		_bao.write((int) (value >> 48 & 0xff));
-		_bao.write((int) (value >> 56 & 0xff));
+		_bao.writeLong(Double.doubleToRawLongBits(org));
 	}
 
 	protected void writeS(String text) {
-		try {
-			if (text != null) {
-				_bao.write(text.getBytes(CLIENT_LANGUAGE_CODE));
-			}
-		} catch (Exception e) {
-			_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
+		if (text != null) {
+			_bao.writeString(text, CLIENT_CHARSET);
 		}
 
 		_bao.write(0);
 	}
 
 	protected void writeBytes(byte[] text) {
-		try {
-			if (text != null) {
-				_bao.write(text);
-			}
-		} catch (Exception e) {
-			_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
+		if (text != null) {
+			_bao.write(text);
 		}
 	}
 
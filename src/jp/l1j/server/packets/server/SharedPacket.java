@@ -0,0 +1,63 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.packets.server;
+
+import java.io.IOException;
+
+/**
+ * 複数のプレイヤーへ同じパケットを送信する際に使う。
+ * 元のパケットのgetContentは最初の送信時に一度だけ呼び出され、以降は同じbyte配列を共有する。
+ * 各プレイヤーのClientThreadは共有された内容を書き換えず、送信バッファ上でヘッダの付加と暗号化を行う。
+ */
+public final class SharedPacket extends ServerBasePacket {
+	private final ServerBasePacket _packet;
+
+	private volatile byte[] _content = null;
+
+	private SharedPacket(ServerBasePacket packet) {
+		_packet = packet;
+	}
+
+	/**
+	 * 指定されたパケットを、内容を共有して送信できるパケットにする。
+	 */
+	public static ServerBasePacket of(ServerBasePacket packet) {
+		if (packet instanceof SharedPacket) {
+			return packet;
+		}
+		return new SharedPacket(packet);
+	}
+
+	@Override
+	public byte[] getContent() throws IOException {
+		byte[] content = _content;
+		if (content == null) {
+			content = _packet.getContent();
+			_content = content;
+		}
+		return content;
+	}
+
+	@Override
+	public int getLength() {
+		return _packet.getLength();
+	}
+
+	@Override
+	public String getType() {
+		return _packet.getType();
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.storage;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jp.l1j.configure.Config;
+import jp.l1j.server.GeneralThreadPool;
+import jp.l1j.server.model.instance.L1ItemInstance;
+import jp.l1j.server.utils.collections.Lists;
+import jp.l1j.server.utils.metrics.Gauge;
+import jp.l1j.server.utils.metrics.MetricRegistry;
+
+/**
+ * 所持アイテムの変更を溜めておき、一定間隔でまとめてDBに書き込む。
+ * 同じアイテムに対する複数回の保存要求は、1回の書き込みにまとめられる。
+ * ログアウト時などすぐに反映が必要な場合は、L1PcInstance#saveInventory()を使用すること。
+ */
+public class InventoryItemWriter implements Runnable {
+	private static Logger _log = Logger.getLogger(InventoryItemWriter.class
+			.getName());
+
+	private static InventoryItemWriter _instance;
+
+	// オブジェクトID -> 書き込み待ちのアイテム
+	private final ConcurrentHashMap<Integer, L1ItemInstance> _pending = new ConcurrentHashMap<Integer, L1ItemInstance>();
+
+	public static synchronized InventoryItemWriter getInstance() {
+		if (_instance == null) {
+			_instance = new InventoryItemWriter();
+		}
+		return _instance;
+	}
+
+	private InventoryItemWriter() {
+		long interval = Math.max(Config.INVENTORY_WRITE_INTERVAL, 1) * 1000L;
+		GeneralThreadPool.getInstance().scheduleAtFixedRate(this, interval,
+				interval);
+		MetricRegistry.getInstance().register("inventory.writer.pending",
+				new Gauge() {
+					@Override
+					public long getValue() {
+						return getPendingCount();
+					}
+				});
+	}
+
+	/**
+	 * 変更のあるアイテムを書き込み待ちに加える。
+	 */
+	public void offer(L1ItemInstance item) {
+		if (item.isDirty()) {
+			_pending.put(item.getId(), item);
+		}
+	}
+
+	public void offerAll(Collection<L1ItemInstance> items) {
+		for (L1ItemInstance item : items) {
+			offer(item);
+		}
+	}
+
+	/**
+	 * 削除されたアイテムを書き込み待ちから取り除く。
+	 */
+	public void remove(L1ItemInstance item) {
+		_pending.remove(item.getId(), item);
+	}
+
+	/**
+	 * 書き込み待ちのアイテム数を返す。
+	 */
+	public int getPendingCount() {
+		return _pending.size();
+	}
+
+	/**
+	 * 書き込み待ちのアイテムを、1つのトランザクションでまとめて書き込む。
+	 */
+	public synchronized void flush() {
+		if (_pending.isEmpty()) {
+			return;
+		}
+		List<L1ItemInstance> items = Lists.newArrayList();
+		for (Iterator<L1ItemInstance> i = _pending.values().iterator(); i
+				.hasNext();) {
+			items.add(i.next());
+			i.remove();
+		}
+		try {
+			L1ItemInstance.saveAll(items);
+		} catch (Exception e) {
+			_log.log(Level.SEVERE, "所持アイテムの書き込みに失敗しました。", e);
+			// 次回の書き込みでやり直す
+			for (L1ItemInstance item : items) {
+				_pending.putIfAbsent(item.getId(), item);
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		flush();
+	}
+}
@@ -0,0 +1,253 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.storage;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jp.l1j.configure.Config;
+import jp.l1j.server.GeneralThreadPool;
+import jp.l1j.server.utils.L1DatabaseFactory;
+import jp.l1j.server.utils.L1QueryUtil;
+import jp.l1j.server.utils.SqlUtil;
+import jp.l1j.server.utils.collections.Lists;
+import jp.l1j.server.utils.metrics.Counter;
+import jp.l1j.server.utils.metrics.Gauge;
+import jp.l1j.server.utils.metrics.MetricRegistry;
+
+/**
+ * ログテーブルへのINSERTを非同期に行う。
+ * 書き込み要求はキューに溜められ、バックグラウンドのスレッドからバッチでまとめて書き込まれる。
+ * キューが上限に達した場合、それ以降の要求は書き込まれずに破棄される。
+ */
+public class LogWriter {
+	private static Logger _log = Logger.getLogger(LogWriter.class.getName());
+
+	// 1回のバッチで書き込む最大件数
+	private static final int BATCH_SIZE = 500;
+
+	private static final List<LogWriter> _writers = new CopyOnWriteArrayList<LogWriter>();
+
+	static {
+		long interval = Math.max(Config.LOG_WRITE_INTERVAL, 100);
+		GeneralThreadPool.getInstance().scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				flushAll();
+			}
+		}, interval, interval);
+	}
+
+	private final String _name;
+	private final String _sql;
+	private final int _capacity;
+	private final ConcurrentLinkedQueue<Object[]> _queue = new ConcurrentLinkedQueue<Object[]>();
+	private final AtomicInteger _size = new AtomicInteger();
+	private final AtomicLong _droppedCount = new AtomicLong();
+	private final AtomicBoolean _flushRequested = new AtomicBoolean();
+
+	/**
+	 * @param name
+	 *            ログの名前(エラー表示用)
+	 * @param sql
+	 *            1件分のINSERT文
+	 */
+	public LogWriter(String name, String sql) {
+		_name = name;
+		_sql = sql;
+		_capacity = Math.max(Config.LOG_QUEUE_CAPACITY, BATCH_SIZE);
+		_writers.add(this);
+		MetricRegistry.getInstance().register("logwriter." + name + ".queue",
+				new Gauge() {
+					@Override
+					public long getValue() {
+						return getQueueSize();
+					}
+				});
+		MetricRegistry.getInstance().register(
+				"logwriter." + name + ".dropped", new Counter() {
+					@Override
+					public long getCount() {
+						return getDroppedCount();
+					}
+				});
+	}
+
+	/**
+	 * 書き込み要求をキューに追加する。呼び出し元のスレッドはDBへのアクセスを待たない。
+	 *
+	 * @param args
+	 *            INSERT文のパラメータ
+	 * @return キューに追加できた場合はtrue。上限に達して破棄された場合はfalse。
+	 */
+	public boolean offer(Object... args) {
+		int size = _size.incrementAndGet();
+		if (size > _capacity) {
+			_size.decrementAndGet();
+			// 破棄の警告は、溢れ始めと以降1000件毎にのみ出す
+			if (_droppedCount.getAndIncrement() % 1000 == 0) {
+				_log.warning(_name + "の書き込み待ちが上限(" + _capacity
+						+ ")に達したため、ログを破棄しました。");
+			}
+			return false;
+		}
+		_queue.add(args);
+		// 1バッチ分溜まったら、定期書き込みを待たずに書き込む
+		if (size >= BATCH_SIZE && _flushRequested.compareAndSet(false, true)) {
+			GeneralThreadPool.getInstance().execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						flush();
+					} finally {
+						_flushRequested.set(false);
+					}
+				}
+			});
+		}
+		return true;
+	}
+
+	/**
+	 * キューに溜まっている要求をすべて書き込む。
+	 */
+	public synchronized void flush() {
+		while (!_queue.isEmpty()) {
+			List<Object[]> batch = Lists.newArrayList();
+			Object[] args;
+			while (batch.size() < BATCH_SIZE && (args = _queue.poll()) != null) {
+				batch.add(args);
+			}
+			_size.addAndGet(-batch.size());
+			if (!write(batch)) {
+				return;
+			}
+		}
+	}
+
+	private boolean write(List<Object[]> batch) {
+		Connection con = null;
+		try {
+			con = L1DatabaseFactory.getInstance().getConnection();
+			con.setAutoCommit(false);
+			L1QueryUtil.executeBatch(con, _sql, batch);
+			con.commit();
+			con.setAutoCommit(true);
+			return true;
+		} catch (Exception e) {
+			if (con == null) {
+				// 接続できない場合はログを再送せず破棄する。失敗し続けてもキューが溢れないようにするため
+				_droppedCount.addAndGet(batch.size());
+				_log.log(Level.SEVERE, _name + "の書き込みに失敗しました。("
+						+ batch.size() + "件破棄)", e);
+				return false;
+			}
+			_log.log(Level.WARNING, _name
+					+ "のバッチ書き込みに失敗したため、1件ずつ書き込みます。", e);
+			SqlUtil.rollback(con);
+			return writeEach(con, batch);
+		} finally {
+			SqlUtil.close(con);
+		}
+	}
+
+	// 1件ずつ書き込み、書き込めなかった行だけを破棄する
+	private boolean writeEach(Connection con, List<Object[]> batch) {
+		try {
+			con.setAutoCommit(true);
+		} catch (Exception e) {
+			_droppedCount.addAndGet(batch.size());
+			_log.log(Level.SEVERE, _name + "の書き込みに失敗しました。("
+					+ batch.size() + "件破棄)", e);
+			return false;
+		}
+		for (int i = 0; i < batch.size(); i++) {
+			Object[] args = batch.get(i);
+			try {
+				L1QueryUtil.execute(con, _sql, args);
+			} catch (Exception e) {
+				_droppedCount.incrementAndGet();
+				_log.log(Level.SEVERE, _name + "の書き込みに失敗したため、破棄しました。"
+						+ Arrays.toString(args), e);
+				if (isClosed(con)) {
+					// 接続が切れた場合は残りもまとめて破棄する
+					int rest = batch.size() - i - 1;
+					_droppedCount.addAndGet(rest);
+					if (rest > 0) {
+						_log.severe(_name + "の接続が切断されたため、残りの" + rest
+								+ "件を破棄しました。");
+					}
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static boolean isClosed(Connection con) {
+		try {
+			return con.isClosed();
+		} catch (SQLException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * 書き込み待ちの件数を返す。
+	 */
+	public int getQueueSize() {
+		return _size.get();
+	}
+
+	/**
+	 * 破棄した件数の累計を返す。
+	 */
+	public long getDroppedCount() {
+		return _droppedCount.get();
+	}
+
+	public String getName() {
+		return _name;
+	}
+
+	/**
+	 * 生成済みのすべてのLogWriterを書き込む。
+	 */
+	public static void flushAll() {
+		for (LogWriter writer : _writers) {
+			try {
+				writer.flush();
+			} catch (Exception e) {
+				_log.log(Level.SEVERE, e.getLocalizedMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * 生成済みのLogWriterの一覧を返す。
+	 */
+	public static List<LogWriter> getWriters() {
+		return _writers;
+	}
+}
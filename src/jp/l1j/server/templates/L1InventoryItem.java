@@ -19,6 +19,7 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
 import java.util.logging.Logger;
 import jp.l1j.server.datatables.InnKeyTable;
@@ -29,6 +30,7 @@ import jp.l1j.server.utils.L1QueryUtil;
 import jp.l1j.server.utils.L1QueryUtil.EntityFactory;
 import jp.l1j.server.utils.L1SqlException;
 import jp.l1j.server.utils.SqlUtil;
+import jp.l1j.server.utils.collections.IntHashMap;
 import jp.l1j.server.utils.collections.Lists;
 
 public class L1InventoryItem {
@@ -86,6 +88,9 @@ public class L1InventoryItem {
 	private boolean _canBeDmg;
 	private boolean _isUnique;
 
+	// DBに保存されている内容から変更があるか
+	private volatile boolean _dirty = true;
+
 	public static final int LOC_NONE = -1;
 	public static final int LOC_CHARACTER = 0;
 	public static final int LOC_WAREHOUSE = 1;
@@ -96,12 +101,17 @@ public class L1InventoryItem {
 	public L1InventoryItem() {
 	}
 
+	public boolean isDirty() {
+		return _dirty;
+	}
+
 	public int getId() {
 		return _id;
 	}
 
 	public void setId(int id) {
 		_id = id;
+		_dirty = true;
 	}
 
 	public int getOwnerId() {
@@ -110,6 +120,7 @@ public class L1InventoryItem {
 
 	public void setOwnerId(int ownerId) {
 		_ownerId = ownerId;
+		_dirty = true;
 	}
 
 	public int getLocation() {
@@ -118,6 +129,7 @@ public class L1InventoryItem {
 
 	public void setLocation(int location) {
 		_location = location;
+		_dirty = true;
 	}
 
 	public int getItemId() {
@@ -126,6 +138,7 @@ public class L1InventoryItem {
 
 	public void setItemId(int itemId) {
 		_itemId = itemId;
+		_dirty = true;
 	}
 
 	public int getItemCount() {
@@ -134,6 +147,7 @@ public class L1InventoryItem {
 
 	public void setItemCount(int itemCount) {
 		_itemCount = itemCount;
+		_dirty = true;
 	}
 
 	public boolean isEquipped() {
@@ -142,6 +156,7 @@ public class L1InventoryItem {
 
 	public void setEquipped(boolean isEquipped) {
 		_isEquipped = isEquipped;
+		_dirty = true;
 	}
 
 	public int getEnchantLevel() {
@@ -150,6 +165,7 @@ public class L1InventoryItem {
 
 	public void setEnchantLevel(int enchantLevel) {
 		_enchantLevel = enchantLevel;
+		_dirty = true;
 	}
 
 	public boolean isIdentified() {
@@ -158,6 +174,7 @@ public class L1InventoryItem {
 
 	public void setIdentified(boolean isIdentified) {
 		_isIdentified = isIdentified;
+		_dirty = true;
 	}
 
 	public int getDurability() {
@@ -166,6 +183,7 @@ public class L1InventoryItem {
 
 	public void setDurability(int durability) {
 		_durability = durability;
+		_dirty = true;
 	}
 
 	public int getChargeCount() {
@@ -174,6 +192,7 @@ public class L1InventoryItem {
 
 	public void setChargeCount(int chargeCount) {
 		_chargeCount = chargeCount;
+		_dirty = true;
 	}
 
 	public int getChargeTime() {
@@ -182,6 +201,7 @@ public class L1InventoryItem {
 
 	public void setChargeTime(int chargeTime) {
 		_chargeTime = chargeTime;
+		_dirty = true;
 	}
 
 	public Timestamp getExpirationTime() {
@@ -190,6 +210,7 @@ public class L1InventoryItem {
 
 	public void setExpirationTime(Timestamp expirationTime) {
 		_expirationTime = expirationTime;
+		_dirty = true;
 	}
 
 	public Timestamp getLastUsed() {
@@ -198,6 +219,7 @@ public class L1InventoryItem {
 
 	public void setLastUsed(Timestamp lastUsed) {
 		_lastUsed = lastUsed;
+		_dirty = true;
 	}
 
 	public boolean isSealed() {
@@ -206,6 +228,7 @@ public class L1InventoryItem {
 
 	public void setSealed(boolean isSealed) {
 		_isSealed = isSealed;
+		_dirty = true;
 	}
 
 	public boolean isProtected() {
@@ -214,6 +237,7 @@ public class L1InventoryItem {
 
 	public void setProtected(boolean isProtected) {
 		_isProtected = isProtected;
+		_dirty = true;
 	}
 
 	public int getProtectItemId() {
@@ -222,6 +246,7 @@ public class L1InventoryItem {
 	
 	public void setProtectItemId(int protectItemId) {
 		_protectItemId = protectItemId;
+		_dirty = true;
 	}
 	
 	public int getAttrEnchantKind() {
@@ -230,6 +255,7 @@ public class L1InventoryItem {
 
 	public void setAttrEnchantKind(int attrEnchantKind) {
 		_attrEnchantKind = attrEnchantKind;
+		_dirty = true;
 	}
 
 	public int getAttrEnchantLevel() {
@@ -238,6 +264,7 @@ public class L1InventoryItem {
 
 	public void setAttrEnchantLevel(int attrEnchantLevel) {
 		_attrEnchantLevel = attrEnchantLevel;
+		_dirty = true;
 	}
 	
 	public int getAc() {
@@ -246,6 +273,7 @@ public class L1InventoryItem {
 
 	public void setAc(int _ac) {
 		this._ac = _ac;
+		_dirty = true;
 	}
 	
 	public int getStr() {
@@ -254,6 +282,7 @@ public class L1InventoryItem {
 
 	public void setStr(int _str) {
 		this._str = _str;
+		_dirty = true;
 	}
 	
 	public int getCon() {
@@ -262,6 +291,7 @@ public class L1InventoryItem {
 
 	public void setCon(int _con) {
 		this._con = _con;
+		_dirty = true;
 	}
 	
 	public int getDex() {
@@ -270,6 +300,7 @@ public class L1InventoryItem {
 
 	public void setDex(int _dex) {
 		this._dex = _dex;
+		_dirty = true;
 	}
 	
 	public int getWis() {
@@ -278,6 +309,7 @@ public class L1InventoryItem {
 
 	public void setWis(int _wis) {
 		this._wis = _wis;
+		_dirty = true;
 	}
 	
 	public int getCha() {
@@ -286,6 +318,7 @@ public class L1InventoryItem {
 
 	public void setCha(int _cha) {
 		this._cha = _cha;
+		_dirty = true;
 	}
 	
 	public int getInt() {
@@ -294,6 +327,7 @@ public class L1InventoryItem {
 
 	public void setInt(int _int) {
 		this._int = _int;
+		_dirty = true;
 	}
 	
 	public int getHp() {
@@ -302,6 +336,7 @@ public class L1InventoryItem {
 
 	public void setHp(int _hp) {
 		this._hp = _hp;
+		_dirty = true;
 	}
 	
 	public int getHpr() {
@@ -310,6 +345,7 @@ public class L1InventoryItem {
 
 	public void setHpr(int _hpr) {
 		this._hpr = _hpr;
+		_dirty = true;
 	}
 	
 	public int getMp() {
@@ -318,6 +354,7 @@ public class L1InventoryItem {
 
 	public void setMp(int _mp) {
 		this._mp = _mp;
+		_dirty = true;
 	}
 	
 	public int getMpr() {
@@ -326,6 +363,7 @@ public class L1InventoryItem {
 
 	public void setMpr(int _mpr) {
 		this._mpr = _mpr;
+		_dirty = true;
 	}
 	
 	public int getMr() {
@@ -334,6 +372,7 @@ public class L1InventoryItem {
 
 	public void setMr(int _mr) {
 		this._mr = _mr;
+		_dirty = true;
 	}
 	
 	public int getSp() {
@@ -342,6 +381,7 @@ public class L1InventoryItem {
 
 	public void setSp(int _sp) {
 		this._sp = _sp;
+		_dirty = true;
 	}
 
 	public int getHitModifier() {
@@ -350,6 +390,7 @@ public class L1InventoryItem {
 
 	public void setHitModifier(int _hitModifier) {
 		this._hitModifier = _hitModifier;
+		_dirty = true;
 	}
 	
 	public int getDmgModifier() {
@@ -358,6 +399,7 @@ public class L1InventoryItem {
 
 	public void setDmgModifier(int _dmgModifier) {
 		this._dmgModifier = _dmgModifier;
+		_dirty = true;
 	}
 
 	public int getBowHitModifier() {
@@ -366,6 +408,7 @@ public class L1InventoryItem {
 
 	public void setBowHitModifier(int _bowHitModifier) {
 		this._bowHitModifier = _bowHitModifier;
+		_dirty = true;
 	}
 	
 	public int getBowDmgModifier() {
@@ -374,6 +417,7 @@ public class L1InventoryItem {
 
 	public void setBowDmgModifier(int _bowDmgModifier) {
 		this._bowDmgModifier = _bowDmgModifier;
+		_dirty = true;
 	}
 
 	public int getDefenseEarth() {
@@ -382,6 +426,7 @@ public class L1InventoryItem {
 
 	public void setDefenseEarth(int _defenseEarth) {
 		this._defenseEarth = _defenseEarth;
+		_dirty = true;
 	}
 		
 	public int getDefenseWater() {
@@ -390,6 +435,7 @@ public class L1InventoryItem {
 
 	public void setDefenseWater(int _defenseWater) {
 		this._defenseWater = _defenseWater;
+		_dirty = true;
 	}
 	
 	public int getDefenseFire() {
@@ -398,6 +444,7 @@ public class L1InventoryItem {
 
 	public void setDefenseFire(int _defenseFire) {
 		this._defenseFire = _defenseFire;
+		_dirty = true;
 	}
 	
 	public int getDefenseWind() {
@@ -406,6 +453,7 @@ public class L1InventoryItem {
 
 	public void setDefenseWind(int _defenseWind) {
 		this._defenseWind = _defenseWind;
+		_dirty = true;
 	}
 	
 	public int getResistStun() {
@@ -414,6 +462,7 @@ public class L1InventoryItem {
 
 	public void setResistStun(int _resistStun) {
 		this._resistStun = _resistStun;
+		_dirty = true;
 	}
 	
 	public int getResistStone() {
@@ -422,6 +471,7 @@ public class L1InventoryItem {
 
 	public void setResistStone(int _resistStone) {
 		this._resistStone = _resistStone;
+		_dirty = true;
 	}
 	
 	public int getResistSleep() {
@@ -430,6 +480,7 @@ public class L1InventoryItem {
 
 	public void setResistSleep(int _resistSleep) {
 		this._resistSleep = _resistSleep;
+		_dirty = true;
 	}
 	
 	public int getResistFreeze() {
@@ -438,6 +489,7 @@ public class L1InventoryItem {
 
 	public void setResistFreeze(int _resistFreeze) {
 		this._resistFreeze = _resistFreeze;
+		_dirty = true;
 	}
 	
 	public int getResistHold() {
@@ -446,6 +498,7 @@ public class L1InventoryItem {
 
 	public void setResistHold(int _resistHold) {
 		this._resistHold = _resistHold;
+		_dirty = true;
 	}
 	
 	public int getResistBlind() {
@@ -454,6 +507,7 @@ public class L1InventoryItem {
 
 	public void setResistBlind(int _resistBlind) {
 		this._resistBlind = _resistBlind;
+		_dirty = true;
 	}
 	
 	public int getExpBonus() {
@@ -462,6 +516,7 @@ public class L1InventoryItem {
 
 	public void setExpBonus(int _expBonus) {
 		this._expBonus = _expBonus;
+		_dirty = true;
 	}
 
 	public boolean isHaste() {
@@ -470,6 +525,7 @@ public class L1InventoryItem {
 	
 	public void setIsHaste(boolean _isHaste) {
 		this._isHaste = _isHaste;
+		_dirty = true;
 	}
 	
 	public boolean getCanBeDmg() {
@@ -478,6 +534,7 @@ public class L1InventoryItem {
 	
 	public void setCanBeDmg(boolean _canBeDmg) {
 		this._canBeDmg = _canBeDmg;
+		_dirty = true;
 	}
 	
 	public boolean isUnique() {
@@ -486,6 +543,7 @@ public class L1InventoryItem {
 	
 	public void setIsUniuqe(boolean _isUnique) {
 		this._isUnique = _isUnique;
+		_dirty = true;
 	}
 
 	public int getPotionRecoveryRate() {
@@ -494,6 +552,7 @@ public class L1InventoryItem {
 
 	public void setPotionRecoveryRate(int _potionRecoveryRate) {
 		this._potionRecoveryRate = _potionRecoveryRate;
+		_dirty = true;
 	}
 	
 	private static class Factory implements
@@ -551,6 +610,7 @@ public class L1InventoryItem {
 			result._canBeDmg = rs.getBoolean("can_be_dmg");
 			result._isUnique = rs.getBoolean("is_unique");
 			result._potionRecoveryRate = rs.getInt("potion_recovery_rate");
+			result._dirty = false;
 			return result;
 		}
 	}
@@ -572,6 +632,29 @@ public class L1InventoryItem {
 				ownerId, location);
 	}
 
+	/**
+	 * 指定した保管場所の全てのアイテムを、1回のクエリで読み込んで所有者毎にまとめる。
+	 * 起動時に血盟倉庫などを一括で読み込む為に使う。
+	 */
+	public static IntHashMap<List<L1InventoryItem>> findAllByLocation(
+			int location) {
+		final Factory factory = new Factory();
+		final IntHashMap<List<L1InventoryItem>> result = new IntHashMap<List<L1InventoryItem>>();
+		L1QueryUtil.selectEach(new L1QueryUtil.RowHandler() {
+			@Override
+			public void handle(ResultSet rs) throws SQLException {
+				L1InventoryItem item = factory.fromResultSet(rs);
+				List<L1InventoryItem> items = result.get(item.getOwnerId());
+				if (items == null) {
+					items = Lists.newArrayList();
+					result.put(item.getOwnerId(), items);
+				}
+				items.add(item);
+			}
+		}, "SELECT * FROM inventory_items WHERE location = ?", location);
+		return result;
+	}
+
 	private L1QueryBuilder buildQuery() {
 		L1QueryBuilder qb = new L1QueryBuilder("inventory_items", _storedId);
 		qb.addColumn("id", _id);
@@ -628,9 +711,12 @@ public class L1InventoryItem {
 		return qb;
 	}
 
-	private void insert(Connection con) {
-		String sql = "INSERT INTO inventory_items VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
-		L1QueryUtil.execute(con, sql, _id, _ownerId, _location, _itemId,
+	private static final String INSERT_SQL = "INSERT INTO inventory_items VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+
+	private static final String DELETE_SQL = "DELETE FROM inventory_items WHERE id = ?";
+
+	private Object[] getInsertArgs() {
+		return new Object[] { _id, _ownerId, _location, _itemId,
 				_itemCount, _isEquipped, _enchantLevel, _isIdentified,
 				_durability, _chargeCount, _chargeTime, _expirationTime, _lastUsed,
 				_isSealed, _isProtected, _protectItemId, _attrEnchantKind, _attrEnchantLevel,
@@ -639,7 +725,11 @@ public class L1InventoryItem {
 				_defenseEarth, _defenseWater, _defenseFire, _defenseWind,
 				_resistStun, _resistStone, _resistSleep, _resistFreeze,
 				_resistHold, _resistBlind, _expBonus, _isHaste, _canBeDmg,
-				_isUnique, _potionRecoveryRate);
+				_isUnique, _potionRecoveryRate };
+	}
+
+	private void insert(Connection con) {
+		L1QueryUtil.execute(con, INSERT_SQL, getInsertArgs());
 		_storedId = _id;
 	}
 
@@ -672,26 +762,131 @@ public class L1InventoryItem {
 	}
 
 	public void save(Connection con) {
-		if (!isStoreNecessary()) {
-			return;
+		// saveAllによるまとめ書きと同じアイテムを同時に書き込まないよう、同じロックで直列化する
+		synchronized (L1InventoryItem.class) {
+			if (!isStoreNecessary()) {
+				return;
+			}
+
+			if (_location == LOC_NONE || _itemCount == 0) {
+				delete(con);
+				return;
+			}
+
+			if (_storedId != 0 && !_dirty) {
+				return; // 変更が無い
+			}
+
+			// 保存中の変更を取りこぼさないよう、書き込む前にフラグを下ろす
+			_dirty = false;
+			try {
+				if (_storedId == 0) {
+					insert(con);
+				} else {
+					update(con);
+				}
+			} catch (L1SqlException e) {
+				_dirty = true;
+				throw e;
+			}
+
+			_storedId = _id;
 		}
+	}
 
-		if (_location == LOC_NONE || _itemCount == 0) {
-			delete(con);
-			return;
+	/**
+	 * 変更のあったアイテムだけを、1つのトランザクション内でまとめて保存する。
+	 * 削除、追加、更新はそれぞれバッチで実行される。
+	 * 同じアイテムが同時に書き込まれないよう、呼び出しはsave、deleteと共に直列化される。
+	 *
+	 * @param items
+	 *            保存するアイテム
+	 * @return 保存したアイテム数
+	 */
+	public static synchronized int saveAll(Collection<L1InventoryItem> items) {
+		List<L1InventoryItem> deletes = Lists.newArrayList();
+		List<L1InventoryItem> inserts = Lists.newArrayList();
+		List<L1InventoryItem> updates = Lists.newArrayList();
+		for (L1InventoryItem item : items) {
+			if (!item.isStoreNecessary()) {
+				continue;
+			}
+			if (item._location == LOC_NONE || item._itemCount == 0) {
+				if (item._storedId != 0) {
+					deletes.add(item);
+				}
+			} else if (item._storedId == 0) {
+				inserts.add(item);
+			} else if (item._dirty) {
+				updates.add(item);
+			}
+		}
+		int count = deletes.size() + inserts.size() + updates.size();
+		if (count == 0) {
+			return 0;
 		}
 
-		if (_storedId == 0) {
-			insert(con);
-		} else {
-			update(con);
+		List<Object[]> deleteArgs = Lists.newArrayList();
+		for (L1InventoryItem item : deletes) {
+			deleteArgs.add(new Object[] { item._storedId });
 		}
-		
-		_storedId = _id;
+		List<Object[]> insertArgs = Lists.newArrayList();
+		for (L1InventoryItem item : inserts) {
+			item._dirty = false;
+			insertArgs.add(item.getInsertArgs());
+		}
+		String updateSql = null;
+		List<Object[]> updateArgs = Lists.newArrayList();
+		for (L1InventoryItem item : updates) {
+			item._dirty = false;
+			L1QueryBuilder qb = item.buildQuery();
+			updateSql = qb.getQuery(); // 列の並びは全てのアイテムで同じ
+			updateArgs.add(qb.getArgs());
+		}
+
+		Connection con = null;
+		boolean committed = false;
+		try {
+			con = L1DatabaseFactory.getInstance().getConnection();
+			con.setAutoCommit(false);
+			L1QueryUtil.executeBatch(con, DELETE_SQL, deleteArgs);
+			L1QueryUtil.executeBatch(con, INSERT_SQL, insertArgs);
+			if (updateSql != null) {
+				L1QueryUtil.executeBatch(con, updateSql, updateArgs);
+			}
+			con.commit();
+			con.setAutoCommit(true);
+			committed = true;
+		} catch (SQLException e) {
+			throw new L1SqlException(e);
+		} finally {
+			if (!committed) {
+				if (con != null) {
+					SqlUtil.rollback(con);
+				}
+				// 次回の保存で書き込まれるよう、変更ありに戻す
+				for (L1InventoryItem item : inserts) {
+					item._dirty = true;
+				}
+				for (L1InventoryItem item : updates) {
+					item._dirty = true;
+				}
+			}
+			SqlUtil.close(con);
+		}
+
+		for (L1InventoryItem item : deletes) {
+			item._storedId = 0;
+		}
+		for (L1InventoryItem item : inserts) {
+			item._storedId = item._id;
+		}
+		return count;
 	}
 
 	public void delete() {
 		if (_storedId == 0) {
+			markDeleted();
 			return;
 		}
 		Connection con = null;
@@ -706,12 +901,21 @@ public class L1InventoryItem {
 	}
 
 	public void delete(Connection con) {
-		if (_storedId == 0) {
-			return;
+		synchronized (L1InventoryItem.class) {
+			if (_storedId != 0) {
+				L1QueryUtil.execute(con, DELETE_SQL, _storedId);
+				_storedId = 0;
+			}
+			markDeleted();
+		}
+	}
+
+	// 削除済みのアイテムが、書き込み待ちから再びINSERTされないようにする
+	private void markDeleted() {
+		synchronized (L1InventoryItem.class) {
+			_location = LOC_NONE;
+			_dirty = false;
 		}
-		L1QueryUtil.execute(con, "DELETE FROM inventory_items WHERE id = ?",
-				_storedId);
-		_storedId = 0;
 	}
 
 	public static void deleteAll(int ownerId) {
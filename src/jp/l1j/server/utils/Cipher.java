@@ -80,22 +80,36 @@ public class Cipher {
 	 * @return 暗号化されたbyte配列。これはパラメータのbyte配列と同一のオブジェクトです。
 	 */
 	public byte[] encrypt(byte[] data) {
+		encrypt(data, 0, data.length);
+		return data;
+	}
+
+	/**
+	 * 指定されたbyte配列の一部を、その場で暗号化します。
+	 * 
+	 * @param data
+	 *            暗号化するデータを含むbyte配列。
+	 * @param off
+	 *            暗号化するデータの開始位置。
+	 * @param len
+	 *            暗号化するデータの長さ。
+	 */
+	public void encrypt(byte[] data, int off, int len) {
 		for (int i = 0; i < tb.length; i++) {
-			tb[i] = data[i];
+			tb[i] = data[off + i];
 		}
 
-		data[0] ^= eb[0];
+		data[off] ^= eb[0];
 
-		for (int i = 1; i < data.length; i++) {
-			data[i] ^= data[i - 1] ^ eb[i & 7];
+		for (int i = 1; i < len; i++) {
+			data[off + i] ^= data[off + i - 1] ^ eb[i & 7];
 		}
 
-		data[3] ^= eb[2];
-		data[2] ^= eb[3] ^ data[3];
-		data[1] ^= eb[4] ^ data[2];
-		data[0] ^= eb[5] ^ data[1];
+		data[off + 3] ^= eb[2];
+		data[off + 2] ^= eb[3] ^ data[off + 3];
+		data[off + 1] ^= eb[4] ^ data[off + 2];
+		data[off] ^= eb[5] ^ data[off + 1];
 		update(eb, tb);
-		return data;
 	}
 
 	/**
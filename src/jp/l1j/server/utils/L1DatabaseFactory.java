@@ -20,6 +20,8 @@ import java.sql.SQLException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jp.l1j.configure.Config;
+import jp.l1j.server.utils.metrics.Histogram;
+import jp.l1j.server.utils.metrics.MetricRegistry;
 
 /**
  * DBへのアクセスするための各種インターフェースを提供する.
@@ -35,6 +37,10 @@ public class L1DatabaseFactory {
 	private static Logger _log = Logger.getLogger(L1DatabaseFactory.class
 			.getName());
 
+	/** コネクションプールからの取得にかかった時間. */
+	private static final Histogram _connectionTimer = MetricRegistry
+			.getInstance().histogram("db.connection");
+
 	/* DBへのアクセスに必要な各情報 */
 	/** DB接続ドライバー. */
 	private static String _driver;
@@ -130,6 +136,7 @@ public class L1DatabaseFactory {
 	 * @throws SQLException
 	 */
 	public Connection getConnection() {
+		long start = System.nanoTime();
 		Connection con = null;
 
 		while (con == null) {
@@ -141,6 +148,7 @@ public class L1DatabaseFactory {
 								+ e);
 			}
 		}
+		_connectionTimer.recordSince(start);
 		return Config.DEBUG_MODE ? LeakCheckedConnection.create(con) : con;
 	}
 }
@@ -21,6 +21,8 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
 import jp.l1j.server.utils.collections.Lists;
+import jp.l1j.server.utils.metrics.Histogram;
+import jp.l1j.server.utils.metrics.MetricRegistry;
 
 /**
  * SQLのQuery発行をより簡潔にします。 いくつかのメソッドはテストが十分ではありません。
@@ -30,10 +32,27 @@ import jp.l1j.server.utils.collections.Lists;
  * @since 2011.06.05
  */
 public class L1QueryUtil {
+	// コネクションの取得を除いた、SQLの実行と結果の読み出しにかかった時間
+	private static final Histogram _queryTimer = MetricRegistry.getInstance()
+			.histogram("db.query");
+
+	private static final Histogram _batchTimer = MetricRegistry.getInstance()
+			.histogram("db.batch");
+
 	public interface EntityFactory<T> {
 		public T fromResultSet(ResultSet rs) throws SQLException;
 	}
 
+	/**
+	 * selectEachで結果を1行ずつ受け取る。
+	 */
+	public interface RowHandler {
+		public void handle(ResultSet rs) throws SQLException;
+	}
+
+	// MySQL以外で、結果を分割して受け取る場合の1回の取得行数
+	private static final int FETCH_SIZE = 1000;
+
 	private static void setupPrepareStatement(PreparedStatement pstm,
 			Object[] args) throws SQLException {
 		for (int i = 0; i < args.length; i++) {
@@ -55,6 +74,7 @@ public class L1QueryUtil {
 		ResultSet rs = null;
 		try {
 			con = L1DatabaseFactory.getInstance().getConnection();
+			long start = System.nanoTime();
 			pstm = con.prepareStatement(sql);
 			setupPrepareStatement(pstm, args);
 			rs = pstm.executeQuery();
@@ -67,6 +87,7 @@ public class L1QueryUtil {
 				}
 				result.add(entity);
 			}
+			_queryTimer.recordSince(start);
 		} catch (SQLException e) {
 			throw new L1SqlException(e);
 		} finally {
@@ -77,12 +98,75 @@ public class L1QueryUtil {
 		return result;
 	}
 
+	/**
+	 * 結果を全てメモリに読み込まずに、1行ずつhandlerへ渡す。起動時の大量の行の読み込みに使う。
+	 * MySQLでは行を1行ずつ受け取り、その他のDBではFETCH_SIZE行ずつ受け取る。
+	 */
+	public static void selectEach(RowHandler handler, String sql,
+			Object... args) {
+		Connection con = null;
+		PreparedStatement pstm = null;
+		ResultSet rs = null;
+		try {
+			con = L1DatabaseFactory.getInstance().getConnection();
+			long start = System.nanoTime();
+			pstm = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY);
+			if ("MySQL".equals(con.getMetaData().getDatabaseProductName())) {
+				pstm.setFetchSize(Integer.MIN_VALUE); // Connector/Jで行単位のストリーミングを指定する値
+			} else {
+				pstm.setFetchSize(FETCH_SIZE);
+			}
+			setupPrepareStatement(pstm, args);
+			rs = pstm.executeQuery();
+			while (rs.next()) {
+				handler.handle(rs);
+			}
+			_queryTimer.recordSince(start);
+		} catch (SQLException e) {
+			throw new L1SqlException(e);
+		} finally {
+			SqlUtil.close(rs);
+			SqlUtil.close(pstm);
+			SqlUtil.close(con);
+		}
+	}
+
 	public static boolean execute(Connection con, String sql, Object... args) {
 		PreparedStatement pstm = null;
+		long start = System.nanoTime();
 		try {
 			pstm = con.prepareStatement(sql);
 			setupPrepareStatement(pstm, args);
-			return pstm.execute();
+			boolean result = pstm.execute();
+			_queryTimer.recordSince(start);
+			return result;
+		} catch (SQLException e) {
+			throw new L1SqlException(e);
+		} finally {
+			SqlUtil.close(pstm);
+		}
+	}
+
+	/**
+	 * 同じSQLを引数の組ごとにバッチで実行する。トランザクションは呼び出し側で管理すること。
+	 */
+	public static int[] executeBatch(Connection con, String sql,
+			List<Object[]> argsList) {
+		if (argsList.isEmpty()) {
+			return new int[0];
+		}
+		PreparedStatement pstm = null;
+		long start = System.nanoTime();
+		try {
+			pstm = con.prepareStatement(sql);
+			for (Object[] args : argsList) {
+				setupPrepareStatement(pstm, args);
+				pstm.addBatch();
+			}
+			int[] result = pstm.executeBatch();
+			_batchTimer.recordSince(start);
+			return result;
 		} catch (SQLException e) {
 			throw new L1SqlException(e);
 		} finally {
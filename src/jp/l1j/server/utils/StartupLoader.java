@@ -0,0 +1,299 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 起動時のデータ読み込みを、依存関係に従って並列に実行する。
+ * 依存するローダーが全て終わったローダーから順にフォークジョインプールへ投入し、
+ * 重要なローダー(ログインの受付前に終わっている必要があるもの)が全て終わった時点でawaitCriticalから戻る。
+ * 残りのバックグラウンドのローダーは、ログインの受付を始めた後も引き続き実行される。
+ */
+public class StartupLoader {
+	private static Logger _log = Logger.getLogger(StartupLoader.class.getName());
+
+	/**
+	 * 1つの読み込み処理。
+	 */
+	public interface Loader {
+		public void load() throws Exception;
+	}
+
+	private class Node implements Runnable {
+		private final String _name;
+		private final Loader _loader;
+		private final String[] _dependencies;
+		private final boolean _critical;
+		private final List<Node> _dependents = new ArrayList<Node>();
+		private final AtomicInteger _remaining = new AtomicInteger();
+		private volatile boolean _skipped = false; // 依存するローダーが失敗した
+		private volatile Throwable _error;
+		private volatile long _elapsed = -1;
+
+		private Node(String name, Loader loader, String[] dependencies,
+				boolean critical) {
+			_name = name;
+			_loader = loader;
+			_dependencies = dependencies;
+			_critical = critical;
+		}
+
+		@Override
+		public void run() {
+			boolean failed = _skipped;
+			if (!failed) {
+				PerformanceTimer timer = new PerformanceTimer();
+				try {
+					_loader.load();
+				} catch (Throwable e) {
+					failed = true;
+					_error = e;
+					_log.log(Level.SEVERE, _name + "の読み込みに失敗しました。", e);
+				}
+				_elapsed = timer.elapsedTimeMillis();
+			}
+			finish(this, failed);
+		}
+	}
+
+	private final String _name;
+	private final int _parallelism;
+	private final Map<String, Node> _nodes = new LinkedHashMap<String, Node>();
+	private ForkJoinPool _pool;
+	private CountDownLatch _criticalLatch;
+	private CountDownLatch _allLatch;
+	private final PerformanceTimer _timer = new PerformanceTimer();
+	private long _criticalElapsed = -1;
+
+	/**
+	 * @param name
+	 *            スレッド名
+	 * @param parallelism
+	 *            並列に実行するローダーの数(0以下でプロセッサ数)
+	 */
+	public StartupLoader(String name, int parallelism) {
+		_name = name;
+		_parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime()
+				.availableProcessors();
+	}
+
+	/**
+	 * ログインの受付前に終わっている必要のあるローダーを登録する。
+	 *
+	 * @param dependencies
+	 *            先に終わっている必要のあるローダーの名前
+	 */
+	public void add(String name, Loader loader, String... dependencies) {
+		add(name, loader, dependencies, true);
+	}
+
+	/**
+	 * ログインの受付を始めた後に終わってもよいローダーを登録する。
+	 */
+	public void addBackground(String name, Loader loader,
+			String... dependencies) {
+		add(name, loader, dependencies, false);
+	}
+
+	private void add(String name, Loader loader, String[] dependencies,
+			boolean critical) {
+		if (_pool != null) {
+			throw new IllegalStateException("already started: " + name);
+		}
+		if (_nodes.containsKey(name)) {
+			throw new IllegalArgumentException("duplicate loader: " + name);
+		}
+		_nodes.put(name, new Node(name, loader, dependencies, critical));
+	}
+
+	/**
+	 * 依存関係を検証し、実行を開始する。
+	 */
+	public void start() {
+		int criticalCount = 0;
+		for (Node node : _nodes.values()) {
+			for (String dependency : node._dependencies) {
+				Node parent = _nodes.get(dependency);
+				if (parent == null) {
+					throw new IllegalStateException(node._name
+							+ " depends on unknown loader: " + dependency);
+				}
+				if (node._critical && !parent._critical) {
+					throw new IllegalStateException(node._name
+							+ " depends on background loader: " + dependency);
+				}
+				parent._dependents.add(node);
+			}
+			node._remaining.set(node._dependencies.length);
+			if (node._critical) {
+				criticalCount++;
+			}
+		}
+		checkCycle();
+
+		_criticalLatch = new CountDownLatch(criticalCount);
+		_allLatch = new CountDownLatch(_nodes.size());
+		_pool = new ForkJoinPool(_parallelism,
+				new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+					private final AtomicInteger _count = new AtomicInteger();
+
+					@Override
+					public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+						ForkJoinWorkerThread thread = new ForkJoinWorkerThread(
+								pool) {
+						};
+						thread.setName(_name + "-" + _count.incrementAndGet());
+						return thread;
+					}
+				}, null, true);
+		_timer.reset();
+		for (Node node : _nodes.values()) {
+			if (node._dependencies.length == 0) {
+				_pool.execute(node);
+			}
+		}
+		if (_nodes.isEmpty()) {
+			_pool.shutdown();
+		}
+	}
+
+	// 依存関係が循環していると実行されないローダーが残るため、開始前に検出する
+	private void checkCycle() {
+		Map<Node, Integer> remaining = new LinkedHashMap<Node, Integer>();
+		List<Node> ready = new ArrayList<Node>();
+		for (Node node : _nodes.values()) {
+			remaining.put(node, node._dependencies.length);
+			if (node._dependencies.length == 0) {
+				ready.add(node);
+			}
+		}
+		int visited = 0;
+		while (!ready.isEmpty()) {
+			Node node = ready.remove(ready.size() - 1);
+			visited++;
+			for (Node dependent : node._dependents) {
+				int count = remaining.get(dependent) - 1;
+				remaining.put(dependent, count);
+				if (count == 0) {
+					ready.add(dependent);
+				}
+			}
+		}
+		if (visited != _nodes.size()) {
+			List<String> names = new ArrayList<String>();
+			for (Map.Entry<Node, Integer> entry : remaining.entrySet()) {
+				if (entry.getValue() > 0) {
+					names.add(entry.getKey()._name);
+				}
+			}
+			throw new IllegalStateException("dependency cycle: " + names);
+		}
+	}
+
+	private void finish(Node node, boolean failed) {
+		for (Node dependent : node._dependents) {
+			if (failed) {
+				dependent._skipped = true; // 失敗は依存するローダーへ伝播させる
+			}
+			if (dependent._remaining.decrementAndGet() == 0) {
+				_pool.execute(dependent);
+			}
+		}
+		if (node._critical) {
+			synchronized (this) {
+				_criticalLatch.countDown();
+				if (_criticalLatch.getCount() == 0) {
+					_criticalElapsed = _timer.elapsedTimeMillis();
+				}
+			}
+		}
+		_allLatch.countDown();
+		if (_allLatch.getCount() == 0) {
+			_pool.shutdown();
+			printReport();
+		}
+	}
+
+	/**
+	 * 重要なローダーが全て終わるまで待つ。
+	 *
+	 * @throws Exception
+	 *             重要なローダーが失敗した場合。失敗したローダーの例外を原因とする
+	 */
+	public void awaitCritical() throws Exception {
+		_criticalLatch.await();
+		for (Node node : _nodes.values()) {
+			if (node._critical && node._error != null) {
+				throw new Exception(node._name + " failed", node._error);
+			}
+		}
+		for (Node node : _nodes.values()) {
+			if (node._critical && node._skipped) {
+				throw new Exception(node._name + " was not loaded");
+			}
+		}
+	}
+
+	/**
+	 * 全てのローダーが終わるまで待つ。
+	 */
+	public void awaitAll() throws InterruptedException {
+		_allLatch.await();
+	}
+
+	/**
+	 * 各ローダーの所要時間を、長い順に出力する。
+	 */
+	private void printReport() {
+		long total = _timer.elapsedTimeMillis();
+		List<Node> nodes = new ArrayList<Node>(_nodes.values());
+		Collections.sort(nodes, new Comparator<Node>() {
+			@Override
+			public int compare(Node a, Node b) {
+				return a._elapsed < b._elapsed ? 1 : a._elapsed > b._elapsed ? -1 : 0;
+			}
+		});
+		long sum = 0;
+		StringBuilder sb = new StringBuilder();
+		for (Node node : nodes) {
+			if (node._elapsed < 0) {
+				sb.append(String.format("  %-28s skipped%n", node._name));
+				continue;
+			}
+			sum += node._elapsed;
+			sb.append(String.format("  %-28s %6dms%s%n", node._name,
+					node._elapsed, node._critical ? "" : " (background)"));
+		}
+		synchronized (this) {
+			System.out.println(String.format(
+					"%s: critical path %dms, total %dms, loaders %dms (%d threads)",
+					_name, _criticalElapsed, total, sum, _parallelism));
+		}
+		_log.info(_name + " loader timings:" + System.getProperty("line.separator") + sb);
+	}
+}
@@ -0,0 +1,439 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.utils;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jp.l1j.server.utils.metrics.Counter;
+import jp.l1j.server.utils.metrics.Gauge;
+import jp.l1j.server.utils.metrics.MetricRegistry;
+
+/**
+ * ハッシュ化タイミングホイールによるタスクスケジューラ。
+ * 1つのティックスレッドが期限の来たタスクをホイールから取り出し、ワーカースレッドへ振り分ける。
+ * ワーカーは自分のキューが空になると、他のワーカーのキューからタスクを奪って実行する。
+ * タスクはバケットに直接リンクされるため、再スケジュールの度にオブジェクトを生成しない。
+ */
+public class TimingWheel {
+	private static Logger _log = Logger.getLogger(TimingWheel.class.getName());
+
+	/**
+	 * タイミングホイールで実行されるタスク。
+	 * 1つのタスクは同時に1つのホイールにしか登録できない。
+	 */
+	public static abstract class Task {
+		private static final int IDLE = 0; // 未登録
+		private static final int SCHEDULED = 1; // ホイールで待機中
+		private static final int READY = 2; // ワーカーのキューで実行待ち
+		private static final int RUNNING = 3; // 実行中
+
+		private final AtomicInteger _state = new AtomicInteger(IDLE);
+
+		// 以下はホイールのロックで保護される
+		private Task _prev;
+		private Task _next;
+		private int _bucket;
+		private int _rounds;
+		private long _deadline; // 実行予定時刻(ms)
+
+		/**
+		 * タスクを実行する。
+		 *
+		 * @return 次に実行するまでの時間(ms)。0未満を返すとホイールから外れる。
+		 */
+		protected abstract long execute();
+
+		/**
+		 * ホイールに登録されているか、実行中であればtrueを返す。
+		 */
+		public boolean isScheduled() {
+			return _state.get() != IDLE;
+		}
+	}
+
+	private final String _name;
+	private final int _tickMillis;
+	private final Task[] _wheel;
+	private final int _mask;
+	private final Object _lock = new Object();
+	private long _tick = 0; // 処理済みのティック数
+	private final long _startTime;
+	private final Worker[] _workers;
+	private int _nextWorker = 0;
+
+	private int _taskCount = 0; // ホイールで待機中のタスク数
+	private final AtomicInteger _backlog = new AtomicInteger(); // 実行待ちのタスク数
+	private final AtomicLong _executedCount = new AtomicLong();
+	private final AtomicLong _totalLatency = new AtomicLong();
+	private volatile long _maxLatency = 0;
+	private volatile long _tickLag = 0;
+
+	/**
+	 * @param name
+	 *            スレッド名
+	 * @param tickMillis
+	 *            1ティックの長さ(ms)
+	 * @param wheelSize
+	 *            バケット数(2の累乗に切り上げられる)
+	 * @param workers
+	 *            ワーカースレッド数(0以下でプロセッサ数)
+	 */
+	public TimingWheel(String name, int tickMillis, int wheelSize, int workers) {
+		int size = 1;
+		while (size < wheelSize) {
+			size <<= 1;
+		}
+		if (workers <= 0) {
+			workers = Runtime.getRuntime().availableProcessors();
+		}
+		_name = name;
+		_tickMillis = Math.max(tickMillis, 1);
+		_wheel = new Task[size];
+		_mask = size - 1;
+		_startTime = currentTime();
+		_workers = new Worker[workers];
+		for (int i = 0; i < workers; i++) {
+			_workers[i] = new Worker(i);
+		}
+		for (Worker worker : _workers) {
+			worker.start();
+		}
+		Thread ticker = new Thread(new Ticker(), _name + "-Tick");
+		ticker.setDaemon(true);
+		ticker.start();
+		registerMetrics();
+	}
+
+	// NpcAIのホイールであれば、executedの毎秒の値がAIの実行回数/秒になる
+	private void registerMetrics() {
+		MetricRegistry registry = MetricRegistry.getInstance();
+		String prefix = "wheel." + _name + ".";
+		registry.register(prefix + "executed", new Counter() {
+			@Override
+			public long getCount() {
+				return getExecutedCount();
+			}
+		});
+		registry.register(prefix + "tasks", new Gauge() {
+			@Override
+			public long getValue() {
+				return getTaskCount();
+			}
+		});
+		registry.register(prefix + "backlog", new Gauge() {
+			@Override
+			public long getValue() {
+				return getBacklog();
+			}
+		});
+		registry.register(prefix + "latency.avg.ms", new Gauge() {
+			@Override
+			public long getValue() {
+				return getAverageLatency();
+			}
+		});
+		registry.register(prefix + "latency.max.ms", new Gauge() {
+			@Override
+			public long getValue() {
+				return getMaxLatency();
+			}
+		});
+		registry.register(prefix + "ticklag.ms", new Gauge() {
+			@Override
+			public long getValue() {
+				return getTickLag();
+			}
+		});
+	}
+
+	private static long currentTime() {
+		return System.nanoTime() / 1000000L;
+	}
+
+	/**
+	 * タスクを指定時間後に実行するよう登録する。
+	 *
+	 * @return 登録できた場合はtrue。既に登録済みか実行中の場合はfalse。
+	 */
+	public boolean schedule(Task task, long delay) {
+		synchronized (_lock) {
+			if (!task._state.compareAndSet(Task.IDLE, Task.SCHEDULED)) {
+				return false;
+			}
+			insert(task, delay);
+		}
+		return true;
+	}
+
+	/**
+	 * 登録されているタスクを取り消す。実行中のタスクは取り消せない。
+	 *
+	 * @return 取り消せた場合はtrue
+	 */
+	public boolean cancel(Task task) {
+		synchronized (_lock) {
+			if (task._state.compareAndSet(Task.SCHEDULED, Task.IDLE)) {
+				unlink(task);
+				return true;
+			}
+		}
+		// ワーカーのキューに残った参照は、実行時に状態を見て読み飛ばされる
+		return task._state.compareAndSet(Task.READY, Task.IDLE);
+	}
+
+	/**
+	 * タスクの実行予定時刻までの残り時間(ms)を返す。登録されていない場合は0未満。
+	 */
+	public long getDelay(Task task) {
+		synchronized (_lock) {
+			if (task._state.get() == Task.IDLE) {
+				return -1;
+			}
+			return Math.max(task._deadline - currentTime(), 0);
+		}
+	}
+
+	// _lockを保持して呼ぶこと
+	private void insert(Task task, long delay) {
+		long ticks = (Math.max(delay, 0) + _tickMillis - 1) / _tickMillis;
+		if (ticks < 1) {
+			ticks = 1;
+		}
+		// ティック処理が遅れていても予定より早く実行されないよう、現在時刻から数える
+		long now = currentTime();
+		long target = Math.max(_tick, (now - _startTime) / _tickMillis) + ticks;
+		int bucket = (int) (target & _mask);
+		task._deadline = now + delay;
+		task._bucket = bucket;
+		task._rounds = (int) ((target - _tick) / _wheel.length);
+		task._prev = null;
+		task._next = _wheel[bucket];
+		if (task._next != null) {
+			task._next._prev = task;
+		}
+		_wheel[bucket] = task;
+		_taskCount++;
+	}
+
+	// _lockを保持して呼ぶこと
+	private void unlink(Task task) {
+		if (task._prev != null) {
+			task._prev._next = task._next;
+		} else {
+			_wheel[task._bucket] = task._next;
+		}
+		if (task._next != null) {
+			task._next._prev = task._prev;
+		}
+		task._prev = null;
+		task._next = null;
+		_taskCount--;
+	}
+
+	private class Ticker implements Runnable {
+		@Override
+		public void run() {
+			while (true) {
+				try {
+					long next = _startTime + (_tick + 1) * _tickMillis;
+					long now = currentTime();
+					if (now < next) {
+						Thread.sleep(next - now);
+						continue;
+					}
+					_tickLag = now - next;
+					Task expired = null;
+					synchronized (_lock) {
+						Task task = _wheel[(int) (_tick & _mask)];
+						while (task != null) {
+							Task nextTask = task._next;
+							if (task._rounds > 0) {
+								task._rounds--;
+							} else {
+								unlink(task);
+								task._state.set(Task.READY);
+								task._next = expired; // 振り分けまで一時的に連結する
+								expired = task;
+							}
+							task = nextTask;
+						}
+						_tick++;
+					}
+					while (expired != null) {
+						Task task = expired;
+						expired = task._next;
+						task._next = null;
+						dispatch(task);
+					}
+				} catch (InterruptedException e) {
+					return;
+				} catch (Throwable e) {
+					_log.log(Level.SEVERE, _name + "のティック処理で例外が発生しました。", e);
+				}
+			}
+		}
+	}
+
+	private void dispatch(Task task) {
+		_backlog.incrementAndGet();
+		_workers[_nextWorker].push(task);
+		_nextWorker = (_nextWorker + 1) % _workers.length;
+	}
+
+	private void execute(Task task) {
+		if (!task._state.compareAndSet(Task.READY, Task.RUNNING)) {
+			return; // 実行待ちの間に取り消された
+		}
+		long latency = currentTime() - task._deadline;
+		if (latency > 0) {
+			_totalLatency.addAndGet(latency);
+			if (latency > _maxLatency) {
+				_maxLatency = latency;
+			}
+		}
+		_executedCount.incrementAndGet();
+
+		long delay = -1;
+		try {
+			delay = task.execute();
+		} catch (Exception e) {
+			_log.log(Level.WARNING, _name + "のタスクで例外が発生しました。", e);
+		} catch (Throwable e) {
+			// StackOverflowErrorなども、RUNNINGのまま残さずに例外と同じく終了させる
+			_log.log(Level.SEVERE, _name + "のタスクでエラーが発生しました。", e);
+		} finally {
+			synchronized (_lock) {
+				if (delay < 0) {
+					task._state.set(Task.IDLE);
+				} else {
+					task._state.set(Task.SCHEDULED);
+					insert(task, delay);
+				}
+			}
+		}
+	}
+
+	private class Worker extends Thread {
+		private final int _index;
+		private final ArrayDeque<Task> _queue = new ArrayDeque<Task>();
+
+		public Worker(int index) {
+			super(_name + "-" + (index + 1));
+			_index = index;
+			setDaemon(true);
+		}
+
+		private synchronized void push(Task task) {
+			_queue.addLast(task);
+			notify();
+		}
+
+		private synchronized Task poll() {
+			return _queue.pollFirst();
+		}
+
+		// 他のワーカーの実行待ちタスクを奪う
+		private Task steal() {
+			for (int i = 1; i < _workers.length; i++) {
+				Task task = _workers[(_index + i) % _workers.length].poll();
+				if (task != null) {
+					return task;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				try {
+					Task task = poll();
+					if (task == null) {
+						task = steal();
+					}
+					if (task == null) {
+						synchronized (this) {
+							if (_queue.isEmpty()) {
+								// 他のワーカーから奪える状態になっていないか、1ティック毎に確認する
+								wait(_tickMillis);
+							}
+						}
+						continue;
+					}
+					_backlog.decrementAndGet();
+					TimingWheel.this.execute(task);
+				} catch (InterruptedException e) {
+					return;
+				} catch (Throwable e) {
+					// ワーカーを止めると割り当て済みのタスクが実行されなくなるため、続ける
+					_log.log(Level.SEVERE, _name + "のワーカーで例外が発生しました。", e);
+				}
+			}
+		}
+	}
+
+	public String getName() {
+		return _name;
+	}
+
+	/**
+	 * ホイールで待機中のタスク数を返す。
+	 */
+	public int getTaskCount() {
+		synchronized (_lock) {
+			return _taskCount;
+		}
+	}
+
+	/**
+	 * 期限が来てワーカーの実行を待っているタスク数を返す。
+	 */
+	public int getBacklog() {
+		return _backlog.get();
+	}
+
+	/**
+	 * 実行したタスクの総数を返す。
+	 */
+	public long getExecutedCount() {
+		return _executedCount.get();
+	}
+
+	/**
+	 * タスクが予定時刻より遅れて実行された時間の平均(ms)を返す。
+	 */
+	public long getAverageLatency() {
+		long count = _executedCount.get();
+		return count == 0 ? 0 : _totalLatency.get() / count;
+	}
+
+	/**
+	 * タスクが予定時刻より遅れて実行された時間の最大値(ms)を返す。
+	 */
+	public long getMaxLatency() {
+		return _maxLatency;
+	}
+
+	/**
+	 * 直近のティックが予定より遅れて処理された時間(ms)を返す。
+	 */
+	public long getTickLag() {
+		return _tickLag;
+	}
+}
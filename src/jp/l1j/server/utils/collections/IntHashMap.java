@@ -0,0 +1,188 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.utils.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * intをキーとするハッシュマップ。キーをボクシングせず、オープンアドレス法で格納する。
+ * 値にはnullを格納できる。スレッドセーフではない。
+ */
+public class IntHashMap<V> {
+	private int[] _keys;
+	private Object[] _values;
+	private boolean[] _used;
+	private int _size = 0;
+	private int _threshold;
+
+	public IntHashMap() {
+		this(16);
+	}
+
+	public IntHashMap(int initialCapacity) {
+		int capacity = 4;
+		while (capacity * 3 < initialCapacity * 4) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		_keys = new int[capacity];
+		_values = new Object[capacity];
+		_used = new boolean[capacity];
+		_threshold = capacity * 3 / 4;
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+
+	// キーの位置、無ければ-1
+	private int indexOf(int key) {
+		int mask = _keys.length - 1;
+		for (int i = hash(key) & mask; _used[i]; i = (i + 1) & mask) {
+			if (_keys[i] == key) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public boolean containsKey(int key) {
+		return indexOf(key) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int i = indexOf(key);
+		return i < 0 ? null : (V) _values[i];
+	}
+
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		int mask = _keys.length - 1;
+		int i = hash(key) & mask;
+		for (; _used[i]; i = (i + 1) & mask) {
+			if (_keys[i] == key) {
+				V old = (V) _values[i];
+				_values[i] = value;
+				return old;
+			}
+		}
+		_used[i] = true;
+		_keys[i] = key;
+		_values[i] = value;
+		if (++_size > _threshold) {
+			rehash(_keys.length << 1);
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int i = indexOf(key);
+		if (i < 0) {
+			return null;
+		}
+		V old = (V) _values[i];
+		// 後続の要素を詰め、探索が途切れないようにする
+		int mask = _keys.length - 1;
+		int hole = i;
+		for (int j = (i + 1) & mask; _used[j]; j = (j + 1) & mask) {
+			int home = hash(_keys[j]) & mask;
+			// homeが(hole, j]の範囲に無ければ、holeへ移動できる
+			if (((j - home) & mask) >= ((j - hole) & mask)) {
+				_keys[hole] = _keys[j];
+				_values[hole] = _values[j];
+				hole = j;
+			}
+		}
+		_used[hole] = false;
+		_values[hole] = null;
+		_size--;
+		return old;
+	}
+
+	private void rehash(int capacity) {
+		int[] keys = _keys;
+		Object[] values = _values;
+		boolean[] used = _used;
+		allocate(capacity);
+		int mask = capacity - 1;
+		for (int i = 0; i < keys.length; i++) {
+			if (!used[i]) {
+				continue;
+			}
+			int j = hash(keys[i]) & mask;
+			while (_used[j]) {
+				j = (j + 1) & mask;
+			}
+			_used[j] = true;
+			_keys[j] = keys[i];
+			_values[j] = values[i];
+		}
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	public void clear() {
+		if (_size == 0) {
+			return;
+		}
+		for (int i = 0; i < _keys.length; i++) {
+			_used[i] = false;
+			_values[i] = null;
+		}
+		_size = 0;
+	}
+
+	/**
+	 * 全てのキーを配列で返す。
+	 */
+	public int[] keys() {
+		int[] result = new int[_size];
+		int n = 0;
+		for (int i = 0; i < _keys.length; i++) {
+			if (_used[i]) {
+				result[n++] = _keys[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 全ての値のコピーを返す。
+	 */
+	@SuppressWarnings("unchecked")
+	public List<V> values() {
+		List<V> result = new ArrayList<V>(_size);
+		for (int i = 0; i < _keys.length; i++) {
+			if (_used[i]) {
+				result.add((V) _values[i]);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.utils.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 単調増加するカウンター。MetricRegistryが集計する度に、前回からの増加量で毎秒の値を求める。
+ * 他のクラスが既に数えている値を公開する場合は、getCountをオーバーライドする。
+ */
+public class Counter {
+	private final AtomicLong _count = new AtomicLong();
+
+	private long _lastCount = 0;
+
+	private double _rate = 0;
+
+	public void increment() {
+		_count.incrementAndGet();
+	}
+
+	public void add(long delta) {
+		_count.addAndGet(delta);
+	}
+
+	public long getCount() {
+		return _count.get();
+	}
+
+	/**
+	 * 直前の集計間隔での、1秒あたりの増加量を返す。
+	 */
+	public double getRate() {
+		return _rate;
+	}
+
+	// MetricRegistryの集計スレッドから呼び出される
+	void sample(long elapsedNanos) {
+		long count = getCount();
+		_rate = elapsedNanos <= 0 ? 0 : (count - _lastCount) * 1000000000.0
+				/ elapsedNanos;
+		_lastCount = count;
+	}
+}
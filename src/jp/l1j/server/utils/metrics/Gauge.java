@@ -3,40 +3,21 @@
  * it under the terms of the GNU General Public License as published by
  * the Free Software Foundation, either version 3 of the License, or
  * (at your option) any later version.
- * 
+ *
  * This program is distributed in the hope that it will be useful,
  * but WITHOUT ANY WARRANTY; without even the implied warranty of
  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
  * GNU General Public License for more details.
- * 
+ *
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-package jp.l1j.server.templates;
+package jp.l1j.server.utils.metrics;
 
-public class L1CharName {
-	public L1CharName() {
-	}
-
-	private int _id;
-
-	public int getId() {
-		return _id;
-	}
-
-	public void setId(int i) {
-		_id = i;
-	}
-
-	private String _name;
-
-	public String getName() {
-		return _name;
-	}
-
-	public void setName(String s) {
-		_name = s;
-	}
-
-}
\ No newline at end of file
+/**
+ * 参照時点の値を返すメトリクス。キューの長さやオンライン人数などに使う。
+ */
+public interface Gauge {
+	public long getValue();
+}
@@ -0,0 +1,205 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.utils.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 処理時間などの分布を記録するヒストグラム。値はナノ秒で記録する。
+ * HdrHistogramと同じく2の累乗ごとの範囲を16等分したバケットで数えるため、
+ * 百分位数の誤差は6%程度に収まり、記録はロックを取らずに配列の加算1回で済む。
+ * 百分位数などはMetricRegistryが集計する度に、前回の集計からの差分で求め直す。
+ */
+public class Histogram {
+	private static final int SUB_BUCKET_BITS = 4;
+
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	// 2 * SUB_BUCKET_COUNT未満の値はそのまま添字にする
+	private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT * 2;
+
+	private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS)
+			* SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray _buckets = new AtomicLongArray(BUCKET_COUNT);
+
+	private final AtomicLong _sum = new AtomicLong();
+
+	private final AtomicLong _max = new AtomicLong();
+
+	// 以下はMetricRegistryの集計スレッドだけが更新する
+	private final long[] _lastBuckets = new long[BUCKET_COUNT];
+
+	private volatile Snapshot _snapshot = new Snapshot(0, 0, 0, 0, 0, 0, 0, 0);
+
+	private long _lastSum = 0;
+
+	private long _totalCount = 0;
+
+	/**
+	 * 集計間隔ごとの記録の要約。
+	 */
+	public static class Snapshot {
+		private final long _count;
+		private final long _totalCount;
+		private final double _rate;
+		private final long _mean;
+		private final long _p50;
+		private final long _p99;
+		private final long _p999;
+		private final long _max;
+
+		Snapshot(long count, long totalCount, double rate, long mean,
+				long p50, long p99, long p999, long max) {
+			_count = count;
+			_totalCount = totalCount;
+			_rate = rate;
+			_mean = mean;
+			_p50 = p50;
+			_p99 = p99;
+			_p999 = p999;
+			_max = max;
+		}
+
+		/** 集計間隔内の記録数 */
+		public long getCount() {
+			return _count;
+		}
+
+		/** 起動からの記録数 */
+		public long getTotalCount() {
+			return _totalCount;
+		}
+
+		/** 1秒あたりの記録数 */
+		public double getRate() {
+			return _rate;
+		}
+
+		public long getMean() {
+			return _mean;
+		}
+
+		public long getP50() {
+			return _p50;
+		}
+
+		public long getP99() {
+			return _p99;
+		}
+
+		public long getP999() {
+			return _p999;
+		}
+
+		public long getMax() {
+			return _max;
+		}
+	}
+
+	/**
+	 * 値を1件記録する。負の値は0として扱う。
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		_buckets.incrementAndGet(indexOf(nanos));
+		_sum.addAndGet(nanos);
+		long max = _max.get();
+		while (nanos > max) {
+			if (_max.compareAndSet(max, nanos)) {
+				break;
+			}
+			max = _max.get();
+		}
+	}
+
+	/**
+	 * 開始時刻(System.nanoTime)から現在までの時間を記録する。
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	static int indexOf(long value) {
+		if (value < LINEAR_LIMIT) {
+			return (int) value;
+		}
+		// 上位SUB_BUCKET_BITS + 1ビットが[SUB_BUCKET_COUNT, 2 * SUB_BUCKET_COUNT)に収まるようにずらす
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return shift * SUB_BUCKET_COUNT + (int) (value >>> shift);
+	}
+
+	// バケットに入る値の上限
+	static long highestValueOf(int index) {
+		if (index < LINEAR_LIMIT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long sub = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+		return ((sub + 1) << shift) - 1;
+	}
+
+	/**
+	 * 直前の集計間隔の要約を返す。
+	 */
+	public Snapshot getSnapshot() {
+		return _snapshot;
+	}
+
+	// MetricRegistryの集計スレッドから呼び出される
+	void sample(long elapsedNanos) {
+		long[] counts = new long[BUCKET_COUNT];
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			long current = _buckets.get(i);
+			counts[i] = current - _lastBuckets[i];
+			_lastBuckets[i] = current;
+			count += counts[i];
+		}
+		long sum = _sum.get();
+		long intervalSum = sum - _lastSum;
+		_lastSum = sum;
+		long max = _max.getAndSet(0);
+		_totalCount += count;
+		if (count == 0) {
+			_snapshot = new Snapshot(0, _totalCount, 0, 0, 0, 0, 0, 0);
+			return;
+		}
+		double rate = elapsedNanos <= 0 ? 0 : count * 1000000000.0
+				/ elapsedNanos;
+		// 集計の途中で記録された値はsumとバケットで食い違うことがあるが、次の集計で相殺される
+		_snapshot = new Snapshot(count, _totalCount, rate,
+				Math.max(intervalSum, 0) / count,
+				Math.min(percentile(counts, count, 0.50), max),
+				Math.min(percentile(counts, count, 0.99), max),
+				Math.min(percentile(counts, count, 0.999), max), max);
+	}
+
+	private static long percentile(long[] counts, long total, double ratio) {
+		long target = (long) Math.ceil(total * ratio);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= target && counts[i] > 0) {
+				return highestValueOf(i);
+			}
+		}
+		return 0;
+	}
+}
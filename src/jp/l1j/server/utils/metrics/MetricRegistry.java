@@ -0,0 +1,189 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.utils.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * サーバー全体のメトリクスを名前で管理する。
+ * 記録側はカウンターやヒストグラムの参照をフィールドに保持して使い、毎回名前で引かないこと。
+ * 毎秒の値や百分位数はsampleを呼び出す度に、前回の呼び出しからの差分で求め直す。
+ */
+public class MetricRegistry {
+	private static MetricRegistry _instance;
+
+	private final ConcurrentMap<String, Counter> _counters = new ConcurrentSkipListMap<String, Counter>();
+
+	private final ConcurrentMap<String, Gauge> _gauges = new ConcurrentSkipListMap<String, Gauge>();
+
+	private final ConcurrentMap<String, Histogram> _histograms = new ConcurrentSkipListMap<String, Histogram>();
+
+	private long _lastSampleTime = System.nanoTime();
+
+	public static synchronized MetricRegistry getInstance() {
+		if (_instance == null) {
+			_instance = new MetricRegistry();
+		}
+		return _instance;
+	}
+
+	private MetricRegistry() {
+		registerJvmGauges();
+	}
+
+	private void registerJvmGauges() {
+		final Runtime runtime = Runtime.getRuntime();
+		register("jvm.memory.used.mb", new Gauge() {
+			@Override
+			public long getValue() {
+				return (runtime.totalMemory() - runtime.freeMemory()) / 1024L / 1024L;
+			}
+		});
+		register("jvm.memory.max.mb", new Gauge() {
+			@Override
+			public long getValue() {
+				return runtime.maxMemory() / 1024L / 1024L;
+			}
+		});
+		register("jvm.threads", new Gauge() {
+			@Override
+			public long getValue() {
+				return Thread.activeCount();
+			}
+		});
+	}
+
+	/**
+	 * 名前に対応するカウンターを返す。無ければ生成する。
+	 */
+	public Counter counter(String name) {
+		Counter counter = _counters.get(name);
+		if (counter == null) {
+			Counter created = new Counter();
+			counter = _counters.putIfAbsent(name, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		return counter;
+	}
+
+	/**
+	 * 他のクラスが数えている値を、カウンターとして登録する。同じ名前のものは置き換える。
+	 */
+	public void register(String name, Counter counter) {
+		_counters.put(name, counter);
+	}
+
+	/**
+	 * ゲージを登録する。同じ名前のものは置き換える。
+	 */
+	public void register(String name, Gauge gauge) {
+		_gauges.put(name, gauge);
+	}
+
+	/**
+	 * 名前に対応するヒストグラムを返す。無ければ生成する。
+	 */
+	public Histogram histogram(String name) {
+		Histogram histogram = _histograms.get(name);
+		if (histogram == null) {
+			Histogram created = new Histogram();
+			histogram = _histograms.putIfAbsent(name, created);
+			if (histogram == null) {
+				histogram = created;
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * 前回の呼び出しからの差分で、毎秒の値と百分位数を求め直す。定期的に1つのスレッドから呼び出すこと。
+	 */
+	public synchronized void sample() {
+		long now = System.nanoTime();
+		long elapsed = now - _lastSampleTime;
+		_lastSampleTime = now;
+		for (Counter counter : _counters.values()) {
+			counter.sample(elapsed);
+		}
+		for (Histogram histogram : _histograms.values()) {
+			histogram.sample(elapsed);
+		}
+	}
+
+	/**
+	 * 名前がprefixで始まるメトリクスを、1行に1つずつの文字列にする。
+	 * ヒストグラムは直前の集計間隔に記録のあったものだけを出力する。
+	 *
+	 * @param prefix
+	 *            空文字列の場合はすべて
+	 * @param lineSeparator
+	 *            改行文字
+	 */
+	public String report(String prefix, String lineSeparator) {
+		StringBuilder result = new StringBuilder();
+		for (Map.Entry<String, Gauge> e : _gauges.entrySet()) {
+			if (!e.getKey().startsWith(prefix)) {
+				continue;
+			}
+			long value;
+			try {
+				value = e.getValue().getValue();
+			} catch (Exception ex) {
+				continue; // 参照先が初期化されていないなど
+			}
+			result.append(e.getKey()).append(' ').append(value);
+			result.append(lineSeparator);
+		}
+		for (Map.Entry<String, Counter> e : _counters.entrySet()) {
+			if (!e.getKey().startsWith(prefix)) {
+				continue;
+			}
+			Counter counter = e.getValue();
+			result.append(String.format(Locale.US, "%s %d (%.1f/s)",
+					e.getKey(), counter.getCount(), counter.getRate()));
+			result.append(lineSeparator);
+		}
+		for (Map.Entry<String, Histogram> e : _histograms.entrySet()) {
+			if (!e.getKey().startsWith(prefix)) {
+				continue;
+			}
+			Histogram.Snapshot s = e.getValue().getSnapshot();
+			if (s.getCount() == 0) {
+				continue;
+			}
+			result.append(String.format(Locale.US,
+					"%s n=%d (%.1f/s) mean=%s p50=%s p99=%s p99.9=%s max=%s",
+					e.getKey(), s.getCount(), s.getRate(),
+					format(s.getMean()), format(s.getP50()),
+					format(s.getP99()), format(s.getP999()),
+					format(s.getMax())));
+			result.append(lineSeparator);
+		}
+		return result.toString();
+	}
+
+	private static String format(long nanos) {
+		if (nanos < 1000000L) {
+			return String.format(Locale.US, "%.1fus", nanos / 1000.0);
+		}
+		return String.format(Locale.US, "%.2fms", nanos / 1000000.0);
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jp.l1j.server.utils.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import jp.l1j.configure.Config;
+
+/**
+ * 一定間隔でメトリクスを集計し、log/metrics*.logへ書き出す。
+ * ファイルはMetricsLogFileSizeを超えるとMetricsLogFileCount個までローテーションする。
+ */
+public class MetricsLogger implements Runnable {
+	private static Logger _log = Logger.getLogger(MetricsLogger.class
+			.getName());
+
+	private static final String PATTERN = "log/metrics%g.log";
+
+	private static final String LINE_SEPARATOR = System
+			.getProperty("line.separator");
+
+	private final FileHandler _handler;
+
+	private final SimpleDateFormat _dateFormat = new SimpleDateFormat(
+			"yyyy-MM-dd HH:mm:ss");
+
+	/**
+	 * MetricsLogFileCountが0の場合は、ファイルへ書き出さずに集計だけを行う。
+	 */
+	public static MetricsLogger create() {
+		if (Config.METRICS_LOG_FILE_COUNT <= 0) {
+			return new MetricsLogger(null);
+		}
+		try {
+			new File("log").mkdirs();
+			FileHandler handler = new FileHandler(PATTERN,
+					Config.METRICS_LOG_FILE_SIZE,
+					Config.METRICS_LOG_FILE_COUNT, true);
+			handler.setFormatter(new Formatter() {
+				@Override
+				public String format(LogRecord record) {
+					return record.getMessage();
+				}
+			});
+			return new MetricsLogger(handler);
+		} catch (IOException e) {
+			_log.log(Level.SEVERE, PATTERN + "を開けませんでした。", e);
+			return new MetricsLogger(null);
+		}
+	}
+
+	private MetricsLogger(FileHandler handler) {
+		_handler = handler;
+	}
+
+	@Override
+	public void run() {
+		try {
+			MetricRegistry registry = MetricRegistry.getInstance();
+			registry.sample();
+			if (_handler == null) {
+				return;
+			}
+			StringBuilder text = new StringBuilder();
+			text.append("# ").append(_dateFormat.format(new Date()));
+			text.append(LINE_SEPARATOR);
+			text.append(registry.report("", LINE_SEPARATOR));
+			_handler.publish(new LogRecord(Level.INFO, text.toString()));
+			_handler.flush();
+		} catch (Exception e) {
+			_log.log(Level.WARNING, e.getLocalizedMessage(), e);
+		}
+	}
+}
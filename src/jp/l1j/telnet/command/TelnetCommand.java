@@ -26,6 +26,7 @@ import jp.l1j.server.model.L1World;
 import jp.l1j.server.packets.server.S_ChatPacket;
 import jp.l1j.server.storage.mysql.MySqlCharacterStorage;
 import jp.l1j.server.utils.IntRange;
+import jp.l1j.server.utils.metrics.MetricRegistry;
 import static jp.l1j.telnet.command.TelnetCommandResult.*;
 
 public interface TelnetCommand {
@@ -102,3 +103,12 @@ class ShutDownCommand implements TelnetCommand {
 		return new TelnetCommandResult(CMD_OK, "");
 	}
 }
+
+class MetricsCommand implements TelnetCommand {
+	@Override
+	public TelnetCommandResult execute(String args) {
+		// 引数を指定した場合は、その文字列で始まるメトリクスだけを返す
+		return new TelnetCommandResult(CMD_OK, MetricRegistry.getInstance()
+				.report(args.trim(), "\r\n"));
+	}
+}
@@ -26,6 +26,7 @@ public class TelnetCommandList {
 		_cmds.put("charstatus", new CharStatusCommand());
 		_cmds.put("globalchat", new GlobalChatCommand());
 		_cmds.put("shutdown", new ShutDownCommand());
+		_cmds.put("metrics", new MetricsCommand());
 	}
 
 	public static TelnetCommand get(String name) {